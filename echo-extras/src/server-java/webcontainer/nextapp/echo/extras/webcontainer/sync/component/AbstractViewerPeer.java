@@ -114,7 +114,7 @@ public abstract class AbstractViewerPeer extends AbstractComponentSynchronizePee
                 renderModelDataContent(context, modelData, modelElement);
                 
                 conn.setContentType(ContentType.TEXT_XML);
-                DomUtil.save(document, conn.getOutputStream(), null);
+                DomUtil.save(document, conn.getCompressedOutputStream(), null);
                 DomUtil.save(document, new PrintWriter(System.err), null);
             } catch (SerialException ex) {
                 throw new SynchronizationException("Unable to render model data.", ex);
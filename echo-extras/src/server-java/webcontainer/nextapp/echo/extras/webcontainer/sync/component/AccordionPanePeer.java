@@ -145,9 +145,9 @@ public class AccordionPanePeer extends AbstractComponentSynchronizePeer {
      */
     private Integer getTabIndex(Context context, AccordionPane accordionPane, String clientRenderId) {
         UserInstance userInstance = (UserInstance) context.get(UserInstance.class);
-        Component[] children = accordionPane.getVisibleComponents();
-        for (int i = 0; i < children.length; ++i) {
-            if (userInstance.getClientRenderId(children[i]).equals(clientRenderId)) {
+        int componentCount = accordionPane.getVisibleComponentCount();
+        for (int i = 0; i < componentCount; ++i) {
+            if (userInstance.getClientRenderId(accordionPane.getVisibleComponent(i)).equals(clientRenderId)) {
                 return new Integer(i);
             }
         }
@@ -110,7 +110,7 @@ public class DataGridPeer extends AbstractComponentSynchronizePeer {
                 renderModelDataContent(context, modelData, document.getDocumentElement());
                 
                 conn.setContentType(ContentType.TEXT_XML);
-                DomUtil.save(document, conn.getOutputStream(), null);
+                DomUtil.save(document, conn.getCompressedOutputStream(), null);
             } catch (SerialException ex) {
                 throw new SynchronizationException("Unable to render model data.", ex);
             } catch (SAXException ex) {
@@ -174,9 +174,9 @@ public class TabPanePeer extends AbstractComponentSynchronizePeer {
      */
     private Integer getTabIndex(Context context, TabPane tabPane, String clientRenderId) {
         UserInstance userInstance = (UserInstance) context.get(UserInstance.class);
-        Component[] children = tabPane.getVisibleComponents();
-        for (int i = 0; i < children.length; ++i) {
-            if (userInstance.getClientRenderId(children[i]).equals(clientRenderId)) {
+        int componentCount = tabPane.getVisibleComponentCount();
+        for (int i = 0; i < componentCount; ++i) {
+            if (userInstance.getClientRenderId(tabPane.getVisibleComponent(i)).equals(clientRenderId)) {
                 return new Integer(i);
             }
         }
@@ -226,18 +226,26 @@ Echo.Serial = {
     /**
      * Deserializes an XML representation of a style sheet into a
      * StyleSheet instance.
+     * Styles whose "s" elements specify the "rm" attribute are removed from the style sheet.
      * 
      * @param {Echo.Client} client the client instance
      * @param {Element} ssElement the "ss" element representing the root of the style sheet
      * @param propertyMap the (optional) property map containing referenced property information
+     * @param {Echo.StyleSheet} styleSheet an (optional) existing style sheet to which the styles should be
+     *        applied; if omitted, a new style sheet is created
      */
-    loadStyleSheet: function(client, ssElement, propertyMap) {
-        var styleSheet = new Echo.StyleSheet();
+    loadStyleSheet: function(client, ssElement, propertyMap, styleSheet) {
+        styleSheet = styleSheet || new Echo.StyleSheet();
         
         var ssChild = ssElement.firstChild;
         while (ssChild) {
             if (ssChild.nodeType == 1) {
                 if (ssChild.nodeName == "s") {
+                    if (ssChild.getAttribute("rm") == "true") {
+                        styleSheet.setStyle(ssChild.getAttribute("n") || "", ssChild.getAttribute("t"), null);
+                        ssChild = ssChild.nextSibling;
+                        continue;
+                    }
                     var style = {};
                     var sChild = ssChild.firstChild;
                     while (sChild) {
@@ -33,7 +33,10 @@ import nextapp.echo.app.ApplicationInstance;
 import nextapp.echo.app.Column;
 import nextapp.echo.app.Component;
 import nextapp.echo.app.Label;
+import nextapp.echo.app.TaskQueueHandle;
 import nextapp.echo.app.Window;
+import nextapp.echo.app.event.TaskQueueEvent;
+import nextapp.echo.app.event.TaskQueueListener;
 import junit.framework.TestCase;
 
 /**
@@ -130,6 +133,36 @@ public class ApplicationInstanceTest extends TestCase {
         ApplicationInstance.setActive(null);
     }
 
+    /**
+     * Test notification of <code>TaskQueueListener</code>s when tasks are enqueued.
+     */
+    public void testTaskQueueListener() {
+        final HelloWorldApp app = new HelloWorldApp();
+        final TaskQueueEvent[] lastEvent = new TaskQueueEvent[1];
+        TaskQueueListener listener = new TaskQueueListener() {
+            public void taskEnqueued(TaskQueueEvent e) {
+                // Verify the task is visible to the listener.
+                assertTrue(app.hasQueuedTasks());
+                lastEvent[0] = e;
+            }
+        };
+        TaskQueueHandle taskQueue = app.createTaskQueue();
+        app.addTaskQueueListener(listener);
+        Runnable task = new Runnable() {
+            public void run() { }
+        };
+        app.enqueueTask(taskQueue, task);
+        assertNotNull(lastEvent[0]);
+        assertSame(app, lastEvent[0].getApplicationInstance());
+        assertSame(taskQueue, lastEvent[0].getTaskQueue());
+        
+        lastEvent[0] = null;
+        app.removeTaskQueueListener(listener);
+        app.enqueueTask(taskQueue, task);
+        assertNull(lastEvent[0]);
+        app.removeTaskQueue(taskQueue);
+    }
+
     /**
      * Test component-application registration life-cycle methods, i.e.,
      * <code>Component.init()</code> / <code>Component.dispose()</code>.
@@ -32,6 +32,8 @@ package nextapp.echo.app.test;
 import nextapp.echo.app.ApplicationInstance;
 import nextapp.echo.app.Button;
 import nextapp.echo.app.Color;
+import nextapp.echo.app.Column;
+import nextapp.echo.app.Component;
 import nextapp.echo.app.Label;
 import nextapp.echo.app.MutableStyle;
 import nextapp.echo.app.MutableStyleSheet;
@@ -83,4 +85,38 @@ public class ApplicationStyleTest extends TestCase  {
 
         ApplicationInstance.setActive(null);
     }
+    
+    /**
+     * Ensure resolved styles reflect styles added to and removed from the current style sheet.
+     */
+    public void testStyleSheetModification() {
+        ColumnApp app = new ColumnApp();
+        ApplicationInstance.setActive(app);
+        app.doInit();
+        
+        MutableStyleSheet styleSheet = new MutableStyleSheet();
+        app.setStyleSheet(styleSheet);
+        assertNull(app.getLabel().getRenderProperty(Label.PROPERTY_FOREGROUND));
+        assertEquals(Component.class, app.getStyleClass(Label.class, null));
+        
+        MutableStyle componentStyle = new MutableStyle();
+        componentStyle.set(Label.PROPERTY_FOREGROUND, Color.BLUE);
+        styleSheet.addStyle(Component.class, null, componentStyle);
+        assertEquals(Color.BLUE, app.getLabel().getRenderProperty(Label.PROPERTY_FOREGROUND));
+        
+        MutableStyle labelStyle = new MutableStyle();
+        labelStyle.set(Label.PROPERTY_FOREGROUND, Color.RED);
+        styleSheet.addStyle(Label.class, null, labelStyle);
+        assertEquals(Color.RED, app.getLabel().getRenderProperty(Label.PROPERTY_FOREGROUND));
+        assertEquals(Label.class, app.getStyleClass(Label.class, null));
+        assertEquals(Component.class, app.getStyleClass(Column.class, null));
+        
+        labelStyle.set(Label.PROPERTY_FOREGROUND, Color.GREEN);
+        assertEquals(Color.GREEN, app.getLabel().getRenderProperty(Label.PROPERTY_FOREGROUND));
+        
+        styleSheet.removeStyle(Label.class, null);
+        assertEquals(Color.BLUE, app.getLabel().getRenderProperty(Label.PROPERTY_FOREGROUND));
+        
+        ApplicationInstance.setActive(null);
+    }
 }
@@ -707,4 +707,36 @@ public class ComponentTest extends TestCase {
         assertEquals(-1, parent.visibleIndexOf(c));
         assertEquals(-1, parent.visibleIndexOf(d));
     }
+
+    /**
+     * Test <code>visibleIndexOf()</code> and <code>getVisibleComponent()</code>
+     * after children are inserted, removed, and moved between parents.
+     */
+    public void testVisibleIndexOfHierarchyChanges() {
+        NullComponent parent1 = new NullComponent();
+        NullComponent parent2 = new NullComponent();
+        NullComponent a = new NullComponent();
+        NullComponent b = new NullComponent();
+        NullComponent c = new NullComponent();
+        parent1.add(a);
+        parent1.add(c);
+        assertEquals(1, parent1.visibleIndexOf(c));
+        parent1.add(b, 1);
+        assertEquals(1, parent1.visibleIndexOf(b));
+        assertEquals(2, parent1.visibleIndexOf(c));
+        assertSame(c, parent1.getVisibleComponent(2));
+        parent1.remove(a);
+        assertEquals(-1, parent1.visibleIndexOf(a));
+        assertEquals(0, parent1.visibleIndexOf(b));
+        assertEquals(1, parent1.visibleIndexOf(c));
+        parent2.add(a);
+        parent2.add(c);
+        assertEquals(-1, parent1.visibleIndexOf(c));
+        assertEquals(1, parent2.visibleIndexOf(c));
+        assertEquals(1, parent1.getVisibleComponentCount());
+        assertSame(b, parent1.getVisibleComponent(0));
+        parent2.removeAll();
+        assertEquals(0, parent2.getVisibleComponentCount());
+        assertEquals(0, parent2.getVisibleComponents().length);
+    }
 }
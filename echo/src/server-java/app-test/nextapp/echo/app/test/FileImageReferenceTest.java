@@ -0,0 +1,105 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.app.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import nextapp.echo.app.FileImageReference;
+import junit.framework.TestCase;
+
+/**
+ * Unit test(s) for the <code>nextapp.echo.app.FileImageReference</code> property 
+ * value object.
+ */
+public class FileImageReferenceTest extends TestCase {
+    
+    private File file;
+    
+    /**
+     * @see junit.framework.TestCase#setUp()
+     */
+    public void setUp() 
+    throws IOException {
+        file = File.createTempFile("FileImageReferenceTest", ".png");
+        write(new byte[]{ 1, 2, 3, 4, 5 });
+    }
+    
+    /**
+     * @see junit.framework.TestCase#tearDown()
+     */
+    public void tearDown() {
+        file.delete();
+    }
+    
+    private void write(byte[] data) 
+    throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(data);
+        out.close();
+    }
+    
+    /**
+     * Test equality.
+     */
+    public void testEquals() {
+        assertTrue(new FileImageReference(file, "image/png").equals(new FileImageReference(file, "image/png")));
+        assertFalse(new FileImageReference(file, "image/png").equals(new FileImageReference(file, "image/gif")));
+        assertFalse(new FileImageReference(file, "image/png").equals(null));
+    }
+    
+    /**
+     * Test content information and rendering.
+     */
+    public void testContent() 
+    throws IOException {
+        FileImageReference image = new FileImageReference(file, "image/png");
+        assertEquals(5, image.getContentLength());
+        assertEquals(file, image.getFile());
+        assertEquals(file.lastModified(), image.getLastModified());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        image.render(out);
+        assertTrue(Arrays.equals(new byte[]{ 1, 2, 3, 4, 5 }, out.toByteArray()));
+        
+        String contentTag = image.getContentTag();
+        assertNotNull(contentTag);
+        write(new byte[]{ 1, 2, 3 });
+        assertEquals(3, image.getContentLength());
+        assertFalse(contentTag.equals(image.getContentTag()));
+        
+        file.delete();
+        assertEquals(-1, image.getContentLength());
+        assertEquals(-1, image.getLastModified());
+        assertNull(image.getContentTag());
+    }
+}
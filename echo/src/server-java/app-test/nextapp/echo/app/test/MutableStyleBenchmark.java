@@ -0,0 +1,140 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.app.test;
+
+import nextapp.echo.app.MutableStyle;
+
+/**
+ * Measures the cost of <code>MutableStyle</code> property lookups for styles of various sizes, e.g., the local
+ * styles of simple components (a few properties) and of components such as <code>Table</code> or 
+ * <code>WindowPane</code> (30 or more properties).
+ * Each pass retrieves every set property and an equal number of properties which are not set (as is done when 
+ * a component's local style is queried before its shared style), then retrieves the values of an indexed 
+ * property.
+ * Invoke <code>main()</code> with an optional iteration count as an argument.
+ */
+public class MutableStyleBenchmark {
+    
+    /** Property names, in the order in which they are set. */
+    private static final String[] NAMES = {
+        "background", "foreground", "font", "border", "insets", "width", "height", "alignment", "lineWrap",
+        "backgroundImage", "rolloverBackground", "rolloverForeground", "rolloverFont", "rolloverBorder",
+        "rolloverEnabled", "pressedBackground", "pressedForeground", "pressedFont", "pressedBorder", 
+        "pressedEnabled", "disabledBackground", "disabledForeground", "disabledFont", "disabledBorder",
+        "focusedBackground", "focusedForeground", "focusedBorder", "focusedEnabled", "toolTipText", 
+        "textAlignment", "textPosition", "iconTextMargin", "selectionBackground", "selectionForeground", 
+        "headerBackground", "headerForeground"
+    };
+    
+    /** Property names which are not set. */
+    private static final String[] UNSET_NAMES = {
+        "layoutData", "styleName", "movable", "resizable", "closable", "modal", "minimumWidth", "minimumHeight",
+        "maximumWidth", "maximumHeight", "positionX", "positionY", "title", "titleFont", "titleBackground",
+        "titleForeground", "titleInsets", "titleHeight", "icon", "iconInsets", "closeIcon", "closeIconInsets",
+        "border2", "insets2", "foreground2", "background2", "font2", "width2", "height2", "selectionEnabled", 
+        "rolloverEnabled2", "headerVisible", "defaultRenderer", "columnWidth2", "rowHeight", "actionCommand"
+    };
+    
+    /** Name of the indexed property. */
+    private static final String INDEXED_NAME = "columnWidth";
+    
+    /** Number of values of the indexed property. */
+    private static final int INDEX_COUNT = 8;
+    
+    /**
+     * Creates a style with the specified number of properties, and an indexed property.
+     */
+    private static MutableStyle createStyle(int size) {
+        MutableStyle style = new MutableStyle();
+        for (int i = 0; i < size; ++i) {
+            style.set(NAMES[i], Integer.valueOf(i));
+        }
+        for (int i = 0; i < INDEX_COUNT; ++i) {
+            style.setIndex(INDEXED_NAME, i, Integer.valueOf(i));
+        }
+        return style;
+    }
+    
+    /**
+     * Performs a pass of lookups.
+     * 
+     * @return a value depending on the results, to prevent elimination of the lookups
+     */
+    private static int lookup(MutableStyle style, int size) {
+        int result = 0;
+        for (int i = 0; i < size; ++i) {
+            if (style.get(NAMES[i]) != null) {
+                ++result;
+            }
+            if (style.get(UNSET_NAMES[i]) != null) {
+                ++result;
+            }
+        }
+        for (int i = 0; i < INDEX_COUNT; ++i) {
+            if (style.isIndexedPropertySet(INDEXED_NAME, i) && style.getIndex(INDEXED_NAME, i) != null) {
+                ++result;
+            }
+        }
+        return result;
+    }
+    
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int[] sizes = { 4, 8, 16, 36 };
+        for (int i = 0; i < sizes.length; ++i) {
+            int size = sizes[i];
+            MutableStyle style = createStyle(size);
+            int expected = size + INDEX_COUNT;
+            
+            // Warm up.
+            for (int j = 0; j < iterations / 10; ++j) {
+                lookup(style, size);
+            }
+            
+            long startTime = System.nanoTime();
+            for (int j = 0; j < iterations; ++j) {
+                if (lookup(style, size) != expected) {
+                    throw new IllegalStateException();
+                }
+            }
+            long lookupTime = System.nanoTime() - startTime;
+            
+            startTime = System.nanoTime();
+            for (int j = 0; j < iterations / 10; ++j) {
+                createStyle(size);
+            }
+            long createTime = System.nanoTime() - startTime;
+            
+            System.out.println(size + " properties: " 
+                    + ((double) lookupTime / iterations / (2 * size + 2 * INDEX_COUNT)) + "ns per lookup, "
+                    + ((double) createTime / (iterations / 10) / (size + INDEX_COUNT)) + "ns per set");
+        }
+    }
+}
@@ -174,6 +174,26 @@ public class MutableStyleTest extends TestCase {
         assertFalse(style.isIndexedPropertySet("alpha", 1));
     }
     
+    public void testModificationCount() {
+        MutableStyle style = new MutableStyle();
+        int count = style.getModificationCount();
+        style.set("alpha", "bravo");
+        assertTrue(count != style.getModificationCount());
+        count = style.getModificationCount();
+        style.setIndex("charlie", 0, "delta");
+        assertTrue(count != style.getModificationCount());
+        count = style.getModificationCount();
+        style.removeIndexedProperty("charlie", 0);
+        assertTrue(count != style.getModificationCount());
+        count = style.getModificationCount();
+        style.removeProperty("alpha");
+        assertTrue(count != style.getModificationCount());
+        count = style.getModificationCount();
+        style.removeProperty("alpha");
+        style.get("charlie");
+        assertEquals(count, style.getModificationCount());
+    }
+    
     public void testSet1Set2Remove2Set2() {
         MutableStyle style = new MutableStyle();
         style.set("golf", "hotel");
@@ -187,4 +207,69 @@ public class MutableStyleTest extends TestCase {
         assertEquals("hotel", style.get("golf"));
         assertEquals("bravo", style.get("alpha"));
     }
+    
+    /**
+     * Tests a style large enough to be hash indexed, including lookups by
+     * names which are equal to but not identical with the names used to set
+     * properties, and removal of properties until the style is small again.
+     */
+    public void testLargeStyle() {
+        MutableStyle style = new MutableStyle();
+        for (int i = 0; i < 40; ++i) {
+            style.set("property" + i, Integer.valueOf(i));
+        }
+        assertEquals(40, style.size());
+        for (int i = 0; i < 40; ++i) {
+            assertEquals(Integer.valueOf(i), style.get(new String("property" + i)));
+        }
+        assertNull(style.get("property40"));
+        
+        for (int i = 0; i < 40; i += 2) {
+            style.removeProperty("property" + i);
+        }
+        style.set("property1", "one");
+        assertEquals(20, style.size());
+        for (int i = 0; i < 40; ++i) {
+            assertEquals(i % 2 == 0, !style.isPropertySet("property" + i));
+        }
+        assertEquals("one", style.get("property1"));
+        
+        Set names = new HashSet();
+        Iterator it = style.getPropertyNames();
+        while (it.hasNext()) {
+            names.add(it.next());
+        }
+        assertEquals(20, names.size());
+        
+        for (int i = 1; i < 36; i += 2) {
+            style.set("property" + i, null);
+        }
+        assertEquals(2, style.size());
+        assertEquals(Integer.valueOf(37), style.get("property37"));
+        assertEquals(Integer.valueOf(39), style.get("property39"));
+    }
+    
+    /**
+     * Tests that indices of an indexed property are returned in ascending order,
+     * regardless of the order in which they were set and removed.
+     */
+    public void testIndexedPropertyOrder() {
+        MutableStyle style = new MutableStyle();
+        int[] indices = { 7, 2, 9, 0, 5, 3 };
+        for (int i = 0; i < indices.length; ++i) {
+            style.setIndex("alpha", indices[i], Integer.valueOf(indices[i]));
+        }
+        style.removeIndexedProperty("alpha", 5);
+        style.setIndex("alpha", 2, "two");
+        
+        Iterator it = style.getPropertyIndices("alpha");
+        int[] expected = { 0, 2, 3, 7, 9 };
+        for (int i = 0; i < expected.length; ++i) {
+            assertEquals(Integer.valueOf(expected[i]), it.next());
+        }
+        assertFalse(it.hasNext());
+        assertEquals("two", style.getIndex("alpha", 2));
+        assertFalse(style.isIndexedPropertySet("alpha", 5));
+        assertNull(style.getIndex("alpha", 5));
+    }
 }
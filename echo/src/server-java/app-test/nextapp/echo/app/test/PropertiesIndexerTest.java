@@ -0,0 +1,126 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.app.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Map;
+
+import nextapp.echo.app.util.PropertiesDiscovery;
+import nextapp.echo.app.util.PropertiesIndexer;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for <code>nextapp.echo.app.util.PropertiesIndexer</code> and the use of indices by
+ * <code>nextapp.echo.app.util.PropertiesDiscovery</code>.
+ */
+public class PropertiesIndexerTest extends TestCase {
+    
+    private static final String RESOURCE_NAME = "META-INF/nextapp/echo/TestBindings.properties";
+    
+    private File directory;
+    
+    /**
+     * @see junit.framework.TestCase#setUp()
+     */
+    public void setUp() 
+    throws IOException {
+        directory = File.createTempFile("PropertiesIndexerTest", "");
+        directory.delete();
+        write(RESOURCE_NAME, "java.lang.String=java.lang.Object\n");
+    }
+    
+    /**
+     * @see junit.framework.TestCase#tearDown()
+     */
+    public void tearDown() {
+        delete(directory);
+    }
+    
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (int i = 0; i < children.length; ++i) {
+                delete(children[i]);
+            }
+        }
+        file.delete();
+    }
+    
+    private void write(String resourceName, String content) 
+    throws IOException {
+        File file = new File(directory, resourceName);
+        file.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("ISO-8859-1"));
+        } finally {
+            out.close();
+        }
+    }
+    
+    /**
+     * Test that an index is created, and is used in place of the indexed files once present.
+     */
+    public void testIndex() 
+    throws Exception {
+        ClassLoader classLoader = new URLClassLoader(new URL[] { directory.toURI().toURL() }, null);
+        File indexFile = PropertiesIndexer.index(RESOURCE_NAME, classLoader, directory);
+        assertTrue(indexFile.isFile());
+        assertEquals(RESOURCE_NAME + PropertiesDiscovery.INDEX_SUFFIX, 
+                indexFile.getAbsolutePath().substring(directory.getAbsolutePath().length() + 1)
+                .replace(File.separatorChar, '/'));
+        
+        // Changes to the indexed file are not seen once the index exists.
+        write(RESOURCE_NAME, "java.lang.String=java.lang.Object\njava.lang.Integer=java.lang.Number\n");
+        classLoader = new URLClassLoader(new URL[] { directory.toURI().toURL() }, null);
+        Map properties = PropertiesDiscovery.loadProperties(RESOURCE_NAME, classLoader);
+        assertEquals(1, properties.size());
+        assertEquals("java.lang.Object", properties.get("java.lang.String"));
+    }
+    
+    /**
+     * Test that indexing fails if a bound class does not exist.
+     */
+    public void testIndexMissingClass() 
+    throws Exception {
+        write(RESOURCE_NAME, "java.lang.String=nonexistent.Peer\n");
+        ClassLoader classLoader = new URLClassLoader(new URL[] { directory.toURI().toURL() }, null);
+        try {
+            PropertiesIndexer.index(RESOURCE_NAME, classLoader, directory);
+            fail();
+        } catch (ClassNotFoundException ex) {
+            // Expected.
+        }
+    }
+}
@@ -29,6 +29,8 @@
 
 package nextapp.echo.app.test;
 
+import java.util.Iterator;
+
 import nextapp.echo.app.Button;
 import nextapp.echo.app.Color;
 import nextapp.echo.app.Label;
@@ -68,4 +70,42 @@ public class StyleSheetTest extends TestCase {
         assertEquals(bravoButtonStyle, styleSheet.getStyle("bravo", Button.class, true));
         assertEquals(bravoLabelStyle, styleSheet.getStyle("bravo", Label.class, true));
     }
+    
+    public void testChangeTracking() {
+        MutableStyleSheet styleSheet = new MutableStyleSheet();
+        MutableStyle alphaButtonStyle = new MutableStyle();
+        styleSheet.addStyle(Button.class, "alpha", alphaButtonStyle);
+        MutableStyle bravoLabelStyle = new MutableStyle();
+        styleSheet.addStyle(Label.class, "bravo", bravoLabelStyle);
+        int modificationCount = styleSheet.getModificationCount();
+        assertFalse(styleSheet.getChangedStyleNames(modificationCount).hasNext());
+        
+        // Modify contained style.
+        bravoLabelStyle.set(Label.PROPERTY_FOREGROUND, Color.RED);
+        assertTrue(modificationCount != styleSheet.getModificationCount());
+        Iterator it = styleSheet.getChangedStyleNames(modificationCount);
+        assertEquals("bravo", it.next());
+        assertFalse(it.hasNext());
+        it = styleSheet.getChangedComponentTypes("bravo", modificationCount);
+        assertEquals(Label.class, it.next());
+        assertFalse(it.hasNext());
+        
+        // Remove style.
+        modificationCount = styleSheet.getModificationCount();
+        styleSheet.removeStyle(Button.class, "alpha");
+        assertNull(styleSheet.getStyle("alpha", Button.class, false));
+        it = styleSheet.getChangedStyleNames(modificationCount);
+        assertEquals("alpha", it.next());
+        assertFalse(it.hasNext());
+        it = styleSheet.getChangedComponentTypes("alpha", modificationCount);
+        assertEquals(Button.class, it.next());
+        assertFalse(it.hasNext());
+        
+        // Add default style.
+        modificationCount = styleSheet.getModificationCount();
+        styleSheet.addStyle(Button.class, null, new MutableStyle());
+        it = styleSheet.getChangedStyleNames(modificationCount);
+        assertNull(it.next());
+        assertFalse(it.hasNext());
+    }
 }
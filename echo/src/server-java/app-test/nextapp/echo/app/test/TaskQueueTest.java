@@ -0,0 +1,271 @@
+/*
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.app.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import nextapp.echo.app.ApplicationInstance;
+import nextapp.echo.app.CoalescableTask;
+import nextapp.echo.app.TaskQueueHandle;
+import nextapp.echo.app.TaskQueueMetrics;
+import junit.framework.TestCase;
+
+/**
+ * Unit test(s) for the task queues of <code>nextapp.echo.app.ApplicationInstance</code>.
+ */
+public class TaskQueueTest extends TestCase {
+    
+    /**
+     * Task which records its name in a list when run.
+     */
+    private static class RecordingTask 
+    implements Runnable {
+        
+        private List<String> log;
+        private String name;
+        
+        RecordingTask(List<String> log, String name) {
+            this.log = log;
+            this.name = name;
+        }
+        
+        public void run() {
+            log.add(name);
+        }
+    }
+    
+    /**
+     * Coalescable task which records its name in a list when run.
+     */
+    private static class CoalescableRecordingTask extends RecordingTask
+    implements CoalescableTask {
+        
+        private Object key;
+        
+        CoalescableRecordingTask(List<String> log, String name, Object key) {
+            super(log, name);
+            this.key = key;
+        }
+        
+        public Object getCoalescingKey() {
+            return key;
+        }
+    }
+    
+    private HelloWorldApp app;
+    private List<String> log;
+    
+    /**
+     * @see junit.framework.TestCase#setUp()
+     */
+    public void setUp() {
+        app = new HelloWorldApp();
+        log = new ArrayList<String>();
+    }
+    
+    /**
+     * Test a bounded queue which discards its oldest tasks on overflow.
+     */
+    public void testDropOldest() {
+        TaskQueueHandle taskQueue = app.createTaskQueue(2, ApplicationInstance.TASK_QUEUE_OVERFLOW_DROP_OLDEST);
+        app.enqueueTask(taskQueue, new RecordingTask(log, "a"));
+        app.enqueueTask(taskQueue, new RecordingTask(log, "b"));
+        app.enqueueTask(taskQueue, new RecordingTask(log, "c"));
+        app.processQueuedTasks();
+        assertEquals("[b, c]", log.toString());
+        
+        TaskQueueMetrics metrics = app.getTaskQueueMetrics(taskQueue);
+        assertEquals(2, metrics.getCapacity());
+        assertEquals(0, metrics.getDepth());
+        assertEquals(2, metrics.getMaxDepth());
+        assertEquals(3, metrics.getEnqueuedCount());
+        assertEquals(1, metrics.getDroppedCount());
+        assertEquals(2, metrics.getProcessedCount());
+        app.removeTaskQueue(taskQueue);
+        assertNull(app.getTaskQueueMetrics(taskQueue));
+    }
+    
+    /**
+     * Test a bounded queue which discards enqueued tasks on overflow.
+     */
+    public void testDropNewest() {
+        TaskQueueHandle taskQueue = app.createTaskQueue(2, ApplicationInstance.TASK_QUEUE_OVERFLOW_DROP_NEWEST);
+        app.enqueueTask(taskQueue, new RecordingTask(log, "a"));
+        app.enqueueTask(taskQueue, new RecordingTask(log, "b"));
+        app.enqueueTask(taskQueue, new RecordingTask(log, "c"));
+        app.processQueuedTasks();
+        assertEquals("[a, b]", log.toString());
+        assertEquals(1, app.getTaskQueueMetrics(taskQueue).getDroppedCount());
+        app.removeTaskQueue(taskQueue);
+    }
+    
+    /**
+     * Test that coalescable tasks concurrently enqueued in a full queue which discards enqueued tasks are all
+     * dropped, rather than merged with (and lost along with) a rejected task.
+     */
+    public void testDropNewestCoalescingConcurrent() 
+    throws InterruptedException {
+        final TaskQueueHandle taskQueue = app.createTaskQueue(1, ApplicationInstance.TASK_QUEUE_OVERFLOW_DROP_NEWEST);
+        app.enqueueTask(taskQueue, new RecordingTask(log, "a"));
+        
+        final int taskCount = 10000;
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; ++i) {
+            final String name = "x" + i;
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < taskCount; ++j) {
+                        app.enqueueTask(taskQueue, new CoalescableRecordingTask(log, name, "x"));
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; ++i) {
+            threads[i].join();
+        }
+        
+        TaskQueueMetrics metrics = app.getTaskQueueMetrics(taskQueue);
+        assertEquals(0, metrics.getCoalescedCount());
+        assertEquals(threads.length * taskCount, metrics.getDroppedCount());
+        assertEquals(1, metrics.getDepth());
+        app.processQueuedTasks();
+        assertEquals("[a]", log.toString());
+        
+        // Once the queue has room, a coalescable task is accepted.
+        app.enqueueTask(taskQueue, new CoalescableRecordingTask(log, "x", "x"));
+        app.processQueuedTasks();
+        assertEquals("[a, x]", log.toString());
+        app.removeTaskQueue(taskQueue);
+    }
+    
+    /**
+     * Test replacement of pending tasks by <code>CoalescableTask</code>s with the same key.
+     */
+    public void testCoalescing() {
+        TaskQueueHandle taskQueue = app.createTaskQueue();
+        app.enqueueTask(taskQueue, new CoalescableRecordingTask(log, "x1", "x"));
+        app.enqueueTask(taskQueue, new CoalescableRecordingTask(log, "y1", "y"));
+        app.enqueueTask(taskQueue, new RecordingTask(log, "a"));
+        app.enqueueTask(taskQueue, new CoalescableRecordingTask(log, "x2", "x"));
+        app.processQueuedTasks();
+        assertEquals("[x2, y1, a]", log.toString());
+        assertEquals(1, app.getTaskQueueMetrics(taskQueue).getCoalescedCount());
+        
+        // Processed tasks are not replaced.
+        log.clear();
+        app.enqueueTask(taskQueue, new CoalescableRecordingTask(log, "x3", "x"));
+        app.processQueuedTasks();
+        assertEquals("[x3]", log.toString());
+        app.removeTaskQueue(taskQueue);
+    }
+    
+    /**
+     * Test that queues are processed round-robin.
+     */
+    public void testFairness() {
+        TaskQueueHandle taskQueue1 = app.createTaskQueue();
+        TaskQueueHandle taskQueue2 = app.createTaskQueue();
+        for (int i = 0; i < 3; ++i) {
+            app.enqueueTask(taskQueue1, new RecordingTask(log, "1"));
+        }
+        app.enqueueTask(taskQueue2, new RecordingTask(log, "2"));
+        app.processQueuedTasks();
+        assertEquals(4, log.size());
+        assertTrue(log.indexOf("2") <= 1);
+        app.removeTaskQueue(taskQueue1);
+        app.removeTaskQueue(taskQueue2);
+    }
+    
+    /**
+     * Test that tasks enqueued while processing are left for the next synchronization.
+     */
+    public void testEnqueueWhileProcessing() {
+        final TaskQueueHandle taskQueue = app.createTaskQueue();
+        app.enqueueTask(taskQueue, new Runnable() {
+            public void run() {
+                app.enqueueTask(taskQueue, new RecordingTask(log, "b"));
+                log.add("a");
+            }
+        });
+        app.processQueuedTasks();
+        assertEquals("[a]", log.toString());
+        assertTrue(app.hasQueuedTasks());
+        app.processQueuedTasks();
+        assertEquals("[a, b]", log.toString());
+        assertFalse(app.hasQueuedTasks());
+        app.removeTaskQueue(taskQueue);
+    }
+    
+    /**
+     * Test that processing stops once the time limit is exceeded.
+     */
+    public void testTimeLimit() {
+        TaskQueueHandle taskQueue = app.createTaskQueue();
+        app.setQueuedTaskTimeLimit(1);
+        for (int i = 0; i < 3; ++i) {
+            app.enqueueTask(taskQueue, new Runnable() {
+                public void run() {
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException ex) { }
+                    log.add("a");
+                }
+            });
+        }
+        app.processQueuedTasks();
+        assertEquals(1, log.size());
+        assertEquals(2, app.getTaskQueueMetrics(taskQueue).getDepth());
+        
+        app.setQueuedTaskTimeLimit(0);
+        app.processQueuedTasks();
+        assertEquals(3, log.size());
+        app.removeTaskQueue(taskQueue);
+    }
+    
+    /**
+     * Test cancellation of pending tasks.
+     */
+    public void testCancel() {
+        TaskQueueHandle taskQueue = app.createTaskQueue();
+        app.enqueueTask(taskQueue, new RecordingTask(log, "a"));
+        app.enqueueTask(taskQueue, new CoalescableRecordingTask(log, "x1", "x"));
+        app.cancelQueuedTasks(taskQueue);
+        assertFalse(app.hasQueuedTasks());
+        
+        // Queue remains active.
+        app.enqueueTask(taskQueue, new CoalescableRecordingTask(log, "x2", "x"));
+        app.processQueuedTasks();
+        assertEquals("[x2]", log.toString());
+        assertEquals(2, app.getTaskQueueMetrics(taskQueue).getDroppedCount());
+        app.removeTaskQueue(taskQueue);
+    }
+}
@@ -0,0 +1,105 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.app.test;
+
+import nextapp.echo.app.ApplicationInstance;
+import nextapp.echo.app.Column;
+import nextapp.echo.app.Component;
+import nextapp.echo.app.Label;
+import nextapp.echo.app.Row;
+import nextapp.echo.app.update.ServerComponentUpdate;
+import nextapp.echo.app.update.UpdateManager;
+
+/**
+ * Measures the cost of update tracking for a mass rebuild of a large list within a single transaction.
+ * A <code>Column</code> contains rows (each a <code>Row</code> containing two <code>Label</code>s).  Each rebuild
+ * first updates the text of every row, as a data refresh would, then clears the <code>Column</code> and refills it
+ * with new rows, populating each row after it has been added.
+ * Invoke <code>main()</code> with optional iteration and row counts as arguments.
+ */
+public class UpdateManagerBenchmark {
+    
+    /**
+     * Adds rows to the column.
+     */
+    private static void fill(Column column, int rowCount) {
+        for (int i = 0; i < rowCount; ++i) {
+            Row row = new Row();
+            column.add(row);
+            row.add(new Label("Name " + i));
+            row.add(new Label("Value " + i));
+        }
+    }
+    
+    /**
+     * Performs a rebuild and returns the number of resulting component updates.
+     */
+    private static int rebuild(Column column, UpdateManager manager, int rowCount) {
+        Component[] rows = column.getComponents();
+        for (int i = 0; i < rows.length; ++i) {
+            ((Label) rows[i].getComponent(1)).setText("Updated " + i);
+        }
+        column.removeAll();
+        fill(column, rowCount);
+        ServerComponentUpdate[] updates = manager.getServerUpdateManager().getComponentUpdates();
+        manager.purge();
+        return updates.length;
+    }
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int rowCount = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        
+        ColumnApp app = new ColumnApp();
+        ApplicationInstance.setActive(app);
+        app.doInit();
+        UpdateManager manager = app.getUpdateManager();
+        Column column = new Column();
+        app.getColumn().add(column);
+        fill(column, rowCount);
+        manager.purge();
+        
+        // Warm up.
+        for (int i = 0; i < iterations; ++i) {
+            rebuild(column, manager, rowCount);
+        }
+        
+        long startTime = System.nanoTime();
+        for (int i = 0; i < iterations; ++i) {
+            if (rebuild(column, manager, rowCount) != 1) {
+                throw new IllegalStateException("Unexpected component updates.");
+            }
+        }
+        long elapsed = System.nanoTime() - startTime;
+        
+        ApplicationInstance.setActive(null);
+        System.out.println(rowCount + " rows: " + (elapsed / iterations / 1000000.0) + "ms per rebuild");
+    }
+}
@@ -401,6 +401,30 @@ public class UpdateManagerTest extends TestCase  {
         assertTrue(manager.getServerUpdateManager().getComponentUpdates().length == 0);
     }
 
+    /**
+     * Test <code>UpdateManager.purgeClientUpdates()</code> method, ensuring that processed client 
+     * updates are discarded while server updates are retained.
+     */
+    public void testPurgeClientUpdates() {
+        TextField textField = new TextField();
+        columnApp.getColumn().add(textField);
+        
+        manager.purge();
+        textField.setBackground(Color.BLUE);
+        manager.getClientUpdateManager().setComponentProperty(textField, TextField.TEXT_CHANGED_PROPERTY, "a user typed this.");
+        manager.processClientUpdates();
+        assertEquals("a user typed this.", textField.getText());
+        manager.purgeClientUpdates();
+        
+        // Application update to a previously client-updated property is no longer canceled.
+        textField.setText("a user typed this, then the application updated it.");
+        
+        ServerComponentUpdate[] componentUpdates = manager.getServerUpdateManager().getComponentUpdates();
+        assertEquals(1, componentUpdates.length);
+        assertNotNull(componentUpdates[0].getUpdatedProperty(TextField.PROPERTY_BACKGROUND));
+        assertNotNull(componentUpdates[0].getUpdatedProperty(TextField.TEXT_CHANGED_PROPERTY));
+    }
+
     /**
      * Ensure that component removes and descendant removes are properly stored.
      */
@@ -478,6 +502,73 @@ public class UpdateManagerTest extends TestCase  {
         assertTrue(removedDescendants[0].equals(label) || removedDescendants[1].equals(label));
     }
 
+    /**
+     * Ensure that updates of the descendants of a removed component are
+     * discarded (and their removed children stored as removed descendants),
+     * while updates of unrelated components are retained.
+     *
+     * -- Initial State --
+     * [ColumnApp]
+     *  * Window
+     *    * ContentPane
+     *      * Column
+     *        * Label
+     *        * Column1
+     *          * label1
+     *          * Column2
+     *            * label2
+     *
+     * -- New State --
+     * [ColumnApp]
+     *  * Window
+     *    * ContentPane
+     *      * Column
+     *        * Label [PROPERTY UPDATE]
+     *        * Column1 [REMOVED]
+     *          X label1 [REMOVED DESCENDANT]
+     *          X Column2 [REMOVED DESCENDANT]
+     *            X label2 [REMOVED DESCENDANT]
+     */
+    public void testRemove3() {
+        Column column1 = new Column();
+        Label label1 = new Label();
+        column1.add(label1);
+        Column column2 = new Column();
+        column1.add(column2);
+        Label label2 = new Label();
+        column2.add(label2);
+        columnApp.getColumn().add(column1);
+        manager.purge();
+
+        label1.setText("A");
+        column2.setBackground(Color.BLUE);
+        column2.remove(label2);
+        columnApp.getLabel().setText("B");
+        assertEquals(3, manager.getServerUpdateManager().getComponentUpdates().length);
+
+        columnApp.getColumn().remove(column1);
+
+        ServerComponentUpdate[] componentUpdates = manager.getServerUpdateManager().getComponentUpdates();
+        assertEquals(2, componentUpdates.length);
+        assertEquals(columnApp.getColumn(), componentUpdates[0].getParent());
+        assertEquals(columnApp.getLabel(), componentUpdates[1].getParent());
+
+        Component[] removedChildren = componentUpdates[0].getRemovedChildren();
+        assertEquals(1, removedChildren.length);
+        assertEquals(column1, removedChildren[0]);
+
+        List removedDescendants = Arrays.asList(componentUpdates[0].getRemovedDescendants());
+        assertEquals(3, removedDescendants.size());
+        assertTrue(removedDescendants.contains(label1));
+        assertTrue(removedDescendants.contains(column2));
+        assertTrue(removedDescendants.contains(label2));
+
+        columnApp.getContentPane().remove(columnApp.getColumn());
+        componentUpdates = manager.getServerUpdateManager().getComponentUpdates();
+        assertEquals(1, componentUpdates.length);
+        assertEquals(columnApp.getContentPane(), componentUpdates[0].getParent());
+    }
+
     /**
      * Ensure updates are returned sorted by component depth.
      */
@@ -41,7 +41,12 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+import nextapp.echo.app.event.TaskQueueEvent;
+import nextapp.echo.app.event.TaskQueueListener;
 import nextapp.echo.app.update.ServerUpdateManager;
 import nextapp.echo.app.update.UpdateManager;
 import nextapp.echo.app.util.Uid;
@@ -64,6 +69,22 @@ implements Serializable {
     public static final String STYLE_SHEET_CHANGED_PROPERTY = "styleSheet";
     public static final String WINDOWS_CHANGED_PROPERTY = "windows";
 
+    /**
+     * Task queue overflow policy: when a task is enqueued in a full queue,
+     * the oldest pending task is discarded.
+     *
+     * @see #createTaskQueue(int, int)
+     */
+    public static final int TASK_QUEUE_OVERFLOW_DROP_OLDEST = 0;
+
+    /**
+     * Task queue overflow policy: when a task is enqueued in a full queue,
+     * the enqueued task is discarded.
+     *
+     * @see #createTaskQueue(int, int)
+     */
+    public static final int TASK_QUEUE_OVERFLOW_DROP_NEWEST = 1;
+
     /**
      * A <code>ThreadLocal</code> reference to the
      * <code>ApplicationInstance</code> relevant to the current thread.
@@ -162,11 +183,23 @@ implements Serializable {
     private Map<String, Component> renderIdToComponentMap;
 
     /**
-     * Mapping between <code>TaskQueueHandle</code>s and <code>List</code>s
-     * of <code>Runnable</code> tasks.  Values may be null if a particular
-     * <code>TaskQueue</code> does not contain any tasks.
+     * Mapping between <code>TaskQueueHandle</code>s and <code>TaskQueue</code>s.
+     * Tasks are enqueued without locking the map.
+     */
+    private ConcurrentMap<TaskQueueHandle, TaskQueue> taskQueueMap;
+
+    /**
+     * The maximum time, in milliseconds, to spend processing queued tasks in
+     * a single synchronization, or 0 if unlimited.
+     */
+    private int queuedTaskTimeLimit;
+
+    /**
+     * Listeners notified when tasks are enqueued, lazily created.
+     * Volatile, as it is read without locking by threads enqueuing tasks.
+     * Not persisted, as listeners are typically bound to a specific (container) request.
      */
-    private HashMap<TaskQueueHandle, List<Runnable>> taskQueueMap;
+    private transient volatile List<TaskQueueListener> taskQueueListeners;
 
     /**
      * Fires property change events for the instance object.
@@ -190,6 +223,12 @@ implements Serializable {
      */
     private StyleSheet styleSheet;
 
+    /**
+     * Cache of styles resolved from <code>styleSheet</code>, lazily created.
+     * Not persisted, as it may be recreated.
+     */
+    private transient volatile StyleSheetCache styleSheetCache;
+
     /**
      * Collection of modal components, the last index representing the current
      * modal context.
@@ -215,7 +254,7 @@ implements Serializable {
         propertyChangeSupport = new PropertyChangeSupport(this);
         updateManager = new UpdateManager(this);
         renderIdToComponentMap = new HashMap<String, Component>();
-        taskQueueMap = new HashMap<TaskQueueHandle, List<Runnable>>();
+        taskQueueMap = new ConcurrentHashMap<TaskQueueHandle, TaskQueue>();
     }
 
     /**
@@ -236,6 +275,25 @@ implements Serializable {
         propertyChangeSupport.addPropertyChangeListener(l);
     }
 
+    /**
+     * Adds a <code>TaskQueueListener</code> to be notified when tasks are enqueued.
+     * Listeners are not persisted when the application is serialized.
+     *
+     * @param l the listener to add
+     */
+    public void addTaskQueueListener(TaskQueueListener l) {
+        List<TaskQueueListener> listeners = taskQueueListeners;
+        if (listeners == null) {
+            synchronized (taskQueueMap) {
+                if (taskQueueListeners == null) {
+                    taskQueueListeners = new CopyOnWriteArrayList<TaskQueueListener>();
+                }
+                listeners = taskQueueListeners;
+            }
+        }
+        listeners.add(l);
+    }
+
     /**
      * Creates a new task queue.  A handle object representing the created task
      * queue is returned.  The created task queue will remain active until it is
@@ -248,14 +306,54 @@ implements Serializable {
      * @see #removeTaskQueue(TaskQueueHandle)
      */
     public TaskQueueHandle createTaskQueue() {
-        TaskQueueHandle taskQueue = new TaskQueueHandle() {
+        return createTaskQueue(0, TASK_QUEUE_OVERFLOW_DROP_OLDEST);
+    }
+
+    /**
+     * Creates a new task queue which holds at most the specified number of
+     * pending tasks.  When a task is enqueued in a full queue, either the
+     * oldest pending task or the enqueued task is discarded, as specified by
+     * the overflow policy.  Bounded queues are appropriate for tasks produced
+     * by external sources which may produce many tasks while the user is
+     * idle, e.g., data feeds.  Such tasks may additionally implement
+     * <code>CoalescableTask</code> to replace superseded pending tasks.
+     * <p>
+     * As with <code>createTaskQueue()</code>, developers must take care to
+     * invoke <code>removeTaskQueue()</code> on any created task queues.
+     *
+     * @param capacity the maximum number of pending tasks, or 0 for an
+     *        unbounded queue
+     * @param overflowPolicy the overflow policy, one of the following values:
+     *        <ul>
+     *         <li><code>TASK_QUEUE_OVERFLOW_DROP_OLDEST</code></li>
+     *         <li><code>TASK_QUEUE_OVERFLOW_DROP_NEWEST</code></li>
+     *        </ul>
+     * @return a <code>TaskQueueHandler</code> representing the created task
+     *         queue
+     * @see #removeTaskQueue(TaskQueueHandle)
+     */
+    public TaskQueueHandle createTaskQueue(int capacity, int overflowPolicy) {
+        TaskQueue taskQueue = new TaskQueue(capacity, overflowPolicy);
+        TaskQueueHandle taskQueueHandle = new TaskQueueHandle() {
             /** Serial Version UID. */
             private static final long serialVersionUID = 20070101L;
         };
-        synchronized (taskQueueMap) {
-            taskQueueMap.put(taskQueue, null);
+        taskQueueMap.put(taskQueueHandle, taskQueue);
+        return taskQueueHandle;
+    }
+
+    /**
+     * Discards all pending tasks of a task queue.  The task queue remains
+     * active.
+     *
+     * @param taskQueueHandle the <code>TaskQueueHandle</code> specifying the
+     *        task queue
+     */
+    public void cancelQueuedTasks(TaskQueueHandle taskQueueHandle) {
+        TaskQueue taskQueue = taskQueueMap.get(taskQueueHandle);
+        if (taskQueue != null) {
+            taskQueue.cancel();
         }
-        return taskQueue;
     }
 
     /**
@@ -267,9 +365,7 @@ implements Serializable {
             defaultWindow.doDispose();
             defaultWindow.register(null);
         }
-        synchronized (taskQueueMap) {
-            taskQueueMap.clear();
-        }
+        taskQueueMap.clear();
     }
 
     /**
@@ -330,19 +426,39 @@ implements Serializable {
      * <b>synchronously</b> in the user interface update thread.
      * Enqueuing a task in response to an external event will result
      * in changes being pushed to the client.
+     * Registered <code>TaskQueueListener</code>s are notified in the
+     * invoking thread after the task has been enqueued.
+     * <p>
+     * This method may be invoked concurrently by any number of threads; it
+     * does not block.  If the queue is bounded and full, a task is discarded
+     * according to its overflow policy.  If the task is a
+     * <code>CoalescableTask</code> with the same key as a pending task of the
+     * queue, it replaces the pending task.
      *
      * @param taskQueue the <code>TaskQueueHandle</code> representing the
      *        queue into which this task should be placed
      * @param task the task to run on client/server synchronization
      */
     public void enqueueTask(TaskQueueHandle taskQueue, Runnable task) {
-        synchronized (taskQueueMap) {
-            List<Runnable> taskList = taskQueueMap.get(taskQueue);
-            if (taskList == null) {
-                taskList = new ArrayList<Runnable>();
-                taskQueueMap.put(taskQueue, taskList);
+        TaskQueue queue = taskQueueMap.get(taskQueue);
+        if (queue == null) {
+            // Task queue has been removed: recreate it as an unbounded queue.
+            queue = new TaskQueue(0, TASK_QUEUE_OVERFLOW_DROP_OLDEST);
+            TaskQueue existingQueue = taskQueueMap.putIfAbsent(taskQueue, queue);
+            if (existingQueue != null) {
+                queue = existingQueue;
+            }
+        }
+        if (!queue.enqueue(task)) {
+            return;
+        }
+        
+        List<TaskQueueListener> listeners = taskQueueListeners;
+        if (listeners != null && !listeners.isEmpty()) {
+            TaskQueueEvent e = new TaskQueueEvent(this, taskQueue);
+            for (TaskQueueListener l : listeners) {
+                l.taskEnqueued(e);
             }
-            taskList.add(task);
         }
     }
 
@@ -467,6 +583,17 @@ implements Serializable {
         return findCurrentModalComponent(getDefaultWindow(), visibleModalComponents);
     }
 
+    /**
+     * Returns the maximum time to spend processing queued tasks in a single
+     * synchronization.
+     *
+     * @return the time limit, in milliseconds, or 0 if unlimited
+     * @see #setQueuedTaskTimeLimit(int)
+     */
+    public int getQueuedTaskTimeLimit() {
+        return queuedTaskTimeLimit;
+    }
+
     /**
      * Retrieves the style for the specified specified class of
      * component / style name.
@@ -477,11 +604,44 @@ implements Serializable {
      *         if none exists
      */
     public Style getStyle(Class<? extends Component> componentClass, String styleName) {
+        StyleSheetCache cache = getStyleSheetCache();
+        return cache == null ? null : cache.getStyle(componentClass, styleName);
+    }
+
+    /**
+     * Determines the class of component for which the application-wide
+     * style used by the specified class of component / style name is
+     * registered, i.e., the class itself or the nearest of its superclasses
+     * for which a style with the specified name exists.
+     * <code>Component.class</code> is returned if no such style exists.
+     *
+     * @param componentClass the component <code>Class</code>
+     * @param styleName the component's specified style name
+     * @return the class for which the style is registered, or null if
+     *         no style sheet is set
+     */
+    public Class<?> getStyleClass(Class<? extends Component> componentClass, String styleName) {
+        StyleSheetCache cache = getStyleSheetCache();
+        return cache == null ? null : cache.getStyleClass(componentClass, styleName);
+    }
+
+    /**
+     * Returns a valid cache of styles resolved from the
+     * <code>StyleSheet</code>, creating it if necessary.
+     *
+     * @return the cache, or null if no <code>StyleSheet</code> is set
+     */
+    private StyleSheetCache getStyleSheetCache() {
+        StyleSheet styleSheet = this.styleSheet;
         if (styleSheet == null) {
             return null;
-        } else {
-            return styleSheet.getStyle(styleName, componentClass, true);
         }
+        StyleSheetCache cache = styleSheetCache;
+        if (cache == null || !cache.isValid(styleSheet)) {
+            cache = new StyleSheetCache(styleSheet);
+            styleSheetCache = cache;
+        }
+        return cache;
     }
 
     /**
@@ -503,6 +663,20 @@ implements Serializable {
         return updateManager;
     }
 
+    /**
+     * Returns the statistics of a task queue, e.g., the number of pending
+     * tasks and the time processed tasks waited before being run.
+     *
+     * @param taskQueueHandle the <code>TaskQueueHandle</code> specifying the
+     *        task queue
+     * @return a snapshot of the statistics, or null if the task queue does
+     *         not exist
+     */
+    public TaskQueueMetrics getTaskQueueMetrics(TaskQueueHandle taskQueueHandle) {
+        TaskQueue taskQueue = taskQueueMap.get(taskQueueHandle);
+        return taskQueue == null ? null : taskQueue.getMetrics();
+    }
+
     /**
      * Determines if this <code>ApplicationInstance</code> currently has any
      * active tasks queues, which might be monitoring external events.
@@ -528,16 +702,10 @@ implements Serializable {
      * @return true if any tasks are queued
      */
     public boolean hasQueuedTasks() {
-        if (taskQueueMap.size() == 0) {
-            return false;
-        }
-        synchronized (taskQueueMap) {
-            Iterator<List<Runnable>> it = taskQueueMap.values().iterator();
-            while (it.hasNext()) {
-                List<Runnable> taskList = it.next();
-                if (taskList != null && taskList.size() > 0) {
-                    return true;
-                }
+        Iterator<TaskQueue> it = taskQueueMap.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().size() > 0) {
+                return true;
             }
         }
         return false;
@@ -634,30 +802,51 @@ implements Serializable {
     }
 
     /**
-     * Processes all queued tasks. This method may only be invoked from within a
+     * Processes queued tasks. This method may only be invoked from within a
      * UI thread by the <code>UpdateManager</code>. Tasks are removed from queues
      * once they have been processed.
+     * <p>
+     * The tasks which are queued when processing begins are processed; tasks
+     * enqueued while processing are left for the next synchronization.
+     * Queues are processed round-robin, one task from each queue in turn, such
+     * that a queue containing many tasks does not delay the tasks of others.
+     * If a time limit is set (see <code>setQueuedTaskTimeLimit()</code>),
+     * processing stops once it is exceeded, leaving the remaining tasks queued
+     * for subsequent synchronizations.
      */
     public void processQueuedTasks() {
         if (taskQueueMap.size() == 0) {
             return;
         }
 
-        List<Runnable> currentTasks = new ArrayList<Runnable>();
-        synchronized (taskQueueMap) {
-            Iterator<List<Runnable>> taskListsIt = taskQueueMap.values().iterator();
-            while (taskListsIt.hasNext()) {
-                List<Runnable> tasks = taskListsIt.next();
-                if (tasks != null) {
-                    currentTasks.addAll(tasks);
-                    tasks.clear();
-                }
-            }
+        TaskQueue[] taskQueues = taskQueueMap.values().toArray(new TaskQueue[taskQueueMap.size()]);
+        int[] remainingTaskCounts = new int[taskQueues.length];
+        int remainingTaskCount = 0;
+        for (int i = 0; i < taskQueues.length; ++i) {
+            remainingTaskCounts[i] = taskQueues[i].size();
+            remainingTaskCount += remainingTaskCounts[i];
         }
 
-        Iterator<Runnable> it = currentTasks.iterator();
-        while (it.hasNext()) {
-            it.next().run();
+        long timeLimit = queuedTaskTimeLimit * 1000000L;
+        long startTime = timeLimit == 0 ? 0 : System.nanoTime();
+        while (remainingTaskCount > 0) {
+            for (int i = 0; i < taskQueues.length; ++i) {
+                if (remainingTaskCounts[i] == 0) {
+                    continue;
+                }
+                if (taskQueues[i].runNext()) {
+                    --remainingTaskCounts[i];
+                    --remainingTaskCount;
+                } else {
+                    // Queue has been emptied, e.g., cancelled.
+                    remainingTaskCount -= remainingTaskCounts[i];
+                    remainingTaskCounts[i] = 0;
+                    continue;
+                }
+                if (timeLimit != 0 && System.nanoTime() - startTime >= timeLimit) {
+                    return;
+                }
+            }
         }
     }
 
@@ -703,8 +892,18 @@ implements Serializable {
      * @see #createTaskQueue()
      */
     public void removeTaskQueue(TaskQueueHandle taskQueueHandle) {
-        synchronized(taskQueueMap) {
-            taskQueueMap.remove(taskQueueHandle);
+        taskQueueMap.remove(taskQueueHandle);
+    }
+
+    /**
+     * Removes a <code>TaskQueueListener</code> from being notified when tasks are enqueued.
+     *
+     * @param l the listener to remove
+     */
+    public void removeTaskQueueListener(TaskQueueListener l) {
+        List<TaskQueueListener> listeners = taskQueueListeners;
+        if (listeners != null) {
+            listeners.remove(l);
         }
     }
 
@@ -806,6 +1005,23 @@ implements Serializable {
         firePropertyChange(MODAL_COMPONENTS_CHANGED_PROPERTY, new Boolean(oldValue), new Boolean(newValue));
     }
 
+    /**
+     * Sets the maximum time to spend processing queued tasks in a single
+     * synchronization.  Tasks which are not processed within the limit remain
+     * queued and are processed by subsequent synchronizations, such that an
+     * accumulation of tasks does not delay a response to the user.  The limit
+     * is checked after each task; a long-running task is not interrupted.
+     *
+     * @param newValue the time limit, in milliseconds, or 0 for no limit (the
+     *        default)
+     */
+    public void setQueuedTaskTimeLimit(int newValue) {
+        if (newValue < 0) {
+            throw new IllegalArgumentException("Invalid time limit: " + newValue);
+        }
+        queuedTaskTimeLimit = newValue;
+    }
+
     /**
      * Sets the <code>StyleSheet</code> of this
      * <code>ApplicationInstance</code>.  <code>Component</code>s
@@ -819,13 +1035,18 @@ implements Serializable {
      * client state to be updated.  Generally style sheets should
      * only be reconfigured at application initialization and/or when
      * the user changes the visual theme of a theme-capable application.
+     * <p>
+     * Setting the current style sheet again notifies listeners that its content has been modified, 
+     * e.g., after styles of a <code>MutableStyleSheet</code> have been added, replaced, or removed.
      *
      * @param newValue the new style sheet
      */
     public void setStyleSheet(StyleSheet newValue) {
         StyleSheet oldValue = styleSheet;
         this.styleSheet = newValue;
-        firePropertyChange(STYLE_SHEET_CHANGED_PROPERTY, oldValue, newValue);
+        styleSheetCache = null;
+        // Provide null old value if the style sheet is reset, such that a property change event is fired.
+        firePropertyChange(STYLE_SHEET_CHANGED_PROPERTY, oldValue == newValue ? null : oldValue, newValue);
     }
 
     /**
@@ -289,6 +289,18 @@ implements RenderIdSupport, Serializable {
     /** Render id of next focus traversal component. */
     private String focusNextId;
 
+    /**
+     * Cached array of the visible children, in order.
+     * Lazily created, and discarded when a child is added, removed, or has its visibility changed.
+     */
+    private transient volatile Component[] visibleChildren;
+
+    /**
+     * The index of this component within the visible children of its parent.
+     * Valid only while the parent's <code>visibleChildren</code> cache exists and this component is visible.
+     */
+    private transient int visibleIndex;
+
     /**
      * Creates a new <code>Component</code>.
      */
@@ -358,6 +370,7 @@ implements RenderIdSupport, Serializable {
         } else {
             children.add(n, c);
         }
+        visibleChildren = null;
 
         // Flag child as registered.
         if (applicationInstance != null) {
@@ -966,22 +979,11 @@ implements RenderIdSupport, Serializable {
      * @throws IndexOutOfBoundsException when the index is invalid
      */
     public final Component getVisibleComponent(int n) {
-        if (children == null) {
+        Component[] visibleChildren = getVisibleChildren();
+        if (n < 0 || n >= visibleChildren.length) {
             throw new IndexOutOfBoundsException(Integer.toString(n));
         }
-        int visibleComponentCount = 0;
-        Component component = null;
-        Iterator<Component> it = children.iterator();
-        while (visibleComponentCount <= n) {
-            if (!it.hasNext()) {
-              throw new IndexOutOfBoundsException(Integer.toString(n));
-            }
-            component = (Component) it.next();
-            if (component.isVisible()) {
-                ++visibleComponentCount;
-            }
-        }
-        return component;
+        return visibleChildren[n];
     }
 
     /**
@@ -992,42 +994,59 @@ implements RenderIdSupport, Serializable {
      *         <code>Component</code>s
      */
     public final int getVisibleComponentCount() {
-        if (children == null) {
-            return 0;
-        } else {
-            int visibleComponentCount = 0;
-            Iterator<Component> it = children.iterator();
-            while (it.hasNext()) {
-                Component component = (Component) it.next();
-                if (component.isVisible()) {
-                    ++visibleComponentCount;
-                }
-            }
-            return visibleComponentCount;
-        }
+        return getVisibleChildren().length;
     }
 
     /**
      * Returns an array of all <strong>visible</strong> immediate child
      * <code>Component</code>s.
+     * <p>
+     * A new array is returned by each invocation.  Iterate using
+     * <code>getVisibleComponentCount()</code> and
+     * <code>getVisibleComponent()</code> to avoid its creation.
      *
      * @return an array of all <strong>visible</strong> immediate child
      *         <code>Component</code>s
      */
     public final Component[] getVisibleComponents() {
-        if (children == null) {
-            return EMPTY_COMPONENT_ARRAY;
-        } else {
-            Iterator<Component> it = children.iterator();
-            List<Component> visibleChildList = new ArrayList<Component>();
-            while (it.hasNext()) {
-                Component component = (Component) it.next();
-                if (component.isVisible()) {
-                    visibleChildList.add(component);
+        Component[] visibleChildren = getVisibleChildren();
+        return visibleChildren.length == 0 ? EMPTY_COMPONENT_ARRAY : (Component[]) visibleChildren.clone();
+    }
+
+    /**
+     * Returns the cached array of <strong>visible</strong> immediate child
+     * <code>Component</code>s, creating it (and recording the visible index
+     * of each visible child) if necessary.  The returned array must not be
+     * modified.
+     *
+     * @return the visible children
+     */
+    private Component[] getVisibleChildren() {
+        Component[] visibleChildren = this.visibleChildren;
+        if (visibleChildren == null) {
+            if (children == null) {
+                visibleChildren = EMPTY_COMPONENT_ARRAY;
+            } else {
+                int size = children.size();
+                int visibleCount = 0;
+                for (int i = 0; i < size; ++i) {
+                    if (((Component) children.get(i)).isVisible()) {
+                        ++visibleCount;
+                    }
+                }
+                visibleChildren = new Component[visibleCount];
+                visibleCount = 0;
+                for (int i = 0; i < size; ++i) {
+                    Component component = (Component) children.get(i);
+                    if (component.isVisible()) {
+                        component.visibleIndex = visibleCount;
+                        visibleChildren[visibleCount++] = component;
+                    }
                 }
             }
-            return (Component[]) visibleChildList.toArray(new Component[visibleChildList.size()]);
+            this.visibleChildren = visibleChildren;
         }
+        return visibleChildren;
     }
 
     /**
@@ -1302,6 +1321,7 @@ implements RenderIdSupport, Serializable {
         // Dissolve references between parent and child.
         children.remove(c);
         c.parent = null;
+        visibleChildren = null;
 
         // Notify PropertyChangeListeners of change.
         firePropertyChange(CHILDREN_CHANGED_PROPERTY, c, null);
@@ -1587,6 +1607,9 @@ implements RenderIdSupport, Serializable {
         boolean oldValue = (flags & FLAG_VISIBLE) != 0;
         if (oldValue != newValue) {
             flags ^= FLAG_VISIBLE; // Toggle FLAG_VISIBLE bit.
+            if (parent != null) {
+                parent.visibleChildren = null;
+            }
             firePropertyChange(VISIBLE_CHANGED_PROPERTY, Boolean.valueOf(oldValue), Boolean.valueOf(newValue));
             if (parent != null) {
                 parent.firePropertyChange(CHILD_VISIBLE_CHANGED_PROPERTY, newValue ? null : this, newValue ? this : null);
@@ -1639,24 +1662,10 @@ implements RenderIdSupport, Serializable {
      *         <strong>visible</strong> children of this <code>Component</code>
      */
     public final int visibleIndexOf(Component c) {
-        if (!c.isVisible()) {
-            return -1;
-        }
-        if (children == null) {
+        if (c.parent != this || !c.isVisible()) {
             return -1;
         }
-        int visibleIndex = 0;
-        Iterator<Component> it = children.iterator();
-        while (it.hasNext()) {
-            Component component = (Component) it.next();
-            if (!component.isVisible()) {
-                continue;
-            }
-            if (component.equals(c)) {
-                return visibleIndex;
-            }
-            ++visibleIndex;
-        }
-        return -1;
+        getVisibleChildren();
+        return c.visibleIndex;
     }
 }
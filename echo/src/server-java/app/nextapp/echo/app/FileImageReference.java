@@ -0,0 +1,199 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.app;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A representation of an image that will be retrieved from a file.
+ * The image may be delivered in part, and is delivered with cache validators derived from the length 
+ * and modification time of the file.
+ */
+public class FileImageReference 
+extends StreamImageReference 
+implements RandomAccessImageReference {
+
+    /** Serial Version UID. */
+    private static final long serialVersionUID = 20070101L;
+
+    /**
+     * Size of buffer used for reading image data from the file and writing
+     * it to <code>OutputStream</code>s.
+     */
+    private static final int BUFFER_SIZE = 4096;
+    
+    private File file;
+    private String contentType;
+    private Extent width, height;
+    private String id;
+    
+    /**
+     * Creates a <code>FileImageReference</code>.
+     *
+     * @param file the file containing the binary image data
+     * @param contentType the content type of the image
+     */
+    public FileImageReference(File file, String contentType) {
+        this(file, contentType, null, null);
+    }
+    
+    /**
+     * Creates a <code>FileImageReference</code>.
+     *
+     * @param file the file containing the binary image data
+     * @param contentType the content type of the image
+     * @param width the width of the image
+     * @param height the height of the image
+     */
+    public FileImageReference(File file, String contentType, Extent width, Extent height) {
+        super();
+        this.file = file;
+        this.contentType = contentType;
+        this.width = width;
+        this.height = height;
+        id = ApplicationInstance.generateSystemId();
+    }
+
+    /**
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    public boolean equals(Object o) {
+        if (!(o instanceof FileImageReference)) {
+            return false;
+        }
+        FileImageReference that = (FileImageReference) o;
+        if (!this.file.equals(that.file)) {
+            return false;
+        }
+        if (!(this.contentType == that.contentType || (this.contentType != null && this.contentType.equals(that.contentType)))) {
+            return false;
+        }
+        if (!(this.width == that.width || (this.width != null && this.width.equals(that.width)))) {
+            return false;
+        }
+        if (!(this.height == that.height || (this.height != null && this.height.equals(that.height)))) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @see nextapp.echo.app.RandomAccessImageReference#getContentLength()
+     */
+    public long getContentLength() {
+        return file.isFile() ? file.length() : -1;
+    }
+    
+    /**
+     * Returns a tag derived from the length and modification time of the file.
+     * 
+     * @see nextapp.echo.app.RandomAccessImageReference#getContentTag()
+     */
+    public String getContentTag() {
+        long lastModified = file.lastModified();
+        return lastModified == 0 ? null : Long.toHexString(file.length()) + "-" + Long.toHexString(lastModified);
+    }
+    
+    /**
+     * @see nextapp.echo.app.StreamImageReference#getContentType()
+     */
+    public String getContentType() {
+        return contentType;
+    }
+    
+    /**
+     * @see nextapp.echo.app.RandomAccessImageReference#getFile()
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @see nextapp.echo.app.ImageReference#getHeight()
+     */
+    public Extent getHeight() {
+        return height;
+    }
+    
+    /**
+     * @see nextapp.echo.app.RandomAccessImageReference#getLastModified()
+     */
+    public long getLastModified() {
+        long lastModified = file.lastModified();
+        return lastModified == 0 ? -1 : lastModified;
+    }
+
+    /**
+     * @see nextapp.echo.app.RenderIdSupport#getRenderId()
+     */
+    public String getRenderId() {
+        return id;
+    }
+
+    /**
+     * @see nextapp.echo.app.ImageReference#getWidth()
+     */
+    public Extent getWidth() {
+        return width;
+    }
+
+    /**
+     * @see java.lang.Object#hashCode()
+     */
+    public int hashCode() {
+        return file.hashCode();
+    }
+
+    /**
+     * @see nextapp.echo.app.StreamImageReference#render(java.io.OutputStream)
+     */
+    public void render(OutputStream out)
+    throws IOException {
+        InputStream in = null;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int bytesRead = 0;
+
+        try {
+            in = new FileInputStream(file);
+            do {
+                bytesRead = in.read(buffer);
+                if (bytesRead > 0) {
+                    out.write(buffer, 0, bytesRead);
+                }
+            } while (bytesRead > 0);
+        } finally {
+            if (in != null) { try { in.close(); } catch (IOException ex) { } }
+        }
+    }
+}
@@ -30,9 +30,10 @@
 package nextapp.echo.app;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * A <code>Style</code> implementation which may be modified.
@@ -42,6 +43,15 @@ import java.util.TreeMap;
  * i.e., by resetting the shared style of a <code>Component</code>.
  * As such, shared <code>Style</code>s  should not be updated once they are 
  * in use by <code>Component</code>s, as it will result in undefined behavior.
+ * <p>
+ * Properties are stored as name/value pairs in an array, in the order in which
+ * they were set.  Property names are replaced by canonical (interned) instances
+ * when stored, such that lookups using the property name constants of 
+ * components succeed on an identity comparison, even for names which were 
+ * created at runtime, e.g., by parsing a style sheet.  Styles containing more than 
+ * <code>HASH_INDEX_THRESHOLD</code> properties additionally maintain an 
+ * open-addressing hash index of the pairs, such that lookups need not scan
+ * the array.
  */
 public class MutableStyle 
 implements Style {
@@ -51,8 +61,50 @@ implements Style {
 
     private static final int GROW_RATE = 5 * 2;  // Must be a multiple of 2.
     
+    /** Number of properties above which a hash index is maintained. */
+    private static final int HASH_INDEX_THRESHOLD = 8;
+    
     private static final Object[] EMPTY = new Object[0];
     
+    private static final int[] EMPTY_INDICES = new int[0];
+    
+    /** Maximum number of property names retained by the canonical name registry. */
+    private static final int MAX_REGISTERED_NAMES = 4096;
+    
+    /** Registry of canonical property name instances, keyed by themselves. */
+    private static final ConcurrentMap registeredNames = new ConcurrentHashMap();
+    
+    /**
+     * Returns the canonical instance of a property name, i.e., the interned
+     * <code>String</code>.  Once the registry is full, names which are not
+     * registered are returned as provided.
+     * 
+     * @param propertyName the property name
+     * @return the canonical instance
+     */
+    private static String getCanonicalName(String propertyName) {
+        String canonicalName = (String) registeredNames.get(propertyName);
+        if (canonicalName == null) {
+            if (registeredNames.size() >= MAX_REGISTERED_NAMES) {
+                return propertyName;
+            }
+            canonicalName = propertyName.intern();
+            registeredNames.putIfAbsent(canonicalName, canonicalName);
+        }
+        return canonicalName;
+    }
+    
+    /**
+     * Returns the hash index slot in which a search for a property name should begin.
+     * 
+     * @param propertyNameHashCode the hash code of the property name
+     * @param mask the hash index length minus one
+     * @return the slot
+     */
+    private static int getInitialSlot(int propertyNameHashCode, int mask) {
+        return (propertyNameHashCode ^ (propertyNameHashCode >>> 16)) & mask;
+    }
+    
     /**
      * An <code>Iterator</code> which returns the names of properties which
      * are set in the style.
@@ -88,11 +140,20 @@ implements Style {
     
     /**
      * A value object which stores the indexed values of a property. 
+     * Values are stored in arrays ordered by index, such that values are 
+     * retrieved by binary search of primitive indices.
      */
     public class IndexedPropertyValue
     implements Serializable {
 
-        private SortedMap indicesToValues;
+        /** The set indices, in ascending order (only the first <code>size</code> elements are used). */
+        private int[] indices = EMPTY_INDICES;
+        
+        /** The values, in the order of <code>indices</code>. */
+        private Object[] values = EMPTY;
+        
+        /** The number of set values. */
+        private int size = 0;
         
         /**
          * Returns the value at the specified index.
@@ -101,11 +162,8 @@ implements Style {
          * @return the value
          */
         public Object getValue(int index) {
-            if (indicesToValues == null) {
-                return null;
-            } else {
-                return indicesToValues.get(new Integer(index));
-            }
+            int position = Arrays.binarySearch(indices, 0, size, index);
+            return position < 0 ? null : values[position];
         }
         
         /**
@@ -115,7 +173,33 @@ implements Style {
          * @return an iterator over the indices
          */
         public Iterator getIndices() {
-            return indicesToValues.keySet().iterator();
+            final int[] indices = this.indices;
+            final int size = this.size;
+            return new Iterator() {
+                
+                private int position = 0;
+
+                /**
+                 * @see java.util.Iterator#hasNext()
+                 */
+                public boolean hasNext() {
+                    return position < size;
+                }
+                
+                /**
+                 * @see java.util.Iterator#next()
+                 */
+                public Object next() {
+                    return Integer.valueOf(indices[position++]);
+                }
+
+                /**
+                 * @see java.util.Iterator#remove()
+                 */
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+            };
         }
         
         /**
@@ -125,7 +209,7 @@ implements Style {
          * @return true if a value is set
          */
         public boolean hasValue(int index) {
-            return indicesToValues != null && indicesToValues.containsKey(new Integer(index));
+            return Arrays.binarySearch(indices, 0, size, index) >= 0;
         }
         
         /**
@@ -134,12 +218,14 @@ implements Style {
          * @param index the index
          */
         private void removeValue(int index) {
-            if (indicesToValues != null) {
-                indicesToValues.remove(new Integer(index));
-                if (indicesToValues.size() == 0) {
-                    indicesToValues = null;
-                }
+            int position = Arrays.binarySearch(indices, 0, size, index);
+            if (position < 0) {
+                return;
             }
+            --size;
+            System.arraycopy(indices, position + 1, indices, position, size - position);
+            System.arraycopy(values, position + 1, values, position, size - position);
+            values[size] = null;
         }
         
         /**
@@ -149,15 +235,40 @@ implements Style {
          * @param value the new property value
          */
         private void setValue(int index, Object value) {
-            if (indicesToValues == null) {
-                indicesToValues = new TreeMap();
-            } 
-            indicesToValues.put(new Integer(index), value);
+            int position = Arrays.binarySearch(indices, 0, size, index);
+            if (position >= 0) {
+                values[position] = value;
+                return;
+            }
+            position = -position - 1;
+            if (size == indices.length) {
+                int capacity = size == 0 ? 4 : size * 2;
+                int[] newIndices = new int[capacity];
+                Object[] newValues = new Object[capacity];
+                System.arraycopy(indices, 0, newIndices, 0, size);
+                System.arraycopy(values, 0, newValues, 0, size);
+                indices = newIndices;
+                values = newValues;
+            }
+            System.arraycopy(indices, position, indices, position + 1, size - position);
+            System.arraycopy(values, position, values, position + 1, size - position);
+            indices[position] = index;
+            values[position] = value;
+            ++size;
         }
     }
     
     private Object[] data = EMPTY;
     int length = 0; // Number of items * 2;
+    private int modificationCount = 0;
+    
+    /**
+     * Open-addressing (linear probing) hash index of the properties, or null if the style contains no more than 
+     * <code>HASH_INDEX_THRESHOLD</code> properties.  Each non-zero element is one more than the position of a 
+     * property name within <code>data</code>, divided by two.  The length is a power of two, and at least twice
+     * the number of properties.
+     */
+    private int[] hashIndex;
 
     /**
      * Default constructor.
@@ -234,6 +345,17 @@ implements Style {
         return ((IndexedPropertyValue) value).getIndices();
     }
     
+    /**
+     * Returns the number of modifications which have been made to the style.
+     * The value may be compared with one retrieved previously to determine whether the style has since
+     * been modified.
+     * 
+     * @return the modification count
+     */
+    public int getModificationCount() {
+        return modificationCount;
+    }
+    
     /**
      * @see nextapp.echo.app.Style#getPropertyNames()
      */
@@ -256,13 +378,7 @@ implements Style {
      * @see nextapp.echo.app.Style#isPropertySet(java.lang.String)
      */
     public boolean isPropertySet(String propertyName) {
-        int propertyNameHashCode = propertyName.hashCode();
-        for (int i = 0; i < length; i += 2) {
-            if (propertyNameHashCode == data[i].hashCode() && propertyName.equals(data[i])) {
-                return true;
-            }
-        }
-        return false;
+        return findProperty(propertyName) != -1;
     }
     
     /**
@@ -277,6 +393,66 @@ implements Style {
             return;
         }
         ((IndexedPropertyValue) value).removeValue(propertyIndex);
+        ++modificationCount;
+    }
+    
+    /**
+     * Creates the hash index, sized for the current number of properties.
+     */
+    private void createHashIndex() {
+        int capacity = 4 * HASH_INDEX_THRESHOLD;
+        while (capacity < length) {
+            capacity *= 2;
+        }
+        hashIndex = new int[capacity];
+        for (int i = 0; i < length; i += 2) {
+            indexProperty(i);
+        }
+    }
+    
+    /**
+     * Returns the position of a property name within <code>data</code>.
+     * 
+     * @param propertyName the name of the property
+     * @return the position, or -1 if the property is not set
+     */
+    private int findProperty(String propertyName) {
+        int propertyNameHashCode = propertyName.hashCode();
+        if (hashIndex == null) {
+            for (int i = 0; i < length; i += 2) {
+                Object name = data[i];
+                if (name == propertyName || (propertyNameHashCode == name.hashCode() && propertyName.equals(name))) {
+                    return i;
+                }
+            }
+        } else {
+            int mask = hashIndex.length - 1;
+            int slot = getInitialSlot(propertyNameHashCode, mask);
+            int entry;
+            while ((entry = hashIndex[slot]) != 0) {
+                int i = (entry - 1) * 2;
+                Object name = data[i];
+                if (name == propertyName || (propertyNameHashCode == name.hashCode() && propertyName.equals(name))) {
+                    return i;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Adds the property at the specified position of <code>data</code> to the hash index.
+     * 
+     * @param position the position of the property name
+     */
+    private void indexProperty(int position) {
+        int mask = hashIndex.length - 1;
+        int slot = getInitialSlot(data[position].hashCode(), mask);
+        while (hashIndex[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        hashIndex[slot] = position / 2 + 1;
     }
     
     /**
@@ -285,15 +461,26 @@ implements Style {
      * @param propertyName the name of the property to remove
      */
     public void removeProperty(String propertyName) {
-        int propertyNameHashCode = propertyName.hashCode();
-        for (int i = 0; i < length; i += 2) {
-            if (propertyNameHashCode == data[i].hashCode() && propertyName.equals(data[i])) {
-                data[i] = data[length - 2];
-                data[i + 1] = data[length - 1];
-                data[length - 2] = null;
-                data[length - 1] = null;
-                length -= 2;
-                break;
+        int i = findProperty(propertyName);
+        if (i != -1) {
+            // Move last property into the place of the removed property.
+            data[i] = data[length - 2];
+            data[i + 1] = data[length - 1];
+            data[length - 2] = null;
+            data[length - 1] = null;
+            length -= 2;
+            ++modificationCount;
+            
+            if (hashIndex != null) {
+                // Rebuild the hash index (or discard it if the style has become small).
+                if (length / 2 <= HASH_INDEX_THRESHOLD / 2) {
+                    hashIndex = null;
+                } else {
+                    Arrays.fill(hashIndex, 0);
+                    for (int j = 0; j < length; j += 2) {
+                        indexProperty(j);
+                    }
+                }
             }
         }
         
@@ -309,13 +496,8 @@ implements Style {
      * @return the value of the property
      */
     private Object retrieveProperty(String propertyName) {
-        int propertyNameHashCode = propertyName.hashCode();
-        for (int i = 0; i < length; i += 2) {
-            if (propertyNameHashCode == data[i].hashCode() && propertyName.equals(data[i])) {
-                return data[i + 1];
-            }
-        }
-        return null;
+        int i = findProperty(propertyName);
+        return i == -1 ? null : data[i + 1];
     }
     
     /**
@@ -332,35 +514,36 @@ implements Style {
             return;
         }
         
-        if (data == EMPTY) {
-            data = new Object[GROW_RATE];
-        }
-
-        int propertyNameHashCode = propertyName.hashCode();
-        for (int i = 0; i < data.length; i += 2) {
-            if (data[i] == null) {
-                // Property is not set, space remains to set property.
-                // Add property at end.
-                data[i] = propertyName;
-                data[i + 1] = propertyValue;
-                length += 2;
-                return;
-            }
-            if (propertyNameHashCode == data[i].hashCode() && propertyName.equals(data[i])) {
-                // Found property, overwrite.
-                data[i + 1] = propertyValue;
-                return;
-            }
+        ++modificationCount;
+        
+        int i = findProperty(propertyName);
+        if (i != -1) {
+            // Found property, overwrite.
+            data[i + 1] = propertyValue;
+            return;
         }
         
-        // Array is full: grow array.
-        Object[] newData = new Object[data.length + GROW_RATE];
-        System.arraycopy(data, 0, newData, 0, data.length);
+        if (length == data.length) {
+            // Array is full: grow array.
+            Object[] newData = new Object[data.length < GROW_RATE ? GROW_RATE : data.length * 2];
+            System.arraycopy(data, 0, newData, 0, length);
+            data = newData;
+        }
         
-        newData[data.length] = propertyName;
-        newData[data.length + 1] = propertyValue;
+        // Add property at end.
+        data[length] = getCanonicalName(propertyName);
+        data[length + 1] = propertyValue;
         length += 2;
-        data = newData;
+        
+        if (hashIndex != null) {
+            if (length > hashIndex.length) {
+                createHashIndex();
+            } else {
+                indexProperty(length - 2);
+            }
+        } else if (length / 2 > HASH_INDEX_THRESHOLD) {
+            createHashIndex();
+        }
     }
     
     /**
@@ -377,6 +560,7 @@ implements Style {
             set(propertyName, value);
         }
         ((IndexedPropertyValue) value).setValue(propertyIndex, propertyValue);
+        ++modificationCount;
     }
     
     /**
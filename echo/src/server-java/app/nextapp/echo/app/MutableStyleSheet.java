@@ -29,22 +29,60 @@
 
 package nextapp.echo.app;
 
+import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 /**
  * A mutable implementation of a <code>StyleSheet</code>. 
+ * <p>
+ * Changes to the style sheet are tracked, such that the styles which have been added, replaced, or removed since a
+ * previous state of the style sheet may be determined (see <code>getModificationCount()</code> and
+ * <code>getChangedStyleNames()</code>).  Modifications made to contained <code>MutableStyle</code>s are tracked
+ * as well.
  */
 public class MutableStyleSheet 
 implements StyleSheet {
 
     /** Serial Version UID. */
     private static final long serialVersionUID = 20070101L;
+    
+    /**
+     * Record of the most recent change to the style of a specific style name and component class.
+     */
+    private static class StyleChange 
+    implements Serializable {
+        
+        /** Serial Version UID. */
+        private static final long serialVersionUID = 20070101L;
+
+        /** The modification count of the style sheet following the change. */
+        int modificationCount;
+        
+        /** The modification count of the (<code>MutableStyle</code>) style following the change. */
+        int styleModificationCount;
+    }
 
     private Map namedStyleMap = new HashMap();
     private Map defaultStyleMap = new HashMap();
+    
+    /** 
+     * Mapping between style names (null for the default style) and maps between component classes and 
+     * <code>StyleChange</code>s. 
+     */
+    private Map changeMap = new HashMap();
+    
+    private int modificationCount = 0;
+    
+    /**
+     * The number of times a style has been added, replaced, or removed.  Unlike <code>modificationCount</code>, 
+     * this count is not affected by modifications to contained <code>MutableStyle</code>s.
+     */
+    private int structureModificationCount = 0;
 
     /**
      * Adds a <code>Style</code> to the <code>StyleSheet</code>.
@@ -65,6 +103,7 @@ implements StyleSheet {
             }
             styleMap.put(componentClass, style);
         }
+        recordChange(styleName, componentClass, style);
     }
     
     /**
@@ -75,8 +114,82 @@ implements StyleSheet {
      * @param styleSheet the <code>StyleSheet</code> to add
      */
     public void addStyleSheet(MutableStyleSheet styleSheet) {
+        // Record removal of styles from named style maps which will be replaced.
+        Iterator styleNameIt = styleSheet.namedStyleMap.keySet().iterator();
+        while (styleNameIt.hasNext()) {
+            String styleName = (String) styleNameIt.next();
+            Map styleMap = (Map) namedStyleMap.get(styleName);
+            if (styleMap != null) {
+                Iterator componentClassIt = styleMap.keySet().iterator();
+                while (componentClassIt.hasNext()) {
+                    recordChange(styleName, (Class) componentClassIt.next(), null);
+                }
+            }
+        }
+        
         namedStyleMap.putAll(styleSheet.namedStyleMap);
         defaultStyleMap.putAll(styleSheet.defaultStyleMap);
+        
+        // Record addition of styles.
+        styleNameIt = styleSheet.getStyleNames();
+        while (styleNameIt.hasNext()) {
+            String styleName = (String) styleNameIt.next();
+            Iterator componentClassIt = styleSheet.getComponentTypes(styleName);
+            while (componentClassIt.hasNext()) {
+                Class componentClass = (Class) componentClassIt.next();
+                recordChange(styleName, componentClass, getStyle(styleName, componentClass, false));
+            }
+        }
+    }
+    
+    /**
+     * Returns the component types for which the style of the specified name has been added, replaced, or removed
+     * since the style sheet had the specified modification count.  The current styles may be retrieved using
+     * <code>getStyle(styleName, componentClass, false)</code>, which returns null for removed styles.
+     * 
+     * @param styleName the style name
+     * @param modificationCount the modification count, as previously returned by <code>getModificationCount()</code>
+     * @return an iterator containing the <code>Class</code>es of the changed component types
+     */
+    public Iterator getChangedComponentTypes(String styleName, int modificationCount) {
+        updateStyleModifications();
+        List componentTypes = new ArrayList();
+        Map classToChangeMap = (Map) changeMap.get(styleName);
+        if (classToChangeMap != null) {
+            Iterator it = classToChangeMap.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry entry = (Map.Entry) it.next();
+                if (((StyleChange) entry.getValue()).modificationCount > modificationCount) {
+                    componentTypes.add(entry.getKey());
+                }
+            }
+        }
+        return Collections.unmodifiableList(componentTypes).iterator();
+    }
+    
+    /**
+     * Returns the names of styles for which styles have been added, replaced, or removed since the style sheet 
+     * had the specified modification count.
+     * 
+     * @param modificationCount the modification count, as previously returned by <code>getModificationCount()</code>
+     * @return an iterator containing the names (null for the default style) of the changed styles
+     * @see #getChangedComponentTypes(String, int)
+     */
+    public Iterator getChangedStyleNames(int modificationCount) {
+        updateStyleModifications();
+        List styleNames = new ArrayList();
+        Iterator it = changeMap.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry entry = (Map.Entry) it.next();
+            Iterator changeIt = ((Map) entry.getValue()).values().iterator();
+            while (changeIt.hasNext()) {
+                if (((StyleChange) changeIt.next()).modificationCount > modificationCount) {
+                    styleNames.add(entry.getKey());
+                    break;
+                }
+            }
+        }
+        return Collections.unmodifiableList(styleNames).iterator();
     }
     
     /**
@@ -91,6 +204,30 @@ implements StyleSheet {
         }
     }
 
+    /**
+     * Returns the modification count of the style sheet, which is incremented whenever a style is added, replaced,
+     * or removed, or a contained <code>MutableStyle</code> is modified.  The value may be provided to
+     * <code>getChangedStyleNames()</code> to later determine which styles have changed.
+     * 
+     * @return the modification count
+     */
+    public int getModificationCount() {
+        updateStyleModifications();
+        return modificationCount;
+    }
+    
+    /**
+     * Returns the number of times a style has been added, replaced, or removed.
+     * The value changes whenever the <code>Style</code> returned by <code>getStyle()</code> for a given style name
+     * and component class might change, and may be queried cheaply (modifications to contained 
+     * <code>MutableStyle</code>s are not considered).
+     * 
+     * @return the structure modification count
+     */
+    int getStructureModificationCount() {
+        return structureModificationCount;
+    }
+    
     /**
      * @see nextapp.echo.app.StyleSheet#getStyle(java.lang.String, java.lang.Class, boolean)
      */
@@ -162,4 +299,77 @@ implements StyleSheet {
             }        
         };
     }
+    
+    /**
+     * Records a change to the style of a specific style name and component class.
+     * 
+     * @param styleName the style name
+     * @param componentClass the component class
+     * @param style the new style, or null if the style was removed
+     */
+    private void recordChange(String styleName, Class componentClass, Style style) {
+        Map classToChangeMap = (Map) changeMap.get(styleName);
+        if (classToChangeMap == null) {
+            classToChangeMap = new HashMap();
+            changeMap.put(styleName, classToChangeMap);
+        }
+        StyleChange change = (StyleChange) classToChangeMap.get(componentClass);
+        if (change == null) {
+            change = new StyleChange();
+            classToChangeMap.put(componentClass, change);
+        }
+        change.modificationCount = ++modificationCount;
+        ++structureModificationCount;
+        change.styleModificationCount = style instanceof MutableStyle ? ((MutableStyle) style).getModificationCount() : 0;
+    }
+    
+    /**
+     * Removes a <code>Style</code> from the <code>StyleSheet</code>.
+     * 
+     * @param componentClass the <code>Class</code> of the 
+     *        <code>Component</code> for which the style was to be used
+     * @param styleName the name of the style
+     */
+    public void removeStyle(Class componentClass, String styleName) {
+        if (styleName == null) {
+            if (defaultStyleMap.remove(componentClass) == null) {
+                return;
+            }
+        } else {
+            Map styleMap = (Map) namedStyleMap.get(styleName);
+            if (styleMap == null || styleMap.remove(componentClass) == null) {
+                return;
+            }
+            if (styleMap.isEmpty()) {
+                namedStyleMap.remove(styleName);
+            }
+        }
+        recordChange(styleName, componentClass, null);
+    }
+    
+    /**
+     * Records changes for contained <code>MutableStyle</code>s which have been modified since their changes 
+     * were last recorded.
+     */
+    private void updateStyleModifications() {
+        Iterator it = changeMap.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry entry = (Map.Entry) it.next();
+            String styleName = (String) entry.getKey();
+            Iterator changeIt = ((Map) entry.getValue()).entrySet().iterator();
+            while (changeIt.hasNext()) {
+                Map.Entry changeEntry = (Map.Entry) changeIt.next();
+                Style style = getStyle(styleName, (Class) changeEntry.getKey(), false);
+                if (!(style instanceof MutableStyle)) {
+                    continue;
+                }
+                StyleChange change = (StyleChange) changeEntry.getValue();
+                int styleModificationCount = ((MutableStyle) style).getModificationCount();
+                if (change.styleModificationCount != styleModificationCount) {
+                    change.modificationCount = ++modificationCount;
+                    change.styleModificationCount = styleModificationCount;
+                }
+            }
+        }
+    }
 }
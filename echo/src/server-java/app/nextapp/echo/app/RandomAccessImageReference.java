@@ -0,0 +1,71 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.app;
+
+import java.io.File;
+
+/**
+ * An optional extension of the <code>StreamImageReference</code> contract, which provides information about 
+ * the image content such that it may be delivered with a known length, in part (i.e., to resume an interrupted
+ * transfer), and with cache validators.  Implementations must extend <code>StreamImageReference</code>.
+ */
+public interface RandomAccessImageReference {
+    
+    /**
+     * Returns the length of the image data, in bytes.
+     * 
+     * @return the length, or -1 if the length is not known (in which case the image is always delivered in full)
+     */
+    public long getContentLength();
+    
+    /**
+     * Returns a tag identifying the current image data, i.e., which changes whenever the data changes, 
+     * such that it may be used as a strong entity tag.
+     * 
+     * @return the content tag, or null if the image data may not be identified
+     */
+    public String getContentTag();
+    
+    /**
+     * Returns the file containing the image data, if the image is backed by a file.
+     * The image data may then be transferred directly from the file, rather than by invoking 
+     * <code>StreamImageReference.render()</code>.
+     * 
+     * @return the file, or null if the image is not backed by a file
+     */
+    public File getFile();
+    
+    /**
+     * Returns the time at which the image data was last modified.
+     * 
+     * @return the time, in milliseconds since the epoch, or -1 if not known
+     */
+    public long getLastModified();
+}
@@ -0,0 +1,177 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.app;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A cache of the <code>Style</code>s of a <code>StyleSheet</code> resolved for specific component classes and style
+ * names, such that the superclasses of a component class need not be searched each time a style property of a 
+ * component is retrieved.
+ * <p>
+ * A cache is valid for a single state of its <code>StyleSheet</code>: it must be discarded when the style sheet
+ * is replaced or modified (see <code>isValid()</code>).  Caches may be queried concurrently.
+ */
+class StyleSheetCache {
+    
+    /**
+     * A resolved style.
+     */
+    private static class Entry {
+        
+        /** The style, or null if none exists. */
+        private final Style style;
+        
+        /** The component class for which the style is registered. */
+        private final Class<?> styleClass;
+        
+        /**
+         * Creates a new <code>Entry</code>.
+         * 
+         * @param style the style
+         * @param styleClass the component class for which the style is registered
+         */
+        private Entry(Style style, Class<?> styleClass) {
+            super();
+            this.style = style;
+            this.styleClass = styleClass;
+        }
+    }
+    
+    /** Key used in place of the null style name of default styles. */
+    private static final Object DEFAULT_STYLE_NAME = new Object();
+    
+    /**
+     * Returns the structure modification count of a style sheet, or 0 if the style sheet does not track 
+     * modifications.
+     * 
+     * @param styleSheet the <code>StyleSheet</code>
+     * @return the modification count
+     */
+    private static int getStructureModificationCount(StyleSheet styleSheet) {
+        return styleSheet instanceof MutableStyleSheet 
+                ? ((MutableStyleSheet) styleSheet).getStructureModificationCount() : 0;
+    }
+    
+    /** The cached <code>StyleSheet</code>. */
+    private final StyleSheet styleSheet;
+    
+    /** The structure modification count of the <code>StyleSheet</code> when the cache was created. */
+    private final int structureModificationCount;
+    
+    /** 
+     * Mapping between style names (<code>DEFAULT_STYLE_NAME</code> for the default style) and maps between 
+     * component classes and <code>Entry</code>s. 
+     */
+    private final ConcurrentMap<Object, ConcurrentMap<Class<?>, Entry>> styleNameToEntryMap 
+            = new ConcurrentHashMap<Object, ConcurrentMap<Class<?>, Entry>>();
+    
+    /**
+     * Creates a new <code>StyleSheetCache</code>.
+     * 
+     * @param styleSheet the <code>StyleSheet</code> to cache
+     */
+    StyleSheetCache(StyleSheet styleSheet) {
+        super();
+        this.styleSheet = styleSheet;
+        structureModificationCount = getStructureModificationCount(styleSheet);
+    }
+    
+    /**
+     * Retrieves (or resolves and caches) the style for a component class and style name.
+     * 
+     * @param componentClass the component class
+     * @param styleName the style name
+     * @return the <code>Entry</code>
+     */
+    private Entry getEntry(Class<? extends Component> componentClass, String styleName) {
+        Object key = styleName == null ? DEFAULT_STYLE_NAME : styleName;
+        ConcurrentMap<Class<?>, Entry> classToEntryMap = styleNameToEntryMap.get(key);
+        if (classToEntryMap == null) {
+            classToEntryMap = new ConcurrentHashMap<Class<?>, Entry>();
+            ConcurrentMap<Class<?>, Entry> existing = styleNameToEntryMap.putIfAbsent(key, classToEntryMap);
+            if (existing != null) {
+                classToEntryMap = existing;
+            }
+        }
+        Entry entry = classToEntryMap.get(componentClass);
+        if (entry == null) {
+            // Determine the class for which the style is registered, the component's class or one of its 
+            // ancestor classes.
+            Class<?> styleClass = componentClass;
+            while (styleClass != Component.class && styleSheet.getStyle(styleName, styleClass, false) == null) {
+                styleClass = styleClass.getSuperclass();
+            }
+            entry = new Entry(styleSheet.getStyle(styleName, componentClass, true), styleClass);
+            classToEntryMap.put(componentClass, entry);
+        }
+        return entry;
+    }
+    
+    /**
+     * Returns the style for a component class and style name, as returned by 
+     * <code>StyleSheet.getStyle(styleName, componentClass, true)</code>.
+     * 
+     * @param componentClass the component class
+     * @param styleName the style name
+     * @return the style, or null if none exists
+     */
+    Style getStyle(Class<? extends Component> componentClass, String styleName) {
+        return getEntry(componentClass, styleName).style;
+    }
+    
+    /**
+     * Returns the class for which the style used by a component class and style name is registered, i.e., the 
+     * component class itself or the nearest of its superclasses for which a style with the name exists.
+     * If no such style exists, <code>Component.class</code> is returned.
+     * 
+     * @param componentClass the component class
+     * @param styleName the style name
+     * @return the style class
+     */
+    Class<?> getStyleClass(Class<? extends Component> componentClass, String styleName) {
+        return getEntry(componentClass, styleName).styleClass;
+    }
+    
+    /**
+     * Determines if the cache is valid for the current state of a <code>StyleSheet</code>, i.e., if it is the 
+     * cached style sheet and no styles have since been added, replaced, or removed.
+     * Modifications of style sheets which are not <code>MutableStyleSheet</code>s cannot be detected; the cache 
+     * of such style sheets is discarded when the style sheet is (re)set on the <code>ApplicationInstance</code>.
+     * 
+     * @param styleSheet the <code>StyleSheet</code>
+     * @return true if the cache is valid
+     */
+    boolean isValid(StyleSheet styleSheet) {
+        return this.styleSheet == styleSheet 
+                && structureModificationCount == getStructureModificationCount(styleSheet);
+    }
+}
@@ -0,0 +1,285 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.app;
+
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The pending tasks and statistics of a task queue of an <code>ApplicationInstance</code>.
+ * <p>
+ * Tasks may be enqueued concurrently by any number of threads without locking.  Tasks are run only by the
+ * user interface thread, which holds the lock of the application.
+ * The capacity of a bounded queue is enforced approximately: a queue may briefly exceed its capacity by the 
+ * number of threads concurrently enqueuing tasks.
+ */
+class TaskQueue 
+implements Serializable {
+
+    /** Serial Version UID. */
+    private static final long serialVersionUID = 20070101L;
+
+    /**
+     * A pending task.  The task may be replaced (by a coalescing task) until it is taken for processing.
+     */
+    private static class Entry 
+    implements Serializable {
+
+        /** Serial Version UID. */
+        private static final long serialVersionUID = 20070101L;
+        
+        /** The task, or null once it has been taken. */
+        private final AtomicReference<Runnable> task;
+        
+        /** The coalescing key, or null. */
+        private final Object key;
+        
+        /** The time at which the entry was enqueued, in nanoseconds. */
+        private final long enqueueTime;
+        
+        /**
+         * Creates a new <code>Entry</code>.
+         * 
+         * @param task the task
+         * @param key the coalescing key, or null
+         */
+        private Entry(Runnable task, Object key) {
+            super();
+            this.task = new AtomicReference<Runnable>(task);
+            this.key = key;
+            enqueueTime = System.nanoTime();
+        }
+        
+        /**
+         * Replaces the task, if it has not yet been taken.
+         * 
+         * @param newTask the new task
+         * @return true if the task was replaced
+         */
+        private boolean replace(Runnable newTask) {
+            Runnable current = task.get();
+            while (current != null) {
+                if (task.compareAndSet(current, newTask)) {
+                    return true;
+                }
+                current = task.get();
+            }
+            return false;
+        }
+    }
+    
+    /** The maximum number of pending tasks. */
+    private final int capacity;
+    
+    /** The overflow policy, one of the <code>TASK_QUEUE_OVERFLOW_XXX</code> constants of <code>ApplicationInstance</code>. */
+    private final int overflowPolicy;
+    
+    /** The pending entries, in order. */
+    private final ConcurrentLinkedQueue<Entry> entries = new ConcurrentLinkedQueue<Entry>();
+    
+    /** Mapping between coalescing keys and pending entries. */
+    private final ConcurrentMap<Object, Entry> keyToEntryMap = new ConcurrentHashMap<Object, Entry>();
+    
+    /** The number of pending entries. */
+    private final AtomicInteger size = new AtomicInteger();
+    
+    private final AtomicInteger maxDepth = new AtomicInteger();
+    private final AtomicLong enqueuedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    
+    // Statistics of processing, which is performed only by the user interface thread.
+    private volatile long processedCount;
+    private volatile long totalWaitTime;
+    private volatile long maxWaitTime;
+    private volatile long totalRunTime;
+    
+    /**
+     * Creates a new <code>TaskQueue</code>.
+     * 
+     * @param capacity the maximum number of pending tasks, or 0 for an unbounded queue
+     * @param overflowPolicy the policy applied when a task is enqueued in a full queue, one of the 
+     *        <code>TASK_QUEUE_OVERFLOW_XXX</code> constants of <code>ApplicationInstance</code>
+     */
+    TaskQueue(int capacity, int overflowPolicy) {
+        super();
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        if (overflowPolicy != ApplicationInstance.TASK_QUEUE_OVERFLOW_DROP_OLDEST 
+                && overflowPolicy != ApplicationInstance.TASK_QUEUE_OVERFLOW_DROP_NEWEST) {
+            throw new IllegalArgumentException("Invalid overflow policy: " + overflowPolicy);
+        }
+        this.capacity = capacity == 0 ? Integer.MAX_VALUE : capacity;
+        this.overflowPolicy = overflowPolicy;
+    }
+    
+    /**
+     * Discards all pending tasks.
+     */
+    void cancel() {
+        Entry entry;
+        while ((entry = take()) != null) {
+            if (entry.task.getAndSet(null) != null) {
+                droppedCount.incrementAndGet();
+            }
+        }
+    }
+    
+    /**
+     * Enqueues a task.
+     * 
+     * @param task the task
+     * @return true if the task was enqueued (or merged with a pending task), false if it was dropped
+     */
+    boolean enqueue(Runnable task) {
+        enqueuedCount.incrementAndGet();
+        Object key = task instanceof CoalescableTask ? ((CoalescableTask) task).getCoalescingKey() : null;
+        Entry entry = new Entry(task, key);
+        int depth;
+        while (true) {
+            if (key != null) {
+                Entry pendingEntry = keyToEntryMap.get(key);
+                if (pendingEntry != null) {
+                    if (pendingEntry.replace(task)) {
+                        coalescedCount.incrementAndGet();
+                        return true;
+                    }
+                    // Pending entry has been taken.
+                    keyToEntryMap.remove(key, pendingEntry);
+                    continue;
+                }
+            }
+            
+            // Capacity is reserved before the entry is published, such that a published entry is never rejected 
+            // (which would lose tasks concurrently merged with it).
+            depth = size.incrementAndGet();
+            if (depth > capacity && overflowPolicy == ApplicationInstance.TASK_QUEUE_OVERFLOW_DROP_NEWEST) {
+                size.decrementAndGet();
+                droppedCount.incrementAndGet();
+                return false;
+            }
+            if (key == null || keyToEntryMap.putIfAbsent(key, entry) == null) {
+                break;
+            }
+            // An entry with the same key was published concurrently: release capacity and merge with it.
+            size.decrementAndGet();
+        }
+        
+        if (depth > capacity) {
+            Entry oldestEntry = take();
+            if (oldestEntry != null && oldestEntry.task.getAndSet(null) != null) {
+                droppedCount.incrementAndGet();
+            }
+            --depth;
+        }
+        entries.offer(entry);
+        
+        int currentMaxDepth = maxDepth.get();
+        while (depth > currentMaxDepth && !maxDepth.compareAndSet(currentMaxDepth, depth)) {
+            currentMaxDepth = maxDepth.get();
+        }
+        return true;
+    }
+    
+    /**
+     * Returns a snapshot of the statistics of the queue.
+     * 
+     * @return the statistics
+     */
+    TaskQueueMetrics getMetrics() {
+        return new TaskQueueMetrics(capacity, size(), maxDepth.get(), enqueuedCount.get(), coalescedCount.get(),
+                droppedCount.get(), processedCount, totalWaitTime, maxWaitTime, totalRunTime);
+    }
+    
+    /**
+     * Runs the oldest pending task, removing it from the queue.
+     * May only be invoked by the user interface thread.
+     * 
+     * @return true if a task was run, false if the queue was empty
+     */
+    boolean runNext() {
+        Entry entry = take();
+        if (entry == null) {
+            return false;
+        }
+        Runnable task = entry.task.getAndSet(null);
+        if (task == null) {
+            // Dropped concurrently.
+            return true;
+        }
+        long startTime = System.nanoTime();
+        long waitTime = startTime - entry.enqueueTime;
+        try {
+            task.run();
+        } finally {
+            ++processedCount;
+            totalWaitTime += waitTime;
+            if (waitTime > maxWaitTime) {
+                maxWaitTime = waitTime;
+            }
+            totalRunTime += System.nanoTime() - startTime;
+        }
+        return true;
+    }
+    
+    /**
+     * Returns the number of pending tasks.
+     * 
+     * @return the number of pending tasks
+     */
+    int size() {
+        return Math.max(size.get(), 0);
+    }
+    
+    /**
+     * Removes the oldest pending entry from the queue.  Its task must subsequently be taken 
+     * (<code>entry.task.getAndSet(null)</code>) by the invoker.
+     * 
+     * @return the entry, or null if the queue is empty
+     */
+    private Entry take() {
+        Entry entry = entries.poll();
+        if (entry != null) {
+            size.decrementAndGet();
+            if (entry.key != null) {
+                // Remove mapping before the task is taken, such that tasks enqueued after it is taken are not 
+                // merged with it.
+                keyToEntryMap.remove(entry.key, entry);
+            }
+        }
+        return entry;
+    }
+}
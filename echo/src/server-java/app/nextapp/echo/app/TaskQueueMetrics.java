@@ -0,0 +1,187 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.app;
+
+import java.io.Serializable;
+
+/**
+ * A snapshot of the statistics of a task queue.
+ * Times are provided in nanoseconds.
+ *
+ * @see ApplicationInstance#getTaskQueueMetrics(TaskQueueHandle)
+ */
+public final class TaskQueueMetrics 
+implements Serializable {
+
+    /** Serial Version UID. */
+    private static final long serialVersionUID = 20070101L;
+
+    private int capacity;
+    private int depth;
+    private int maxDepth;
+    private long enqueuedCount;
+    private long coalescedCount;
+    private long droppedCount;
+    private long processedCount;
+    private long totalWaitTime;
+    private long maxWaitTime;
+    private long totalRunTime;
+
+    /**
+     * Creates a new <code>TaskQueueMetrics</code>.
+     */
+    TaskQueueMetrics(int capacity, int depth, int maxDepth, long enqueuedCount, long coalescedCount, 
+            long droppedCount, long processedCount, long totalWaitTime, long maxWaitTime, long totalRunTime) {
+        super();
+        this.capacity = capacity;
+        this.depth = depth;
+        this.maxDepth = maxDepth;
+        this.enqueuedCount = enqueuedCount;
+        this.coalescedCount = coalescedCount;
+        this.droppedCount = droppedCount;
+        this.processedCount = processedCount;
+        this.totalWaitTime = totalWaitTime;
+        this.maxWaitTime = maxWaitTime;
+        this.totalRunTime = totalRunTime;
+    }
+
+    /**
+     * Returns the average time processed tasks waited in the queue before being run.
+     *
+     * @return the average wait time, or 0 if no tasks have been processed
+     */
+    public long getAverageWaitTime() {
+        return processedCount == 0 ? 0 : totalWaitTime / processedCount;
+    }
+
+    /**
+     * Returns the maximum number of pending tasks of the queue.
+     *
+     * @return the capacity, or <code>Integer.MAX_VALUE</code> if the queue is unbounded
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of enqueued tasks which were merged with a pending task 
+     * (see <code>CoalescableTask</code>).
+     *
+     * @return the number of coalesced tasks
+     */
+    public long getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    /**
+     * Returns the number of pending tasks.
+     *
+     * @return the depth
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Returns the number of tasks which were discarded without being run, due to the queue being full or 
+     * pending tasks being cancelled.
+     *
+     * @return the number of dropped tasks
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * Returns the number of tasks which have been enqueued, including those which were later coalesced or dropped.
+     *
+     * @return the number of enqueued tasks
+     */
+    public long getEnqueuedCount() {
+        return enqueuedCount;
+    }
+
+    /**
+     * Returns the largest number of tasks which have been pending at once.
+     *
+     * @return the maximum depth
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Returns the longest time a processed task waited in the queue before being run.
+     *
+     * @return the maximum wait time
+     */
+    public long getMaxWaitTime() {
+        return maxWaitTime;
+    }
+
+    /**
+     * Returns the number of tasks which have been run.
+     *
+     * @return the number of processed tasks
+     */
+    public long getProcessedCount() {
+        return processedCount;
+    }
+
+    /**
+     * Returns the total time spent running tasks of the queue.
+     *
+     * @return the total run time
+     */
+    public long getTotalRunTime() {
+        return totalRunTime;
+    }
+
+    /**
+     * Returns the total time processed tasks waited in the queue before being run.
+     *
+     * @return the total wait time
+     */
+    public long getTotalWaitTime() {
+        return totalWaitTime;
+    }
+
+    /**
+     * Returns a debug representation.
+     *
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        return "TaskQueueMetrics {depth=" + depth + ", maxDepth=" + maxDepth + ", capacity=" + capacity 
+                + ", enqueued=" + enqueuedCount + ", coalesced=" + coalescedCount + ", dropped=" + droppedCount 
+                + ", processed=" + processedCount + ", averageWaitTime=" + getAverageWaitTime() 
+                + ", maxWaitTime=" + maxWaitTime + ", totalRunTime=" + totalRunTime + "}";
+    }
+}
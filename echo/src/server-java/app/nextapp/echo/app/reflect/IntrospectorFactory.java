@@ -30,8 +30,9 @@
 package nextapp.echo.app.reflect;
 
 import java.beans.Introspector;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Factory for creating <code>ClassLoader</code>-specific <code>ObjectIntrospector</code> instances.
@@ -39,9 +40,10 @@ import java.util.Map;
 public class IntrospectorFactory {
 
     /**
-     * A map containing references from class loaders to <code>ObjectIntrospector</code> instances.
+     * A map containing references from class loaders to maps of type names to <code>ObjectIntrospector</code> 
+     * instances.  Modifications are synchronized on the map, retrievals are not.
      */
-    private static final Map classLoaderCache = new HashMap();
+    private static final ConcurrentMap classLoaderCache = new ConcurrentHashMap();
     
     /**
      * Creates a <b>new</b> <code>ObjectIntrospector</code> for a specific type
@@ -89,22 +91,25 @@ public class IntrospectorFactory {
     public static ObjectIntrospector get(String typeName, ClassLoader classLoader) 
     throws ClassNotFoundException {
         // Find or Create Object Introspector Store based on ClassLoader Cache.
-        Map oiStore;
-        synchronized (classLoaderCache) {
-            oiStore = (Map) classLoaderCache.get(classLoader);
-            if (oiStore == null) {
-                init(classLoader);
-                oiStore = (Map) classLoaderCache.get(classLoader);
+        ConcurrentMap oiStore = (ConcurrentMap) classLoaderCache.get(classLoader);
+        if (oiStore == null) {
+            synchronized (classLoaderCache) {
+                oiStore = (ConcurrentMap) classLoaderCache.get(classLoader);
+                if (oiStore == null) {
+                    init(classLoader);
+                    oiStore = (ConcurrentMap) classLoaderCache.get(classLoader);
+                }
             }
         }
         
         // Find or Create Object Introspector from Object Introspector Store.
-        ObjectIntrospector oi;
-        synchronized (oiStore) {
-            oi =  (ObjectIntrospector) oiStore.get(typeName);
+        ObjectIntrospector oi = (ObjectIntrospector) oiStore.get(typeName);
+        if (oi == null) {
+            // Introspect without holding a lock, such that different types may be introspected concurrently.
+            ObjectIntrospector newOi = createIntrospector(typeName, classLoader);
+            oi = (ObjectIntrospector) oiStore.putIfAbsent(typeName, newOi);
             if (oi == null) {
-                oi = createIntrospector(typeName, classLoader);
-                oiStore.put(typeName, oi);
+                oi = newOi;
             }
         }
         return oi;
@@ -124,7 +129,7 @@ public class IntrospectorFactory {
                 throw new IllegalStateException("ObjectIntrospectorFactory already initialized for specified ClassLoader.");
             }
             
-            oiStore = new HashMap();
+            oiStore = new ConcurrentHashMap();
             classLoaderCache.put(classLoader, oiStore);
         }
     }
@@ -29,6 +29,10 @@
 
 package nextapp.echo.app.serial;
 
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 import org.w3c.dom.Element;
 import nextapp.echo.app.util.Context;
 
@@ -37,6 +41,50 @@ import nextapp.echo.app.util.Context;
  */
 public class SerialUtil {
     
+    /**
+     * Reads the value of a property from a streaming XML representation, i.e., the value of the "v"
+     * attribute of its &lt;p&gt; element if present, or otherwise the text content of that element.
+     * The reader must be positioned at the start of the &lt;p&gt; element, and will be positioned at
+     * its end when this method returns.
+     * 
+     * @param propertyReader the <code>XMLStreamReader</code>
+     * @return the value text, or null if the element provides none
+     * @throws SerialException if the stream cannot be read
+     */
+    public static String getValueText(XMLStreamReader propertyReader) 
+    throws SerialException {
+        try {
+            String valueText = propertyReader.getAttributeValue(null, "v");
+            boolean readText = valueText == null;
+            StringBuffer text = null;
+            int depth = 1;
+            while (depth > 0) {
+                switch (propertyReader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    ++depth;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    --depth;
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    if (readText && depth == 1) {
+                        if (text == null) {
+                            text = new StringBuffer();
+                        }
+                        text.append(propertyReader.getTextCharacters(), propertyReader.getTextStart(), 
+                                propertyReader.getTextLength());
+                    }
+                    break;
+                }
+            }
+            return readText && text != null ? text.toString() : valueText;
+        } catch (XMLStreamException ex) {
+            throw new SerialException("Cannot read property value.", ex);
+        }
+    }
+    
     /**
      * Translates an arbitrary property to XML.
      * The appropriate peer for the property will be retrieved and the property will be 
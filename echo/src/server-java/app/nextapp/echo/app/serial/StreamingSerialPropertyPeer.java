@@ -0,0 +1,73 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.app.serial;
+
+import javax.xml.stream.XMLStreamReader;
+
+import nextapp.echo.app.util.Context;
+import nextapp.echo.app.util.XmlWriter;
+
+/**
+ * A <code>SerialPropertyPeer</code> which may additionally translate a property directly from and to
+ * a streaming XML representation, without requiring a DOM <code>Element</code> to be built.
+ */
+public interface StreamingSerialPropertyPeer 
+extends SerialPropertyPeer {
+
+    /**
+     * Translates a streaming XML representation of a property to a property value object.
+     * The reader is positioned at the start of the &lt;p&gt; element to process, and must be 
+     * left positioned at the end of that element when this method returns.
+     * 
+     * @param context the relevant <code>Context</code>
+     * @param objectClass the class of the property container
+     * @param propertyReader the <code>XMLStreamReader</code>, positioned at the start of the
+     *        &lt;p&gt; element
+     * @return the property value
+     * @throws SerialException when the property cannot be de-serialized.
+     */
+    public Object toProperty(Context context, Class objectClass, XMLStreamReader propertyReader)
+    throws SerialException;
+    
+    /**
+     * Translates an object to a streaming XML representation of a property.
+     * The writer is positioned at the &lt;p&gt; element in which the property value should be rendered, 
+     * to which no content has yet been added.  Attributes must be set before any content is added.
+     * The element must not be closed.
+     * 
+     * @param context the relevant <code>Context</code>
+     * @param objectClass the class of the property container
+     * @param propertyWriter the <code>XmlWriter</code>, positioned at the &lt;p&gt; element
+     * @param propertyValue the property value
+     * @throws SerialException when the property cannot be serialized.
+     */
+    public void toXml(Context context, Class objectClass, XmlWriter propertyWriter, Object propertyValue)
+    throws SerialException;
+}
@@ -31,9 +31,13 @@ package nextapp.echo.app.serial.property;
 
 import nextapp.echo.app.serial.SerialContext;
 import nextapp.echo.app.serial.SerialException;
-import nextapp.echo.app.serial.SerialPropertyPeer;
+import nextapp.echo.app.serial.SerialUtil;
+import nextapp.echo.app.serial.StreamingSerialPropertyPeer;
 import nextapp.echo.app.util.Context;
 import nextapp.echo.app.util.DomUtil;
+import nextapp.echo.app.util.XmlWriter;
+
+import javax.xml.stream.XMLStreamReader;
 
 import org.w3c.dom.Element;
 
@@ -41,7 +45,7 @@ import org.w3c.dom.Element;
  * <code>SerialPropertyPeer</code> for <code>Boolean</code> properties.
  */
 public class BooleanPeer 
-implements SerialPropertyPeer {
+implements StreamingSerialPropertyPeer {
 
     /**
      * @see nextapp.echo.app.serial.SerialPropertyPeer#toProperty(Context,
@@ -51,6 +55,25 @@ implements SerialPropertyPeer {
     throws SerialException {
         String valueText = propertyElement.hasAttribute("v") 
                 ? propertyElement.getAttribute("v") : DomUtil.getElementText(propertyElement);
+        return toBoolean(valueText);
+    }
+
+    /**
+     * @see nextapp.echo.app.serial.StreamingSerialPropertyPeer#toProperty(nextapp.echo.app.util.Context,
+     *      java.lang.Class, javax.xml.stream.XMLStreamReader)
+     */
+    public Object toProperty(Context context, Class objectClass, XMLStreamReader propertyReader) 
+    throws SerialException {
+        return toBoolean(SerialUtil.getValueText(propertyReader));
+    }
+    
+    /**
+     * Translates the text representation of a <code>Boolean</code> property to a value.
+     * 
+     * @param valueText the value text
+     * @return the <code>Boolean</code> value, or null if <code>valueText</code> is null
+     */
+    private Boolean toBoolean(String valueText) {
         if (valueText == null) {
             return null;
         }
@@ -67,4 +90,14 @@ implements SerialPropertyPeer {
         propertyElement.setAttribute("t", "b");
         propertyElement.appendChild(serialContext.getDocument().createTextNode(propertyValue.toString()));
     }
+
+    /**
+     * @see nextapp.echo.app.serial.StreamingSerialPropertyPeer#toXml(nextapp.echo.app.util.Context,
+     *      java.lang.Class, nextapp.echo.app.util.XmlWriter, java.lang.Object)
+     */
+    public void toXml(Context context, Class objectClass, XmlWriter propertyWriter, Object propertyValue) 
+    throws SerialException {
+        propertyWriter.setAttribute("t", "b");
+        propertyWriter.text(propertyValue.toString());
+    }
 }
@@ -29,20 +29,24 @@
 
 package nextapp.echo.app.serial.property;
 
+import javax.xml.stream.XMLStreamReader;
+
 import org.w3c.dom.Element;
 
 import nextapp.echo.app.Color;
 import nextapp.echo.app.serial.SerialContext;
 import nextapp.echo.app.serial.SerialException;
-import nextapp.echo.app.serial.SerialPropertyPeer;
+import nextapp.echo.app.serial.SerialUtil;
+import nextapp.echo.app.serial.StreamingSerialPropertyPeer;
 import nextapp.echo.app.util.Context;
 import nextapp.echo.app.util.DomUtil;
+import nextapp.echo.app.util.XmlWriter;
 
 /**
  * <code>SerialPropertyPeer</code> for <code>Color</code> properties.
  */
 public class ColorPeer 
-implements SerialPropertyPeer {
+implements StreamingSerialPropertyPeer {
 
     private static final String COLOR_MASK = "#000000";
     private static final String COLOR_TRANSPARENT = "#transparent";
@@ -96,6 +100,15 @@ implements SerialPropertyPeer {
         return fromString(DomUtil.getElementText(propertyElement));
     }
 
+    /**
+     * @see nextapp.echo.app.serial.StreamingSerialPropertyPeer#toProperty(nextapp.echo.app.util.Context,
+     *      java.lang.Class, javax.xml.stream.XMLStreamReader)
+     */
+    public Object toProperty(Context context, Class objectClass, XMLStreamReader propertyReader) 
+    throws SerialException {
+        return fromString(SerialUtil.getValueText(propertyReader));
+    }
+
     /**
      * @see nextapp.echo.app.serial.SerialPropertyPeer#toXml(nextapp.echo.app.util.Context,
      *      java.lang.Class, org.w3c.dom.Element, java.lang.Object)
@@ -105,4 +118,13 @@ implements SerialPropertyPeer {
         SerialContext serialContext = (SerialContext) context.get(SerialContext.class);
         propertyElement.appendChild(serialContext.getDocument().createTextNode(toString((Color) propertyValue)));
     }
+
+    /**
+     * @see nextapp.echo.app.serial.StreamingSerialPropertyPeer#toXml(nextapp.echo.app.util.Context,
+     *      java.lang.Class, nextapp.echo.app.util.XmlWriter, java.lang.Object)
+     */
+    public void toXml(Context context, Class objectClass, XmlWriter propertyWriter, Object propertyValue) 
+    throws SerialException {
+        propertyWriter.text(toString((Color) propertyValue));
+    }
 }
@@ -29,21 +29,25 @@
 
 package nextapp.echo.app.serial.property;
 
+import javax.xml.stream.XMLStreamReader;
+
 import org.w3c.dom.Element;
 
 import nextapp.echo.app.DecimalExtent;
 import nextapp.echo.app.Extent;
 import nextapp.echo.app.serial.SerialException;
-import nextapp.echo.app.serial.SerialPropertyPeer;
+import nextapp.echo.app.serial.SerialUtil;
+import nextapp.echo.app.serial.StreamingSerialPropertyPeer;
 import nextapp.echo.app.util.ConstantMap;
 import nextapp.echo.app.util.Context;
 import nextapp.echo.app.util.DomUtil;
+import nextapp.echo.app.util.XmlWriter;
 
 /**
  * <code>SerialPropertyPeer</code> for <code>Extent</code> properties.
  */
 public class ExtentPeer 
-implements SerialPropertyPeer {
+implements StreamingSerialPropertyPeer {
 
     /**
      * <code>ConstantMap</code> between extent string values and integer constants.
@@ -138,6 +142,15 @@ implements SerialPropertyPeer {
                 ? propertyElement.getAttribute("v") : DomUtil.getElementText(propertyElement));
     }
 
+    /**
+     * @see nextapp.echo.app.serial.StreamingSerialPropertyPeer#toProperty(nextapp.echo.app.util.Context,
+     *      java.lang.Class, javax.xml.stream.XMLStreamReader)
+     */
+    public Object toProperty(Context context, Class objectClass, XMLStreamReader propertyReader) 
+    throws SerialException {
+        return fromString(SerialUtil.getValueText(propertyReader));
+    }
+
     /**
      * @see nextapp.echo.app.serial.SerialPropertyPeer#toXml(nextapp.echo.app.util.Context, 
      *      java.lang.Class, org.w3c.dom.Element, java.lang.Object)
@@ -146,4 +159,13 @@ implements SerialPropertyPeer {
     throws SerialException {
         propertyElement.appendChild(propertyElement.getOwnerDocument().createTextNode(toString((Extent) propertyValue)));
     }
+
+    /**
+     * @see nextapp.echo.app.serial.StreamingSerialPropertyPeer#toXml(nextapp.echo.app.util.Context,
+     *      java.lang.Class, nextapp.echo.app.util.XmlWriter, java.lang.Object)
+     */
+    public void toXml(Context context, Class objectClass, XmlWriter propertyWriter, Object propertyValue) 
+    throws SerialException {
+        propertyWriter.text(toString((Extent) propertyValue));
+    }
 }
@@ -33,9 +33,13 @@ import nextapp.echo.app.reflect.IntrospectorFactory;
 import nextapp.echo.app.reflect.ObjectIntrospector;
 import nextapp.echo.app.serial.SerialContext;
 import nextapp.echo.app.serial.SerialException;
-import nextapp.echo.app.serial.SerialPropertyPeer;
+import nextapp.echo.app.serial.SerialUtil;
+import nextapp.echo.app.serial.StreamingSerialPropertyPeer;
 import nextapp.echo.app.util.Context;
 import nextapp.echo.app.util.DomUtil;
+import nextapp.echo.app.util.XmlWriter;
+
+import javax.xml.stream.XMLStreamReader;
 
 import org.w3c.dom.Element;
 
@@ -43,7 +47,7 @@ import org.w3c.dom.Element;
  * <code>SerialPropertyPeer</code> for <code>Integer</code> properties.
  */
 public class IntegerPeer 
-implements SerialPropertyPeer {
+implements StreamingSerialPropertyPeer {
     
     /**
      * Uses an <code>ObjectIntrospector</code> to determine the integer value of 
@@ -86,6 +90,29 @@ implements SerialPropertyPeer {
     throws SerialException {
         String valueText = propertyElement.hasAttribute("v") 
                 ? propertyElement.getAttribute("v") : DomUtil.getElementText(propertyElement);
+        return toInteger(context, objectClass, valueText);
+    }
+
+    /**
+     * @see nextapp.echo.app.serial.StreamingSerialPropertyPeer#toProperty(nextapp.echo.app.util.Context,
+     *      java.lang.Class, javax.xml.stream.XMLStreamReader)
+     */
+    public Object toProperty(Context context, Class objectClass, XMLStreamReader propertyReader) 
+    throws SerialException {
+        return toInteger(context, objectClass, SerialUtil.getValueText(propertyReader));
+    }
+    
+    /**
+     * Translates the text representation of an <code>Integer</code> property to a value.
+     * The text may be either a number or the name of a constant of <code>objectClass</code>.
+     * 
+     * @param context the relevant <code>Context</code>
+     * @param objectClass the class of the property container
+     * @param valueText the value text
+     * @return the <code>Integer</code> value
+     */
+    private Integer toInteger(Context context, Class objectClass, String valueText) 
+    throws SerialException {
         try {
             return new Integer(valueText);
         } catch (NumberFormatException ex) {
@@ -103,4 +130,14 @@ implements SerialPropertyPeer {
         propertyElement.setAttribute("t", "i");
         propertyElement.appendChild(serialContext.getDocument().createTextNode(propertyValue.toString()));
     }
+
+    /**
+     * @see nextapp.echo.app.serial.StreamingSerialPropertyPeer#toXml(nextapp.echo.app.util.Context,
+     *      java.lang.Class, nextapp.echo.app.util.XmlWriter, java.lang.Object)
+     */
+    public void toXml(Context context, Class objectClass, XmlWriter propertyWriter, Object propertyValue) 
+    throws SerialException {
+        propertyWriter.setAttribute("t", "i");
+        propertyWriter.text(propertyValue.toString());
+    }
 }
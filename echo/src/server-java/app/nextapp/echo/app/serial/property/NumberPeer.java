@@ -32,13 +32,17 @@ package nextapp.echo.app.serial.property;
 import java.text.DecimalFormat;
 import java.text.ParseException;
 
+import javax.xml.stream.XMLStreamReader;
+
 import org.w3c.dom.Element;
 
 import nextapp.echo.app.serial.SerialContext;
 import nextapp.echo.app.serial.SerialException;
-import nextapp.echo.app.serial.SerialPropertyPeer;
+import nextapp.echo.app.serial.SerialUtil;
+import nextapp.echo.app.serial.StreamingSerialPropertyPeer;
 import nextapp.echo.app.util.Context;
 import nextapp.echo.app.util.DomUtil;
+import nextapp.echo.app.util.XmlWriter;
 
 /**
  * <code>SerialPropertyPeer</code> for <code>Number</code> properties.
@@ -47,7 +51,7 @@ import nextapp.echo.app.util.DomUtil;
  * of the precision/length of the parsed value.
  */
 public class NumberPeer 
-implements SerialPropertyPeer {
+implements StreamingSerialPropertyPeer {
     
     /**
      * @see nextapp.echo.app.serial.SerialPropertyPeer#toProperty(nextapp.echo.app.util.Context, 
@@ -57,6 +61,27 @@ implements SerialPropertyPeer {
     throws SerialException {
         String valueText = propertyElement.hasAttribute("v") 
                 ? propertyElement.getAttribute("v") : DomUtil.getElementText(propertyElement);
+        return toNumber(valueText);
+    }
+
+    /**
+     * @see nextapp.echo.app.serial.StreamingSerialPropertyPeer#toProperty(nextapp.echo.app.util.Context,
+     *      java.lang.Class, javax.xml.stream.XMLStreamReader)
+     */
+    public Object toProperty(Context context, Class objectClass, XMLStreamReader propertyReader) 
+    throws SerialException {
+        return toNumber(SerialUtil.getValueText(propertyReader));
+    }
+    
+    /**
+     * Parses the text representation of a <code>Number</code> property.
+     * 
+     * @param valueText the value text
+     * @return the parsed value
+     * @throws SerialException if the text cannot be parsed
+     */
+    private Object toNumber(String valueText) 
+    throws SerialException {
         try {
             return DecimalFormat.getInstance().parseObject(valueText);
         } catch (ParseException ex) {
@@ -74,4 +99,14 @@ implements SerialPropertyPeer {
         propertyElement.setAttribute("t", "n");
         propertyElement.appendChild(serialContext.getDocument().createTextNode(propertyValue.toString()));
     }
+
+    /**
+     * @see nextapp.echo.app.serial.StreamingSerialPropertyPeer#toXml(nextapp.echo.app.util.Context,
+     *      java.lang.Class, nextapp.echo.app.util.XmlWriter, java.lang.Object)
+     */
+    public void toXml(Context context, Class objectClass, XmlWriter propertyWriter, Object propertyValue) 
+    throws SerialException {
+        propertyWriter.setAttribute("t", "n");
+        propertyWriter.text(propertyValue.toString());
+    }
 }
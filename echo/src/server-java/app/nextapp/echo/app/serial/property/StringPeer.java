@@ -30,9 +30,13 @@
 package nextapp.echo.app.serial.property;
 
 import nextapp.echo.app.serial.SerialException;
-import nextapp.echo.app.serial.SerialPropertyPeer;
+import nextapp.echo.app.serial.SerialUtil;
+import nextapp.echo.app.serial.StreamingSerialPropertyPeer;
 import nextapp.echo.app.util.Context;
 import nextapp.echo.app.util.DomUtil;
+import nextapp.echo.app.util.XmlWriter;
+
+import javax.xml.stream.XMLStreamReader;
 
 import org.w3c.dom.Element;
 
@@ -40,7 +44,7 @@ import org.w3c.dom.Element;
  * <code>SerialPropertyPeer</code> for <code>String</code> properties.
  */
 public class StringPeer 
-implements SerialPropertyPeer {
+implements StreamingSerialPropertyPeer {
 
     /**
      * @see nextapp.echo.app.serial.SerialPropertyPeer#toProperty(Context, 
@@ -51,6 +55,15 @@ implements SerialPropertyPeer {
         return propertyElement.hasAttribute("v") ? propertyElement.getAttribute("v") : DomUtil.getElementText(propertyElement);
     }
 
+    /**
+     * @see nextapp.echo.app.serial.StreamingSerialPropertyPeer#toProperty(nextapp.echo.app.util.Context,
+     *      java.lang.Class, javax.xml.stream.XMLStreamReader)
+     */
+    public Object toProperty(Context context, Class objectClass, XMLStreamReader propertyReader) 
+    throws SerialException {
+        return SerialUtil.getValueText(propertyReader);
+    }
+
     /**
      * @see nextapp.echo.app.serial.SerialPropertyPeer#toXml(nextapp.echo.app.util.Context,
      *      java.lang.Class, org.w3c.dom.Element, java.lang.Object)
@@ -59,4 +72,13 @@ implements SerialPropertyPeer {
     throws SerialException {
         propertyElement.appendChild(propertyElement.getOwnerDocument().createTextNode((String) propertyValue));
     }
+
+    /**
+     * @see nextapp.echo.app.serial.StreamingSerialPropertyPeer#toXml(nextapp.echo.app.util.Context,
+     *      java.lang.Class, nextapp.echo.app.util.XmlWriter, java.lang.Object)
+     */
+    public void toXml(Context context, Class objectClass, XmlWriter propertyWriter, Object propertyValue) 
+    throws SerialException {
+        propertyWriter.text((String) propertyValue);
+    }
 }
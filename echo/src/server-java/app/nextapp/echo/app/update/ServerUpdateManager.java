@@ -35,9 +35,11 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import nextapp.echo.app.ApplicationInstance;
 import nextapp.echo.app.Command;
@@ -89,6 +91,36 @@ implements Serializable {
         }
     };
     
+    /**
+     * A node of the hierarchy index, representing a component which either has a <code>ServerComponentUpdate</code>
+     * or has a descendant which does.
+     */
+    private static class IndexNode
+    implements Serializable {
+        
+        /** Serial Version UID. */
+        private static final long serialVersionUID = 20070101L;
+        
+        /** The represented component. */
+        private Component component;
+        
+        /** The node of the nearest indexed ancestor, i.e., the parent component. */
+        private IndexNode parent;
+        
+        /** The child nodes, lazily created. */
+        private Set children;
+        
+        /**
+         * Creates a new <code>IndexNode</code>.
+         * 
+         * @param component the represented component
+         */
+        private IndexNode(Component component) {
+            super();
+            this.component = component;
+        }
+    }
+    
     /** Empty array of commands. */
     private static final Command[] EMPTY_COMMAND_ARRAY = new Command[0];
     
@@ -104,6 +136,14 @@ implements Serializable {
      */
     private Map componentUpdateMap;
     
+    /**
+     * Index of the components of <code>componentUpdateMap</code> by their position in the hierarchy.
+     * Maps each <code>Component</code> which has a <code>ServerComponentUpdate</code> and each of its ancestors to an
+     * <code>IndexNode</code>, such that the updates of the descendants of a component may be found without 
+     * examining unrelated updates.
+     */
+    private Map hierarchyIndex;
+    
     /** Special <code>ServerComponentUpdate</code> used to describe a full-refresh of the application state being required. */
     private ServerComponentUpdate fullRefreshUpdate;
     
@@ -130,6 +170,7 @@ implements Serializable {
         this.applicationInstance = applicationInstance;
         applicationUpdateMap = new HashMap();
         componentUpdateMap = new HashMap();
+        hierarchyIndex = new HashMap();
         fullRefreshUpdate = new ServerComponentUpdate(null);
     }
     
@@ -150,6 +191,7 @@ implements Serializable {
         } else {
             update = new ServerComponentUpdate(parent);
             componentUpdateMap.put(parent, update);
+            index(parent);
         }
         return update;
     }
@@ -227,6 +269,39 @@ implements Serializable {
         this.clientUpdateManager = clientUpdateManager;
     }
     
+    /**
+     * Adds a component and its ancestors to the hierarchy index.
+     * Only ancestors up to and including the nearest one which is already indexed are visited.
+     * 
+     * @param component the <code>Component</code> to index
+     */
+    private void index(Component component) {
+        if (hierarchyIndex.containsKey(component)) {
+            return;
+        }
+        IndexNode node = new IndexNode(component);
+        hierarchyIndex.put(component, node);
+        Component parent = component.getParent();
+        while (parent != null) {
+            IndexNode parentNode = (IndexNode) hierarchyIndex.get(parent);
+            boolean indexed = parentNode != null;
+            if (!indexed) {
+                parentNode = new IndexNode(parent);
+                hierarchyIndex.put(parent, parentNode);
+            }
+            if (parentNode.children == null) {
+                parentNode.children = new HashSet();
+            }
+            parentNode.children.add(node);
+            node.parent = parentNode;
+            if (indexed) {
+                return;
+            }
+            node = parentNode;
+            parent = parent.getParent();
+        }
+    }
+    
     /**
      * Determines if an ancestor of the given component is being added.
      * 
@@ -401,17 +476,16 @@ implements Serializable {
         ServerComponentUpdate update = createComponentUpdate(parent);
         update.removeChild(child);
         
-        // Search updated components for descendants of removed component.
-        // Any found descendants will be removed and added to this update's 
+        // Remove the updates of the removed component and its descendants, adding them to this update's 
         // list of removed descendants.
-        Iterator it = componentUpdateMap.keySet().iterator();
-        while (it.hasNext()) {
-            Component testComponent = (Component) it.next();
-            if (child.isAncestorOf(testComponent)) {
-                ServerComponentUpdate childUpdate = (ServerComponentUpdate) componentUpdateMap.get(testComponent);
-                update.appendRemovedDescendants(childUpdate);
-                it.remove();
+        IndexNode node = (IndexNode) hierarchyIndex.get(child);
+        if (node != null) {
+            IndexNode parentNode = node.parent;
+            if (parentNode != null) {
+                parentNode.children.remove(node);
+                unindexIfUnused(parentNode);
             }
+            removeIndexedUpdates(update, node);
         }
     }
     
@@ -452,12 +526,51 @@ implements Serializable {
             fullRefreshUpdate.removeDescendant(applicationInstance.getDefaultWindow());
         }
 
-        Iterator it = componentUpdateMap.keySet().iterator();
+        Iterator it = componentUpdateMap.values().iterator();
         while (it.hasNext()) {
-            Component testComponent = (Component) it.next();
-            ServerComponentUpdate childUpdate = (ServerComponentUpdate) componentUpdateMap.get(testComponent);
+            ServerComponentUpdate childUpdate = (ServerComponentUpdate) it.next();
             fullRefreshUpdate.appendRemovedDescendants(childUpdate);
-            it.remove();
+        }
+        componentUpdateMap.clear();
+        hierarchyIndex.clear();
+    }
+    
+    /**
+     * Removes the updates of an indexed component and its indexed descendants from the manager, appending their 
+     * removed children and descendants to the removed descendants of another update.
+     * The nodes are removed from the hierarchy index.
+     * 
+     * @param update the <code>ServerComponentUpdate</code> to which the removed descendants should be appended
+     * @param node the <code>IndexNode</code> of the component
+     */
+    private void removeIndexedUpdates(ServerComponentUpdate update, IndexNode node) {
+        hierarchyIndex.remove(node.component);
+        ServerComponentUpdate childUpdate = (ServerComponentUpdate) componentUpdateMap.remove(node.component);
+        if (childUpdate != null) {
+            update.appendRemovedDescendants(childUpdate);
+        }
+        if (node.children != null) {
+            Iterator it = node.children.iterator();
+            while (it.hasNext()) {
+                removeIndexedUpdates(update, (IndexNode) it.next());
+            }
+        }
+    }
+    
+    /**
+     * Removes a node and any of its ancestors from the hierarchy index if they no longer represent a component with
+     * a <code>ServerComponentUpdate</code> or with indexed descendants.
+     * 
+     * @param node the <code>IndexNode</code>
+     */
+    private void unindexIfUnused(IndexNode node) {
+        while (node != null && (node.children == null || node.children.isEmpty()) 
+                && !componentUpdateMap.containsKey(node.component)) {
+            hierarchyIndex.remove(node.component);
+            if (node.parent != null) {
+                node.parent.children.remove(node);
+            }
+            node = node.parent;
         }
     }
     
@@ -469,6 +582,7 @@ implements Serializable {
     void purge() {
         applicationUpdateMap.clear();
         componentUpdateMap.clear();
+        hierarchyIndex.clear();
         commands = null;
         fullRefreshUpdate = null;
         cachedComponentUpdates = null;
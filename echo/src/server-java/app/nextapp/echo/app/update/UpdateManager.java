@@ -98,6 +98,15 @@ implements Serializable {
         applicationInstance.doValidation();
     }
     
+    /**
+     * Purges all client updates which have been processed by <code>processClientUpdates()</code>, 
+     * such that a further set of client updates may be received and processed, e.g., when
+     * a single client-server interaction contains multiple steps.  Server updates are retained.
+     */
+    public void purgeClientUpdates() {
+        clientUpdateManager.purge();
+    }
+    
     /**
      * Purges all client and server updates.
      */
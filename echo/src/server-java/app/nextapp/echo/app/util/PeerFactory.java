@@ -33,6 +33,8 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import nextapp.echo.app.util.PropertiesDiscovery;
 
@@ -45,11 +47,24 @@ import nextapp.echo.app.util.PropertiesDiscovery;
  * file should contain the fully qualified class names of the peer objects.
  * A single instance of each peer class will be used to support ALL instances
  * of the supported class.
+ * <p>
+ * The results of lookups, including the absence of a peer, are cached per
+ * <code>Class</code>, such that superclasses and interfaces are searched only 
+ * once for each class, and lookups do not require locking.
  */
 public class PeerFactory {
     
+    /** Cache value representing the absence of a peer. */
+    private static final Object NO_PEER = new Object();
+    
     private final Map objectClassNameToPeerMap = new HashMap();
     
+    /** Cache of results of lookups which search superclasses, mapping classes to peers (or <code>NO_PEER</code>). */
+    private final ConcurrentMap classToPeerCache = new ConcurrentHashMap();
+    
+    /** Cache of results of lookups of exact classes, mapping classes to peers (or <code>NO_PEER</code>). */
+    private final ConcurrentMap exactClassToPeerCache = new ConcurrentHashMap();
+    
     /**
      * Creates a new <code>PeerFactory</code>.
      * 
@@ -95,6 +110,25 @@ public class PeerFactory {
      * @return the relevant peer, or null if none can be found
      */
     public Object getPeerForObject(Class objectClass, boolean searchSuperClasses) {
+        ConcurrentMap cache = searchSuperClasses ? classToPeerCache : exactClassToPeerCache;
+        Object peer = cache.get(objectClass);
+        if (peer == null) {
+            peer = findPeerForObject(objectClass, searchSuperClasses);
+            cache.putIfAbsent(objectClass, peer == null ? NO_PEER : peer);
+        }
+        return peer == NO_PEER ? null : peer;
+    }
+    
+    /**
+     * Searches for the appropriate peer instance for a given object <code>Class</code>.
+     * 
+     * @param objectClass the supported object class
+     * @param searchSuperClasses flag indicating whether superclasses
+     *        of <code>objectClass</code> should be searched for peers if
+     *        none can be found for <code>objectClass</code> itself
+     * @return the relevant peer, or null if none can be found
+     */
+    private Object findPeerForObject(Class objectClass, boolean searchSuperClasses) {
         Object peer = null;
         do {
             peer = objectClassNameToPeerMap.get(objectClass.getName());
@@ -104,7 +138,7 @@ public class PeerFactory {
             if (searchSuperClasses) {
                 Class[] interfaces = objectClass.getInterfaces();
                 for (int i = 0; i < interfaces.length; i++) {
-                    peer = getPeerForObject(interfaces[i], true);
+                    peer = findPeerForObject(interfaces[i], true);
                     if (peer != null) {
                         return peer;
                     }
@@ -40,8 +40,18 @@ import java.util.Properties;
 /**
  * Utility class for retrieving property files matching a specific name
  * across the CLASSPATH.
+ * <p>
+ * Scanning the CLASSPATH may be avoided by providing an index, i.e., a single
+ * properties file containing the combined content of all files matching a
+ * name, which is named by appending <code>INDEX_SUFFIX</code> to that name.
+ * Indices are created at build time by <code>PropertiesIndexer</code>, and
+ * should be placed in the CLASSPATH location which is searched first, e.g., the
+ * <code>WEB-INF/classes</code> directory of a web application.
  */
 public class PropertiesDiscovery {
+    
+    /** Suffix appended to the name of a properties file to obtain the name of its index. */
+    public static final String INDEX_SUFFIX = ".index";
 
     /**
      * Returns a map containing the contents of all property files with  
@@ -53,23 +63,52 @@ public class PropertiesDiscovery {
      *         <code>resourceName</code>
      */
     public static Map loadProperties(String resourceName, ClassLoader classLoader) 
+    throws IOException {
+        URL indexUrl = classLoader.getResource(resourceName + INDEX_SUFFIX);
+        if (indexUrl != null) {
+            Map propertyMap = new HashMap();
+            load(indexUrl, propertyMap);
+            return propertyMap;
+        }
+        return scanProperties(resourceName, classLoader);
+    }
+    
+    /**
+     * Returns a map containing the contents of all property files with  
+     * the specified resource name, ignoring any index.
+     * 
+     * @param resourceName the name of the properties file(s) to load
+     * @param classLoader the <code>ClassLoader</code> to search
+     * @return a map containing properties of all matching properties files
+     */
+    static Map scanProperties(String resourceName, ClassLoader classLoader) 
     throws IOException {
         Map propertyMap = new HashMap();
         Enumeration resources = classLoader.getResources(resourceName);
         while (resources.hasMoreElements()) {
-            URL resourceUrl = (URL) resources.nextElement();
-            Properties peerProperties = new Properties();
-            InputStream in = resourceUrl.openStream();
-            try {
-                peerProperties.load(in);
-                propertyMap.putAll(peerProperties);
-            } finally {
-                in.close();
-            }
+            load((URL) resources.nextElement(), propertyMap);
         }
         return propertyMap;
     }
     
+    /**
+     * Loads a properties file, adding its content to a map.
+     * 
+     * @param resourceUrl the URL of the properties file
+     * @param propertyMap the map to which properties should be added
+     */
+    private static void load(URL resourceUrl, Map propertyMap) 
+    throws IOException {
+        Properties peerProperties = new Properties();
+        InputStream in = resourceUrl.openStream();
+        try {
+            peerProperties.load(in);
+            propertyMap.putAll(peerProperties);
+        } finally {
+            in.close();
+        }
+    }
+    
     /** Non-instantiable class. */
     private PropertiesDiscovery() {  }
 }
@@ -0,0 +1,114 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.app.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Build-time utility which creates indices of properties files for use by 
+ * <code>PropertiesDiscovery</code>, such that the CLASSPATH need not be scanned at runtime.
+ * <p>
+ * Usage: <code>java -cp &lt;application CLASSPATH&gt; nextapp.echo.app.util.PropertiesIndexer 
+ * &lt;output directory&gt; &lt;resource name&gt;...</code>
+ * <p>
+ * The CLASSPATH must be that of the application which will use the index, as any bindings 
+ * which are not present at build time will not be discovered at runtime.
+ * Bound classes are verified to be loadable, but are not initialized.
+ */
+public class PropertiesIndexer {
+    
+    /**
+     * Creates an index of a properties file.
+     * 
+     * @param resourceName the name of the properties file(s) to index
+     * @param classLoader the <code>ClassLoader</code> providing the properties files and bound classes
+     * @param outputDirectory the directory in which the index should be written, the root of 
+     *        a CLASSPATH location
+     * @return the index file
+     * @throws IOException if the properties cannot be read or the index cannot be written
+     * @throws ClassNotFoundException if a bound class cannot be loaded
+     */
+    public static File index(String resourceName, ClassLoader classLoader, File outputDirectory) 
+    throws IOException, ClassNotFoundException {
+        Map propertyMap = PropertiesDiscovery.scanProperties(resourceName, classLoader);
+        String[] keys = (String[]) propertyMap.keySet().toArray(new String[propertyMap.size()]);
+        Arrays.sort(keys);
+        
+        StringBuffer out = new StringBuffer();
+        out.append("# Index of " + resourceName + ", created by " + PropertiesIndexer.class.getName() + ".\n");
+        for (int i = 0; i < keys.length; ++i) {
+            String value = ((String) propertyMap.get(keys[i])).trim();
+            Class.forName(keys[i].trim(), false, classLoader);
+            Class.forName(value, false, classLoader);
+            out.append(keys[i].trim());
+            out.append("=");
+            out.append(value);
+            out.append("\n");
+        }
+        
+        File indexFile = new File(outputDirectory, resourceName + PropertiesDiscovery.INDEX_SUFFIX);
+        indexFile.getParentFile().mkdirs();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(indexFile), "ISO-8859-1");
+        try {
+            writer.write(out.toString());
+        } finally {
+            writer.close();
+        }
+        return indexFile;
+    }
+    
+    /**
+     * Command line entry point.
+     * 
+     * @param args the output directory, followed by the names of the properties files to index
+     */
+    public static void main(String[] args) 
+    throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: PropertiesIndexer <output directory> <resource name>...");
+            System.exit(1);
+        }
+        File outputDirectory = new File(args[0]);
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        for (int i = 1; i < args.length; ++i) {
+            File indexFile = index(args[i], classLoader, outputDirectory);
+            System.out.println("Created " + indexFile);
+        }
+    }
+    
+    /** Non-instantiable class. */
+    private PropertiesIndexer() { }
+}
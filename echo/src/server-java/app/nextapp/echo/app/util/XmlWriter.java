@@ -0,0 +1,76 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.app.util;
+
+import org.w3c.dom.Node;
+
+/**
+ * A sequential writer of XML content.
+ * Elements are opened with <code>startElement()</code>, may be given attributes
+ * until content is added to them, and are closed with <code>endElement()</code>.
+ * Implementations may render content directly to text or build a DOM.
+ */
+public interface XmlWriter {
+
+    /**
+     * Appends a DOM node (and all of its descendants) as content of the current element.
+     *
+     * @param node the node to append
+     */
+    public void append(Node node);
+
+    /**
+     * Closes the current element.
+     */
+    public void endElement();
+
+    /**
+     * Sets an attribute of the current element.
+     * Attributes may only be set before any content has been added to the element.
+     *
+     * @param name the attribute name
+     * @param value the attribute value
+     */
+    public void setAttribute(String name, String value);
+
+    /**
+     * Opens a new element as content of the current element.
+     *
+     * @param name the element name
+     */
+    public void startElement(String name);
+
+    /**
+     * Appends text content to the current element.
+     *
+     * @param text the text
+     */
+    public void text(String text);
+}
@@ -0,0 +1,162 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+
+package nextapp.echo.webcontainer.test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+import junit.framework.TestCase;
+import nextapp.echo.webcontainer.util.ByteRange;
+
+/**
+ * Unit tests for <code>ByteRange</code>.
+ */
+public class ByteRangeTest extends TestCase {
+    
+    private static final String ENTITY_TAG = "\"abc\"";
+    
+    private static final long LAST_MODIFIED = 1234567890123L;
+    
+    private static final long CONTENT_LENGTH = 1000;
+    
+    /**
+     * Simulates the headers of an <code>HttpServletRequest</code>.
+     */
+    private static class RequestHeaders 
+    implements InvocationHandler {
+        
+        Map headers = new HashMap();
+        Map dateHeaders = new HashMap();
+        
+        HttpServletRequest createRequest() {
+            return (HttpServletRequest) Proxy.newProxyInstance(HttpServletRequest.class.getClassLoader(), 
+                    new Class[]{ HttpServletRequest.class }, this);
+        }
+        
+        /**
+         * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object, java.lang.reflect.Method, java.lang.Object[])
+         */
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if (name.equals("getHeader")) {
+                return headers.get(args[0]);
+            } else if (name.equals("getDateHeader")) {
+                if (!headers.containsKey(args[0])) {
+                    return Long.valueOf(-1);
+                } else if (!dateHeaders.containsKey(args[0])) {
+                    throw new IllegalArgumentException("Not a date: " + headers.get(args[0]));
+                }
+                return dateHeaders.get(args[0]);
+            }
+            return null;
+        }
+    }
+    
+    /**
+     * Parses a range header, with an optional If-Range header.
+     */
+    private static long[] parse(String range, String ifRange, long ifRangeDate) {
+        RequestHeaders requestHeaders = new RequestHeaders();
+        requestHeaders.headers.put("Range", range);
+        if (ifRange != null) {
+            requestHeaders.headers.put("If-Range", ifRange);
+            if (ifRangeDate != -1) {
+                requestHeaders.dateHeaders.put("If-Range", Long.valueOf(ifRangeDate));
+            }
+        }
+        return ByteRange.parse(requestHeaders.createRequest(), ENTITY_TAG, LAST_MODIFIED, CONTENT_LENGTH);
+    }
+    
+    private static void assertRange(long offset, long length, long[] range) {
+        assertNotNull(range);
+        assertTrue("Range: " + Arrays.toString(range), Arrays.equals(new long[] { offset, length }, range));
+    }
+    
+    private static void assertUnsatisfiable(long[] range) {
+        assertNotNull(range);
+        assertEquals(0, range.length);
+    }
+    
+    public void testBoundedRange() {
+        assertRange(0, 100, parse("bytes=0-99", null, -1));
+        assertRange(990, 10, parse("bytes=990-2000", null, -1));
+        assertRange(999, 1, parse("bytes=999-999", null, -1));
+    }
+    
+    public void testOpenEndedRange() {
+        assertRange(500, 500, parse("bytes=500-", null, -1));
+        assertRange(0, 1000, parse("bytes=0-", null, -1));
+    }
+    
+    public void testSuffixRange() {
+        assertRange(900, 100, parse("bytes=-100", null, -1));
+        assertRange(0, 1000, parse("bytes=-5000", null, -1));
+        assertUnsatisfiable(parse("bytes=-0", null, -1));
+    }
+    
+    public void testMultipleRanges() {
+        assertNull(parse("bytes=0-99,200-299", null, -1));
+        assertNull(parse("bytes=-100, 0-1", null, -1));
+    }
+    
+    public void testUnsatisfiableRange() {
+        assertUnsatisfiable(parse("bytes=1000-", null, -1));
+        assertUnsatisfiable(parse("bytes=1000-1999", null, -1));
+        assertUnsatisfiable(parse("bytes=5000-4000", null, -1));
+    }
+    
+    public void testInvalidRange() {
+        assertNull(parse(null, null, -1));
+        assertNull(parse("items=0-99", null, -1));
+        assertNull(parse("bytes=abc-", null, -1));
+        assertNull(parse("bytes=100", null, -1));
+        assertNull(parse("bytes=-", null, -1));
+        assertNull(parse("bytes=--5", null, -1));
+        assertNull(parse("bytes=99-0", null, -1));
+    }
+    
+    public void testIfRange() {
+        assertRange(0, 100, parse("bytes=0-99", ENTITY_TAG, -1));
+        assertRange(0, 100, parse("bytes=0-99", "Fri, 13 Feb 2009 23:31:30 GMT", LAST_MODIFIED / 1000 * 1000));
+        
+        // Stale validators: the full content is served.
+        assertNull(parse("bytes=0-99", "\"def\"", -1));
+        assertNull(parse("bytes=0-99", "W/\"abc\"", -1));
+        assertNull(parse("bytes=0-99", "Fri, 13 Feb 2009 23:31:29 GMT", LAST_MODIFIED / 1000 * 1000 - 1000));
+        assertNull(parse("bytes=0-99", "invalid", -1));
+    }
+}
@@ -0,0 +1,141 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.webcontainer.test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import junit.framework.TestCase;
+import nextapp.echo.app.serial.SerialException;
+import nextapp.echo.app.serial.property.StringPeer;
+import nextapp.echo.app.util.Context;
+import nextapp.echo.app.util.DomUtil;
+import nextapp.echo.webcontainer.ClientMessage;
+
+import org.w3c.dom.Element;
+
+/**
+ * Unit tests for reading a <code>nextapp.echo.webcontainer.ClientMessage</code> from a streaming reader.
+ */
+public class ClientMessageTest extends TestCase {
+    
+    /**
+     * DOM-based test processor, records the text of the "v" element of each directive.
+     */
+    public static class DomProcessor 
+    implements ClientMessage.Processor {
+        
+        public void process(Context context, Element dirElement) {
+            values.add("dom:" + DomUtil.getElementText(DomUtil.getChildElementByTagName(dirElement, "v")));
+        }
+    }
+    
+    /**
+     * Streaming test processor, records the value of each "p" element of each directive.
+     */
+    public static class StreamProcessor 
+    implements ClientMessage.StreamProcessor {
+        
+        public void process(Context context, Element dirElement) {
+            fail("DOM processing invoked for streamed message.");
+        }
+        
+        public void process(Context context, XMLStreamReader dirReader) 
+        throws IOException {
+            try {
+                while (dirReader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                    values.add("stream:" + new StringPeer().toProperty(context, Object.class, dirReader));
+                }
+            } catch (SerialException ex) {
+                throw new IOException(ex.toString());
+            } catch (XMLStreamException ex) {
+                throw new IOException(ex.toString());
+            }
+        }
+    }
+    
+    private static final List values = new ArrayList();
+    
+    static {
+        ClientMessage.register("Test.Dom", DomProcessor.class);
+        ClientMessage.register("Test.Stream", StreamProcessor.class);
+    }
+    
+    /**
+     * Creates a <code>ClientMessage</code> which streams the specified XML.
+     */
+    private static ClientMessage createMessage(String xml) 
+    throws Exception {
+        XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(xml));
+        reader.nextTag();
+        return new ClientMessage(reader);
+    }
+    
+    /**
+     * Test reading of message attributes.
+     */
+    public void testAttributes() 
+    throws Exception {
+        ClientMessage clientMessage = createMessage("<cmsg t=\"init\" i=\"5\" w=\"W1\"/>");
+        assertEquals(ClientMessage.TYPE_INITIALIZE, clientMessage.getType());
+        assertEquals(5, clientMessage.getTransactionId());
+        assertEquals("W1", clientMessage.getWindowId());
+        assertNull(clientMessage.getInitId());
+        assertEquals("W1", clientMessage.getDocument().getDocumentElement().getAttribute("w"));
+    }
+    
+    /**
+     * Test dispatching of streamed directives to streaming and DOM-based processors, in order.
+     */
+    public void testProcess() 
+    throws Exception {
+        values.clear();
+        ClientMessage clientMessage = createMessage("<cmsg i=\"1\">"
+                + "<dir proc=\"Test.Stream\"><p n=\"a\">alpha</p><p n=\"b\" v=\"beta\"/><p n=\"c\"><![CDATA[<g>]]></p></dir>"
+                + "<dir proc=\"Test.Dom\"><v>delta</v></dir>"
+                + "<dir proc=\"Test.Stream\"><p n=\"e\"></p></dir>"
+                + "</cmsg>");
+        clientMessage.process(null);
+        assertEquals(5, values.size());
+        assertEquals("stream:alpha", values.get(0));
+        assertEquals("stream:beta", values.get(1));
+        assertEquals("stream:<g>", values.get(2));
+        assertEquals("dom:delta", values.get(3));
+        assertEquals("stream:null", values.get(4));
+        assertEquals(1, DomUtil.getChildElementsByTagName(clientMessage.getDocument().getDocumentElement(), "dir").length);
+    }
+}
@@ -0,0 +1,197 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.webcontainer.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+
+import junit.framework.TestCase;
+import nextapp.echo.webcontainer.util.CompressingOutputStream;
+import nextapp.echo.webcontainer.util.DeflaterPool;
+
+/**
+ * Unit tests for <code>CompressingOutputStream</code> and <code>DeflaterPool</code>.
+ */
+public class CompressingOutputStreamTest extends TestCase {
+    
+    /**
+     * Records the headers and output of a simulated <code>HttpServletResponse</code>.
+     */
+    private static class ResponseRecorder 
+    implements InvocationHandler {
+        
+        Map headers = new HashMap();
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        
+        HttpServletResponse createResponse() {
+            return (HttpServletResponse) Proxy.newProxyInstance(HttpServletResponse.class.getClassLoader(), 
+                    new Class[]{ HttpServletResponse.class }, this);
+        }
+        
+        /**
+         * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object, java.lang.reflect.Method, java.lang.Object[])
+         */
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if (name.equals("getOutputStream")) {
+                return new ServletOutputStream() {
+                    public void write(int b) {
+                        content.write(b);
+                    }
+                };
+            } else if (name.equals("setHeader") || name.equals("addHeader")) {
+                headers.put(args[0], args[1]);
+            }
+            return null;
+        }
+    }
+    
+    /**
+     * Returns test content of the specified size.
+     */
+    private static byte[] createContent(int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; ++i) {
+            data[i] = (byte) ('a' + (i % 7));
+        }
+        return data;
+    }
+    
+    /**
+     * Reads an <code>InputStream</code> fully.
+     */
+    private static byte[] read(InputStream in) 
+    throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int length;
+        while ((length = in.read(buffer)) > 0) {
+            out.write(buffer, 0, length);
+        }
+        return out.toByteArray();
+    }
+    
+    public void testAbort() 
+    throws IOException {
+        ResponseRecorder recorder = new ResponseRecorder();
+        DeflaterPool pool = new DeflaterPool(6, true, 2);
+        CompressingOutputStream out = new CompressingOutputStream(recorder.createResponse(), 
+                CompressingOutputStream.ENCODING_GZIP, pool, 100);
+        out.write(createContent(1000));
+        assertTrue(out.isCompressing());
+        out.abort();
+        out.close();
+        assertEquals(0, pool.getIdleCount());
+        int length = recorder.content.size();
+        try {
+            out.write(1);
+            fail();
+        } catch (IOException ex) {
+            // Expected.
+        }
+        assertEquals(length, recorder.content.size());
+    }
+    
+    public void testBelowThreshold() 
+    throws IOException {
+        ResponseRecorder recorder = new ResponseRecorder();
+        DeflaterPool pool = new DeflaterPool(6, true, 2);
+        CompressingOutputStream out = new CompressingOutputStream(recorder.createResponse(), 
+                CompressingOutputStream.ENCODING_GZIP, pool, 100);
+        byte[] data = createContent(100);
+        out.write(data);
+        out.close();
+        assertFalse(out.isCompressing());
+        assertNull(recorder.headers.get("Content-Encoding"));
+        assertTrue(Arrays.equals(data, recorder.content.toByteArray()));
+        assertEquals(0, pool.getIdleCount());
+    }
+    
+    public void testDeflate() 
+    throws IOException {
+        ResponseRecorder recorder = new ResponseRecorder();
+        DeflaterPool pool = new DeflaterPool(6, false, 2);
+        CompressingOutputStream out = new CompressingOutputStream(recorder.createResponse(), 
+                CompressingOutputStream.ENCODING_DEFLATE, pool, 100);
+        byte[] data = createContent(20000);
+        out.write(data, 0, 50);
+        out.write(data, 50, data.length - 50);
+        out.close();
+        assertTrue(out.isCompressing());
+        assertEquals("deflate", recorder.headers.get("Content-Encoding"));
+        byte[] inflated = read(new InflaterInputStream(new ByteArrayInputStream(recorder.content.toByteArray())));
+        assertTrue(Arrays.equals(data, inflated));
+        assertEquals(1, pool.getIdleCount());
+    }
+    
+    public void testGZip() 
+    throws IOException {
+        DeflaterPool pool = new DeflaterPool(6, true, 2);
+        byte[] data = createContent(20000);
+        
+        // Compress twice to verify that pooled Deflaters are reset.
+        for (int i = 0; i < 2; ++i) {
+            ResponseRecorder recorder = new ResponseRecorder();
+            CompressingOutputStream out = new CompressingOutputStream(recorder.createResponse(), 
+                    CompressingOutputStream.ENCODING_GZIP, pool, 100);
+            for (int j = 0; j < data.length; ++j) {
+                out.write(data[j]);
+            }
+            out.close();
+            assertEquals("gzip", recorder.headers.get("Content-Encoding"));
+            assertTrue(recorder.content.size() < data.length / 10);
+            byte[] inflated = read(new GZIPInputStream(new ByteArrayInputStream(recorder.content.toByteArray())));
+            assertTrue(Arrays.equals(data, inflated));
+            assertEquals(1, pool.getIdleCount());
+        }
+    }
+    
+    public void testSelectEncoding() {
+        assertNull(CompressingOutputStream.selectEncoding(null));
+        assertNull(CompressingOutputStream.selectEncoding("identity"));
+        assertEquals("gzip", CompressingOutputStream.selectEncoding("gzip, deflate"));
+        assertEquals("gzip", CompressingOutputStream.selectEncoding("deflate, GZIP;q=0.5"));
+        assertEquals("deflate", CompressingOutputStream.selectEncoding("gzip;q=0, deflate"));
+        assertEquals("deflate", CompressingOutputStream.selectEncoding("deflate"));
+    }
+}
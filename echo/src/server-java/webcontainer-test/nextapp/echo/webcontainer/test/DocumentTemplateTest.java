@@ -0,0 +1,99 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.webcontainer.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Properties;
+
+import javax.xml.transform.OutputKeys;
+
+import junit.framework.TestCase;
+import nextapp.echo.app.util.DomUtil;
+import nextapp.echo.webcontainer.util.DocumentTemplate;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Unit tests for <code>DocumentTemplate</code>.
+ */
+public class DocumentTemplateTest extends TestCase {
+    
+    private static final String[] PLACEHOLDERS = new String[] { "PlaceholderA", "PlaceholderB" };
+    
+    private static Document createDocument(String a, String b) {
+        Document document = DomUtil.createDocument("html", null, null, null);
+        Element bodyElement = document.createElement("body");
+        bodyElement.setAttribute("onload", "boot('" + a + "', '" + b + "', '" + a + "');");
+        bodyElement.appendChild(document.createTextNode(b));
+        document.getDocumentElement().appendChild(bodyElement);
+        return document;
+    }
+    
+    private static String write(DocumentTemplate template, String[] values) 
+    throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        template.write(out, values);
+        return new String(out.toByteArray(), "UTF-8");
+    }
+    
+    /**
+     * Test that the output of a template is identical to the serialization of the document containing the values.
+     */
+    public void testWrite() 
+    throws Exception {
+        DocumentTemplate template = new DocumentTemplate(createDocument(PLACEHOLDERS[0], PLACEHOLDERS[1]), 
+                DomUtil.OUTPUT_PROPERTIES_INDENT, PLACEHOLDERS);
+        
+        StringWriter sw = new StringWriter();
+        PrintWriter pw = new PrintWriter(sw);
+        DomUtil.save(createDocument("/app/servlet", "42"), pw, DomUtil.OUTPUT_PROPERTIES_INDENT);
+        pw.flush();
+        
+        assertEquals(sw.toString(), write(template, new String[] { "/app/servlet", "42" }));
+    }
+    
+    /**
+     * Test escaping of values.
+     */
+    public void testEscape() 
+    throws Exception {
+        Properties outputProperties = new Properties();
+        outputProperties.setProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+        DocumentTemplate template = new DocumentTemplate(createDocument(PLACEHOLDERS[0], PLACEHOLDERS[1]), 
+                outputProperties, PLACEHOLDERS);
+        String output = write(template, new String[] { "/app?a=1&b=\"2\"", "<x>" });
+        assertTrue(output.indexOf("boot('/app?a=1&amp;b=&quot;2&quot;', '&lt;x&gt;', '/app?a=1&amp;b=&quot;2&quot;')") 
+                != -1);
+        assertTrue(output.indexOf(">&lt;x&gt;</body>") != -1);
+    }
+}
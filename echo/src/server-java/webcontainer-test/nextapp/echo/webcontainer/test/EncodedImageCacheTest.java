@@ -0,0 +1,160 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.webcontainer.test;
+
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import junit.framework.TestCase;
+import nextapp.echo.app.AwtImageReference;
+import nextapp.echo.webcontainer.service.EncodedImageCache;
+
+/**
+ * Unit tests for <code>EncodedImageCache</code>.
+ */
+public class EncodedImageCacheTest extends TestCase {
+    
+    /**
+     * <code>AwtImageReference</code> whose image may be replaced.
+     */
+    private static class MutableImageReference extends AwtImageReference {
+        
+        private Image image;
+        
+        public MutableImageReference(Image image) {
+            super();
+            this.image = image;
+        }
+        
+        public Image getImage() {
+            return image;
+        }
+    }
+    
+    private static BufferedImage createImage(int width, int height, int rgb) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                image.setRGB(x, y, rgb ^ (x * y));
+            }
+        }
+        return image;
+    }
+    
+    /**
+     * Test that encoded images are retained and decode to the original image.
+     */
+    public void testGet() 
+    throws IOException {
+        EncodedImageCache cache = new EncodedImageCache(1 << 20, 0);
+        BufferedImage image = createImage(20, 10, 0xff336699);
+        AwtImageReference imageReference = new AwtImageReference(image);
+        EncodedImageCache.Entry entry = cache.get(imageReference);
+        assertSame(entry, cache.get(imageReference));
+        assertEquals(entry.getData().length, cache.getSize());
+        assertTrue(entry.getEntityTag().startsWith("\""));
+        
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(entry.getData()));
+        assertEquals(20, decoded.getWidth());
+        assertEquals(10, decoded.getHeight());
+        assertEquals(image.getRGB(7, 3), decoded.getRGB(7, 3));
+    }
+    
+    /**
+     * Test that an image is encoded again when the image of its reference is replaced.
+     */
+    public void testReplacedImage() 
+    throws IOException {
+        EncodedImageCache cache = new EncodedImageCache(1 << 20, 0);
+        MutableImageReference imageReference = new MutableImageReference(createImage(20, 10, 0xff336699));
+        EncodedImageCache.Entry entry = cache.get(imageReference);
+        imageReference.image = createImage(20, 10, 0xff996633);
+        EncodedImageCache.Entry replacedEntry = cache.get(imageReference);
+        assertNotSame(entry, replacedEntry);
+        assertFalse(entry.getEntityTag().equals(replacedEntry.getEntityTag()));
+        assertEquals(replacedEntry.getData().length, cache.getSize());
+    }
+    
+    /**
+     * Test that least recently used images are discarded when the maximum size is exceeded.
+     */
+    public void testEviction() 
+    throws IOException {
+        AwtImageReference imageReference1 = new AwtImageReference(createImage(20, 10, 0xff336699));
+        AwtImageReference imageReference2 = new AwtImageReference(createImage(20, 10, 0xff996633));
+        int size = new EncodedImageCache(1 << 20, 0).get(imageReference1).getData().length;
+        EncodedImageCache cache = new EncodedImageCache(size, 0);
+        EncodedImageCache.Entry entry1 = cache.get(imageReference1);
+        cache.get(imageReference2);
+        assertTrue(cache.getSize() <= size);
+        assertNotSame(entry1, cache.get(imageReference1));
+        
+        EncodedImageCache disabledCache = new EncodedImageCache(0, 0);
+        assertNotSame(disabledCache.get(imageReference1), disabledCache.get(imageReference1));
+        assertEquals(0, disabledCache.getSize());
+    }
+    
+    /**
+     * Test encoding of images by background threads.
+     */
+    public void testPrepare() 
+    throws Exception {
+        EncodedImageCache cache = new EncodedImageCache(1 << 20, 1);
+        AwtImageReference imageReference = new AwtImageReference(createImage(200, 100, 0xff336699));
+        cache.prepare(imageReference);
+        for (int i = 0; i < 100 && cache.getSize() == 0; ++i) {
+            Thread.sleep(50);
+        }
+        assertTrue(cache.getSize() > 0);
+        assertEquals(cache.get(imageReference).getData().length, cache.getSize());
+    }
+    
+    /**
+     * Test that background encoding resumes after the encoder threads have been shut down.
+     */
+    public void testShutdown() 
+    throws Exception {
+        EncodedImageCache cache = new EncodedImageCache(1 << 20, 1);
+        cache.prepare(new AwtImageReference(createImage(20, 10, 0xff336699)));
+        cache.shutdown();
+        cache.shutdown();
+        AwtImageReference imageReference = new AwtImageReference(createImage(200, 100, 0xff996633));
+        cache.prepare(imageReference);
+        for (int i = 0; i < 100 && cache.getSize() == 0; ++i) {
+            Thread.sleep(50);
+        }
+        assertTrue(cache.getSize() > 0);
+        cache.shutdown();
+    }
+}
@@ -0,0 +1,107 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.webcontainer.test;
+
+import nextapp.echo.webcontainer.util.JavaScriptCompressor;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for 
+ * <code>nextapp.echo.webcontainer.util.JavaScriptCompressor</code>.
+ */  
+public class JavaScriptCompressorTest extends TestCase {
+    
+    /**
+     * Test removal of comments and whitespace.
+     */
+    public void testCompress() {
+        assertEquals("\nvar a = \"b  // c\"; \nfoo(a, 'd\\'/* e */');\n", JavaScriptCompressor.compress(
+                "/* Comment */\nvar a = \"b  // c\"; // Comment\n\n  \tfoo(a,   'd\\'/* e */');\r\n"));
+    }
+    
+    /**
+     * Test shortening of parameters and local variables, leaving globals, properties, object literal keys
+     * and function names intact.
+     */
+    public void testShortenIdentifiers() {
+        String script = "var total = 0;\n" 
+                + "function sum(values, offset) {\n"
+                + "var result = { values: values };\n"
+                + "for (var index = offset; index < values.length; ++index) {\n"
+                + "total += values[index];\n"
+                + "}\n"
+                + "return function() { return result.values; };\n"
+                + "}\n";
+        assertEquals("var total = 0;\n" 
+                + "function sum(a, b) {\n"
+                + "var c = { values: a };\n"
+                + "for (var d = b; d < a.length; ++d) {\n"
+                + "total += a[d];\n"
+                + "}\n"
+                + "return function() { return c.values; };\n"
+                + "}\n", JavaScriptCompressor.compress(script, true));
+    }
+    
+    /**
+     * Test that replacement names neither capture nor are captured by other bindings.
+     */
+    public void testShortenIdentifiersCapture() {
+        String script = "function f(outer) {\n"
+                + "var getter = function(inner) { return a + outer + inner; };\n"
+                + "return getter;\n"
+                + "}\n";
+        assertEquals("function f(b) {\n"
+                + "var c = function(d) { return a + b + d; };\n"
+                + "return c;\n"
+                + "}\n", JavaScriptCompressor.compress(script, true));
+    }
+    
+    /**
+     * Test that the names of object literal accessor properties are not renamed.
+     */
+    public void testShortenIdentifiersAccessors() {
+        assertEquals("function f(a){return {get name(){return a}}.name}\n", 
+                JavaScriptCompressor.compress("function f(name){return {get name(){return name}}.name}\n", true));
+        assertEquals("function f(a, b){return {set name(v){a = v}, get value(){return b}}}\n", 
+                JavaScriptCompressor.compress(
+                "function f(name, value){return {set name(v){name = v}, get value(){return value}}}\n", true));
+    }
+    
+    /**
+     * Test that variables of functions using <code>eval</code>, and scripts using <code>with</code>, 
+     * are not renamed.
+     */
+    public void testShortenIdentifiersUnsafe() {
+        String script = "function f(value) { return eval(\"value\"); }\n";
+        assertEquals(script, JavaScriptCompressor.compress(script, true));
+        script = "function f(value) { with (value) { return x; } }\n";
+        assertEquals(script, JavaScriptCompressor.compress(script, true));
+    }
+}
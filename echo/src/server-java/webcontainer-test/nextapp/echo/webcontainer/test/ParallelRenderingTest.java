@@ -0,0 +1,262 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+
+package nextapp.echo.webcontainer.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import junit.framework.TestCase;
+import nextapp.echo.app.ApplicationInstance;
+import nextapp.echo.app.Border;
+import nextapp.echo.app.Color;
+import nextapp.echo.app.Column;
+import nextapp.echo.app.Component;
+import nextapp.echo.app.Extent;
+import nextapp.echo.app.Font;
+import nextapp.echo.app.Label;
+import nextapp.echo.app.MutableStyle;
+import nextapp.echo.app.Row;
+import nextapp.echo.app.Window;
+import nextapp.echo.webcontainer.WebContainerServlet;
+
+/**
+ * Tests that rendering a component hierarchy with concurrently rendered child hierarchies (see
+ * <code>WebContainerServlet.getParallelRenderingThreshold()</code>) produces the same output as rendering it
+ * on a single thread.
+ */
+public class ParallelRenderingTest extends TestCase {
+    
+    /**
+     * Application with several sibling hierarchies, using local, shared-style and referenced properties.
+     */
+    private static class TestApp extends ApplicationInstance {
+        
+        /**
+         * @see nextapp.echo.app.ApplicationInstance#init()
+         */
+        public Window init() {
+            MutableStyle labelStyle = new MutableStyle();
+            labelStyle.set(Label.PROPERTY_FOREGROUND, Color.BLUE);
+            labelStyle.set(Label.PROPERTY_FONT, new Font(Font.HELVETICA, Font.BOLD, new Extent(10)));
+            
+            Window window = new Window();
+            Column column = new Column();
+            window.getContent().add(column);
+            for (int i = 0; i < 6; ++i) {
+                Component child = i % 2 == 0 ? (Component) new Column() : new Row();
+                child.set(Column.PROPERTY_BORDER, new Border(i + 1, Color.RED, Border.STYLE_SOLID));
+                column.add(child);
+                for (int j = 0; j < 3 + i * 2; ++j) {
+                    Label label = new Label("Label " + i + "." + j + " <&>");
+                    if (j % 3 == 0) {
+                        label.setStyle(labelStyle);
+                    } else {
+                        label.setBackground(new Color(i * 16, j * 8, 0));
+                        label.setFont(new Font(Font.MONOSPACE, Font.PLAIN, new Extent(j + 8)));
+                    }
+                    child.add(label);
+                }
+                column.add(new Label("Separator " + i));
+            }
+            return window;
+        }
+    }
+    
+    /**
+     * Servlet which creates <code>TestApp</code>s, using a specific parallel rendering threshold.
+     */
+    private static class TestServlet extends WebContainerServlet {
+        
+        private int parallelRenderingThreshold;
+        
+        TestServlet(int parallelRenderingThreshold) {
+            super();
+            this.parallelRenderingThreshold = parallelRenderingThreshold;
+        }
+        
+        /**
+         * @see nextapp.echo.webcontainer.WebContainerServlet#getParallelRenderingThreshold()
+         */
+        public int getParallelRenderingThreshold() {
+            return parallelRenderingThreshold;
+        }
+        
+        /**
+         * @see nextapp.echo.webcontainer.WebContainerServlet#newApplicationInstance()
+         */
+        public ApplicationInstance newApplicationInstance() {
+            return new TestApp();
+        }
+    }
+    
+    /**
+     * Simulates the servlet container objects, returning default values for unsupported methods.
+     */
+    private static class Container 
+    implements InvocationHandler {
+        
+        Map sessionAttributes = new HashMap();
+        Map parameters;
+        byte[] requestContent;
+        ByteArrayOutputStream responseContent;
+        PrintWriter responseWriter;
+        
+        HttpSession session = (HttpSession) createProxy(HttpSession.class);
+        
+        /**
+         * Creates a proxy of an interface, whose invocations are handled by the container.
+         */
+        Object createProxy(Class type) {
+            return Proxy.newProxyInstance(type.getClassLoader(), new Class[]{ type }, this);
+        }
+        
+        /**
+         * Performs a request, returning the response content.
+         */
+        String request(WebContainerServlet servlet, Map parameters, String content)
+        throws Exception {
+            this.parameters = parameters;
+            requestContent = content == null ? null : content.getBytes("UTF-8");
+            responseContent = new ByteArrayOutputStream();
+            responseWriter = new PrintWriter(new OutputStreamWriter(responseContent, "UTF-8"));
+            servlet.service((HttpServletRequest) createProxy(HttpServletRequest.class), 
+                    (HttpServletResponse) createProxy(HttpServletResponse.class));
+            responseWriter.flush();
+            return new String(responseContent.toByteArray(), "UTF-8");
+        }
+        
+        /**
+         * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object, java.lang.reflect.Method, java.lang.Object[])
+         */
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if (name.equals("getMethod")) {
+                return requestContent == null ? "GET" : "POST";
+            } else if (name.equals("getParameter")) {
+                return parameters.get(args[0]);
+            } else if (name.equals("getParameterMap")) {
+                return Collections.EMPTY_MAP;
+            } else if (name.equals("getRequestURI")) {
+                return "/test/app";
+            } else if (name.equals("getSession")) {
+                return session;
+            } else if (name.equals("getAttribute")) {
+                return sessionAttributes.get(args[0]);
+            } else if (name.equals("setAttribute")) {
+                sessionAttributes.put(args[0], args[1]);
+            } else if (name.equals("getCharacterEncoding")) {
+                return "UTF-8";
+            } else if (name.equals("getContentType")) {
+                return requestContent == null ? null : "text/xml; charset=UTF-8";
+            } else if (name.equals("getInputStream")) {
+                final ByteArrayInputStream in = new ByteArrayInputStream(requestContent);
+                return new ServletInputStream() {
+                    public int read() {
+                        return in.read();
+                    }
+                };
+            } else if (name.equals("getOutputStream")) {
+                return new ServletOutputStream() {
+                    public void write(int b) {
+                        responseContent.write(b);
+                    }
+                };
+            } else if (name.equals("getWriter")) {
+                return responseWriter;
+            } else if (name.equals("getServletContext")) {
+                return createProxy(ServletContext.class);
+            } else if (name.equals("hashCode")) {
+                return Integer.valueOf(System.identityHashCode(proxy));
+            } else if (name.equals("equals")) {
+                return Boolean.valueOf(proxy == args[0]);
+            } else if (method.getReturnType() == Boolean.TYPE) {
+                return Boolean.FALSE;
+            } else if (method.getReturnType() == Integer.TYPE) {
+                return Integer.valueOf(0);
+            } else if (method.getReturnType() == Long.TYPE) {
+                return Long.valueOf(0);
+            }
+            return null;
+        }
+    }
+    
+    /**
+     * Initializes an application using a servlet with the specified parallel rendering threshold, and returns
+     * the synchronization message rendering its full component hierarchy.
+     */
+    private static String render(int parallelRenderingThreshold) 
+    throws Exception {
+        Container container = new Container();
+        TestServlet servlet = new TestServlet(parallelRenderingThreshold);
+        servlet.init((ServletConfig) container.createProxy(ServletConfig.class));
+        try {
+            String html = container.request(servlet, Collections.EMPTY_MAP, null);
+            int initIdIndex = html.indexOf("Echo.Boot.boot(");
+            assertTrue(initIdIndex != -1);
+            String initId = html.substring(initIdIndex).split("'")[3];
+            
+            Map parameters = new HashMap();
+            parameters.put(WebContainerServlet.SERVICE_ID_PARAMETER, "Echo.Sync");
+            return container.request(servlet, parameters, "<cmsg xmlns=\"urn:nextapp.echo.client-message\" t=\"init\" "
+                    + "i=\"0\" ii=\"" + initId + "\" w=\"W1\"><dir proc=\"CSync\"/></cmsg>");
+        } finally {
+            servlet.destroy();
+        }
+    }
+    
+    /**
+     * Test that parallel and serial rendering produce identical output.
+     */
+    public void testEquivalence() 
+    throws Exception {
+        String serial = render(0);
+        assertTrue(serial.indexOf("Label 5.12 &lt;&amp;&gt;") != -1);
+        for (int i = 0; i < 5; ++i) {
+            assertEquals(serial, render(3));
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.webcontainer.test;
+
+import java.util.Iterator;
+
+import nextapp.echo.app.Alignment;
+import nextapp.echo.app.Border;
+import nextapp.echo.app.Button;
+import nextapp.echo.app.CheckBox;
+import nextapp.echo.app.Color;
+import nextapp.echo.app.Column;
+import nextapp.echo.app.Component;
+import nextapp.echo.app.Extent;
+import nextapp.echo.app.Font;
+import nextapp.echo.app.Grid;
+import nextapp.echo.app.Insets;
+import nextapp.echo.app.Label;
+import nextapp.echo.app.RadioButton;
+import nextapp.echo.app.reflect.IntrospectorFactory;
+import nextapp.echo.app.util.PeerFactory;
+
+/**
+ * Measures the cost of the peer and introspector lookups performed by <code>OutputProcessor</code> during a full
+ * render.  The rendered hierarchy is modeled on the largest screen of the interactive test application 
+ * (<code>ButtonTest</code>: 205 components, mostly buttons and labels within <code>Column</code> and 
+ * <code>Grid</code> subclasses, with 366 local style properties).
+ * For each component, two synchronization peer lookups and one introspector lookup are made; for each local style
+ * property, one property peer lookup is made.
+ * Invoke <code>main()</code> with optional iteration and thread counts as arguments.
+ */
+public class PeerLookupBenchmark {
+    
+    private static final String RESOURCE_NAME = "META-INF/nextapp/echo/SynchronizePeerBindings.properties";
+    
+    /** Application subclass of <code>Column</code>, for which no peer is bound. */
+    private static class ButtonColumn extends Column { }
+    
+    /** Application subclass of <code>Grid</code>, for which no peer is bound. */
+    private static class TestGrid extends Grid { }
+    
+    /**
+     * Creates the component hierarchy.
+     */
+    private static Component createScreen() {
+        Component screen = new TestGrid();
+        Object[] values = new Object[] { new Color(0x3f3f7f), new Font(Font.HELVETICA, Font.BOLD, new Extent(10)),
+                new Insets(5), new Border(1, Color.BLACK, Border.STYLE_SOLID), new Extent(200),
+                new Alignment(Alignment.LEFT, Alignment.TOP), Boolean.TRUE, Integer.valueOf(3) };
+        String[] properties = new String[] { Button.PROPERTY_FOREGROUND, Button.PROPERTY_FONT, 
+                Button.PROPERTY_INSETS, Button.PROPERTY_BORDER, Button.PROPERTY_WIDTH, Button.PROPERTY_ALIGNMENT,
+                Button.PROPERTY_LINE_WRAP, "custom" };
+        int valueIndex = 0;
+        for (int i = 0; i < 14; ++i) {
+            Component column = new ButtonColumn();
+            screen.add(column);
+            for (int j = 0; j < 8; ++j) {
+                Button button = new Button("Button " + i + "." + j);
+                button.set(properties[valueIndex % values.length], values[valueIndex % values.length]);
+                ++valueIndex;
+                column.add(button);
+            }
+        }
+        for (int i = 0; i < 31; ++i) {
+            Label label = new Label("Label " + i);
+            label.set(properties[valueIndex % values.length], values[valueIndex % values.length]);
+            ++valueIndex;
+            screen.add(label);
+            Button button = new Button("Button " + i);
+            button.set(properties[valueIndex % values.length], values[valueIndex % values.length]);
+            ++valueIndex;
+            screen.add(button);
+        }
+        for (int i = 0; i < 4; ++i) {
+            screen.add(new CheckBox("CheckBox " + i));
+        }
+        for (int i = 0; i < 9; ++i) {
+            screen.add(new RadioButton("RadioButton " + i));
+        }
+        return screen;
+    }
+    
+    /**
+     * Performs the lookups of a full render of a component and its descendants.
+     * 
+     * @return the number of lookups performed
+     */
+    private static int render(Component component, PeerFactory syncPeerFactory, PeerFactory propertyPeerFactory,
+            ClassLoader classLoader) 
+    throws ClassNotFoundException {
+        int lookups = 3;
+        if (syncPeerFactory.getPeerForObject(component.getClass(), true) == null
+                || syncPeerFactory.getPeerForObject(component.getClass(), true) == null) {
+            throw new IllegalStateException("No peer for " + component.getClass());
+        }
+        IntrospectorFactory.get(component.getClass().getName(), classLoader);
+        Iterator it = component.getLocalStyle().getPropertyNames();
+        while (it.hasNext()) {
+            Object value = component.getLocalStyle().get((String) it.next());
+            if (value != null) {
+                propertyPeerFactory.getPeerForObject(value.getClass(), true);
+                ++lookups;
+            }
+        }
+        for (int i = 0; i < component.getComponentCount(); ++i) {
+            lookups += render(component.getComponent(i), syncPeerFactory, propertyPeerFactory, classLoader);
+        }
+        return lookups;
+    }
+    
+    public static void main(String[] args) 
+    throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int threadCount = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        
+        final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        final PeerFactory syncPeerFactory = new PeerFactory(RESOURCE_NAME, classLoader);
+        final PeerFactory propertyPeerFactory = new PeerFactory(RESOURCE_NAME, classLoader);
+        final Component screen = createScreen();
+        final int threadIterations = iterations / threadCount;
+        
+        // Warm up.
+        for (int i = 0; i < threadIterations; ++i) {
+            render(screen, syncPeerFactory, propertyPeerFactory, classLoader);
+        }
+        
+        Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; ++i) {
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < threadIterations; ++j) {
+                            render(screen, syncPeerFactory, propertyPeerFactory, classLoader);
+                        }
+                    } catch (ClassNotFoundException ex) {
+                        throw new RuntimeException(ex);
+                    }
+                }
+            };
+        }
+        long startTime = System.nanoTime();
+        for (int i = 0; i < threadCount; ++i) {
+            threads[i].start();
+        }
+        for (int i = 0; i < threadCount; ++i) {
+            threads[i].join();
+        }
+        long elapsed = System.nanoTime() - startTime;
+        
+        int lookups = render(screen, syncPeerFactory, propertyPeerFactory, classLoader);
+        long renders = (long) threadIterations * threadCount;
+        System.out.println(lookups + " lookups per render, " + threadCount + " thread(s): " 
+                + (elapsed / renders / 1000.0) + "us per render, " + (elapsed / renders / lookups) + "ns per lookup");
+    }
+}
@@ -0,0 +1,85 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.webcontainer.test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+
+import nextapp.echo.webcontainer.util.PngEncoder;
+
+/**
+ * Compares the size and encoding time of images encoded by <code>PngEncoder</code> without filtering 
+ * on a single thread (the configuration previously used by the <code>ImageService</code>), with adaptive 
+ * filtering on a single thread, and with adaptive filtering and concurrently compressed strips.
+ * Invoke <code>main()</code> with optional image width, height, and iteration counts as arguments.
+ */
+public class PngEncoderBenchmark {
+    
+    /**
+     * Runs the benchmark for one configuration.
+     */
+    private static void run(String name, BufferedImage image, boolean adaptive, boolean parallel, int iterations)
+    throws Exception {
+        int length = 0;
+        long startTime = System.nanoTime();
+        for (int i = 0; i < iterations; ++i) {
+            PngEncoder encoder = new PngEncoder(image, true, null, 3);
+            encoder.setAdaptiveFiltering(adaptive);
+            encoder.setParallel(parallel);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            encoder.encode(out);
+            length = out.size();
+        }
+        long averageMicros = (System.nanoTime() - startTime) / iterations / 1000;
+        System.out.println(name + ": " + length + " bytes, " + averageMicros + " us/image");
+    }
+    
+    /**
+     * Runs the benchmark.
+     * 
+     * @param args optional width, height, and iteration counts
+     */
+    public static void main(String[] args)
+    throws Exception {
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 1600;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : 1200;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        BufferedImage image = PngEncoderTest.createImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        
+        // Warm up.
+        run("Unfiltered (warm-up)", image, false, false, iterations);
+        run("Adaptive (warm-up)", image, true, false, iterations);
+        run("Adaptive, parallel (warm-up)", image, true, true, iterations);
+        
+        run("Unfiltered", image, false, false, iterations);
+        run("Adaptive", image, true, false, iterations);
+        run("Adaptive, parallel", image, true, true, iterations);
+    }
+}
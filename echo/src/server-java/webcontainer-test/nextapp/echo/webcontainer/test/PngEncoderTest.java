@@ -0,0 +1,123 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.webcontainer.test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.imageio.ImageIO;
+
+import junit.framework.TestCase;
+import nextapp.echo.webcontainer.util.PngEncoder;
+
+/**
+ * Unit tests for <code>PngEncoder</code>.
+ */
+public class PngEncoderTest extends TestCase {
+    
+    /**
+     * Creates an image containing gradients, noise, and transparency.
+     */
+    static BufferedImage createImage(int width, int height, int type) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        long seed = 42;
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                seed = seed * 6364136223846793005L + 1442695040888963407L;
+                int noise = (x / 16 + y / 16) % 3 == 0 ? (int) (seed >>> 58) : 0;
+                int alpha = x < width / 4 ? 0x80 : 0xff;
+                image.setRGB(x, y, (alpha << 24) | (((x + noise) & 0xff) << 16) | (((y * 3) & 0xff) << 8) 
+                        | ((x * y + noise) & 0xff));
+            }
+        }
+        return image;
+    }
+    
+    private static byte[] encode(BufferedImage image, PngEncoder.Filter filter, boolean adaptive, boolean parallel)
+    throws IOException {
+        PngEncoder encoder = new PngEncoder(image, true, filter, 3);
+        encoder.setAdaptiveFiltering(adaptive);
+        encoder.setParallel(parallel);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.encode(out);
+        return out.toByteArray();
+    }
+    
+    private static void assertDecodes(BufferedImage image, byte[] data) 
+    throws IOException {
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(data));
+        assertEquals(image.getWidth(), decoded.getWidth());
+        assertEquals(image.getHeight(), decoded.getHeight());
+        for (int y = 0; y < image.getHeight(); ++y) {
+            for (int x = 0; x < image.getWidth(); ++x) {
+                assertEquals("Pixel " + x + "," + y, image.getRGB(x, y), decoded.getRGB(x, y));
+            }
+        }
+    }
+    
+    /**
+     * Test that images encoded with each filter (and with adaptive filtering) decode to the original image.
+     */
+    public void testFilters() 
+    throws IOException {
+        BufferedImage image = createImage(61, 47, BufferedImage.TYPE_INT_ARGB);
+        PngEncoder.Filter[] filters = new PngEncoder.Filter[] { null, PngEncoder.SUB_FILTER, PngEncoder.UP_FILTER, 
+                PngEncoder.AVERAGE_FILTER, PngEncoder.PAETH_FILTER };
+        for (int i = 0; i < filters.length; ++i) {
+            assertDecodes(image, encode(image, filters[i], false, false));
+        }
+        assertDecodes(image, encode(image, null, true, false));
+    }
+    
+    /**
+     * Test that a large image compressed in concurrently compressed strips decodes to the original image,
+     * and is not substantially larger than the sequentially compressed image.
+     * (Strips are compressed concurrently only on multiprocessor systems.)
+     */
+    public void testParallel() 
+    throws IOException {
+        BufferedImage image = createImage(700, 500, BufferedImage.TYPE_INT_ARGB);
+        byte[] parallelData = encode(image, null, true, true);
+        assertDecodes(image, parallelData);
+        byte[] sequentialData = encode(image, null, true, false);
+        assertDecodes(image, sequentialData);
+        assertTrue(parallelData.length < sequentialData.length * 1.05);
+        
+        // Threads are started again after shutdown.
+        PngEncoder.shutdown();
+        assertTrue(Arrays.equals(parallelData, encode(image, null, true, true)));
+        
+        BufferedImage byteImage = createImage(900, 300, BufferedImage.TYPE_4BYTE_ABGR);
+        assertDecodes(byteImage, encode(byteImage, PngEncoder.PAETH_FILTER, false, true));
+    }
+}
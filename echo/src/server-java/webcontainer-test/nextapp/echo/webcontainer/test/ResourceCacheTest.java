@@ -0,0 +1,114 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.webcontainer.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import junit.framework.TestCase;
+import nextapp.echo.webcontainer.util.Resource;
+import nextapp.echo.webcontainer.util.ResourceCache;
+
+/**
+ * Unit tests for <code>ResourceCache</code>.
+ */
+public class ResourceCacheTest extends TestCase {
+    
+    private static final String TEXT_RESOURCE = "nextapp/echo/webcontainer/resource/RemoteClient.js";
+    
+    private static final String BINARY_RESOURCE = "nextapp/echo/webcontainer/util/ResourceCache.class";
+    
+    private static byte[] decompress(byte[] data) 
+    throws IOException {
+        GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(data));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int bytesRead;
+        while ((bytesRead = in.read(buffer)) > 0) {
+            out.write(buffer, 0, bytesRead);
+        }
+        return out.toByteArray();
+    }
+    
+    /**
+     * Test that resources are retained and compressed as requested.
+     */
+    public void testGet() 
+    throws IOException {
+        ResourceCache cache = new ResourceCache(1 << 24);
+        ResourceCache.Entry text = cache.get(TEXT_RESOURCE, true);
+        assertTrue(Arrays.equals(Resource.getResourceAsByteArray(TEXT_RESOURCE), text.getContent()));
+        assertNotNull(text.getGZipContent());
+        assertTrue(Arrays.equals(text.getContent(), decompress(text.getGZipContent())));
+        assertTrue(text.getEntityTag().startsWith("\""));
+        assertFalse(text.getEntityTag().equals(text.getGZipEntityTag()));
+        assertSame(text, cache.get(TEXT_RESOURCE, true));
+        
+        ResourceCache.Entry binary = cache.get(BINARY_RESOURCE, false);
+        assertNull(binary.getGZipContent());
+        assertNull(binary.getGZipEntityTag());
+        assertEquals(text.getContent().length + text.getGZipContent().length + binary.getContent().length, 
+                cache.getSize());
+    }
+    
+    /**
+     * Test that the least recently used resources are discarded when the maximum size is exceeded.
+     */
+    public void testEviction() {
+        int binarySize = Resource.getResourceAsByteArray(BINARY_RESOURCE).length;
+        int textSize = Resource.getResourceAsByteArray(TEXT_RESOURCE).length;
+        ResourceCache cache = new ResourceCache(Math.max(binarySize, textSize));
+        
+        ResourceCache.Entry binary = cache.get(BINARY_RESOURCE, false);
+        assertEquals(binarySize, cache.getSize());
+        cache.get(TEXT_RESOURCE, false);
+        assertEquals(textSize, cache.getSize());
+        assertNotSame(binary, cache.get(BINARY_RESOURCE, false));
+        
+        ResourceCache disabledCache = new ResourceCache(0);
+        assertNotSame(disabledCache.get(BINARY_RESOURCE, false), disabledCache.get(BINARY_RESOURCE, false));
+        assertEquals(0, disabledCache.getSize());
+    }
+    
+    /**
+     * Test that a missing resource results in an exception.
+     */
+    public void testMissing() {
+        try {
+            new ResourceCache(1024).get("nextapp/echo/webcontainer/test/Missing.txt", false);
+            fail();
+        } catch (Resource.ResourceException ex) {
+            // Expected.
+        }
+    }
+}
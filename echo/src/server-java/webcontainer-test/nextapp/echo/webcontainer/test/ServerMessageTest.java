@@ -0,0 +1,339 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.webcontainer.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import nextapp.echo.app.util.DomUtil;
+import nextapp.echo.app.util.XmlWriter;
+import nextapp.echo.webcontainer.ServerMessage;
+import nextapp.echo.webcontainer.ServiceRegistry;
+import nextapp.echo.webcontainer.StreamingServerMessage;
+import nextapp.echo.webcontainer.service.JavaScriptService;
+import nextapp.echo.webcontainer.util.StreamXmlWriter;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Unit tests for <code>nextapp.echo.webcontainer.StreamingServerMessage</code>, comparing its output
+ * to that of the DOM-based <code>nextapp.echo.webcontainer.ServerMessage</code>.
+ */
+public class ServerMessageTest extends TestCase {
+
+    /**
+     * Renders a node in a canonical form, with attributes sorted by name.
+     */
+    private static void canonicalize(Node node, StringBuffer out) {
+        switch (node.getNodeType()) {
+        case Node.ELEMENT_NODE:
+            out.append("<" + node.getNodeName());
+            NamedNodeMap attributes = node.getAttributes();
+            String[] attributeStrings = new String[attributes.getLength()];
+            for (int i = 0; i < attributeStrings.length; ++i) {
+                attributeStrings[i] = attributes.item(i).getNodeName() + "=" + attributes.item(i).getNodeValue();
+            }
+            Arrays.sort(attributeStrings);
+            for (int i = 0; i < attributeStrings.length; ++i) {
+                out.append(" " + attributeStrings[i]);
+            }
+            out.append(">");
+            Node child = node.getFirstChild();
+            while (child != null) {
+                canonicalize(child, out);
+                child = child.getNextSibling();
+            }
+            out.append("</" + node.getNodeName() + ">");
+            break;
+        case Node.TEXT_NODE:
+            out.append("[" + node.getNodeValue() + "]");
+            break;
+        }
+    }
+
+    /**
+     * Renders a message, parses the result, and returns its canonical form.
+     */
+    private static String renderCanonical(ServerMessage serverMessage)
+    throws Exception {
+        StringWriter sw = new StringWriter();
+        PrintWriter pw = new PrintWriter(sw);
+        serverMessage.render(pw);
+        pw.flush();
+        Document document = DomUtil.getDocumentBuilder().parse(new ByteArrayInputStream(sw.toString().getBytes("UTF-8")));
+        StringBuffer out = new StringBuffer();
+        canonicalize(document.getDocumentElement(), out);
+        return out.toString();
+    }
+
+    /**
+     * Writes identical content to a <code>ServerMessage</code>, including interleaved writes to multiple
+     * open directives, consecutive directives with identical processors, and DOM fragments.
+     */
+    private static void writeMessage(ServerMessage serverMessage) {
+        serverMessage.setUserInstanceId("ui1");
+        serverMessage.setTransactionId(42);
+        serverMessage.addLibrary("Echo.Button");
+
+        XmlWriter localeOut = serverMessage.openDirective(ServerMessage.GROUP_ID_INIT, "AppSync", "locale");
+        localeOut.text("en-US");
+
+        XmlWriter upOut = serverMessage.openDirective(ServerMessage.GROUP_ID_UPDATE, "CSyncUp", "up");
+        upOut.setAttribute("r", "true");
+        upOut.startElement("c");
+        upOut.setAttribute("i", "C.1");
+        upOut.setAttribute("t", "CP");
+
+        XmlWriter rpOut = serverMessage.openDirective(ServerMessage.GROUP_ID_INIT, "CSyncUp", "rp");
+        XmlWriter rsOut = serverMessage.openDirective(ServerMessage.GROUP_ID_INIT, "CSyncUp", "rs");
+
+        Element pElement = serverMessage.getDocument().createElement("p");
+        pElement.setAttribute("n", "text");
+        pElement.appendChild(serverMessage.getDocument().createTextNode("<Tom & \"Jerry\">\n"));
+        upOut.append(pElement);
+
+        Element rpElement = serverMessage.getDocument().createElement("p");
+        rpElement.setAttribute("i", "0");
+        rpElement.setAttribute("t", "Border");
+        rpOut.append(rpElement);
+
+        rsOut.startElement("s");
+        rsOut.setAttribute("i", "0");
+        rsOut.endElement();
+
+        upOut.startElement("c");
+        upOut.setAttribute("i", "C.2");
+        upOut.setAttribute("t", "Label");
+        upOut.setAttribute("x", "3");
+        upOut.startElement("sr");
+        upOut.text("0");
+        upOut.endElement();
+        upOut.endElement();
+
+        upOut.endElement();
+
+        serverMessage.addLibrary("Echo.Button");
+        serverMessage.addLibrary("Echo.Label");
+
+        XmlWriter rmOut = serverMessage.openDirective(ServerMessage.GROUP_ID_UPDATE, "CSyncRm", "rm");
+        rmOut.setAttribute("i", "C.5");
+        rmOut.setAttribute("rm", "C.6,C.7");
+
+        XmlWriter focusOut = serverMessage.openDirective(ServerMessage.GROUP_ID_UPDATE, "CFocus", "focus");
+        focusOut.setAttribute("i", "C.2");
+
+        serverMessage.setAttribute("async-interval", "500");
+    }
+
+    /**
+     * Test that the streaming and DOM implementations produce equivalent output.
+     */
+    public void testEquivalence()
+    throws Exception {
+        ServerMessage domMessage = new ServerMessage();
+        writeMessage(domMessage);
+        ServerMessage streamingMessage = new StreamingServerMessage();
+        writeMessage(streamingMessage);
+        assertEquals(renderCanonical(domMessage), renderCanonical(streamingMessage));
+    }
+
+    /**
+     * Writes a component element with two child component elements, optionally rendering the children into
+     * fragments which are then appended.
+     */
+    private static void writeFragmentMessage(StreamingServerMessage serverMessage, boolean fragments) {
+        XmlWriter upOut = serverMessage.openDirective(ServerMessage.GROUP_ID_UPDATE, "CSyncUp", "up");
+        upOut.setAttribute("r", "true");
+        upOut.startElement("c");
+        upOut.setAttribute("i", "C.1");
+        upOut.startElement("sr");
+        upOut.text("0");
+        upOut.endElement();
+        for (int i = 2; i <= 3; ++i) {
+            XmlWriter childOut = fragments ? serverMessage.createFragmentWriter() : upOut;
+            childOut.startElement("c");
+            childOut.setAttribute("i", "C." + i);
+            childOut.startElement("c");
+            childOut.setAttribute("i", "C." + i + "0");
+            if (fragments) {
+                ((StreamXmlWriter) upOut).appendFragment((StreamXmlWriter) childOut);
+            } else {
+                childOut.endElement();
+                childOut.endElement();
+            }
+        }
+        upOut.endElement();
+    }
+
+    /**
+     * Test that content rendered into fragments is equivalent to content rendered directly.
+     */
+    public void testFragments()
+    throws Exception {
+        StreamingServerMessage directMessage = new StreamingServerMessage();
+        writeFragmentMessage(directMessage, false);
+        StreamingServerMessage fragmentMessage = new StreamingServerMessage();
+        writeFragmentMessage(fragmentMessage, true);
+        assertEquals(renderCanonical(directMessage), renderCanonical(fragmentMessage));
+    }
+
+    /**
+     * Test that both implementations report added libraries once each, in the order they were added.
+     */
+    public void testGetLibraries() {
+        ServerMessage domMessage = new ServerMessage();
+        writeMessage(domMessage);
+        ServerMessage streamingMessage = new StreamingServerMessage();
+        writeMessage(streamingMessage);
+        String[] expected = new String[] { "Echo.Button", "Echo.Label" };
+        assertTrue(Arrays.equals(expected, domMessage.getLibraries()));
+        assertTrue(Arrays.equals(expected, streamingMessage.getLibraries()));
+        assertEquals(0, new StreamingServerMessage().getLibraries().length);
+    }
+
+    /**
+     * Test rendering of a message without directives or libraries.
+     */
+    public void testEmpty()
+    throws Exception {
+        assertEquals(renderCanonical(new ServerMessage()), renderCanonical(new StreamingServerMessage()));
+    }
+
+    /**
+     * Test rendering of a null user instance id (as used by applications which allow only a single instance).
+     */
+    public void testNullUserInstanceId()
+    throws Exception {
+        ServerMessage domMessage = new ServerMessage();
+        domMessage.setUserInstanceId(null);
+        ServerMessage streamingMessage = new StreamingServerMessage();
+        streamingMessage.setUserInstanceId(null);
+        assertEquals(renderCanonical(domMessage), renderCanonical(streamingMessage));
+    }
+
+    /**
+     * Test rendering of the content hashes of libraries which are <code>ContentHashedService</code>s.
+     */
+    public void testLibraryContentHash()
+    throws Exception {
+        JavaScriptService libraryService = new JavaScriptService("Test.Library", "Test = { };");
+        ServiceRegistry services = new ServiceRegistry();
+        services.add(libraryService);
+        
+        ServerMessage domMessage = new ServerMessage();
+        domMessage.setLibraryServiceRegistry(services);
+        domMessage.addLibrary("Test.Library");
+        domMessage.addLibrary("Test.Unregistered");
+        ServerMessage streamingMessage = new StreamingServerMessage();
+        streamingMessage.setLibraryServiceRegistry(services);
+        streamingMessage.addLibrary("Test.Library");
+        streamingMessage.addLibrary("Test.Unregistered");
+        
+        String canonical = renderCanonical(domMessage);
+        assertEquals(canonical, renderCanonical(streamingMessage));
+        assertTrue(canonical.indexOf("<lib v=" + libraryService.getContentHash() + ">[Test.Library]</lib>") != -1);
+        assertTrue(canonical.indexOf("<lib>[Test.Unregistered]</lib>") != -1);
+    }
+
+    /**
+     * Writes identical content to a <code>ServerMessage</code> using the DOM-based directive methods, 
+     * interleaved with directives written by <code>openDirective()</code>.
+     */
+    private static void writeDomDirectiveMessage(ServerMessage serverMessage) {
+        XmlWriter upOut = serverMessage.openDirective(ServerMessage.GROUP_ID_UPDATE, "CSyncUp", "up");
+        upOut.setAttribute("r", "true");
+        
+        Element focusElement = serverMessage.addDirective(ServerMessage.GROUP_ID_UPDATE, "CFocus", "focus");
+        focusElement.setAttribute("i", "C.2");
+        
+        Element dirElement = serverMessage.addDirective(ServerMessage.GROUP_ID_UPDATE, "CSyncRm");
+        Element rmElement = serverMessage.getDocument().createElement("rm");
+        rmElement.setAttribute("i", "C.5");
+        dirElement.appendChild(rmElement);
+        
+        XmlWriter rmOut = serverMessage.openDirective(ServerMessage.GROUP_ID_UPDATE, "CSyncRm", "rm");
+        rmOut.setAttribute("i", "C.6");
+        
+        Element customElement = serverMessage.getDocument().createElement("dir");
+        customElement.setAttribute("proc", "Custom");
+        serverMessage.getPartGroup(ServerMessage.GROUP_ID_UPDATE).appendChild(customElement);
+        
+        Element commandElement = serverMessage.addDirective(ServerMessage.GROUP_ID_UPDATE, "Custom", "command");
+        commandElement.appendChild(serverMessage.getDocument().createTextNode("a < b"));
+
+        XmlWriter localeOut = serverMessage.openDirective(ServerMessage.GROUP_ID_INIT, "AppSync", "locale");
+        localeOut.text("en-US");
+        
+        upOut.startElement("c");
+        upOut.setAttribute("i", "C.1");
+        upOut.endElement();
+    }
+
+    /**
+     * Test that DOM-based directives are rendered equivalently by both implementations.
+     */
+    public void testDomDirectives()
+    throws Exception {
+        ServerMessage domMessage = new ServerMessage();
+        writeDomDirectiveMessage(domMessage);
+        ServerMessage streamingMessage = new StreamingServerMessage();
+        writeDomDirectiveMessage(streamingMessage);
+        String canonical = renderCanonical(domMessage);
+        assertEquals(canonical, renderCanonical(streamingMessage));
+        assertTrue(canonical.indexOf("<dir proc=CSyncRm><rm i=C.5></rm><rm i=C.6></rm></dir>") != -1);
+    }
+
+    /**
+     * Test that CDATA sections containing "]]>" are rendered as multiple well-formed sections.
+     */
+    public void testCDataSection()
+    throws Exception {
+        Document document = DomUtil.createDocument("p", null, null, null);
+        String data = "a]]>b]]]]>c]]>";
+        document.getDocumentElement().appendChild(document.createCDATASection(data));
+        StreamXmlWriter out = new StreamXmlWriter();
+        out.append(document.getDocumentElement());
+        
+        Document parsed = DomUtil.getDocumentBuilder().parse(new ByteArrayInputStream(out.toString().getBytes("UTF-8")));
+        StringBuffer text = new StringBuffer();
+        Node child = parsed.getDocumentElement().getFirstChild();
+        while (child != null) {
+            text.append(child.getNodeValue());
+            child = child.getNextSibling();
+        }
+        assertEquals(data, text.toString());
+    }
+}
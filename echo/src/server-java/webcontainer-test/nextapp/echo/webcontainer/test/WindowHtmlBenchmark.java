@@ -0,0 +1,150 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.webcontainer.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Properties;
+
+import javax.xml.transform.OutputKeys;
+
+import nextapp.echo.app.util.DomUtil;
+import nextapp.echo.webcontainer.service.WindowHtmlService;
+import nextapp.echo.webcontainer.util.DocumentTemplate;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Compares the time required to render a window bootstrap HTML document (as rendered by 
+ * <code>WindowHtmlService</code>) by creating and serializing a DOM for each request with that required to 
+ * write it from a <code>DocumentTemplate</code>.
+ * Invoke <code>main()</code> with optional script and iteration counts as arguments.
+ */
+public class WindowHtmlBenchmark {
+    
+    private static final String[] PLACEHOLDERS = new String[] { "EchoTemplateServletUri", "EchoTemplateInitId", 
+            "EchoTemplateDebug" };
+    
+    private static final Properties OUTPUT_PROPERTIES = new Properties();
+    static {
+        OUTPUT_PROPERTIES.setProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+        OUTPUT_PROPERTIES.putAll(DomUtil.OUTPUT_PROPERTIES_INDENT);
+        OUTPUT_PROPERTIES.setProperty(OutputKeys.DOCTYPE_PUBLIC, WindowHtmlService.XHTML_1_0_TRANSITIONAL_PUBLIC_ID);
+        OUTPUT_PROPERTIES.setProperty(OutputKeys.DOCTYPE_SYSTEM, WindowHtmlService.XHTML_1_0_TRANSITIONAL_SYSTEM_ID);
+    }
+    
+    /**
+     * Creates a document equivalent to that rendered by <code>WindowHtmlService</code>.
+     */
+    private static Document createDocument(String servletUri, String initId, String debug, int scripts) {
+        Document document = DomUtil.createDocument("html", WindowHtmlService.XHTML_1_0_TRANSITIONAL_PUBLIC_ID, 
+                WindowHtmlService.XHTML_1_0_TRANSITIONAL_SYSTEM_ID, WindowHtmlService.XHTML_1_0_NAMESPACE_URI);
+        Element htmlElement = document.getDocumentElement();
+        Element headElement = document.createElement("head");
+        htmlElement.appendChild(headElement);
+        
+        Element metaElement = document.createElement("meta");
+        metaElement.setAttribute("http-equiv", "Content-Type");
+        metaElement.setAttribute("content", "text/html; charset=utf-8");
+        headElement.appendChild(metaElement);
+        
+        Element titleElement = document.createElement("title");
+        titleElement.appendChild(document.createTextNode(" "));
+        headElement.appendChild(titleElement);
+        
+        for (int i = 0; i <= scripts; ++i) {
+            Element scriptElement = document.createElement("script");
+            scriptElement.appendChild(document.createTextNode(" "));
+            scriptElement.setAttribute("type", "text/javascript");
+            scriptElement.setAttribute("src", servletUri + "?sid=Script" + i + "&v=0123456789abcdef0123456789abcdef01234567");
+            headElement.appendChild(scriptElement);
+        }
+        
+        Element bodyElement = document.createElement("body");
+        bodyElement.setAttribute("id", "body");
+        bodyElement.setAttribute("onload", "Echo.Boot.boot('" + servletUri + "', '" + initId + "', " + debug + ");");
+        bodyElement.setAttribute("style", "height:100%;width:100%;margin:0px;padding:0px;" +
+                "font-family:verdana, arial, helvetica, sans-serif;font-size:10pt");
+        htmlElement.appendChild(bodyElement);
+        
+        Element rootDivElement = document.createElement("div");
+        rootDivElement.setAttribute("style", "position:absolute;width:100%;height:100%;");
+        rootDivElement.setAttribute("id", "approot");
+        bodyElement.appendChild(rootDivElement);
+        return document;
+    }
+    
+    /**
+     * Runs the benchmark for one rendering method.
+     */
+    private static void run(String name, boolean template, int scripts, int iterations)
+    throws Exception {
+        DocumentTemplate documentTemplate = null;
+        if (template) {
+            documentTemplate = new DocumentTemplate(createDocument(PLACEHOLDERS[0], PLACEHOLDERS[1], PLACEHOLDERS[2], 
+                    scripts), OUTPUT_PROPERTIES, PLACEHOLDERS);
+        }
+        int length = 0;
+        long startTime = System.nanoTime();
+        for (int i = 0; i < iterations; ++i) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            if (template) {
+                documentTemplate.write(out, new String[] { "/app/servlet", Integer.toString(i), "true" });
+            } else {
+                PrintWriter pw = new PrintWriter(new OutputStreamWriter(out, "UTF-8"));
+                DomUtil.save(createDocument("/app/servlet", Integer.toString(i), "true", scripts), pw, OUTPUT_PROPERTIES);
+                pw.flush();
+            }
+            length = out.size();
+        }
+        long averageMicros = (System.nanoTime() - startTime) / iterations / 1000;
+        System.out.println(name + ": " + length + " bytes, " + averageMicros + " us/document");
+    }
+    
+    /**
+     * Runs the benchmark.
+     * 
+     * @param args optional initialization script and iteration counts
+     */
+    public static void main(String[] args)
+    throws Exception {
+        int scripts = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+        
+        // Warm up.
+        run("DOM (warm-up)", false, scripts, iterations);
+        run("Template (warm-up)", true, scripts, iterations);
+        
+        run("DOM", false, scripts, iterations);
+        run("Template", true, scripts, iterations);
+    }
+}
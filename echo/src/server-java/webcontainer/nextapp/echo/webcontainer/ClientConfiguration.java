@@ -99,6 +99,20 @@ implements Serializable {
      */
     public static final String WAIT_INDICATOR_BACKGROUND = "WaitIndicator.Background";
 
+    /**
+     * Property name constant for the interval, in milliseconds, during which client events are collected
+     * into a single client-server synchronization.  Must be an <code>Integer</code> value.  
+     * Events are not batched if this value is not set or is not greater than zero.
+     */
+    public static final String SYNC_BATCH_INTERVAL = "Sync.BatchInterval";
+    
+    /**
+     * Property name constant for the maximum number of client events which may be batched into a single
+     * client-server synchronization.  Must be an <code>Integer</code> value.
+     * The synchronization is started immediately once this number of events have been collected.
+     */
+    public static final String SYNC_BATCH_SIZE = "Sync.BatchSize";
+
     /**
      * Mapping from property names to property values.
      */
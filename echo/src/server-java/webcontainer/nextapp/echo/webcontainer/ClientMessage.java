@@ -33,8 +33,13 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 import nextapp.echo.app.util.Context;
 import nextapp.echo.app.util.DomUtil;
+import nextapp.echo.webcontainer.util.XmlRequestParser;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -43,6 +48,11 @@ import org.w3c.dom.Element;
  * The incoming XML message which synchronizes the state of the server to that of the client.
  * Provides global facility to register processors to handle directive types.
  * Processes DOm and invokes registered processors on individual messages.
+ * <p>
+ * A message may alternatively be read from an <code>XMLStreamReader</code>, in which case directives are 
+ * dispatched to their processors as they are read, without building a DOM representation of the message.
+ * Directives whose processors do not implement <code>StreamProcessor</code> are individually converted to
+ * DOM elements.
  */
 public class ClientMessage {
     
@@ -64,6 +74,26 @@ public class ClientMessage {
         public void process(Context context, Element dirElement)
         throws IOException ;
     }
+    
+    /**
+     * A <code>Processor</code> which may additionally process a directive directly from an 
+     * <code>XMLStreamReader</code>, without requiring a DOM representation of the directive.
+     */
+    public static interface StreamProcessor 
+    extends Processor {
+        
+        /**
+         * Processes a client message directive.
+         * The reader is positioned at the start of the <code>&lt;dir&gt;</code> (directive) element, and
+         * must be left positioned at the end of that element when this method returns.
+         * 
+         * @param context the relevant <code>Context</code>
+         * @param dirReader the <code>XMLStreamReader</code>
+         * @throws IOException if the directive contains invalid information
+         */
+        public void process(Context context, XMLStreamReader dirReader)
+        throws IOException;
+    }
 
     /**
      * Mapping between <code>Processor</code> names and classes.
@@ -90,6 +120,9 @@ public class ClientMessage {
     /** The XML DOM. */
     private Document document;
     
+    /** The streaming reader from which directives are read, or null if the message was provided as a DOM. */
+    private XMLStreamReader reader;
+    
     /** The request type. */
     private String type;
     
@@ -124,8 +157,42 @@ public class ClientMessage {
         windowId = cmsg.hasAttribute("w") ? cmsg.getAttribute("w") : null;
     }
     
+    /**
+     * Creates a new <code>ClientMessage</code> which is read from a streaming XML reader.
+     * The message's attributes are read immediately, its directives are read by <code>process()</code>.
+     * 
+     * @param reader the <code>XMLStreamReader</code>, positioned at the start of the document element
+     * @throws IOException
+     */
+    public ClientMessage(XMLStreamReader reader) 
+    throws IOException {
+        super();
+        this.reader = reader;
+
+        // Retrieve message type, transaction id.
+        type = reader.getAttributeValue(null, "t");
+        initId = reader.getAttributeValue(null, "ii");
+        windowId = reader.getAttributeValue(null, "w");
+        try {
+            transactionId = Integer.parseInt(reader.getAttributeValue(null, "i"));
+        } catch (NumberFormatException ex) {
+            throw new SynchronizationException("Invalid transaction id.", ex);
+        }
+
+        // Create a DOM containing only the document element, to which directives provided to DOM-based
+        // processors will be added.
+        document = DomUtil.createDocument(reader.getLocalName(), null, null, null);
+        Element cmsg = document.getDocumentElement();
+        int attributeCount = reader.getAttributeCount();
+        for (int i = 0; i < attributeCount; ++i) {
+            cmsg.setAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+        }
+    }
+    
     /**
      * Returns the XML DOM received from the client.
+     * If the message is read from a streaming reader, the DOM contains only the document element 
+     * and any directives which have been processed by processors not implementing <code>StreamProcessor</code>.
      * 
      * @return the XML DOM
      */
@@ -179,24 +246,73 @@ public class ClientMessage {
      */
     public void process(Context context)
     throws IOException {
+        if (reader != null) {
+            processStream(context);
+            return;
+        }
+        
         Element[] dirElements = DomUtil.getChildElementsByTagName(document.getDocumentElement(), "dir");
         for (int i = 0; i < dirElements.length; ++i) {
-            String processorName = dirElements[i].getAttribute("proc");
-            
-            // Find processor class, first check local cache, then 
-            Class processorClass = (Class) processorNameToClass.get(processorName);
-            if (processorClass == null) {
-                throw new SynchronizationException("No processor exists for processor name: " + processorName, null);
+            Processor processor = createProcessor(dirElements[i].getAttribute("proc"));
+            processor.process(context, dirElements[i]);
+        }
+    }
+    
+    /**
+     * Processes the top-level directives of a <code>ClientMessage</code> which is read from a streaming reader,
+     * dispatching each directive to its processor as it is read.
+     * 
+     * @param context the <code>Context</code>
+     * @throws IOException
+     */
+    private void processStream(Context context)
+    throws IOException {
+        try {
+            while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                if (!"dir".equals(reader.getLocalName())) {
+                    XmlRequestParser.skipElement(reader);
+                    continue;
+                }
+                Processor processor = createProcessor(reader.getAttributeValue(null, "proc"));
+                if (processor instanceof StreamProcessor) {
+                    ((StreamProcessor) processor).process(context, reader);
+                } else {
+                    Element dirElement = XmlRequestParser.readElement(reader, document);
+                    document.getDocumentElement().appendChild(dirElement);
+                    processor.process(context, dirElement);
+                }
             }
-
+        } catch (XMLStreamException ex) {
+            throw new SynchronizationException("Cannot read client message.", ex);
+        } finally {
             try {
-                Processor processor = (Processor) processorClass.newInstance();
-                processor.process(context, dirElements[i]);
-            } catch (InstantiationException ex) {
-                throw new SynchronizationException("Cannot instantiate process class: " + processorClass.getName(), ex);
-            } catch (IllegalAccessException ex) {
-                throw new SynchronizationException("Cannot instantiate process class: " + processorClass.getName(), ex);
-            }
+                reader.close();
+            } catch (XMLStreamException ex) { }
+            reader = null;
+        }
+    }
+    
+    /**
+     * Creates a new instance of the <code>Processor</code> registered for a directive type.
+     * 
+     * @param processorName the processor name specified by the directive
+     * @return the created <code>Processor</code>
+     * @throws SynchronizationException if no processor is registered or it cannot be instantiated
+     */
+    private Processor createProcessor(String processorName) 
+    throws SynchronizationException {
+        // Find processor class, first check local cache, then 
+        Class processorClass = (Class) processorNameToClass.get(processorName);
+        if (processorClass == null) {
+            throw new SynchronizationException("No processor exists for processor name: " + processorName, null);
+        }
+
+        try {
+            return (Processor) processorClass.newInstance();
+        } catch (InstantiationException ex) {
+            throw new SynchronizationException("Cannot instantiate process class: " + processorClass.getName(), ex);
+        } catch (IllegalAccessException ex) {
+            throw new SynchronizationException("Cannot instantiate process class: " + processorClass.getName(), ex);
         }
     }
 }
@@ -30,18 +30,21 @@
 package nextapp.echo.webcontainer;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import nextapp.echo.app.Component;
 import nextapp.echo.app.serial.PropertyPeerFactory;
+import nextapp.echo.app.serial.SerialContext;
 import nextapp.echo.app.serial.SerialException;
 import nextapp.echo.app.serial.SerialPropertyPeer;
-import nextapp.echo.app.update.UpdateManager;
+import nextapp.echo.app.serial.StreamingSerialPropertyPeer;
 import nextapp.echo.app.util.Context;
 import nextapp.echo.app.util.DomUtil;
 import nextapp.echo.app.util.Log;
+import nextapp.echo.webcontainer.util.XmlRequestParser;
 
 import org.w3c.dom.Element;
 
@@ -51,178 +54,225 @@ import org.w3c.dom.Element;
  * client-side component hierarchy and passes them
  * to appropriate <code>ComponentSynchronizePeer</code>s
  * for processing.
+ * <p>
+ * Property updates are stored as they are read.  When the directive is read from a stream,
+ * properties whose peers implement <code>StreamingSerialPropertyPeer</code> are de-serialized
+ * directly from the stream.  The event which caused the synchronization is processed after all 
+ * property updates have been stored.
+ * <p>
+ * A client message may contain multiple component synchronization directives, each describing a
+ * client event and the property updates which preceded it, if the client batches events.  
+ * The directives are processed in order, each as a separate step.  Input for components which have 
+ * been removed from the hierarchy by a preceding step is ignored.
  */
 public class ComponentInputProcessor
-implements ClientMessage.Processor {
+implements ClientMessage.StreamProcessor {
     
-    private Map componentUpdateMap = new HashMap();
-    private String eventComponentId;
-    private Element eventElement;
-    private String eventType;
+    private Context context;
+    private UserInstance userInstance;
+    private PropertyPeerFactory propertyPeerFactory;
+
+    /** The id of the most recently updated component. */
+    private String componentId;
     
-    /**
-     * Returns the event element of the event that resulted in the client-server interaction.
-     * 
-     * @return the event element
-     */
-    private Element getEvent() {
-        return eventElement;
-    }
+    /** The most recently updated component. */
+    private Component component;
     
-    /**
-     * Returns the id of the component that fired the event that resulted in the client-server interaction.
-     * 
-     * @return the event component id
-     */
-    private String getEventComponentId() {
-        return eventComponentId;
-    }
-
-    /**
-     * Returns the event type.
-     * 
-     * @return the event type
-     */
-    private String getEventType() {
-        return eventType;
-    }
+    /** The synchronization peer of the most recently updated component. */
+    private ComponentSynchronizePeer componentPeer;
+    
+    /** The event element of the event that resulted in the client-server interaction. */
+    private Element eventElement;
     
     /**
-     * Returns the ids of all updated components.
+     * Prepares to process a directive.
      * 
-     * @return the ids of all updated components.
+     * @param context the relevant <code>Context</code>
      */
-    private Iterator getUpdatedComponentIds() {
-        return componentUpdateMap.keySet().iterator(); 
+    private void begin(Context context) {
+        this.context = context;
+        userInstance = (UserInstance) context.get(UserInstance.class);
+        userInstance.prepareApplicationInstance();
+        
+        // Discard client updates processed by a preceding step of a batched message.
+        userInstance.getUpdateManager().purgeClientUpdates();
+        
+        propertyPeerFactory = (PropertyPeerFactory) context.get(PropertyPeerFactory.class);
     }
     
     /**
-     * Returns the "p" element of a specific updated property of a specific component
-     * 
-     * @param componentId the id of the component
-     * @param propertyName the name of the property
-     * @return the property element
+     * Completes processing of a directive, processing the event which caused the client-server 
+     * synchronization request, if applicable, and then the stored client updates.
      */
-    private Element getUpdatedProperty(String componentId, String propertyName) {
-        Map propertyMap = (Map) componentUpdateMap.get(componentId);
-        return (Element) propertyMap.get(propertyName);
+    private void end() 
+    throws IOException {
+        if (eventElement != null) {
+            processEvent();
+        }
+        userInstance.getApplicationInstance().getUpdateManager().processClientUpdates();
     }
     
     /**
-     * Returns the names of updated properties for a specific component.
+     * Retrieves the peer which should be used to de-serialize an updated property, retrieving the
+     * updated component and its synchronization peer if they were not used by the previous update.
      * 
      * @param componentId the id of the component
-     * @return the updated property names
+     * @param propertyName the name of the property
+     * @return the property peer, or null if the property should be ignored
      */
-    private Iterator getUpdatedPropertyNames(String componentId) {
-        Map propertyMap = (Map) componentUpdateMap.get(componentId);
-        return propertyMap.keySet().iterator();
+    private SerialPropertyPeer getPropertyPeer(String componentId, String propertyName) {
+        if (!componentId.equals(this.componentId)) {
+            component = userInstance.getComponentByClientRenderId(componentId);
+            componentPeer = component == null ? null : SynchronizePeerFactory.getPeerForComponent(component.getClass());
+            this.componentId = componentId;
+        }
+        if (component == null) {
+            // Ignore property of unregistered component.
+            return null;
+        }
+
+        Class propertyClass = componentPeer.getInputPropertyClass(propertyName);
+        if (propertyClass == null) {
+            // Ignore property.
+            return null;
+        }
+        
+        // Retrieve peer for property class.
+        SerialPropertyPeer propertyPeer = propertyPeerFactory.getPeerForProperty(propertyClass);
+        
+        if (propertyPeer == null) {
+            // Property peer not available, log error, continue.
+            Log.log("No peer available for property: " + propertyName + " of class: " + propertyClass);
+        }
+        return propertyPeer;
     }
     
     /**
-     * Parses the component synchronize directive element, storing
-     * necessary values in instance variables for later processing.
-     * 
-     * @param dirElement the "dir" element to parse
+     * @see nextapp.echo.webcontainer.ClientMessage.Processor#process(nextapp.echo.app.util.Context, org.w3c.dom.Element)
      */
-    private void parseDirElement(Element dirElement) {
-        // Retrieve event.
-        eventElement = DomUtil.getChildElementByTagName(dirElement, "e");
-        if (eventElement != null) {
-            eventType = eventElement.getAttribute("t");
-            eventComponentId = eventElement.getAttribute("i");
-        }
+    public void process(Context context, Element dirElement) 
+    throws IOException {
+        begin(context);
         
-        // Retrieve property updates.
+        // Process property updates.
         Element[] pElements = DomUtil.getChildElementsByTagName(dirElement, "p");
         for (int i = 0; i < pElements.length; ++i) {
-            String componentId = pElements[i].getAttribute("i");
             String propertyName = pElements[i].getAttribute("n");
-        
-            Map propertyMap = (Map) componentUpdateMap.get(componentId);
-            if (propertyMap == null) {
-                propertyMap = new HashMap();
-                componentUpdateMap.put(componentId, propertyMap);
+            SerialPropertyPeer propertyPeer = getPropertyPeer(pElements[i].getAttribute("i"), propertyName);
+            if (propertyPeer == null) {
+                continue;
+            }
+            try {
+                storeInputProperty(propertyName, propertyPeer.toProperty(context, component.getClass(), pElements[i]));
+            } catch (SerialException ex) {
+                throw new SynchronizationException("Unable to store input property: " + propertyName, ex);
             }
-            
-            propertyMap.put(propertyName, pElements[i]);
         }
+
+        // Retrieve event.
+        eventElement = DomUtil.getChildElementByTagName(dirElement, "e");
+        
+        end();
     }
     
     /**
-     * @see nextapp.echo.webcontainer.ClientMessage.Processor#process(nextapp.echo.app.util.Context, org.w3c.dom.Element)
+     * @see nextapp.echo.webcontainer.ClientMessage.StreamProcessor#process(nextapp.echo.app.util.Context, 
+     *      javax.xml.stream.XMLStreamReader)
      */
-    public void process(Context context, Element dirElement) 
+    public void process(Context context, XMLStreamReader dirReader)
     throws IOException {
-        parseDirElement(dirElement);
-        
-        UserInstance userInstance = (UserInstance) context.get(UserInstance.class);
-        userInstance.prepareApplicationInstance();
+        begin(context);
         
-        PropertyPeerFactory propertyPeerFactory = (PropertyPeerFactory) context.get(PropertyPeerFactory.class);
-        UpdateManager updateManager = userInstance.getApplicationInstance().getUpdateManager();
-
-        Iterator updatedComponentIdIt  = getUpdatedComponentIds();
-        while (updatedComponentIdIt.hasNext()) {
-            String componentId = (String) updatedComponentIdIt.next();
-            Component component = userInstance.getComponentByClientRenderId(componentId);
-            ComponentSynchronizePeer componentPeer = SynchronizePeerFactory.getPeerForComponent(component.getClass());
-            
-            // Process updated properties.
-            Iterator updatedPropertyIt = getUpdatedPropertyNames(componentId);
-            while (updatedPropertyIt.hasNext()) {
-                String propertyName = (String) updatedPropertyIt.next();
-                Element propertyElement = getUpdatedProperty(componentId, propertyName);
-
-                Class propertyClass = componentPeer.getInputPropertyClass(propertyName);
-                if (propertyClass == null) {
-                    // Ignore property.
-                    continue;
-                }
-                
-                // Retrieve peer for property class.
-                SerialPropertyPeer propertyPeer = propertyPeerFactory.getPeerForProperty(propertyClass);
-                
-                if (propertyPeer == null) {
-                    // Property peer not available, log error, continue.
-                    Log.log("No peer available for property: " + propertyName + " of class: " + propertyClass);
-                    continue;
-                }
-                
-                try {
-                    // Invoke storeInputProperty() method on component peer.
-                    Object propertyValue = propertyPeer.toProperty(context, component.getClass(), propertyElement);
-                    componentPeer.storeInputProperty(context, component, propertyName, -1, propertyValue);
-                } catch (SerialException ex) {
-                    throw new SynchronizationException(
-                            "Unable to store input property: " + propertyName + " of class: " + propertyClass, ex);
+        try {
+            while (dirReader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                String name = dirReader.getLocalName();
+                if ("p".equals(name)) {
+                    processProperty(dirReader);
+                } else if ("e".equals(name)) {
+                    // Retain event for processing after property updates.
+                    SerialContext serialContext = (SerialContext) context.get(SerialContext.class);
+                    eventElement = XmlRequestParser.readElement(dirReader, serialContext.getDocument());
+                } else {
+                    XmlRequestParser.skipElement(dirReader);
                 }
             }
+        } catch (XMLStreamException ex) {
+            throw new SynchronizationException("Cannot read component synchronization directive.", ex);
         }
         
-        // Process event which caused client-server synchronization request, if applicable.
-        if (getEvent() != null) {
-            Component component = userInstance.getComponentByClientRenderId(getEventComponentId());
-            ComponentSynchronizePeer componentPeer = SynchronizePeerFactory.getPeerForComponent(component.getClass());
-            Class eventDataClass = componentPeer.getEventDataClass(getEventType());
-            if (eventDataClass == null) {
-                componentPeer.processEvent(context, component, getEventType(), null);
+        end();
+    }
+    
+    /**
+     * Processes the event which caused the client-server synchronization request.
+     */
+    private void processEvent() 
+    throws IOException {
+        String eventType = eventElement.getAttribute("t");
+        Component component = userInstance.getComponentByClientRenderId(eventElement.getAttribute("i"));
+        if (component == null) {
+            // Ignore event of unregistered component.
+            return;
+        }
+        ComponentSynchronizePeer componentPeer = SynchronizePeerFactory.getPeerForComponent(component.getClass());
+        Class eventDataClass = componentPeer.getEventDataClass(eventType);
+        if (eventDataClass == null) {
+            componentPeer.processEvent(context, component, eventType, null);
+        } else {
+            SerialPropertyPeer propertyPeer = propertyPeerFactory.getPeerForProperty(eventDataClass);
+            if (propertyPeer == null) {
+                Log.log("No peer available for event data for event type: " + eventType 
+                        + " of class: " + eventDataClass);
+            }
+            try {
+                Object eventData = propertyPeer.toProperty(context, component.getClass(), eventElement);
+                componentPeer.processEvent(context, component, eventType, eventData);
+            } catch (SerialException ex) {
+                throw new SynchronizationException(
+                        "Unable to store event data for event type: " + eventType + " of class: " + eventDataClass, ex);
+            }
+        }
+    }
+    
+    /**
+     * Processes a property update read from a stream.  
+     * The reader is positioned at the start of the &lt;p&gt; element, and is left positioned at its end.
+     * 
+     * @param propertyReader the <code>XMLStreamReader</code>
+     */
+    private void processProperty(XMLStreamReader propertyReader) 
+    throws IOException {
+        String propertyName = propertyReader.getAttributeValue(null, "n");
+        SerialPropertyPeer propertyPeer = getPropertyPeer(propertyReader.getAttributeValue(null, "i"), propertyName);
+        if (propertyPeer == null) {
+            XmlRequestParser.skipElement(propertyReader);
+            return;
+        }
+        
+        try {
+            Object propertyValue;
+            if (propertyPeer instanceof StreamingSerialPropertyPeer) {
+                propertyValue = ((StreamingSerialPropertyPeer) propertyPeer).toProperty(context, component.getClass(), 
+                        propertyReader);
             } else {
-                SerialPropertyPeer propertyPeer = propertyPeerFactory.getPeerForProperty(eventDataClass);
-                if (propertyPeer == null) {
-                    Log.log("No peer available for event data for event type: " + getEventType() 
-                            + " of class: " + eventDataClass);
-                }
-                try {
-                    Object eventData = propertyPeer.toProperty(context, component.getClass(), getEvent());
-                    componentPeer.processEvent(context, component, getEventType(), eventData);
-                } catch (SerialException ex) {
-                    throw new SynchronizationException(
-                            "Unable to store event data for event type: " + getEventType() + " of class: " + eventDataClass, ex);
-                }
+                SerialContext serialContext = (SerialContext) context.get(SerialContext.class);
+                Element propertyElement = XmlRequestParser.readElement(propertyReader, serialContext.getDocument());
+                propertyValue = propertyPeer.toProperty(context, component.getClass(), propertyElement);
             }
+            storeInputProperty(propertyName, propertyValue);
+        } catch (SerialException ex) {
+            throw new SynchronizationException("Unable to store input property: " + propertyName, ex);
         }
-
-        updateManager.processClientUpdates();
+    }
+    
+    /**
+     * Stores an updated property value of the most recently updated component by invoking the 
+     * <code>storeInputProperty()</code> method of its synchronization peer.
+     * 
+     * @param propertyName the name of the property
+     * @param propertyValue the property value
+     */
+    private void storeInputProperty(String propertyName, Object propertyValue) {
+        componentPeer.storeInputProperty(context, component, propertyName, -1, propertyValue);
     }
 }
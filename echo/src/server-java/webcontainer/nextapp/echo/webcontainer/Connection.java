@@ -31,6 +31,7 @@ package nextapp.echo.webcontainer;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.util.HashMap;
 import java.util.Map;
@@ -40,6 +41,8 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 
+import nextapp.echo.webcontainer.util.CompressingOutputStream;
+import nextapp.echo.webcontainer.util.DeflaterPool;
 
 /**
  * A representation of a connection to the server by the client, encapsulating
@@ -54,6 +57,23 @@ public class Connection {
      * Prefix to use for <code>UserInstanceContainer</code> <code>HttpSession</code> keys.
      */
     private static final String USER_INSTANCE_CONTAINER_SESSION_KEY_PREFIX = "EchoUserInstanceContainer";
+    
+    /**
+     * Maximum number of idle <code>Deflater</code>s retained by each <code>DeflaterPool</code>.
+     */
+    private static final int MAXIMUM_IDLE_DEFLATERS = 16;
+    
+    /**
+     * Pool of <code>Deflater</code>s used for GZip-compressed responses.
+     */
+    private static final DeflaterPool GZIP_DEFLATER_POOL 
+            = new DeflaterPool(WebContainerServlet.COMPRESSION_LEVEL, true, MAXIMUM_IDLE_DEFLATERS);
+    
+    /**
+     * Pool of <code>Deflater</code>s used for deflate-compressed responses.
+     */
+    private static final DeflaterPool DEFLATE_DEFLATER_POOL 
+            = new DeflaterPool(WebContainerServlet.COMPRESSION_LEVEL, false, MAXIMUM_IDLE_DEFLATERS);
 
     private HttpServletRequest request;
     private HttpServletResponse response;
@@ -62,6 +82,8 @@ public class Connection {
     private UserInstanceContainer userInstanceContainer;
     private Map propertyMap;
     private String uiid;
+    private CompressingOutputStream compressedOut;
+    private PrintWriter compressedWriter;
     
     /**
      * Creates a <code>connection</code> object that will handle the given 
@@ -111,6 +133,86 @@ public class Connection {
         }
     }
 
+    /**
+     * Completes the response, finishing compressed output if required.
+     * Invoked by the <code>WebContainerServlet</code> after a <code>Service</code> has been processed.
+     * 
+     * @throws IOException
+     */
+    void finish() 
+    throws IOException {
+        if (compressedWriter != null) {
+            compressedWriter.flush();
+        }
+        if (compressedOut != null) {
+            compressedOut.close();
+        }
+    }
+
+    /**
+     * Releases the compressed output of a response which has not been finished, e.g., because 
+     * the <code>Service</code> failed, discarding its content.  Has no effect if the response 
+     * has been finished.
+     * Invoked by the <code>WebContainerServlet</code> after a <code>Service</code> has been processed.
+     */
+    void release() {
+        if (compressedOut != null) {
+            compressedOut.abort();
+        }
+    }
+
+    /**
+     * Returns an <code>OutputStream</code> which may be used to generate a response
+     * that will be compressed if the client accepts a supported content encoding and
+     * the response exceeds <code>WebContainerServlet.COMPRESSION_THRESHOLD</code> bytes.
+     * The uncompressed <code>OutputStream</code> from <code>getOutputStream()</code> is returned
+     * if compression is not possible.
+     * This method may be called once, in place of <code>getOutputStream()</code>.
+     * The stream should not be closed; it is finished after the service has completed.
+     * 
+     * @return the <code>OutputStream</code>
+     */
+    public OutputStream getCompressedOutputStream() {
+        if (compressedOut == null) {
+            String encoding = WebContainerServlet.COMPRESSION_THRESHOLD < 0 ? null
+                    : CompressingOutputStream.selectEncoding(request.getHeader("accept-encoding"));
+            if (encoding == null) {
+                return getOutputStream();
+            }
+            compressedOut = new CompressingOutputStream(response, encoding, 
+                    CompressingOutputStream.ENCODING_GZIP.equals(encoding) ? GZIP_DEFLATER_POOL : DEFLATE_DEFLATER_POOL, 
+                    WebContainerServlet.COMPRESSION_THRESHOLD);
+        }
+        return compressedOut;
+    }
+    
+    /**
+     * Returns a <code>PrintWriter</code> which may be used to generate a response
+     * that will be compressed if the client accepts a supported content encoding and
+     * the response exceeds <code>WebContainerServlet.COMPRESSION_THRESHOLD</code> bytes.
+     * The uncompressed <code>PrintWriter</code> from <code>getWriter()</code> is returned
+     * if compression is not possible.
+     * This method may be called once, in place of <code>getWriter()</code>, and must be called
+     * after the content type has been set, such that the character encoding is known.
+     * The writer should not be closed; it is finished after the service has completed.
+     * 
+     * @return the <code>PrintWriter</code>
+     */
+    public PrintWriter getCompressedWriter() {
+        if (compressedWriter == null) {
+            OutputStream out = getCompressedOutputStream();
+            if (compressedOut == null) {
+                return getWriter();
+            }
+            try {
+                compressedWriter = new PrintWriter(new OutputStreamWriter(out, response.getCharacterEncoding()));
+            } catch (IOException ex) {
+                throw new WebContainerServletException("Unable to get PrintWriter.", ex);
+            }
+        }
+        return compressedWriter;
+    }
+    
     /**
      * Returns the <code>OutputStream</code> object that may be used to 
      * generate a response.  This method may be called once.  If it is called, 
@@ -197,10 +299,8 @@ public class Connection {
             return null;
         }
         
-        synchronized(userInstanceContainer) {
-            if (userInstance == null && windowId != null) {
-                userInstance = userInstanceContainer.loadUserInstance(windowId, initId);
-            }
+        if (userInstance == null && windowId != null) {
+            userInstance = userInstanceContainer.loadUserInstance(windowId, initId);
         }
         
         return userInstance;
@@ -31,7 +31,8 @@ package nextapp.echo.webcontainer;
 
 import java.io.IOException;
 
-import org.w3c.dom.Document;
+import javax.xml.stream.XMLStreamReader;
+
 import org.xml.sax.SAXException;
 
 import nextapp.echo.app.update.ClientUpdateManager;
@@ -100,8 +101,16 @@ public class InputProcessor {
         super();
         this.syncState = syncState;
         this.conn = conn;
-        Document document = XmlRequestParser.parse(conn.getRequest(), conn.getUserInstanceContainer().getCharacterEncoding());        
-        clientMessage = new ClientMessage(document);
+        String characterEncoding = conn.getUserInstanceContainer().getCharacterEncoding();
+        
+        // Read the message as a stream, unless it must be printed to the console in its entirety.
+        XMLStreamReader reader = WebContainerServlet.DEBUG_PRINT_MESSAGES_TO_CONSOLE 
+                ? null : XmlRequestParser.createReader(conn.getRequest(), characterEncoding);
+        if (reader == null) {
+            clientMessage = new ClientMessage(XmlRequestParser.parse(conn.getRequest(), characterEncoding));
+        } else {
+            clientMessage = new ClientMessage(reader);
+        }
     }
     
     /**
@@ -30,20 +30,23 @@
 package nextapp.echo.webcontainer;
 
 import java.io.IOException;
-import java.util.HashMap;
+import java.io.PrintWriter;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Locale;
-import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.Map.Entry;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 import nextapp.echo.app.ApplicationInstance;
 import nextapp.echo.app.Command;
 import nextapp.echo.app.Component;
 import nextapp.echo.app.ContentPane;
+import nextapp.echo.app.MutableStyleSheet;
 import nextapp.echo.app.Style;
 import nextapp.echo.app.StyleSheet;
 import nextapp.echo.app.Window;
@@ -52,23 +55,108 @@ import nextapp.echo.app.reflect.IntrospectorFactory;
 import nextapp.echo.app.serial.PropertyPeerFactory;
 import nextapp.echo.app.serial.SerialException;
 import nextapp.echo.app.serial.SerialPropertyPeer;
+import nextapp.echo.app.serial.StreamingSerialPropertyPeer;
 import nextapp.echo.app.update.ServerComponentUpdate;
 import nextapp.echo.app.update.ServerUpdateManager;
 import nextapp.echo.app.util.Context;
 import nextapp.echo.app.util.DomUtil;
 import nextapp.echo.app.util.Log;
+import nextapp.echo.app.util.XmlWriter;
+import nextapp.echo.webcontainer.service.BundleService;
+import nextapp.echo.webcontainer.util.ContentHash;
+import nextapp.echo.webcontainer.util.StreamXmlWriter;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
 import org.xml.sax.SAXException;
 
 /**
  * Generates an XML <code>ServerMessage</code> describing server-side changes to the
  * state of an application that is returned to the remote client as a response
  * to its synchronization HTTP connection.
+ * <p>
+ * Output is written through <code>XmlWriter</code>s obtained from the <code>ServerMessage</code>.
+ * By default a <code>StreamingServerMessage</code> is used, such that no DOM is built for the
+ * message as a whole.  The DOM-based <code>ServerMessage</code> is used if
+ * <code>WebContainerServlet.DOM_SERVER_MESSAGE</code> is set.
+ * <p>
+ * When the full component hierarchy is rendered to a streaming message and a parallel rendering threshold is
+ * set (see <code>WebContainerServlet.getParallelRenderingThreshold()</code>), sibling child hierarchies containing
+ * at least that many visible components are rendered concurrently into separate fragments by child
+ * <code>OutputProcessor</code>s, which are then appended to the message in component order.  The referenced
+ * property and style directives are shared by all processors of a message, and are guarded by the root
+ * processor's lock.
+ * <p>
+ * Definitions of referenced properties and styles are retained by the client between synchronizations.  The
+ * <code>ReferenceCache</code> of the <code>UserInstance</code> records which definitions are present on the
+ * client, such that they are rendered only once.
  */
 class OutputProcessor {
     
+    /** The pool on which child hierarchies are rendered concurrently, lazily created. */
+    private static ForkJoinPool renderPool;
+    
+    /**
+     * Returns the pool on which child hierarchies are rendered concurrently, creating it if necessary.
+     * 
+     * @return the pool
+     */
+    private static synchronized ForkJoinPool getRenderPool() {
+        if (renderPool == null) {
+            renderPool = new ForkJoinPool();
+        }
+        return renderPool;
+    }
+    
+    /**
+     * Shuts down the pool on which child hierarchies are rendered concurrently, if it has been created.
+     * A new pool will be created if parallel rendering is subsequently required.
+     * Invoked when the <code>WebContainerServlet</code> is destroyed.
+     */
+    static synchronized void shutdownRenderPool() {
+        if (renderPool != null) {
+            renderPool.shutdown();
+            renderPool = null;
+        }
+    }
+    
+    /**
+     * Returns the number of visible components in a hierarchy (including its root), counting no further than 
+     * a specified limit.
+     * 
+     * @param c the root component of the hierarchy
+     * @param limit the limit
+     * @return the number of visible components, or <code>limit</code> if the hierarchy contains at least
+     *         that many
+     */
+    private static int getVisibleComponentCount(Component c, int limit) {
+        int count = 1;
+        int childCount = c.getVisibleComponentCount();
+        for (int i = 0; i < childCount && count < limit; ++i) {
+            count += getVisibleComponentCount(c.getVisibleComponent(i), limit - count);
+        }
+        return Math.min(count, limit);
+    }
+    
+    /**
+     * Rethrows the <code>SerialException</code> which caused a concurrent rendering task to fail, if any.
+     * 
+     * @param ex the exception thrown by the task
+     * @throws SerialException the <code>SerialException</code>, if <code>ex</code> was caused by one
+     */
+    private static void rethrowSerialException(RuntimeException ex) 
+    throws SerialException {
+        Throwable cause = ex.getCause();
+        while (cause != null) {
+            if (cause instanceof SerialException) {
+                throw (SerialException) cause;
+            }
+            cause = cause.getCause();
+        }
+    }
+    
     /**
      * Returns the client locale string for the specified <code>Locale</code> object.
      * The client locale contains the language first, and if set, the country code with a preceding hyphen.
@@ -87,6 +175,59 @@ class OutputProcessor {
         }
     }
    
+    /**
+     * A task which renders the full state of a child hierarchy into a fragment, using a child
+     * <code>OutputProcessor</code>.  The thread-specific state of the rendering thread (active
+     * <code>ApplicationInstance</code> and <code>Connection</code>, context class loader) is established while
+     * the task executes.
+     */
+    private class RenderTask extends RecursiveTask {
+        
+        /** Serial Version UID. */
+        private static final long serialVersionUID = 20070101L;
+        
+        /** The root component of the child hierarchy. */
+        private Component component;
+        
+        /**
+         * Creates a new <code>RenderTask</code>.
+         * 
+         * @param component the root component of the child hierarchy
+         */
+        RenderTask(Component component) {
+            super();
+            this.component = component;
+        }
+        
+        /**
+         * Renders the child hierarchy.
+         * 
+         * @return the fragment <code>StreamXmlWriter</code> containing the rendered component element
+         * @see java.util.concurrent.RecursiveTask#compute()
+         */
+        protected Object compute() {
+            Thread thread = Thread.currentThread();
+            ClassLoader oldClassLoader = thread.getContextClassLoader();
+            ApplicationInstance oldApplicationInstance = ApplicationInstance.getActive();
+            Connection oldConnection = WebContainerServlet.getActiveConnection();
+            try {
+                thread.setContextClassLoader(classLoader);
+                ApplicationInstance.setActive(userInstance.getApplicationInstance());
+                WebContainerServlet.setActiveConnection(conn);
+                
+                StreamXmlWriter fragmentOut = ((StreamingServerMessage) serverMessage).createFragmentWriter();
+                new OutputProcessor(OutputProcessor.this).renderComponentState(fragmentOut, component, -1);
+                return fragmentOut;
+            } catch (SerialException ex) {
+                throw new RuntimeException(ex);
+            } finally {
+                WebContainerServlet.setActiveConnection(oldConnection);
+                ApplicationInstance.setActive(oldApplicationInstance);
+                thread.setContextClassLoader(oldClassLoader);
+            }
+        }
+    }
+    
     /**
      * <code>Context</code> implementation.
      */
@@ -119,15 +260,24 @@ class OutputProcessor {
     private Context context;
     private PropertyPeerFactory propertyPeerFactory;
     private Document document;
-    private int nextPropertyKey = 0;
-    private Map propertyValueToKeyMap = null;
-    private int nextStyleKey = 0;
-    private Map styleValueToKeyMap = null;
-    private Element rpElement;
-    private Element rsElement;
+    private ReferenceCache referenceCache;
+    private XmlWriter rpOut;
+    private XmlWriter rsOut;
     private SynchronizationState syncState;
     
     private ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+    
+    /** 
+     * The root <code>OutputProcessor</code> of the message, which stores referenced properties and styles
+     * (this processor, unless it is rendering a child hierarchy concurrently). 
+     */
+    private OutputProcessor root;
+    
+    /** 
+     * The minimum number of visible components of a child hierarchy for it to be rendered concurrently,
+     * or zero if child hierarchies should not be rendered concurrently.
+     */
+    private int parallelThreshold = 0;
 
     /**
      * Creates a new <code>OutputProcessor</code>.
@@ -139,12 +289,38 @@ class OutputProcessor {
         super();
         this.syncState = syncState;
         this.conn = conn;
-        serverMessage = new ServerMessage();
+        userInstance = conn.getUserInstance();
+        serverMessage = WebContainerServlet.DOM_SERVER_MESSAGE ? new ServerMessage() : new StreamingServerMessage();
+        serverMessage.setLibraryServiceRegistry(WebContainerServlet.getServiceRegistry());
         document = serverMessage.getDocument();
         context = new OutputContext();
-        userInstance = conn.getUserInstance();
         serverUpdateManager = userInstance.getUpdateManager().getServerUpdateManager();
         propertyPeerFactory = PropertySerialPeerFactory.forClassLoader(classLoader);
+        referenceCache = userInstance.getReferenceCache();
+        root = this;
+    }
+    
+    /**
+     * Creates a new child <code>OutputProcessor</code>, which renders a child hierarchy into the server message of
+     * a parent processor concurrently.  The child processor uses its own <code>Document</code> and
+     * <code>Context</code>.
+     * 
+     * @param parent the parent <code>OutputProcessor</code>
+     */
+    private OutputProcessor(OutputProcessor parent) {
+        super();
+        root = parent.root;
+        syncState = parent.syncState;
+        conn = parent.conn;
+        userInstance = parent.userInstance;
+        serverMessage = parent.serverMessage;
+        serverUpdateManager = parent.serverUpdateManager;
+        propertyPeerFactory = parent.propertyPeerFactory;
+        referenceCache = parent.referenceCache;
+        classLoader = parent.classLoader;
+        parallelThreshold = parent.parallelThreshold;
+        document = DomUtil.getDocumentBuilder().newDocument();
+        context = new OutputContext();
     }
         
     /**
@@ -160,34 +336,48 @@ class OutputProcessor {
         }
         
         try {
-            // Render output to server message DOM.
-            if (serverUpdateManager.isFullRefreshRequired()) {
+            // Render output to server message.
+            boolean fullRefresh = serverUpdateManager.isFullRefreshRequired();
+            if (fullRefresh) {
+                referenceCache.beginMessage(true);
                 renderApplicationFull();
                 renderComponentsFull();
             } else {
+                referenceCache.beginMessage(false);
                 renderApplicationIncremental();
                 renderComponentsIncremental();
             }
             renderCommands();
             renderFocus();
             renderAsyncState();
+            renderReferenceDiscard();
+            if (fullRefresh && WebContainerServlet.BOOT_BUNDLE_ENABLED) {
+                // Predict the libraries of the first screen for subsequently booted clients.
+                BundleService.recordLibraries(conn.getServlet(), serverMessage.getLibraries());
+            }
         } catch (SerialException ex) {
             throw new SynchronizationException("Cannot serialize server state.", ex);
         }
         
         try {
-            // Render DOM to <code>PrintWriter</code>.
+            // Render message to <code>PrintWriter</code>.
             conn.setContentType(ContentType.TEXT_XML);
-            DomUtil.save(serverMessage.getDocument(), conn.getWriter(), null);
+            serverMessage.render(conn.getCompressedWriter());
         } catch (SAXException ex) {
             throw new SynchronizationException("Cannot serialize server state.", ex);
         }
         
         if (WebContainerServlet.DEBUG_PRINT_MESSAGES_TO_CONSOLE) {
-            // Print ServerMessage DOM to console. 
+            // Print ServerMessage to console. 
             try {
                 System.err.println("======== Response: " + userInstance.getCurrentTransactionId() + " ========");
-                DomUtil.save(document, System.err, DomUtil.OUTPUT_PROPERTIES_INDENT);
+                if (serverMessage instanceof StreamingServerMessage) {
+                    PrintWriter consoleWriter = new PrintWriter(System.err);
+                    serverMessage.render(consoleWriter);
+                    consoleWriter.flush();
+                } else {
+                    DomUtil.save(document, System.err, DomUtil.OUTPUT_PROPERTIES_INDENT);
+                }
                 System.err.println();
             } catch (SAXException ex) {
                 // Should not generally occur.
@@ -213,12 +403,10 @@ class OutputProcessor {
         // Clear User Instance updated property names.
         userInstance.getUpdatedPropertyNames();
         
-        Element localeElement = serverMessage.addDirective(ServerMessage.GROUP_ID_INIT, "AppSync", "locale");
-        localeElement.appendChild(document.createTextNode(getClientLocaleString(
-                userInstance.getApplicationInstance().getLocale())));
-        Element layoutDirElement = serverMessage.addDirective(ServerMessage.GROUP_ID_INIT, "AppSync", "dir");
-        layoutDirElement.appendChild(document.createTextNode(
-                userInstance.getApplicationInstance().getLayoutDirection().isLeftToRight() ? "ltr" : "rtl"));
+        XmlWriter localeOut = serverMessage.openDirective(ServerMessage.GROUP_ID_INIT, "AppSync", "locale");
+        localeOut.text(getClientLocaleString(userInstance.getApplicationInstance().getLocale()));
+        XmlWriter layoutDirOut = serverMessage.openDirective(ServerMessage.GROUP_ID_INIT, "AppSync", "dir");
+        layoutDirOut.text(userInstance.getApplicationInstance().getLayoutDirection().isLeftToRight() ? "ltr" : "rtl");
         renderClientConfiguration();
     }
     
@@ -233,7 +421,7 @@ class OutputProcessor {
             if (UserInstance.PROPERTY_CLIENT_CONFIGURATION.equals(propertyName)) {
                 renderClientConfiguration();
             } else if (ApplicationInstance.STYLE_SHEET_CHANGED_PROPERTY.equals(propertyName)) {
-                renderStyleSheet();
+                renderStyleSheet(true);
             }
         }
     }
@@ -248,28 +436,29 @@ class OutputProcessor {
             return;
         }
         
-        Element configElement = serverMessage.addDirective(ServerMessage.GROUP_ID_INIT, "AppSync", "config");
+        XmlWriter configOut = serverMessage.openDirective(ServerMessage.GROUP_ID_INIT, "AppSync", "config");
         String[] propertyNames = config.getPropertyNames();
         for (int i = 0; i < propertyNames.length; ++i) {
-            Element pElement = document.createElement("p");
-            pElement.setAttribute("n", propertyNames[i]);
             Object propertyValue = config.getProperty(propertyNames[i]);
-            
-            
-            if (propertyValue == null) {
-                // Set null property value.
-                pElement.setAttribute("t", "0");
-            } else {
-                SerialPropertyPeer propertySyncPeer = propertyPeerFactory.getPeerForProperty(propertyValue.getClass());
+            SerialPropertyPeer propertySyncPeer = null;
+            if (propertyValue != null) {
+                propertySyncPeer = propertyPeerFactory.getPeerForProperty(propertyValue.getClass());
                 if (propertySyncPeer == null) {
                     // Unsupported property: do nothing.
                     continue;
                 }
-    
+            }
+            
+            configOut.startElement("p");
+            configOut.setAttribute("n", propertyNames[i]);
+            if (propertyValue == null) {
+                // Set null property value.
+                configOut.setAttribute("t", "0");
+            } else {
                 // Render property value.
-                propertySyncPeer.toXml(context, ClientConfiguration.class, pElement, propertyValue);
+                renderPropertyValue(configOut, propertySyncPeer, ClientConfiguration.class, propertyValue);
             }
-            configElement.appendChild(pElement);
+            configOut.endElement();
         }
     }
     
@@ -286,8 +475,8 @@ class OutputProcessor {
                         + commands[i].getClass().getName());
             }
             commandPeer.init(context);
-            Element commandExecuteElement = serverMessage.addDirective(ServerMessage.GROUP_ID_UPDATE, "CmdExec", "cmd");
-            commandExecuteElement.setAttribute("t", commandPeer.getClientCommandType());
+            XmlWriter commandExecuteOut = serverMessage.openDirective(ServerMessage.GROUP_ID_UPDATE, "CmdExec", "cmd");
+            commandExecuteOut.setAttribute("t", commandPeer.getClientCommandType());
             Iterator propertyNameIt = commandPeer.getPropertyNames(context, commands[i]);
             while (propertyNameIt.hasNext()) {
                 String propertyName = (String) propertyNameIt.next();
@@ -295,10 +484,10 @@ class OutputProcessor {
                     Iterator propertyIndexIt = commandPeer.getPropertyIndices(context, commands[i], propertyName);
                     while (propertyIndexIt.hasNext()) {
                         int propertyIndex = ((Integer) propertyIndexIt.next()).intValue();
-                        renderCommandProperty(commandExecuteElement, commandPeer, commands[i], propertyName, propertyIndex);
+                        renderCommandProperty(commandExecuteOut, commandPeer, commands[i], propertyName, propertyIndex);
                     }
                 } else {
-                    renderCommandProperty(commandExecuteElement, commandPeer, commands[i], propertyName, -1);
+                    renderCommandProperty(commandExecuteOut, commandPeer, commands[i], propertyName, -1);
                 }
             }
         }
@@ -307,39 +496,40 @@ class OutputProcessor {
     /**
      * Renders an individual property of a <code>Command</code>.
      * 
-     * @param commandExecuteElement the command execute element to which the property should be added
+     * @param commandExecuteOut the writer of the command execute element to which the property should be added
      * @param commandPeer the <code>CommandSynchronizePeer</code>
      * @param command the <code>Command</code>
      * @param propertyName the name of the property
      * @param propertyIndex the property index
      * @throws SerialException
      */
-    private void renderCommandProperty(Element commandExecuteElement, CommandSynchronizePeer commandPeer,
+    private void renderCommandProperty(XmlWriter commandExecuteOut, CommandSynchronizePeer commandPeer,
             Command command, String propertyName, int propertyIndex) 
     throws SerialException {
-        Element pElement = document.createElement("p");
-        pElement.setAttribute("n", propertyName);
+        Object propertyValue = commandPeer.getProperty(context, command, propertyName, propertyIndex);
+        SerialPropertyPeer propertySyncPeer = null;
+        if (propertyValue != null) {
+            propertySyncPeer = propertyPeerFactory.getPeerForProperty(propertyValue.getClass());
+            if (propertySyncPeer == null) {
+                // Unsupported property: do nothing.
+                return;
+            }
+        }
+        
+        commandExecuteOut.startElement("p");
+        commandExecuteOut.setAttribute("n", propertyName);
         if (propertyIndex != -1) {
             // Set property index.
-            pElement.setAttribute("x", Integer.toString(propertyIndex));
+            commandExecuteOut.setAttribute("x", Integer.toString(propertyIndex));
         }
-        Object propertyValue = commandPeer.getProperty(context, command, propertyName, propertyIndex);
         if (propertyValue == null) {
             // Set null property value.
-            pElement.setAttribute("t", "0");
+            commandExecuteOut.setAttribute("t", "0");
         } else {
-            SerialPropertyPeer propertySyncPeer = propertyPeerFactory.getPeerForProperty(propertyValue.getClass());
-            if (propertySyncPeer == null) {
-                // Unsupported property: do nothing.
-                return;
-            }
-
             // Render property value.
-            propertySyncPeer.toXml(context, command.getClass(), pElement, propertyValue);
+            renderPropertyValue(commandExecuteOut, propertySyncPeer, command.getClass(), propertyValue);
         }
-        
-        // Append to parent element.
-        commandExecuteElement.appendChild(pElement);
+        commandExecuteOut.endElement();
     }
     
     /**
@@ -354,11 +544,11 @@ class OutputProcessor {
         // add directive to add the Window's child ContentPane to the root.   
         // Render all properties of Window. 
         Window window = userInstance.getApplicationInstance().getDefaultWindow();
-        serverMessage.addDirective(ServerMessage.GROUP_ID_INIT, "CSyncIn", "cl");
+        serverMessage.openDirective(ServerMessage.GROUP_ID_INIT, "CSyncIn", "cl");
         serverMessage.setAttribute("root", userInstance.getRootHtmlElementId());
         
         // Render Style Sheet
-        renderStyleSheet();
+        renderStyleSheet(false);
         
         // Render Add ContentPane to Window
         ContentPane content = window.getContent();
@@ -366,9 +556,13 @@ class OutputProcessor {
             throw new IllegalStateException("No content to render: default window has no content.");
         }
         
-        Element upElement = serverMessage.addDirective(ServerMessage.GROUP_ID_UPDATE, "CSyncUp", "up");
-        upElement.setAttribute("r", "true"); // Adding to root.
-        renderComponentState(upElement, content);
+        XmlWriter upOut = serverMessage.openDirective(ServerMessage.GROUP_ID_UPDATE, "CSyncUp", "up");
+        upOut.setAttribute("r", "true"); // Adding to root.
+        if (serverMessage instanceof StreamingServerMessage) {
+            parallelThreshold = Math.max(0, conn.getServlet().getParallelRenderingThreshold());
+        }
+        renderComponentState(upOut, content, -1);
+        parallelThreshold = 0;
 
         // Render Window properties
         ComponentSynchronizePeer componentPeer = SynchronizePeerFactory.getPeerForComponent(window.getClass());
@@ -378,7 +572,7 @@ class OutputProcessor {
         Iterator propertyNameIterator = componentPeer.getOutputPropertyNames(context, window);
         while (propertyNameIterator.hasNext()) {
             String propertyName = (String) propertyNameIterator.next();
-            renderComponentProperty(upElement, componentPeer, window, propertyName, false);
+            renderComponentProperty(upOut, componentPeer, window, propertyName, false);
         }
     }
     
@@ -398,10 +592,10 @@ class OutputProcessor {
                 continue;
             }
 
-            Element rmElement = serverMessage.addDirective(ServerMessage.GROUP_ID_UPDATE, "CSyncRm", "rm");
+            XmlWriter rmOut = serverMessage.openDirective(ServerMessage.GROUP_ID_UPDATE, "CSyncRm", "rm");
 
             Component parentComponent = componentUpdates[i].getParent();
-            setComponentId(rmElement, parentComponent);
+            setComponentId(rmOut, parentComponent);
                 
             Component[] removedChildren = componentUpdates[i].getRemovedChildren();
             Set removedIdSet = new HashSet(); // Set containing removed ids, to avoid removing same id multiple times.
@@ -417,7 +611,7 @@ class OutputProcessor {
                 out.append(renderId);
                 removedIdSet.add(renderId);
             }
-            rmElement.setAttribute("rm", out.toString());
+            rmOut.setAttribute("rm", out.toString());
         }
 
         // Render Component Synchronization Updates
@@ -430,8 +624,8 @@ class OutputProcessor {
             // Process added/removed children and updated properties of update's parent component.
             if (componentUpdates[i].hasAddedChildren() || componentUpdates[i].hasUpdatedProperties()) {
                 Component parentComponent = componentUpdates[i].getParent();
-                Element upElement = serverMessage.addDirective(ServerMessage.GROUP_ID_UPDATE, "CSyncUp", "up");
-                setComponentId(upElement, parentComponent);
+                XmlWriter upOut = serverMessage.openDirective(ServerMessage.GROUP_ID_UPDATE, "CSyncUp", "up");
+                setComponentId(upOut, parentComponent);
             
                 // Added children.
                 Component[] addedChildren = componentUpdates[i].getAddedChildren();
@@ -446,17 +640,14 @@ class OutputProcessor {
                     int lastIndex = Integer.MIN_VALUE;
                     while (indexedComponentsIter.hasNext()) {
                         Entry entry = (Entry)indexedComponentsIter.next();
-                        Element cElement = renderComponentState(upElement, (Component) entry.getValue());
                         int index = ((Integer) entry.getKey()).intValue();
-                        if (index != lastIndex + 1) {
-                            cElement.setAttribute("x", Integer.toString(index));
-                        }
+                        renderComponentState(upOut, (Component) entry.getValue(), index == lastIndex + 1 ? -1 : index);
                         lastIndex = index;
                     }
                 }
                 
                 // Updated properties.
-                renderComponentUpdatedProperties(upElement, parentComponent, componentUpdates[i]);
+                renderComponentUpdatedProperties(upOut, parentComponent, componentUpdates[i]);
             }
             
             // Process updated layout data on immediate children of update's parent component.
@@ -469,9 +660,9 @@ class OutputProcessor {
                         throw new IllegalStateException("No synchronize peer found for component: " 
                                 + component.getClass().getName());
                     }
-                    Element upElement = serverMessage.addDirective(ServerMessage.GROUP_ID_UPDATE, "CSyncUp", "up");
-                    setComponentId(upElement, component);
-                    renderComponentProperty(upElement, componentPeer, component, Component.PROPERTY_LAYOUT_DATA, true); 
+                    XmlWriter upOut = serverMessage.openDirective(ServerMessage.GROUP_ID_UPDATE, "CSyncUp", "up");
+                    setComponentId(upOut, component);
+                    renderComponentProperty(upOut, componentPeer, component, Component.PROPERTY_LAYOUT_DATA, true); 
                 }
             }
         }
@@ -480,7 +671,8 @@ class OutputProcessor {
     /**
      * Renders a single property of a component.
      * 
-     * @param parentElement the component element ("c") or update element ("up") on which the property should be added. 
+     * @param parentOut the writer of the component element ("c") or update element ("up") on which the property 
+     *        should be added
      * @param componentPeer the peer of the component
      * @param c the component
      * @param propertyName the name of the property
@@ -488,7 +680,7 @@ class OutputProcessor {
      *        or ignored (i.e., when rendering a complete component)
      * @throws SerialException
      */
-    private void renderComponentProperty(Element parentElement, ComponentSynchronizePeer componentPeer, 
+    private void renderComponentProperty(XmlWriter parentOut, ComponentSynchronizePeer componentPeer, 
             Component c, String propertyName, boolean renderNulls) 
     throws SerialException {
         boolean indexedProperty = componentPeer.isOutputPropertyIndexed(context, c, propertyName);
@@ -500,10 +692,10 @@ class OutputProcessor {
             }
             while (indicesIt.hasNext()) {
                 int index = ((Integer) indicesIt.next()).intValue();
-                renderComponentPropertyImpl(parentElement, componentPeer, c, propertyName, index, renderNulls);
+                renderComponentPropertyImpl(parentOut, componentPeer, c, propertyName, index, renderNulls);
             }
         } else {
-            renderComponentPropertyImpl(parentElement, componentPeer, c, propertyName, -1, renderNulls);
+            renderComponentPropertyImpl(parentOut, componentPeer, c, propertyName, -1, renderNulls);
         }
     }
     
@@ -512,7 +704,8 @@ class OutputProcessor {
      * This method is invoked by renderComponentProperty() to render a non-indexed property or to render individual
      * indices of an indexed property
      * 
-     * @param parentElement the component element ("c") or update element ("up") on which the property should be added. 
+     * @param parentOut the writer of the component element ("c") or update element ("up") on which the property 
+     *        should be added
      * @param componentPeer the peer of the component
      * @param c the component
      * @param propertyName the name of the property
@@ -521,7 +714,7 @@ class OutputProcessor {
      *        or ignored (i.e., when rendering a complete component)
      * @throws SerialException
      */
-    private void renderComponentPropertyImpl(Element parentElement, ComponentSynchronizePeer componentPeer, 
+    private void renderComponentPropertyImpl(XmlWriter parentOut, ComponentSynchronizePeer componentPeer, 
             Component c, String propertyName, int propertyIndex, boolean renderNulls) 
     throws SerialException {
         Object propertyValue = componentPeer.getOutputProperty(context, c, propertyName, propertyIndex);
@@ -530,142 +723,131 @@ class OutputProcessor {
             return;
         }
         
-        // Create property element.
-        Element pElement = document.createElement("p");
+        SerialPropertyPeer propertySyncPeer = null;
+        if (propertyValue != null) {
+            propertySyncPeer = propertyPeerFactory.getPeerForProperty(propertyValue.getClass());
+            if (propertySyncPeer == null) {
+                // Unsupported property: do nothing.
+                return;
+            }
+        }
         
         String propertyKey = null;
-        Element propertyDataElement;
         if (propertyValue != null && componentPeer.isOutputPropertyReferenced(context, c, propertyName)) {
-            if (rpElement == null) {
-                // Create "reference property" container element ("rp").
-                rpElement = serverMessage.addDirective(ServerMessage.GROUP_ID_INIT, "CSyncUp", "rp");
-            }
-            
-            if (propertyValueToKeyMap == null) {
-                propertyValueToKeyMap = new HashMap();
-            } else {
-                propertyKey = (String) propertyValueToKeyMap.get(propertyValue);
-            }
-            
-            if (propertyKey == null) {
-                propertyKey = Integer.toString(nextPropertyKey++);
-                propertyValueToKeyMap.put(propertyValue, propertyKey);
-
-                propertyDataElement = document.createElement("p");
-                propertyDataElement.setAttribute("i", propertyKey);
-                
-                rpElement.appendChild(propertyDataElement);
-            } else {
-                propertyDataElement = null;
+            synchronized (root) {
+                // Render definition only if it is not already present on the client.
+                propertyKey = referenceCache.getPropertyKey(propertyValue);
+                if (propertyKey == null) {
+                    if (root.rpOut == null) {
+                        // Create "reference property" container element ("rp").
+                        root.rpOut = serverMessage.openDirective(ServerMessage.GROUP_ID_INIT, "CSyncUp", "rp");
+                    }
+                    
+                    propertyKey = referenceCache.addProperty(propertyValue);
+                    
+                    // Render referenced property value to "rp" element.
+                    root.rpOut.startElement("p");
+                    root.rpOut.setAttribute("i", propertyKey);
+                    renderPropertyValue(root.rpOut, propertySyncPeer, c.getClass(), propertyValue);
+                    root.rpOut.endElement();
+                }
             }
-
-            pElement.setAttribute("r", propertyKey);
-        } else {
-            propertyDataElement = pElement;
+        }
+        
+        // Render property element.
+        parentOut.startElement("p");
+        if (propertyKey != null) {
+            parentOut.setAttribute("r", propertyKey);
         }
         
         String methodName = componentPeer.getOutputPropertyMethodName(context, c, propertyName);
         if (methodName != null) {
             // Set method name.
-            pElement.setAttribute("m", methodName);
+            parentOut.setAttribute("m", methodName);
         } else {
             // Set property name.
-            pElement.setAttribute("n", propertyName);
+            parentOut.setAttribute("n", propertyName);
         }
         
         if (propertyIndex != -1) {
             // Set property index.
-            pElement.setAttribute("x", Integer.toString(propertyIndex));
+            parentOut.setAttribute("x", Integer.toString(propertyIndex));
         }
         
         if (propertyValue == null) {
             // Set null property value.
-            pElement.setAttribute("t", "0");
-        } else if (propertyDataElement != null) {
-            // Set non-null property value (if necessary, i.e., if propertyDataElement is set).
-            // Obtain appropriate peer.
-            SerialPropertyPeer propertySyncPeer = propertyPeerFactory.getPeerForProperty(propertyValue.getClass());
-            if (propertySyncPeer == null) {
-                // Unsupported property: do nothing.
-                return;
-            }
-
+            parentOut.setAttribute("t", "0");
+        } else if (propertyKey == null) {
             // Render property value.
-            propertySyncPeer.toXml(context, c.getClass(), propertyDataElement, propertyValue);
+            renderPropertyValue(parentOut, propertySyncPeer, c.getClass(), propertyValue);
         }
-        
-        // Append to parent element.
-        parentElement.appendChild(pElement);
+        parentOut.endElement();
     }
     
     /**
      * Renders the full state of a specific component.
      * 
-     * @param parentElement the element to append the component element to
+     * @param parentOut the writer of the element to which the component element should be added
      * @param c the rendering component
+     * @param index the index to render on the component element, or -1 if no index should be rendered
      */
-    private Element renderComponentState(Element parentElement, Component c)
+    private void renderComponentState(XmlWriter parentOut, Component c, int index)
     throws SerialException {
-        Document document = parentElement.getOwnerDocument();
         ComponentSynchronizePeer componentPeer = SynchronizePeerFactory.getPeerForComponent(c.getClass());
         if (componentPeer == null) {
             throw new IllegalStateException("No synchronize peer found for component: " + c.getClass().getName());
         }
         
-        Element cElement = document.createElement("c");
-        cElement.setAttribute("i", userInstance.getClientRenderId(c));
-
-        cElement.setAttribute("t", componentPeer.getClientComponentType(true));
+        parentOut.startElement("c");
+        parentOut.setAttribute("i", userInstance.getClientRenderId(c));
+        parentOut.setAttribute("t", componentPeer.getClientComponentType(true));
+        if (index != -1) {
+            parentOut.setAttribute("x", Integer.toString(index));
+        }
         
         componentPeer.init(context, c);
 
-        renderComponentStyleName(cElement, c, false);
-        renderComponentStyle(cElement, c, false);
+        renderComponentStyleName(parentOut, c, false);
+        renderComponentStyle(parentOut, c, false);
         
         // Render focus traversal information.
         if (c.getFocusNextId() != null || c.getFocusPreviousId() != null) {
-            Element fElement = document.createElement("f");
+            parentOut.startElement("f");
             if (c.getFocusNextId() != null) {
                 Component focusComponent = c.getApplicationInstance().getComponentByRenderId(c.getFocusNextId());
                 if (focusComponent != null) {
-                    fElement.setAttribute("n", userInstance.getClientRenderId(focusComponent));
+                    parentOut.setAttribute("n", userInstance.getClientRenderId(focusComponent));
                 }
             }
             if (c.getFocusPreviousId() != null) {
                 Component focusComponent = c.getApplicationInstance().getComponentByRenderId(c.getFocusPreviousId());
                 if (focusComponent != null) {
-                    fElement.setAttribute("p", userInstance.getClientRenderId(focusComponent));
+                    parentOut.setAttribute("p", userInstance.getClientRenderId(focusComponent));
                 }
             }
-            cElement.appendChild(fElement);
+            parentOut.endElement();
         }
         
         // Render enabled state.
         if (!c.isEnabled()) {
-            Element enElement = document.createElement("en");
-            enElement.appendChild(document.createTextNode("false"));
-            cElement.appendChild(enElement);
+            renderTextElement(parentOut, "en", "false");
         }
         
         // Render locale.
         if (c.getLocale() != null) {
-            Element localeElement = document.createElement("locale");
-            localeElement.appendChild(document.createTextNode(getClientLocaleString(c.getLocale())));
-            cElement.appendChild(localeElement);
+            renderTextElement(parentOut, "locale", getClientLocaleString(c.getLocale()));
         }
         
         // Render layout direction.
         if (c.getLayoutDirection() != null) {
-            Element dirElement = document.createElement("dir");
-            dirElement.appendChild(document.createTextNode(c.getLayoutDirection().isLeftToRight() ? "ltr" : "rtl"));
-            cElement.appendChild(dirElement);
+            renderTextElement(parentOut, "dir", c.getLayoutDirection().isLeftToRight() ? "ltr" : "rtl");
         }
         
         // Render component properties.
         Iterator propertyNameIterator = componentPeer.getOutputPropertyNames(context, c);
         while (propertyNameIterator.hasNext()) {
             String propertyName = (String) propertyNameIterator.next();
-            renderComponentProperty(cElement, componentPeer, c, propertyName, false);
+            renderComponentProperty(parentOut, componentPeer, c, propertyName, false);
         }
         
         // Render immediate event flags.
@@ -675,89 +857,139 @@ class OutputProcessor {
             if (!componentPeer.hasListeners(context, c, eventType)) {
                 continue;
             }
-            Element eElement = document.createElement("e");
-            eElement.setAttribute("t", eventType);
-            cElement.appendChild(eElement);
+            parentOut.startElement("e");
+            parentOut.setAttribute("t", eventType);
+            parentOut.endElement();
         }
         
         // Render child components.
-        Component[] children = c.getVisibleComponents();
-        for (int i = 0; i < children.length; ++i) {
-            renderComponentState(cElement, children[i]);
+        int childCount = c.getVisibleComponentCount();
+        if (parallelThreshold > 0 && childCount > 1) {
+            renderChildComponentStates(parentOut, c);
+        } else {
+            for (int i = 0; i < childCount; ++i) {
+                renderComponentState(parentOut, c.getVisibleComponent(i), -1);
+            }
+        }
+        
+        // Close component element.
+        parentOut.endElement();
+    }
+    
+    /**
+     * Renders the full state of the child components of a component, rendering child hierarchies which contain
+     * at least <code>parallelThreshold</code> visible components concurrently (if there are at least two such
+     * hierarchies).  Remaining children are rendered by the invoking thread while the concurrent tasks execute.
+     * 
+     * @param parentOut the writer of the parent component element, a <code>StreamXmlWriter</code>
+     * @param c the parent component
+     * @throws SerialException
+     */
+    private void renderChildComponentStates(XmlWriter parentOut, Component c) 
+    throws SerialException {
+        int childCount = c.getVisibleComponentCount();
+        RenderTask[] tasks = new RenderTask[childCount];
+        int taskCount = 0;
+        for (int i = 0; i < childCount; ++i) {
+            Component child = c.getVisibleComponent(i);
+            if (getVisibleComponentCount(child, parallelThreshold) >= parallelThreshold) {
+                tasks[i] = new RenderTask(child);
+                ++taskCount;
+            }
+        }
+        
+        if (taskCount < 2) {
+            for (int i = 0; i < childCount; ++i) {
+                renderComponentState(parentOut, c.getVisibleComponent(i), -1);
+            }
+            return;
         }
         
-        // Append component element to parent.
-        parentElement.appendChild(cElement);
+        boolean inPool = ForkJoinTask.inForkJoinPool();
+        for (int i = 0; i < tasks.length; ++i) {
+            if (tasks[i] == null) {
+                continue;
+            }
+            if (inPool) {
+                tasks[i].fork();
+            } else {
+                getRenderPool().execute(tasks[i]);
+            }
+        }
         
-        return cElement;
+        for (int i = 0; i < childCount; ++i) {
+            if (tasks[i] == null) {
+                renderComponentState(parentOut, c.getVisibleComponent(i), -1);
+            } else {
+                StreamXmlWriter fragmentOut;
+                try {
+                    fragmentOut = (StreamXmlWriter) tasks[i].join();
+                } catch (RuntimeException ex) {
+                    rethrowSerialException(ex);
+                    throw ex;
+                }
+                ((StreamXmlWriter) parentOut).appendFragment(fragmentOut);
+            }
+        }
     }
     
     /**
      * Sets the directly referenced style of a component.
-     * If the style has not been rendered in the current synchronization message,
-     * it will be added to it.
+     * If the style's current definition is not present on the client (see <code>ReferenceCache</code>),
+     * it will be added to the synchronization message.
      */
-    private void renderComponentStyle(Element element, Component c, boolean required) 
+    private void renderComponentStyle(XmlWriter out, Component c, boolean required) 
     throws SerialException {
         Style style = c.getStyle();
         if (style == null) {
             if (required) {
-                element.appendChild(document.createElement("sr"));
+                out.startElement("sr");
+                out.endElement();
             }
             return;
         }
         
-        if (rsElement == null) {
-            rsElement = serverMessage.addDirective(ServerMessage.GROUP_ID_INIT, "CSyncUp", "rs");
-        }
-
-        String styleKey = null;
-        if (styleValueToKeyMap == null) {
-            styleValueToKeyMap = new HashMap();
-        } else {
-            styleKey = (String) styleValueToKeyMap.get(style);
-        }
-        
-        if (styleKey == null) {
-            styleKey = Integer.toString(nextStyleKey++);
-            styleValueToKeyMap.put(style, styleKey);
-
-            Element sElement = document.createElement("s");
-            sElement.setAttribute("i", styleKey);
-            renderStyle(c.getClass(), sElement, style);
-            rsElement.appendChild(sElement);
+        String styleKey;
+        synchronized (root) {
+            // Render definition only if it is not already present on the client.
+            styleKey = referenceCache.getStyleKey(style);
+            if (styleKey == null) {
+                if (root.rsOut == null) {
+                    root.rsOut = serverMessage.openDirective(ServerMessage.GROUP_ID_INIT, "CSyncUp", "rs");
+                }
+                
+                styleKey = referenceCache.addStyle(style);
+    
+                root.rsOut.startElement("s");
+                root.rsOut.setAttribute("i", styleKey);
+                renderStyle(c.getClass(), root.rsOut, style);
+                root.rsOut.endElement();
+            }
         }
         
-        Element srElement = document.createElement("sr");
-        srElement.appendChild(document.createTextNode(styleKey));
-        element.appendChild(srElement);
+        renderTextElement(out, "sr", styleKey);
     }
 
     /**
      * Sets the style name attribute on a component (c) element.
      * 
-     * @param element the element to append the style attributes to
+     * @param out the writer of the element to append the style attributes to
      * @param c the rendering component
      * @param required require attribute to be rendered, even if style is null
      *        (used when updating style)
      */ 
-    private void renderComponentStyleName(Element element, Component c, boolean required) 
+    private void renderComponentStyleName(XmlWriter out, Component c, boolean required) 
     throws SerialException {
-        StyleSheet styleSheet = c.getApplicationInstance().getStyleSheet();
+        ApplicationInstance applicationInstance = c.getApplicationInstance();
         String styleName = c.getStyleName();
         
-        if (styleSheet == null || (!required && styleName == null)) { 
+        if (applicationInstance.getStyleSheet() == null || (!required && styleName == null)) { 
             return;
         }
         
         // Determine the class of the style that will be used to render the component.
         // This may be the component's class, or one of its ancestor classes.
-        Class styleClass = c.getClass();
-        Style style = styleSheet.getStyle(styleName, styleClass, false);
-        while (style == null && styleClass != Component.class) {
-            styleClass = styleClass.getSuperclass();
-            style = styleSheet.getStyle(styleName, styleClass, false);
-        }
+        Class styleClass = applicationInstance.getStyleClass(c.getClass(), styleName);
         
         // Retrieve the component peer for the style class.
         ComponentSynchronizePeer componentPeer = SynchronizePeerFactory.getPeerForComponent(styleClass, false);
@@ -770,26 +1002,22 @@ class OutputProcessor {
                 // Should not occur.
                 throw new SerialException("No peer available for component: " + styleClass.getName(), null);
             }
-            Element sElement = document.createElement("s");
-            sElement.appendChild(document.createTextNode((styleName == null ? "" : styleName) + ":" + styleClass.getName()));
-            element.appendChild(sElement);
+            renderTextElement(out, "s", (styleName == null ? "" : styleName) + ":" + styleClass.getName());
         } else {
             // A synchronize peer exists for the style class, simply render the style name.
-            Element sElement = document.createElement("s");
-            sElement.appendChild(document.createTextNode(styleName == null ? "" : styleName));
-            element.appendChild(sElement);
+            renderTextElement(out, "s", styleName == null ? "" : styleName);
         }
     }
     
     /**
      * Renders updated properties of a component.
      * 
-     * @param upElement the "up" update element
+     * @param upOut the writer of the "up" update element
      * @param c the updating component
      * @param update the <code>ServerComponentUpdate</code>
      * @throws SerialException
      */
-    private void renderComponentUpdatedProperties(Element upElement, Component c, ServerComponentUpdate update) 
+    private void renderComponentUpdatedProperties(XmlWriter upOut, Component c, ServerComponentUpdate update) 
     throws SerialException {
         ComponentSynchronizePeer componentPeer = SynchronizePeerFactory.getPeerForComponent(c.getClass());
         if (componentPeer == null) {
@@ -799,41 +1027,32 @@ class OutputProcessor {
         Iterator propertyNameIt = componentPeer.getUpdatedOutputPropertyNames(context, c, update);
         while (propertyNameIt.hasNext()) {
             String propertyName = (String) propertyNameIt.next();
-            renderComponentProperty(upElement, componentPeer, c, propertyName, true);
+            renderComponentProperty(upOut, componentPeer, c, propertyName, true);
         }
         
         if (update.hasUpdatedProperties()) {
             if (update.hasUpdatedProperty(Component.STYLE_NAME_CHANGED_PROPERTY)) {
-                renderComponentStyleName(upElement, c, true);
+                renderComponentStyleName(upOut, c, true);
             }
             
             if (update.hasUpdatedProperty(Component.STYLE_CHANGED_PROPERTY)) {
-                renderComponentStyle(upElement, c, true);
+                renderComponentStyle(upOut, c, true);
             }
             
             // Render enabled state update.
             if (update.hasUpdatedProperty(Component.ENABLED_CHANGED_PROPERTY)) {
-                Element enElement = document.createElement("en");
-                enElement.appendChild(document.createTextNode(update.getParent().isEnabled() ? "true" : "false"));
-                upElement.appendChild(enElement);
+                renderTextElement(upOut, "en", update.getParent().isEnabled() ? "true" : "false");
             }
             
             // Render locale update.
             if (update.hasUpdatedProperty(Component.LOCALE_CHANGED_PROPERTY)) {
-                Element localeElement = document.createElement("locale");
-                if (c.getLocale() != null) {
-                    localeElement.appendChild(document.createTextNode(getClientLocaleString(c.getLocale())));
-                }
-                upElement.appendChild(localeElement);
+                renderTextElement(upOut, "locale", c.getLocale() == null ? null : getClientLocaleString(c.getLocale()));
             }
 
             // Render layout direction update.
             if (update.hasUpdatedProperty(Component.LAYOUT_DIRECTION_CHANGED_PROPERTY)) {
-                Element dirElement = document.createElement("dir");
-                if (c.getLayoutDirection() != null) {
-                    dirElement.appendChild(document.createTextNode(c.getLayoutDirection().isLeftToRight() ? "ltr" : "rtl"));
-                }
-                upElement.appendChild(dirElement);
+                renderTextElement(upOut, "dir", c.getLayoutDirection() == null ? null 
+                        : (c.getLayoutDirection().isLeftToRight() ? "ltr" : "rtl"));
             }
         }
         
@@ -844,10 +1063,10 @@ class OutputProcessor {
             if (!componentPeer.hasUpdatedListeners(context, c, update, eventType)) {
                 continue;
             }
-            Element eElement = document.createElement("e");
-            eElement.setAttribute("t", eventType);
-            eElement.setAttribute("v", componentPeer.hasListeners(context, c, eventType) ? "true" : "false");
-            upElement.appendChild(eElement);
+            upOut.startElement("e");
+            upOut.setAttribute("t", eventType);
+            upOut.setAttribute("v", componentPeer.hasListeners(context, c, eventType) ? "true" : "false");
+            upOut.endElement();
         }
     }
     
@@ -857,8 +1076,60 @@ class OutputProcessor {
     private void renderFocus() {
         Component focusedComponent = userInstance.getApplicationInstance().getFocusedComponent();
         if (focusedComponent != null) {
-            Element focusElement = serverMessage.addDirective(ServerMessage.GROUP_ID_UPDATE, "CFocus", "focus");
-            focusElement.setAttribute("i", userInstance.getClientRenderId(focusedComponent));
+            XmlWriter focusOut = serverMessage.openDirective(ServerMessage.GROUP_ID_UPDATE, "CFocus", "focus");
+            focusOut.setAttribute("i", userInstance.getClientRenderId(focusedComponent));
+        }
+    }
+    
+    /**
+     * Completes rendering of referenced property values and styles, discarding those which exceed the 
+     * capacity of the <code>ReferenceCache</code> and notifying the client of discarded definitions.
+     */
+    private void renderReferenceDiscard() {
+        referenceCache.endMessage();
+        String propertyKeys = referenceCache.getDiscardedPropertyKeys();
+        String styleKeys = referenceCache.getDiscardedStyleKeys();
+        if (propertyKeys == null && styleKeys == null) {
+            return;
+        }
+        XmlWriter rdOut = serverMessage.openDirective(ServerMessage.GROUP_ID_INIT, "CSyncUp", "rd");
+        if (propertyKeys != null) {
+            rdOut.setAttribute("p", propertyKeys);
+        }
+        if (styleKeys != null) {
+            rdOut.setAttribute("s", styleKeys);
+        }
+    }
+    
+    /**
+     * Renders a non-null property value into the current &lt;p&gt; element of a writer.
+     * <code>StreamingSerialPropertyPeer</code>s write the value directly.  Other peers render the value into a 
+     * DOM element, whose attributes and content are then written.
+     * 
+     * @param pOut the writer, positioned at the &lt;p&gt; element, to which no content has been added
+     * @param propertySyncPeer the <code>SerialPropertyPeer</code> of the value
+     * @param objectClass the class of the property container
+     * @param propertyValue the property value
+     * @throws SerialException
+     */
+    private void renderPropertyValue(XmlWriter pOut, SerialPropertyPeer propertySyncPeer, Class objectClass, 
+            Object propertyValue) 
+    throws SerialException {
+        if (propertySyncPeer instanceof StreamingSerialPropertyPeer) {
+            ((StreamingSerialPropertyPeer) propertySyncPeer).toXml(context, objectClass, pOut, propertyValue);
+            return;
+        }
+        
+        Element pElement = document.createElement("p");
+        propertySyncPeer.toXml(context, objectClass, pElement, propertyValue);
+        NamedNodeMap attributes = pElement.getAttributes();
+        int attributeCount = attributes.getLength();
+        for (int i = 0; i < attributeCount; ++i) {
+            Node attribute = attributes.item(i);
+            pOut.setAttribute(attribute.getNodeName(), attribute.getNodeValue());
+        }
+        for (Node child = pElement.getFirstChild(); child != null; child = child.getNextSibling()) {
+            pOut.append(child);
         }
     }
     
@@ -866,14 +1137,12 @@ class OutputProcessor {
      * Renders an individual style.
      * 
      * @param componentClass the component class
-     * @param sElement the style ("s") element into which the style should be rendered
+     * @param sOut the writer of the style ("s") element into which the style should be rendered
      * @param style the style
      * @throws SerialException
      */
-    private void renderStyle(Class componentClass, Element sElement, Style style)
+    private void renderStyle(Class componentClass, XmlWriter sOut, Style style)
     throws SerialException {
-        Document document = sElement.getOwnerDocument();
-        
         ComponentIntrospector ci;
         try {
             ci = (ComponentIntrospector) IntrospectorFactory.get(componentClass.getName(),
@@ -901,12 +1170,12 @@ class OutputProcessor {
                         Log.log("No peer found for property class: " + propertyValue.getClass());
                         continue;
                     }
-                    Element pElement = document.createElement("p");
-                    pElement.setAttribute("n", propertyName);
+                    sOut.startElement("p");
+                    sOut.setAttribute("n", propertyName);
                     // Set property index.
-                    pElement.setAttribute("x", Integer.toString(index));
-                    propertySyncPeer.toXml(context, componentClass, pElement, propertyValue);
-                    sElement.appendChild(pElement);
+                    sOut.setAttribute("x", Integer.toString(index));
+                    renderPropertyValue(sOut, propertySyncPeer, componentClass, propertyValue);
+                    sOut.endElement();
                 }
             } else {
                 Object propertyValue = style.get(propertyName);
@@ -920,80 +1189,200 @@ class OutputProcessor {
                     continue;
                 }
                 
-                Element pElement = document.createElement("p");
-                pElement.setAttribute("n", propertyName);
-                propertySyncPeer.toXml(context, componentClass, pElement, propertyValue);
-                sElement.appendChild(pElement);
+                sOut.startElement("p");
+                sOut.setAttribute("n", propertyName);
+                renderPropertyValue(sOut, propertySyncPeer, componentClass, propertyValue);
+                sOut.endElement();
             }
         }
     }
     
     /**
-     * Renders the complete style sheet of an application to the ServerMessage.
+     * Calculates a hash of the content of a <code>StyleSheet</code>, i.e., a digest of its rendered
+     * XML representation.
      * 
+     * @param styleSheet the style sheet
+     * @return the hash, as a hexadecimal string
      * @throws SerialException
      */
-    private void renderStyleSheet() 
+    private String getStyleSheetHash(StyleSheet styleSheet) 
+    throws SerialException {
+        StreamXmlWriter hashOut = new StreamXmlWriter();
+        hashOut.startElement("ss");
+        Iterator styleNameIterator = styleSheet.getStyleNames();
+        while (styleNameIterator.hasNext()) {
+            String styleName = (String) styleNameIterator.next();
+            Iterator componentTypeIterator = styleSheet.getComponentTypes(styleName);
+            while (componentTypeIterator.hasNext()) {
+                Class componentClass = (Class) componentTypeIterator.next();
+                renderStyleSheetStyle(hashOut, styleName, componentClass, styleSheet.getStyle(styleName, componentClass, false));
+            }
+        }
+        hashOut.close();
+        return ContentHash.hash(hashOut.toString());
+    }
+    
+    /**
+     * Renders the style sheet of an application to the ServerMessage.
+     * <p>
+     * When the style sheet is rendered incrementally (i.e., not as part of a full refresh), the
+     * <code>StyleSheetState</code> of the <code>UserInstance</code> is used to minimize output: if the
+     * <code>MutableStyleSheet</code> held by the client has been modified, only the changed styles are rendered.
+     * If a different style sheet has been set, it is not rendered if its content is identical to that held 
+     * by the client.
+     * 
+     * @param incremental flag indicating whether the style sheet is being rendered incrementally
+     * @throws SerialException
+     */
+    private void renderStyleSheet(boolean incremental) 
     throws SerialException {
-        Element ssElement = serverMessage.addDirective(ServerMessage.GROUP_ID_UPDATE, "CSyncUp", "ss");
-        
         StyleSheet styleSheet = userInstance.getApplicationInstance().getStyleSheet();
+        StyleSheetState styleSheetState = userInstance.getStyleSheetState();
+        int modificationCount = styleSheet instanceof MutableStyleSheet 
+                ? ((MutableStyleSheet) styleSheet).getModificationCount() : 0;
+        
+        if (incremental && styleSheet != null) {
+            StyleSheet renderedStyleSheet = styleSheetState.getStyleSheet();
+            if (styleSheet == renderedStyleSheet && styleSheet instanceof MutableStyleSheet) {
+                // Render changed styles of modified style sheet.
+                renderStyleSheetUpdate((MutableStyleSheet) styleSheet, styleSheetState.getModificationCount());
+                styleSheetState.update(styleSheet, modificationCount, null);
+                return;
+            }
+            
+            // Determine hash of content held by the client (if the style sheet has not been modified since it was 
+            // rendered) and do not render the new style sheet if its content is identical.
+            if (styleSheetState.getHash() == null && renderedStyleSheet != null 
+                    && (!(renderedStyleSheet instanceof MutableStyleSheet) || styleSheetState.getModificationCount() 
+                    == ((MutableStyleSheet) renderedStyleSheet).getModificationCount())) {
+                styleSheetState.setHash(getStyleSheetHash(renderedStyleSheet));
+            }
+            if (styleSheetState.getHash() != null) {
+                String hash = getStyleSheetHash(styleSheet);
+                if (hash.equals(styleSheetState.getHash())) {
+                    styleSheetState.update(styleSheet, modificationCount, hash);
+                    return;
+                }
+            }
+        }
+        
+        XmlWriter ssOut = serverMessage.openDirective(ServerMessage.GROUP_ID_UPDATE, "CSyncUp", "ss");
+        styleSheetState.update(styleSheet, modificationCount, null);
         if (styleSheet == null) {
             return;
         }
         
-        Document document = ssElement.getOwnerDocument();
         Iterator styleNameIterator = styleSheet.getStyleNames();
         while (styleNameIterator.hasNext()) {
             String styleName = (String) styleNameIterator.next();
             Iterator componentTypeIterator = styleSheet.getComponentTypes(styleName);
             while (componentTypeIterator.hasNext()) {
                 Class componentClass = (Class) componentTypeIterator.next();
-                Element sElement = document.createElement("s");
-                
-                // Retrieve component synchronize peer for style's SPECIFIC component class (not searching superclasses).
-                ComponentSynchronizePeer componentPeer = SynchronizePeerFactory.getPeerForComponent(componentClass, false);
-                if (componentPeer == null) {
-                    // No synchronize peer exists for style's specific component class, find synchronize peer for
-                    // a superclass.
-                    componentPeer = SynchronizePeerFactory.getPeerForComponent(componentClass, true);
-                    if (componentPeer == null) {
-                        // No synchronize peer for any superclass.
-                        throw new SerialException("No peer available for component: " + componentClass.getName(), null);
-                    }
-                    
-                    // Render style name as styleName:styleClass.
-                    sElement.setAttribute("n", (styleName == null ? "" : styleName) + ":" + componentClass.getName());
-                } else {
-                    // Synchronize peer does exist for style's specific component class, render style name unmodified.
-                    if (styleName != null) {
-                        sElement.setAttribute("n", styleName);
-                    }
-                }
+                renderStyleSheetStyle(ssOut, styleName, componentClass, styleSheet.getStyle(styleName, componentClass, false));
+            }
+        }
+    }
+    
+    /**
+     * Renders an individual style of a style sheet.
+     * 
+     * @param ssOut the writer of the style sheet ("ss") element
+     * @param styleName the style name
+     * @param componentClass the component class
+     * @param style the style, or null to render the removal of the style
+     * @throws SerialException
+     */
+    private void renderStyleSheetStyle(XmlWriter ssOut, String styleName, Class componentClass, Style style) 
+    throws SerialException {
+        ssOut.startElement("s");
+        
+        // Retrieve component synchronize peer for style's SPECIFIC component class (not searching superclasses).
+        ComponentSynchronizePeer componentPeer = SynchronizePeerFactory.getPeerForComponent(componentClass, false);
+        if (componentPeer == null) {
+            // No synchronize peer exists for style's specific component class, find synchronize peer for
+            // a superclass.
+            componentPeer = SynchronizePeerFactory.getPeerForComponent(componentClass, true);
+            if (componentPeer == null) {
+                // No synchronize peer for any superclass.
+                throw new SerialException("No peer available for component: " + componentClass.getName(), null);
+            }
+            
+            // Render style name as styleName:styleClass.
+            ssOut.setAttribute("n", (styleName == null ? "" : styleName) + ":" + componentClass.getName());
+        } else {
+            // Synchronize peer does exist for style's specific component class, render style name unmodified.
+            if (styleName != null) {
+                ssOut.setAttribute("n", styleName);
+            }
+        }
 
-                sElement.setAttribute("t", componentPeer.getClientComponentType(false));
-                
-                Style style = styleSheet.getStyle(styleName, componentClass, false);
-                renderStyle(componentClass, sElement, style);
-                
-                ssElement.appendChild(sElement);
+        ssOut.setAttribute("t", componentPeer.getClientComponentType(false));
+        
+        if (style == null) {
+            ssOut.setAttribute("rm", "true");
+        } else {
+            renderStyle(componentClass, ssOut, style);
+        }
+        
+        ssOut.endElement();
+    }
+    
+    /**
+     * Renders the styles of a <code>MutableStyleSheet</code> which have changed since it had the specified
+     * modification count.  The "ss" directive is marked as an update ("u" attribute), such that the client
+     * applies the rendered styles to its existing style sheet.
+     * 
+     * @param styleSheet the style sheet
+     * @param modificationCount the modification count of the style sheet when it was last rendered
+     * @throws SerialException
+     */
+    private void renderStyleSheetUpdate(MutableStyleSheet styleSheet, int modificationCount) 
+    throws SerialException {
+        Iterator styleNameIterator = styleSheet.getChangedStyleNames(modificationCount);
+        if (!styleNameIterator.hasNext()) {
+            return;
+        }
+        
+        XmlWriter ssOut = serverMessage.openDirective(ServerMessage.GROUP_ID_UPDATE, "CSyncUp", "ss");
+        ssOut.setAttribute("u", "true");
+        while (styleNameIterator.hasNext()) {
+            String styleName = (String) styleNameIterator.next();
+            Iterator componentTypeIterator = styleSheet.getChangedComponentTypes(styleName, modificationCount);
+            while (componentTypeIterator.hasNext()) {
+                Class componentClass = (Class) componentTypeIterator.next();
+                renderStyleSheetStyle(ssOut, styleName, componentClass, styleSheet.getStyle(styleName, componentClass, false));
             }
         }
     }
+    
+    /**
+     * Renders an element containing only text.
+     * 
+     * @param out the writer to which the element should be rendered
+     * @param name the element name
+     * @param text the text content, or null to render an empty element
+     */
+    private void renderTextElement(XmlWriter out, String name, String text) {
+        out.startElement(name);
+        if (text != null) {
+            out.text(text);
+        }
+        out.endElement();
+    }
 
     /**
      * Utility method to identify a component in an add/update directive.
      * Adds an 'r="true"' attribute if the updating component is the root.
      * Adds an 'i="xxx"' attribute if the updating component is not root
      * 
-     * @param element the element to add the component identifier to
+     * @param out the writer of the element to add the component identifier to
      * @param component the component
      */
-    private void setComponentId(Element element, Component component) {
+    private void setComponentId(XmlWriter out, Component component) {
         if (component.getParent() == null) {
-            element.setAttribute("r", "true");
+            out.setAttribute("r", "true");
         } else {
-            element.setAttribute("i", userInstance.getClientRenderId(component));
+            out.setAttribute("i", userInstance.getClientRenderId(component));
         }
     }
 }
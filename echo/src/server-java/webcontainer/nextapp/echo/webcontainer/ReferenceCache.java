@@ -0,0 +1,307 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+
+package nextapp.echo.webcontainer;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import nextapp.echo.app.MutableStyle;
+import nextapp.echo.app.Style;
+
+/**
+ * Records the referenced property values and styles whose definitions have been sent to the client of a
+ * <code>UserInstance</code>, such that later server messages may reference them by key rather than repeating
+ * their definitions.
+ * <p>
+ * Property values and styles are each stored in a table of bounded size, ordered by most recent use.
+ * Once all content of a server message has been rendered, <code>endMessage()</code> discards the least recently
+ * used entries which exceed the maximum size (entries used by the message itself are never discarded).  The keys of
+ * discarded entries are sent to the client, such that it may discard the corresponding definitions as well.
+ * A <code>MutableStyle</code> which is modified after its definition has been sent is discarded and sent again
+ * under a new key.
+ * <p>
+ * Keys are not reused, except after <code>clear()</code>, which is invoked when the client clears its
+ * component hierarchy (and with it all referenced definitions).
+ */
+class ReferenceCache {
+    
+    /**
+     * An entry of a <code>Table</code>.
+     */
+    private static class Entry {
+        
+        /** The client-side key. */
+        String key;
+        
+        /** The sequence number of the server message in which the entry was last used. */
+        int messageSequence;
+        
+        /** The modification count of a <code>MutableStyle</code> when its definition was rendered. */
+        int modificationCount;
+        
+        /**
+         * Creates a new <code>Entry</code>.
+         * 
+         * @param key the client-side key
+         */
+        Entry(String key) {
+            super();
+            this.key = key;
+        }
+    }
+    
+    /**
+     * A table of definitions sent to the client, mapping values to <code>Entry</code>s in least-recently-used order.
+     */
+    private class Table {
+        
+        /** Mapping between values and <code>Entry</code>s, in access order. */
+        private LinkedHashMap valueToEntryMap = new LinkedHashMap(16, 0.75f, true);
+        
+        /** The next key to assign. */
+        private int nextKey = 0;
+        
+        /** Comma-delimited keys discarded while processing the current message, or null. */
+        private StringBuffer discardedKeys;
+        
+        /**
+         * Adds a value, which must not be present.
+         * 
+         * @param value the value
+         * @return the new entry
+         */
+        Entry add(Object value) {
+            Entry entry = new Entry(Integer.toString(nextKey++));
+            entry.messageSequence = messageSequence;
+            valueToEntryMap.put(value, entry);
+            return entry;
+        }
+        
+        /**
+         * Removes all values and resets keys.
+         */
+        void clear() {
+            valueToEntryMap.clear();
+            nextKey = 0;
+            discardedKeys = null;
+        }
+        
+        /**
+         * Records a key as discarded.
+         * 
+         * @param key the key
+         */
+        void discard(String key) {
+            if (discardedKeys == null) {
+                discardedKeys = new StringBuffer(key);
+            } else {
+                discardedKeys.append(',');
+                discardedKeys.append(key);
+            }
+        }
+        
+        /**
+         * Retrieves the entry of a value, marking it as most recently used.
+         * 
+         * @param value the value
+         * @return the entry, or null if none exists
+         */
+        Entry get(Object value) {
+            Entry entry = (Entry) valueToEntryMap.get(value);
+            if (entry != null) {
+                entry.messageSequence = messageSequence;
+            }
+            return entry;
+        }
+        
+        /**
+         * Returns and resets the comma-delimited keys discarded while processing the current message.
+         * 
+         * @return the keys, or null if none were discarded
+         */
+        String getDiscardedKeys() {
+            String keys = discardedKeys == null ? null : discardedKeys.toString();
+            discardedKeys = null;
+            return keys;
+        }
+        
+        /**
+         * Removes a value, recording its key as discarded.
+         * 
+         * @param value the value
+         */
+        void remove(Object value) {
+            Entry entry = (Entry) valueToEntryMap.remove(value);
+            if (entry != null) {
+                discard(entry.key);
+            }
+        }
+        
+        /**
+         * Discards the least recently used entries in excess of <code>maximumSize</code>, stopping at the first
+         * entry which has been used by the current message.
+         */
+        void trim() {
+            Iterator it = valueToEntryMap.values().iterator();
+            int size = valueToEntryMap.size();
+            while (size > maximumSize && it.hasNext()) {
+                Entry entry = (Entry) it.next();
+                if (entry.messageSequence == messageSequence) {
+                    break;
+                }
+                it.remove();
+                discard(entry.key);
+                --size;
+            }
+        }
+    }
+    
+    /** The maximum number of entries retained by each table once a message has been rendered. */
+    private int maximumSize;
+    
+    /** The sequence number of the current server message. */
+    private int messageSequence = 0;
+    
+    /** Referenced property values. */
+    private Table properties = new Table();
+    
+    /** Referenced styles. */
+    private Table styles = new Table();
+    
+    /**
+     * Creates a new <code>ReferenceCache</code>.
+     * 
+     * @param maximumSize the maximum number of property values and styles (each) to retain between messages
+     */
+    ReferenceCache(int maximumSize) {
+        super();
+        this.maximumSize = maximumSize;
+    }
+    
+    /**
+     * Adds a referenced property value, which must not be present.
+     * 
+     * @param propertyValue the property value
+     * @return the key of the property value
+     */
+    synchronized String addProperty(Object propertyValue) {
+        return properties.add(propertyValue).key;
+    }
+
+    /**
+     * Adds a referenced style, which must not be present.
+     * 
+     * @param style the style
+     * @return the key of the style
+     */
+    synchronized String addStyle(Style style) {
+        Entry entry = styles.add(style);
+        if (style instanceof MutableStyle) {
+            entry.modificationCount = ((MutableStyle) style).getModificationCount();
+        }
+        return entry.key;
+    }
+    
+    /**
+     * Notifies the cache that rendering of a server message is beginning.
+     * 
+     * @param clear flag indicating whether the cache should be cleared, i.e., when the message clears the client
+     *        component hierarchy, or if definitions may not be retained between messages
+     */
+    synchronized void beginMessage(boolean clear) {
+        ++messageSequence;
+        if (clear || maximumSize <= 0) {
+            properties.clear();
+            styles.clear();
+        }
+    }
+    
+    /**
+     * Notifies the cache that all content of a server message has been rendered, discarding entries in excess of 
+     * the maximum size.  The discarded keys may subsequently be retrieved with <code>getDiscardedPropertyKeys()</code>
+     * and <code>getDiscardedStyleKeys()</code>.
+     */
+    synchronized void endMessage() {
+        if (maximumSize > 0) {
+            properties.trim();
+            styles.trim();
+        }
+    }
+    
+    /**
+     * Returns the comma-delimited keys of property values discarded while rendering the current message.
+     * 
+     * @return the keys, or null if none were discarded
+     */
+    synchronized String getDiscardedPropertyKeys() {
+        return properties.getDiscardedKeys();
+    }
+    
+    /**
+     * Returns the comma-delimited keys of styles discarded while rendering the current message.
+     * 
+     * @return the keys, or null if none were discarded
+     */
+    synchronized String getDiscardedStyleKeys() {
+        return styles.getDiscardedKeys();
+    }
+    
+    /**
+     * Returns the key of a referenced property value whose definition is present on the client.
+     * 
+     * @param propertyValue the property value
+     * @return the key, or null if the definition is not present on the client
+     */
+    synchronized String getPropertyKey(Object propertyValue) {
+        Entry entry = properties.get(propertyValue);
+        return entry == null ? null : entry.key;
+    }
+    
+    /**
+     * Returns the key of a referenced style whose current definition is present on the client.
+     * If the client's definition of a <code>MutableStyle</code> is out of date, it is discarded.
+     * 
+     * @param style the style
+     * @return the key, or null if the current definition is not present on the client
+     */
+    synchronized String getStyleKey(Style style) {
+        Entry entry = styles.get(style);
+        if (entry == null) {
+            return null;
+        }
+        if (style instanceof MutableStyle 
+                && entry.modificationCount != ((MutableStyle) style).getModificationCount()) {
+            styles.remove(style);
+            return null;
+        }
+        return entry.key;
+    }
+}
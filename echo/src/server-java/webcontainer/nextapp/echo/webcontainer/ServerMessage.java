@@ -29,21 +29,31 @@
 
 package nextapp.echo.webcontainer;
 
-import java.util.HashSet;
+import java.io.PrintWriter;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
 
 import nextapp.echo.app.util.DomUtil;
+import nextapp.echo.app.util.XmlWriter;
+import nextapp.echo.webcontainer.util.DomXmlWriter;
 
 /**
  * The outgoing XML message which synchronizes the state of the client to that
  * of the server.
+ * This implementation builds the message as an in-memory W3C DOM.
+ * 
+ * @see StreamingServerMessage
  */
 public class ServerMessage {
     
+    /** The XML namespace of server messages. */
+    public static final String NAMESPACE_URI = "http://www.nextapp.com/products/echo/svrmsg/servermessage.3.0";
+    
     /**
      * Constant for the "init" message part group. Message parts in this group are
      * processed before the "update" group.
@@ -71,13 +81,16 @@ public class ServerMessage {
     
     /** The XML DOM. */
     private Document document;
+    
+    /** The <code>ServiceRegistry</code> from which library services are retrieved to determine their content hashes. */
+    private ServiceRegistry libraryServiceRegistry;
 
     /**
      * Creates a new <code>ServerMessage</code>.
      */
     public ServerMessage() {
         super();
-        document = DomUtil.createDocument("smsg", null, null, "http://www.nextapp.com/products/echo/svrmsg/servermessage.3.0");
+        document = DomUtil.createDocument("smsg", null, null, NAMESPACE_URI);
         serverMessageElement = document.getDocumentElement();
         librariesElement = document.createElement("libs");
         serverMessageElement.appendChild(librariesElement);
@@ -86,7 +99,35 @@ public class ServerMessage {
         addPartGroup(GROUP_ID_INIT);
         addPartGroup(GROUP_ID_UPDATE);
     }
+    
+    /**
+     * Creates a new <code>ServerMessage</code> which does not build a DOM representation of itself.
+     * For use by derivative implementations only.
+     * 
+     * @param document the <code>Document</code> which will be provided to serialization peers
+     *        for the creation of directive content
+     */
+    protected ServerMessage(Document document) {
+        super();
+        this.document = document;
+    }
 
+    /**
+     * Returns the content hash of a JavaScript library service, which is rendered with the library
+     * such that the client may retrieve it with a cacheable URI.
+     * 
+     * @param serviceId the id of the library service
+     * @return the content hash, or null if the service is not a <code>ContentHashedService</code>, or no
+     *         <code>ServiceRegistry</code> has been provided
+     */
+    String getLibraryContentHash(String serviceId) {
+        if (libraryServiceRegistry == null) {
+            return null;
+        }
+        Service service = libraryServiceRegistry.get(serviceId);
+        return service instanceof ContentHashedService ? ((ContentHashedService) service).getContentHash() : null;
+    }
+    
     /**
      * Adds a JavaScript library service to be dynamically loaded.
      * 
@@ -95,17 +136,33 @@ public class ServerMessage {
      */
     public void addLibrary(String serviceId) {
         if (addedLibraries == null) {
-            addedLibraries = new HashSet();
+            addedLibraries = new LinkedHashSet();
         }
         if (addedLibraries.contains(serviceId)) {
             return;
         }
         Element libraryElement = document.createElement("lib");
+        String contentHash = getLibraryContentHash(serviceId);
+        if (contentHash != null) {
+            libraryElement.setAttribute("v", contentHash);
+        }
         libraryElement.appendChild(document.createTextNode(serviceId));
         librariesElement.appendChild(libraryElement);
         addedLibraries.add(serviceId);
     }
 
+    /**
+     * Returns the ids of the JavaScript library services which have been added to the message.
+     * 
+     * @return the service ids, in the order they were added
+     */
+    public String[] getLibraries() {
+        if (addedLibraries == null) {
+            return new String[0];
+        }
+        return (String[]) addedLibraries.toArray(new String[addedLibraries.size()]);
+    }
+    
     /**
      * Adds a "group" to the document. Part groups enable certain groups of
      * operations, e.g., remove operations, to be performed before others, e.g.,
@@ -190,6 +247,23 @@ public class ServerMessage {
         return directiveElement;
     }
 
+    /**
+     * Creates a directive (see <code>addDirective(String, String, String)</code>) and returns an
+     * <code>XmlWriter</code> with which its attributes and content may be written.
+     * The writer's current element is the directive element itself.
+     * Writers of multiple directives may be used concurrently, i.e., content may be added to 
+     * a previously opened directive after later directives have been opened.
+     * 
+     * @param groupId the id of the group to which the directive should be added
+     * @param processor the name of the client-side processor object which will
+     *        process the directive
+     * @param directiveName the name of the directive
+     * @return an <code>XmlWriter</code> positioned at the directive element
+     */
+    public XmlWriter openDirective(String groupId, String processor, String directiveName) {
+        return new DomXmlWriter(addDirective(groupId, processor, directiveName));
+    }
+
     /**
      * Returns the XML DOM.
      * 
@@ -199,6 +273,17 @@ public class ServerMessage {
         return document;
     }
     
+    /**
+     * Renders the message as XML to a <code>PrintWriter</code>.
+     * 
+     * @param w the <code>PrintWriter</code>
+     * @throws SAXException if the message cannot be rendered
+     */
+    public void render(PrintWriter w) 
+    throws SAXException {
+        DomUtil.save(document, w, null);
+    }
+    
     /**
      * Sets an arbitrary attribute on the root element.
      * 
@@ -209,13 +294,23 @@ public class ServerMessage {
         serverMessageElement.setAttribute(attributeName, attributeValue);
     }
     
+    /**
+     * Sets the <code>ServiceRegistry</code> containing the JavaScript library services added to the message.
+     * The content hashes of libraries which are <code>ContentHashedService</code>s are rendered with them.
+     * 
+     * @param libraryServiceRegistry the <code>ServiceRegistry</code>
+     */
+    public void setLibraryServiceRegistry(ServiceRegistry libraryServiceRegistry) {
+        this.libraryServiceRegistry = libraryServiceRegistry;
+    }
+    
     /**
      * Sets the "resync" attribute to true, indicating that the server
      * is recovering from a condition where the client has become out of sync.
      * This can occur if two browsers are manipulating the same user instance.
      */
     public void setResync() {
-        serverMessageElement.setAttribute("resync", "true");
+        setAttribute("resync", "true");
     }
     
     /**
@@ -225,10 +320,15 @@ public class ServerMessage {
      * @param transactionId the transaction identifier
      */
     public void setTransactionId(long transactionId) {
-        serverMessageElement.setAttribute("i", Long.toString(transactionId));
+        setAttribute("i", Long.toString(transactionId));
     }
 
+    /**
+     * Sets the identifier of the <code>UserInstance</code> to which the message is being sent.
+     * 
+     * @param userInstanceId the <code>UserInstance</code> identifier
+     */
     public void setUserInstanceId(String userInstanceId) {
-        serverMessageElement.setAttribute("u", userInstanceId);
+        setAttribute("u", userInstanceId);
     }
 }
@@ -0,0 +1,366 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.webcontainer;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+import nextapp.echo.app.util.DomUtil;
+import nextapp.echo.app.util.XmlWriter;
+import nextapp.echo.webcontainer.util.StreamXmlWriter;
+
+/**
+ * A <code>ServerMessage</code> which does not build an in-memory DOM.
+ * Each directive is written as escaped XML text into its own buffer by the <code>XmlWriter</code> returned from
+ * <code>openDirective()</code>.  As directives such as referenced property and style definitions continue to
+ * receive content after later directives have been opened, the buffers are only assembled when the message is
+ * rendered, at which point the root element, libraries, and part groups are written around them.
+ * <p>
+ * The DOM-specific methods of <code>ServerMessage</code> are supported for compatibility, e.g., with
+ * third-party synchronization peers.  Directive elements created by <code>addDirective()</code> are retained
+ * and serialized when the message is rendered, in order with the directives opened by
+ * <code>openDirective()</code>.  The element returned by <code>getPartGroup()</code> contains only nodes
+ * which have been appended to it directly; such nodes are likewise rendered in the order they were added
+ * relative to other directives (they are moved into the message when the next directive is added to the
+ * group, or when the message is rendered).  The <code>Document</code> returned by <code>getDocument()</code>
+ * contains no other content.
+ * <p>
+ * Methods which modify the message itself (e.g., <code>openDirective()</code>) are synchronized, such that
+ * fragments of directive content may be rendered concurrently.  Individual <code>XmlWriter</code>s are not
+ * thread-safe.
+ */
+public class StreamingServerMessage extends ServerMessage {
+
+    /**
+     * A directive, i.e., a processor name and the writer or DOM node containing the directive element.
+     */
+    private static class Directive {
+
+        /** 
+         * The client-side processor name, or null if <code>node</code> is a node other than a directive 
+         * or "dir" element, to be rendered as-is.
+         */
+        String processor;
+        
+        /**
+         * Flag indicating whether <code>node</code> is a "dir" element, to which subsequent directives with 
+         * the same processor are added when rendered.
+         */
+        boolean dirElement;
+
+        /** The writer containing the directive element, or null if the directive is a DOM node. */
+        StreamXmlWriter writer;
+        
+        /** The DOM node containing the directive, or null if the directive is provided by a writer. */
+        Node node;
+
+        /**
+         * Creates a new <code>Directive</code> which is provided by a writer.
+         *
+         * @param processor the client-side processor name
+         * @param writer the writer containing the directive element
+         */
+        Directive(String processor, StreamXmlWriter writer) {
+            super();
+            this.processor = processor;
+            this.writer = writer;
+        }
+
+        /**
+         * Creates a new <code>Directive</code> which is provided by a DOM node.
+         *
+         * @param processor the client-side processor name, or null if the node is to be rendered as-is
+         * @param node the DOM node
+         * @param dirElement flag indicating whether the node is a "dir" element
+         */
+        Directive(String processor, Node node, boolean dirElement) {
+            super();
+            this.processor = processor;
+            this.node = node;
+            this.dirElement = dirElement;
+        }
+    }
+
+    /** Root element attributes, in the order they were first set. */
+    private Map attributes = new LinkedHashMap();
+
+    /** Mapping between group ids and <code>List</code>s of <code>Directive</code>s, in order of creation. */
+    private Map groupToDirectivesMap = new LinkedHashMap();
+
+    /** Mapping between group ids and the DOM "group" elements returned by <code>getPartGroup()</code>. */
+    private Map groupToElementMap = new HashMap();
+
+    /** Added script library service ids, in order of addition. */
+    private List libraries = new ArrayList();
+
+    /** Set of added script library service ids. */
+    private Set librarySet = new HashSet();
+
+    /**
+     * Creates a new <code>StreamingServerMessage</code>.
+     */
+    public StreamingServerMessage() {
+        super(DomUtil.getDocumentBuilder().newDocument());
+        addPartGroup(GROUP_ID_INIT);
+        addPartGroup(GROUP_ID_UPDATE);
+    }
+
+    /**
+     * @see nextapp.echo.webcontainer.ServerMessage#addDirective(java.lang.String, java.lang.String)
+     */
+    public synchronized Element addDirective(String groupId, String processor) {
+        List directives = getDirectives(groupId);
+        Element dirElement = getDocument().createElement("dir");
+        dirElement.setAttribute("proc", processor);
+        directives.add(new Directive(processor, dirElement, true));
+        return dirElement;
+    }
+
+    /**
+     * @see nextapp.echo.webcontainer.ServerMessage#addDirective(java.lang.String, java.lang.String, java.lang.String)
+     */
+    public synchronized Element addDirective(String groupId, String processor, String directiveName) {
+        List directives = getDirectives(groupId);
+        Element directiveElement = getDocument().createElement(directiveName);
+        directives.add(new Directive(processor, directiveElement, false));
+        return directiveElement;
+    }
+
+    /**
+     * @see nextapp.echo.webcontainer.ServerMessage#addLibrary(java.lang.String)
+     */
+    public synchronized void addLibrary(String serviceId) {
+        if (librarySet.add(serviceId)) {
+            libraries.add(serviceId);
+        }
+    }
+
+    /**
+     * @see nextapp.echo.webcontainer.ServerMessage#getLibraries()
+     */
+    public synchronized String[] getLibraries() {
+        return (String[]) libraries.toArray(new String[libraries.size()]);
+    }
+
+    /**
+     * @see nextapp.echo.webcontainer.ServerMessage#addPartGroup(java.lang.String)
+     */
+    public synchronized Element addPartGroup(String groupId) {
+        Element groupElement = (Element) groupToElementMap.get(groupId);
+        if (groupElement == null) {
+            groupToDirectivesMap.put(groupId, new ArrayList());
+            groupElement = getDocument().createElement("group");
+            groupElement.setAttribute("i", groupId);
+            groupToElementMap.put(groupId, groupElement);
+        }
+        return groupElement;
+    }
+
+    /**
+     * Returns the directives of a group, first moving any nodes which have been appended to the group's 
+     * DOM element into them.
+     * 
+     * @param groupId the id of the group
+     * @return the <code>List</code> of <code>Directive</code>s
+     * @throws IllegalArgumentException if the group does not exist
+     */
+    private List getDirectives(String groupId) {
+        List directives = (List) groupToDirectivesMap.get(groupId);
+        if (directives == null) {
+            throw new IllegalArgumentException("Invalid group id: " + groupId);
+        }
+        Element groupElement = (Element) groupToElementMap.get(groupId);
+        Node node;
+        while ((node = groupElement.getFirstChild()) != null) {
+            groupElement.removeChild(node);
+            if (node.getNodeType() == Node.ELEMENT_NODE && "dir".equals(node.getNodeName())) {
+                directives.add(new Directive(((Element) node).getAttribute("proc"), node, true));
+            } else {
+                directives.add(new Directive(null, node, false));
+            }
+        }
+        return directives;
+    }
+
+    /**
+     * Returns the DOM "group" element of a part group.  The returned element does not contain the directives 
+     * which have been added to the group by other means; nodes appended to it are rendered in the group.
+     * 
+     * @see nextapp.echo.webcontainer.ServerMessage#getPartGroup(java.lang.String)
+     */
+    public synchronized Element getPartGroup(String groupId) {
+        return (Element) groupToElementMap.get(groupId);
+    }
+
+    /**
+     * @see nextapp.echo.webcontainer.ServerMessage#openDirective(java.lang.String, java.lang.String, java.lang.String)
+     */
+    public synchronized XmlWriter openDirective(String groupId, String processor, String directiveName) {
+        List directives = getDirectives(groupId);
+        StreamXmlWriter writer = new StreamXmlWriter();
+        writer.startElement(directiveName);
+        directives.add(new Directive(processor, writer));
+        return writer;
+    }
+
+    /**
+     * @see nextapp.echo.webcontainer.ServerMessage#render(java.io.PrintWriter)
+     */
+    public void render(PrintWriter w)
+    throws SAXException {
+        try {
+            writeTo(w);
+        } catch (IOException ex) {
+            throw new SAXException("Unable to write server message.", ex);
+        }
+        w.flush();
+    }
+
+    /**
+     * @see nextapp.echo.webcontainer.ServerMessage#setAttribute(java.lang.String, java.lang.String)
+     */
+    public synchronized void setAttribute(String attributeName, String attributeValue) {
+        attributes.put(attributeName, attributeValue);
+    }
+
+    /**
+     * Creates a writer for a fragment of directive content, which may be rendered independently (e.g., on another
+     * thread) and later added to a directive using <code>StreamXmlWriter.appendFragment()</code>.
+     * 
+     * @return the created writer
+     */
+    public StreamXmlWriter createFragmentWriter() {
+        return new StreamXmlWriter();
+    }
+
+    /**
+     * Renders the message as XML to a <code>Writer</code>.
+     *
+     * @param w the <code>Writer</code>
+     * @throws IOException
+     */
+    public synchronized void writeTo(Writer w)
+    throws IOException {
+        w.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+
+        StreamXmlWriter out = new StreamXmlWriter();
+        out.startElement("smsg");
+        out.setAttribute("xmlns", NAMESPACE_URI);
+        Iterator attributeIt = attributes.entrySet().iterator();
+        while (attributeIt.hasNext()) {
+            Map.Entry entry = (Map.Entry) attributeIt.next();
+            out.setAttribute((String) entry.getKey(), (String) entry.getValue());
+        }
+        out.startElement("libs");
+        Iterator libraryIt = libraries.iterator();
+        while (libraryIt.hasNext()) {
+            String serviceId = (String) libraryIt.next();
+            out.startElement("lib");
+            String contentHash = getLibraryContentHash(serviceId);
+            if (contentHash != null) {
+                out.setAttribute("v", contentHash);
+            }
+            out.text(serviceId);
+            out.endElement();
+        }
+        out.endElement();
+
+        Iterator groupIt = groupToDirectivesMap.entrySet().iterator();
+        while (groupIt.hasNext()) {
+            Map.Entry entry = (Map.Entry) groupIt.next();
+            out.startElement("group");
+            out.setAttribute("i", (String) entry.getKey());
+
+            // Render directives, combining consecutive directives with identical processors into a single
+            // "dir" element (as is done by ServerMessage.addDirective()).
+            String openProcessor = null;
+            Iterator directiveIt = getDirectives((String) entry.getKey()).iterator();
+            while (directiveIt.hasNext()) {
+                Directive directive = (Directive) directiveIt.next();
+                if (directive.dirElement) {
+                    // Render "dir" element, leaving it open such that subsequent directives with the same 
+                    // processor are added to it.
+                    if (openProcessor != null) {
+                        out.endElement();
+                    }
+                    openProcessor = directive.processor;
+                    out.startElement("dir");
+                    NamedNodeMap attributes = directive.node.getAttributes();
+                    for (int i = 0; i < attributes.getLength(); ++i) {
+                        Node attribute = attributes.item(i);
+                        out.setAttribute(attribute.getNodeName(), attribute.getNodeValue());
+                    }
+                    Node child = directive.node.getFirstChild();
+                    while (child != null) {
+                        out.append(child);
+                        child = child.getNextSibling();
+                    }
+                    continue;
+                }
+                if (directive.processor == null || !directive.processor.equals(openProcessor)) {
+                    if (openProcessor != null) {
+                        out.endElement();
+                    }
+                    openProcessor = directive.processor;
+                    if (openProcessor != null) {
+                        out.startElement("dir");
+                        out.setAttribute("proc", directive.processor);
+                    }
+                }
+                if (directive.writer == null) {
+                    out.append(directive.node);
+                } else {
+                    out.flushChild(w, directive.writer);
+                }
+            }
+            if (openProcessor != null) {
+                out.endElement();
+            }
+            out.endElement();
+        }
+
+        out.close();
+        out.writeTo(w);
+    }
+}
@@ -0,0 +1,98 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+
+package nextapp.echo.webcontainer;
+
+import nextapp.echo.app.StyleSheet;
+
+/**
+ * Describes the <code>StyleSheet</code> most recently rendered to the client of a <code>UserInstance</code>,
+ * such that later changes may be rendered incrementally, and unchanged content need not be rendered again.
+ */
+class StyleSheetState {
+
+    /** The most recently rendered style sheet. */
+    private StyleSheet styleSheet;
+    
+    /** The modification count of the style sheet when it was rendered (<code>MutableStyleSheet</code>s only). */
+    private int modificationCount;
+    
+    /** The content hash of the rendered style sheet, or null if it has not been calculated. */
+    private String hash;
+    
+    /**
+     * Returns the content hash of the rendered style sheet.
+     * 
+     * @return the hash, or null if it has not been calculated
+     */
+    String getHash() {
+        return hash;
+    }
+    
+    /**
+     * Returns the modification count of the style sheet when it was rendered.
+     * 
+     * @return the modification count
+     */
+    int getModificationCount() {
+        return modificationCount;
+    }
+    
+    /**
+     * Returns the most recently rendered style sheet.
+     * 
+     * @return the style sheet, or null if none has been rendered (or the rendered style sheet was null)
+     */
+    StyleSheet getStyleSheet() {
+        return styleSheet;
+    }
+    
+    /**
+     * Sets the content hash of the rendered style sheet.
+     * 
+     * @param hash the hash
+     */
+    void setHash(String hash) {
+        this.hash = hash;
+    }
+    
+    /**
+     * Records that a style sheet has been rendered to the client.
+     * 
+     * @param styleSheet the style sheet
+     * @param modificationCount the modification count of the style sheet when it was rendered
+     * @param hash the content hash of the style sheet, or null if it has not been calculated
+     */
+    void update(StyleSheet styleSheet, int modificationCount, String hash) {
+        this.styleSheet = styleSheet;
+        this.modificationCount = modificationCount;
+        this.hash = hash;
+    }
+}
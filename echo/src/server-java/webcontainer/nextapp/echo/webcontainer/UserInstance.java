@@ -31,6 +31,8 @@ package nextapp.echo.webcontainer;
 
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.Collections;
 import java.util.HashMap;
@@ -39,6 +41,7 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.servlet.http.HttpSession;
 
@@ -100,8 +103,10 @@ public class UserInstance implements Serializable {
     
     /**
      * Mapping between component instances and <code>RenderState</code> objects.
+     * Concurrent, as render states may be retrieved and stored by peers rendering sibling component 
+     * hierarchies in parallel.
      */
-    private Map componentToRenderStateMap = new HashMap();
+    private Map componentToRenderStateMap = new ConcurrentHashMap();
     
     /**
      * <code>PropertyChangeListener</code> for supported <code>ApplicationInstance</code>.
@@ -121,8 +126,21 @@ public class UserInstance implements Serializable {
     /**
      * <code>IdTable</code> used to assign weakly-referenced unique 
      * identifiers to arbitrary objects.
+     * Created eagerly (and on deserialization) such that it may be retrieved without locking by peers rendering
+     * sibling component hierarchies in parallel while the synchronizing thread holds this object's monitor.
      */
-    private transient IdTable idTable;
+    private transient IdTable idTable = new IdTable();
+    
+    /**
+     * <code>ReferenceCache</code> recording referenced property values and styles whose definitions
+     * are present on the client.
+     */
+    private transient ReferenceCache referenceCache;
+    
+    /**
+     * <code>StyleSheetState</code> describing the style sheet most recently rendered to the client.
+     */
+    private transient StyleSheetState styleSheetState;
 
     /**
      * Flag indicating whether initialization has occurred. 
@@ -303,9 +321,6 @@ public class UserInstance implements Serializable {
      * @return the <code>IdTable</code>
      */
     public IdTable getIdTable() {
-        if (idTable == null) {
-            idTable = new IdTable();
-        }
         return idTable;
     }
     
@@ -329,6 +344,31 @@ public class UserInstance implements Serializable {
         return transactionId;
     }
 
+    /**
+     * Returns the <code>ReferenceCache</code> recording referenced property values and styles whose definitions 
+     * are present on the client.
+     * 
+     * @return the <code>ReferenceCache</code>
+     */
+    synchronized ReferenceCache getReferenceCache() {
+        if (referenceCache == null) {
+            referenceCache = new ReferenceCache(WebContainerServlet.REFERENCE_CACHE_SIZE);
+        }
+        return referenceCache;
+    }
+    
+    /**
+     * Returns the <code>StyleSheetState</code> describing the style sheet most recently rendered to the client.
+     * 
+     * @return the <code>StyleSheetState</code>
+     */
+    synchronized StyleSheetState getStyleSheetState() {
+        if (styleSheetState == null) {
+            styleSheetState = new StyleSheetState();
+        }
+        return styleSheetState;
+    }
+    
     /**
      * Retrieves the <code>RenderState</code> of the specified
      * <code>Component</code>.
@@ -512,6 +552,15 @@ public class UserInstance implements Serializable {
         }
     }
 
+    /**
+     * @see java.io.Serializable
+     */
+    private void readObject(ObjectInputStream in)
+    throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        idTable = new IdTable();
+    }
+    
     /**
      * Removes the <code>RenderState</code> of the specified
      * <code>Component</code>.
@@ -561,10 +610,14 @@ public class UserInstance implements Serializable {
      * <code>Component</code>.
      * 
      * @param component the component
-     * @param renderState the render state
+     * @param renderState the render state, or null to remove the render state
      */
     public void setRenderState(Component component, RenderState renderState) {
-        componentToRenderStateMap.put(component, renderState);
+        if (renderState == null) {
+            componentToRenderStateMap.remove(component);
+        } else {
+            componentToRenderStateMap.put(component, renderState);
+        }
     }
 
     /**
@@ -4,6 +4,9 @@ import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.http.HttpSession;
 import javax.servlet.http.HttpSessionActivationListener;
@@ -13,6 +16,10 @@ import javax.servlet.http.HttpSessionEvent;
 
 /**
  * Container / manager of all <code>UserInstance<code> objects in the servlet session.
+ * <p>
+ * Instances are stored in concurrent maps, such that they may be retrieved without locking.
+ * Creation of a <code>UserInstance</code> is serialized only with other creations for 
+ * client window identifiers sharing the same lock stripe.
  */
 public class UserInstanceContainer 
 implements HttpSessionActivationListener, HttpSessionBindingListener, Serializable {
@@ -29,15 +36,32 @@ implements HttpSessionActivationListener, HttpSessionBindingListener, Serializab
         new UserInstanceContainer(conn);
     }
     
+    /**
+     * Number of locks used to serialize <code>UserInstance</code> creation.
+     */
+    private static final int CREATION_LOCK_COUNT = 16;
+    
+    /**
+     * Returns the key under which a <code>UserInstance</code> with the specified (possibly null) client window or
+     * user instance identifier is stored.  Identifiers are null when user instances are not window-specific, 
+     * and are otherwise never empty.
+     * 
+     * @param id the client window or user instance identifier
+     * @return the map key
+     */
+    private static String toKey(String id) {
+        return id == null ? "" : id;
+    }
+    
     /**
      * Sequential <code>UserInstance</code> identifier generator.
      */
-    private int nextUserInstanceId = 0;
+    private AtomicInteger nextUserInstanceId = new AtomicInteger();
     
     /**
      * Sequential initial request identifier generator. 
      */
-    private int nextInitId = 0;
+    private AtomicInteger nextInitId = new AtomicInteger();
     
     /**
      * The default character encoding in which responses should be rendered.
@@ -52,18 +76,24 @@ implements HttpSessionActivationListener, HttpSessionBindingListener, Serializab
     /**
      * Mapping between client-generated unique browser window identifiers and <code>UserInstance</code> values.
      */
-    private Map clientWindowIdToUserInstance = new HashMap();
+    private ConcurrentMap clientWindowIdToUserInstance = new ConcurrentHashMap();
     
     /**
      * Mapping between <code>UserInstance</code> identifiers and <code>UserInstance</code> values.
      */
-    private Map idToUserInstance = new HashMap();
+    private ConcurrentMap idToUserInstance = new ConcurrentHashMap();
     
     /**
      * Mapping between initial request identifiers (as returned by <code>createInitId()</code>) and maps of initial
      * requested parameters retrieved from <code>HttpServletRequest.getParameterMap()</code>.
      */
-    private Map initIdToInitialRequestParameterMap = new HashMap();
+    private Map initIdToInitialRequestParameterMap = new ConcurrentHashMap();
+    
+    /**
+     * Locks used to serialize <code>UserInstance</code> creation, selected by client window identifier.
+     * Lazily created.
+     */
+    private transient volatile Object[] creationLocks;
     
     /**
      * The containing <code>HttpSession</code>.
@@ -105,7 +135,7 @@ implements HttpSessionActivationListener, HttpSessionBindingListener, Serializab
      */
     public String createInitId(Connection conn) {
         Map parameterMap = new HashMap(conn.getRequest().getParameterMap());
-        String initId = new Integer(nextInitId++).toString();
+        String initId = Integer.toString(nextInitId.getAndIncrement());
         initIdToInitialRequestParameterMap.put(initId, parameterMap);
         return initId;
     }
@@ -127,23 +157,33 @@ implements HttpSessionActivationListener, HttpSessionBindingListener, Serializab
      *        request identifier
      * @return the existing or created <code>UserInstance</code>
      */
-    synchronized UserInstance loadUserInstance(String clientWindowId, String initId) {
+    UserInstance loadUserInstance(String clientWindowId, String initId) {
         if (!windowSpecificUserInstances) {
             clientWindowId = null;
         }
-        UserInstance userInstance = (UserInstance) clientWindowIdToUserInstance.get(clientWindowId);
-        if (userInstance == null) {
-            String uiid;
-            
-            if (windowSpecificUserInstances) {
-                uiid = new Integer(nextUserInstanceId++).toString();
-            } else {
-                uiid = null;
+        String windowKey = toKey(clientWindowId);
+        UserInstance userInstance = (UserInstance) clientWindowIdToUserInstance.get(windowKey);
+        if (userInstance != null) {
+            return userInstance;
+        }
+        
+        synchronized (getCreationLock(windowKey)) {
+            // Re-check, another request for the same window may have created the instance.
+            userInstance = (UserInstance) clientWindowIdToUserInstance.get(windowKey);
+            if (userInstance == null) {
+                String uiid;
+                
+                if (windowSpecificUserInstances) {
+                    uiid = Integer.toString(nextUserInstanceId.getAndIncrement());
+                } else {
+                    uiid = null;
+                }
+                Map initialRequestParameterMap = initId == null ? null 
+                        : (Map) initIdToInitialRequestParameterMap.remove(initId);
+                userInstance = new UserInstance(this, uiid, clientWindowId, initialRequestParameterMap); 
+                idToUserInstance.put(toKey(userInstance.getId()), userInstance);
+                clientWindowIdToUserInstance.put(windowKey, userInstance);
             }
-            Map initialRequestParameterMap = (Map) initIdToInitialRequestParameterMap.remove(initId);
-            userInstance = new UserInstance(this, uiid, clientWindowId, initialRequestParameterMap); 
-            clientWindowIdToUserInstance.put(clientWindowId, userInstance);
-            idToUserInstance.put(userInstance.getId(), userInstance);
         }
         return userInstance;
     }
@@ -154,10 +194,10 @@ implements HttpSessionActivationListener, HttpSessionBindingListener, Serializab
      * 
      * @param userInstance the instance to unload
      */
-    synchronized void unloadUserInstance(UserInstance userInstance) {
+    void unloadUserInstance(UserInstance userInstance) {
         userInstance.dispose();
-        clientWindowIdToUserInstance.remove(userInstance.getClientWindowId());
-        idToUserInstance.remove(userInstance.getId());
+        clientWindowIdToUserInstance.remove(toKey(userInstance.getClientWindowId()), userInstance);
+        idToUserInstance.remove(toKey(userInstance.getId()), userInstance);
     }
     
     /**
@@ -167,8 +207,8 @@ implements HttpSessionActivationListener, HttpSessionBindingListener, Serializab
      *        the <code>UserInstance</code>'s <code>getId()</code> method
      * @return the <code>UserInstnace</code>, or null if none exists
      */
-    synchronized UserInstance getUserInstanceById(String id) {
-        return (UserInstance) idToUserInstance.get(id);
+    UserInstance getUserInstanceById(String id) {
+        return (UserInstance) idToUserInstance.get(toKey(id));
     }
     
     /**
@@ -182,6 +222,30 @@ implements HttpSessionActivationListener, HttpSessionBindingListener, Serializab
         return characterEncoding;
     }
     
+    /**
+     * Returns the lock used to serialize creation of the <code>UserInstance</code> for
+     * the specified client window.
+     * 
+     * @param windowKey the client window identifier key
+     * @return the lock
+     */
+    private Object getCreationLock(String windowKey) {
+        Object[] locks = creationLocks;
+        if (locks == null) {
+            synchronized (this) {
+                if (creationLocks == null) {
+                    Object[] newLocks = new Object[CREATION_LOCK_COUNT];
+                    for (int i = 0; i < newLocks.length; ++i) {
+                        newLocks[i] = new Object();
+                    }
+                    creationLocks = newLocks;
+                }
+                locks = creationLocks;
+            }
+        }
+        return locks[(windowKey.hashCode() & 0x7fffffff) % locks.length];
+    }
+    
     /**
      * Returns the id of the HTML element that will serve as the Root component.
      * This element must already be present in the DOM when the application is
@@ -205,6 +269,7 @@ implements HttpSessionActivationListener, HttpSessionBindingListener, Serializab
     
     /**
      * Determines the URI to invoke the specified <code>Service</code>.
+     * The URI of a <code>ContentHashedService</code> includes its content hash.
      * 
      * @param service the <code>Service</code>
      * @return the URI
@@ -221,6 +286,12 @@ implements HttpSessionActivationListener, HttpSessionBindingListener, Serializab
             out.append("=");
             out.append(userInstanceId);
         }
+        if (service instanceof ContentHashedService) {
+            out.append("&");
+            out.append(WebContainerServlet.CONTENT_HASH_PARAMETER);
+            out.append("=");
+            out.append(((ContentHashedService) service).getContentHash());
+        }
         return out.toString();
     }
     
@@ -234,6 +305,7 @@ implements HttpSessionActivationListener, HttpSessionBindingListener, Serializab
      * thus be of equal length. Null values are allowed in the
      * <code>parameterValues</code> array, and in such cases only the parameter
      * name will be rendered in the returned URI.
+     * The URI of a <code>ContentHashedService</code> includes its content hash.
      * 
      * @param service the <code>Service</code>
      * @param parameterNames the names of the additional URI parameters
@@ -252,6 +324,12 @@ implements HttpSessionActivationListener, HttpSessionBindingListener, Serializab
             out.append("=");
             out.append(userInstanceId);
         }
+        if (service instanceof ContentHashedService) {
+            out.append("&");
+            out.append(WebContainerServlet.CONTENT_HASH_PARAMETER);
+            out.append("=");
+            out.append(((ContentHashedService) service).getContentHash());
+        }
         for (int i = 0; i < parameterNames.length; ++i) {
             out.append("&");
             out.append(parameterNames[i]);
@@ -0,0 +1,196 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.webcontainer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import nextapp.echo.app.Component;
+import nextapp.echo.app.reflect.IntrospectorFactory;
+import nextapp.echo.app.serial.Serializer;
+import nextapp.echo.app.util.Log;
+import nextapp.echo.app.util.PropertiesDiscovery;
+import nextapp.echo.webcontainer.service.BootService;
+
+/**
+ * Performs work which would otherwise be performed when the first users access an application: loading peer
+ * bindings, initializing and instantiating all bound peers (whose static initializers typically compress JavaScript
+ * resources), and introspecting all bound component classes.
+ * <p>
+ * Peer classes are initialized and components are introspected concurrently, using a specified number of threads.
+ * Failures are logged and otherwise ignored, as the affected work will simply be retried when first required.
+ * Invoked by <code>WebContainerServlet.init()</code> if enabled by <code>WebContainerServlet.WARM_UP_THREADS</code>,
+ * and may be invoked by applications directly.
+ */
+public class WarmUp {
+    
+    /** Resource names of the property files binding peer classes. */
+    private static final String[] BINDING_RESOURCE_NAMES = new String[] {
+            "META-INF/nextapp/echo/SynchronizePeerBindings.properties",
+            "META-INF/nextapp/echo/SerialPeers.properties" };
+    
+    /**
+     * <code>ThreadFactory</code> creating daemon threads.
+     */
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        
+        /**
+         * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+         */
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Echo WarmUp");
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+    
+    /**
+     * Creates a task which initializes a peer class.
+     * 
+     * @param className the name of the peer class
+     * @param classLoader the <code>ClassLoader</code>
+     * @return the task
+     */
+    private static Callable createPeerTask(final String className, final ClassLoader classLoader) {
+        return new Callable() {
+            public Object call() {
+                try {
+                    Thread.currentThread().setContextClassLoader(classLoader);
+                    Class.forName(className, true, classLoader);
+                } catch (ClassNotFoundException ex) {
+                    Log.log("Cannot load peer class: " + className, ex);
+                } catch (LinkageError ex) {
+                    Log.log("Cannot initialize peer class: " + className, ex);
+                }
+                return null;
+            }
+        };
+    }
+    
+    /**
+     * Creates a task which introspects a bound class, if it is a component.
+     * 
+     * @param className the name of the bound class
+     * @param classLoader the <code>ClassLoader</code>
+     * @return the task
+     */
+    private static Callable createIntrospectionTask(final String className, final ClassLoader classLoader) {
+        return new Callable() {
+            public Object call() {
+                try {
+                    Thread.currentThread().setContextClassLoader(classLoader);
+                    Class componentClass = Class.forName(Component.class.getName(), false, classLoader);
+                    if (componentClass.isAssignableFrom(Class.forName(className, false, classLoader))) {
+                        IntrospectorFactory.get(className, classLoader);
+                    }
+                } catch (ClassNotFoundException ex) {
+                    Log.log("Cannot load bound class: " + className, ex);
+                } catch (LinkageError ex) {
+                    Log.log("Cannot load bound class: " + className, ex);
+                }
+                return null;
+            }
+        };
+    }
+    
+    /**
+     * Performs the warm-up, returning when it has been completed.
+     * 
+     * @param classLoader the <code>ClassLoader</code> of the application
+     * @param threadCount the number of threads to use
+     */
+    public static void warmUp(ClassLoader classLoader, int threadCount) {
+        List tasks = new ArrayList();
+        tasks.add(new Callable() {
+            public Object call() {
+                return BootService.SERVICE;
+            }
+        });
+        for (int i = 0; i < BINDING_RESOURCE_NAMES.length; ++i) {
+            Map bindings;
+            try {
+                bindings = PropertiesDiscovery.loadProperties(BINDING_RESOURCE_NAMES[i], classLoader);
+            } catch (IOException ex) {
+                Log.log("Cannot load peer bindings: " + BINDING_RESOURCE_NAMES[i], ex);
+                continue;
+            }
+            Iterator it = bindings.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry entry = (Map.Entry) it.next();
+                tasks.add(createPeerTask(((String) entry.getValue()).trim(), classLoader));
+                String boundClassName = ((String) entry.getKey()).trim();
+                if (boundClassName.indexOf('.') != -1) {
+                    // Bindings for primitive types, e.g., "int", are not introspected.
+                    tasks.add(createIntrospectionTask(boundClassName, classLoader));
+                }
+            }
+        }
+        
+        ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+        try {
+            if (threadCount > 1) {
+                ExecutorService executor = Executors.newFixedThreadPool(threadCount, THREAD_FACTORY);
+                try {
+                    executor.invokeAll(tasks);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } finally {
+                    executor.shutdown();
+                }
+            } else {
+                Iterator it = tasks.iterator();
+                while (it.hasNext()) {
+                    ((Callable) it.next()).call();
+                }
+            }
+            
+            // Create the peer factories, instantiating the (now initialized) peers.
+            Thread.currentThread().setContextClassLoader(classLoader);
+            SynchronizePeerFactory.getPeerForComponent(Component.class);
+            PropertySerialPeerFactory.forClassLoader(classLoader);
+            Serializer.forClassLoader(classLoader);
+        } catch (Exception ex) {
+            Log.log("Warm-up failed.", ex);
+        } finally {
+            Thread.currentThread().setContextClassLoader(contextClassLoader);
+        }
+    }
+    
+    /** Non-instantiable class. */
+    private WarmUp() { }
+}
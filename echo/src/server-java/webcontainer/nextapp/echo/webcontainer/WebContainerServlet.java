@@ -34,12 +34,14 @@ import nextapp.echo.app.util.Log;
 import nextapp.echo.app.util.Uid;
 import nextapp.echo.webcontainer.service.AsyncMonitorService;
 import nextapp.echo.webcontainer.service.BootService;
+import nextapp.echo.webcontainer.service.ImageService;
 import nextapp.echo.webcontainer.service.NewInstanceService;
 import nextapp.echo.webcontainer.service.ResourceService;
 import nextapp.echo.webcontainer.service.SessionExpiredService;
 import nextapp.echo.webcontainer.service.StaticTextService;
 import nextapp.echo.webcontainer.service.SynchronizeService;
 import nextapp.echo.webcontainer.service.WindowHtmlService;
+import nextapp.echo.webcontainer.util.PngEncoder;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -73,7 +75,126 @@ public abstract class WebContainerServlet extends HttpServlet {
         }
         DEBUG_PRINT_MESSAGES_TO_CONSOLE = value;
     }
+
+    /**
+     * Flag indicating whether server messages should be built as an in-memory DOM (<code>ServerMessage</code>)
+     * rather than streamed (<code>StreamingServerMessage</code>).
+     * Enabled by setting the "echo.syncdom" system property to "true", e.g., to compare the output of the
+     * two implementations.
+     */
+    public static final boolean DOM_SERVER_MESSAGE;
+    static {
+        boolean value;
+        try {
+            value = "true".equals(System.getProperty("echo.syncdom"));
+        } catch (SecurityException ex) {
+            value = false;
+        }
+        DOM_SERVER_MESSAGE = value;
+    }
+
+    /**
+     * The size, in bytes, which synchronization responses must exceed to be compressed 
+     * (if the client accepts a supported content encoding).
+     * Configured by the "echo.compression.threshold" system property, default 2048.
+     * A negative value disables compression.
+     */
+    public static final int COMPRESSION_THRESHOLD = getIntegerProperty("echo.compression.threshold", 2048);
     
+    /**
+     * The compression level (0-9) used for compressed synchronization responses.
+     * Configured by the "echo.compression.level" system property, default 6.
+     */
+    public static final int COMPRESSION_LEVEL = getIntegerProperty("echo.compression.level", 6);
+    
+    /**
+     * Returns the integer value of a system property.
+     * 
+     * @param name the property name
+     * @param defaultValue the value to return if the property is not set, invalid, or not accessible
+     * @return the property value
+     */
+    private static int getIntegerProperty(String name, int defaultValue) {
+        try {
+            String value = System.getProperty(name);
+            return value == null ? defaultValue : Integer.parseInt(value.trim());
+        } catch (SecurityException ex) {
+            return defaultValue;
+        } catch (NumberFormatException ex) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * The maximum time, in milliseconds, for which an asynchronous monitor request will be held open
+     * waiting for a task to be enqueued (requires asynchronous request support from the container).
+     * Configured by the "echo.asyncmonitor.timeout" system property, default 30000.
+     * A value of zero or less disables long polling, such that requests are answered immediately.
+     */
+    public static final int ASYNC_MONITOR_TIMEOUT = getIntegerProperty("echo.asyncmonitor.timeout", 30000);
+
+    /**
+     * The minimum number of visible components a child hierarchy must contain for it to be rendered on a separate
+     * thread when the full component hierarchy is rendered, i.e., on initialization or when the client page is
+     * reloaded.  Configured by the "echo.render.parallel.threshold" system property, default 0.
+     * A value of zero or less disables parallel rendering.
+     */
+    public static final int PARALLEL_RENDERING_THRESHOLD = getIntegerProperty("echo.render.parallel.threshold", 0);
+
+    /**
+     * The maximum number of referenced property values, and of referenced styles, whose definitions are retained by 
+     * the client between synchronizations, such that they need not be sent again.
+     * Configured by the "echo.referencecache.size" system property, default 256.
+     * A value of zero or less disables retention of definitions between synchronizations.
+     */
+    public static final int REFERENCE_CACHE_SIZE = getIntegerProperty("echo.referencecache.size", 256);
+
+    /**
+     * Flag indicating whether the boot script, initialization scripts, and the libraries required by the first
+     * screen of an application should be delivered to clients in a single bundled script 
+     * (see <code>BundleService</code>).
+     * Enabled by default, disabled by setting the "echo.bootbundle" system property to "false".
+     */
+    public static final boolean BOOT_BUNDLE_ENABLED;
+    static {
+        boolean value;
+        try {
+            value = !"false".equals(System.getProperty("echo.bootbundle"));
+        } catch (SecurityException ex) {
+            value = true;
+        }
+        BOOT_BUNDLE_ENABLED = value;
+    }
+
+    /**
+     * The maximum total size, in bytes, of the static resources served by the <code>ResourceService</code> which are 
+     * retained in memory.  Configured by the "echo.resourcecache.size" system property, default 4194304 (4MB).
+     * A value of zero or less disables caching, such that resources are read on every request.
+     */
+    public static final int RESOURCE_CACHE_SIZE = getIntegerProperty("echo.resourcecache.size", 4194304);
+
+    /**
+     * The maximum total size, in bytes, of PNG-encoded <code>AwtImageReference</code>s which are retained in memory
+     * by the <code>ImageService</code>.  Configured by the "echo.awtimagecache.size" system property, default 
+     * 4194304 (4MB).  A value of zero or less disables caching, such that images are encoded on every request.
+     */
+    public static final int AWT_IMAGE_CACHE_SIZE = getIntegerProperty("echo.awtimagecache.size", 4194304);
+    
+    /**
+     * The number of background threads used to encode <code>AwtImageReference</code>s when they are rendered to 
+     * the client, ahead of the client's request for the image.  Configured by the "echo.awtimage.encoderthreads" 
+     * system property, default 0.  A value of zero or less disables encoding ahead of time, such that images are
+     * encoded when requested.  Has no effect if <code>AWT_IMAGE_CACHE_SIZE</code> is zero or less.
+     */
+    public static final int AWT_IMAGE_ENCODER_THREADS = getIntegerProperty("echo.awtimage.encoderthreads", 0);
+
+    /**
+     * The number of threads used to warm up the application when the servlet is initialized (see <code>WarmUp</code>),
+     * such that peers are loaded and components introspected before the first request.  Configured by the 
+     * "echo.warmup.threads" system property, default 0.  A value of zero or less disables warm-up.
+     */
+    public static final int WARM_UP_THREADS = getIntegerProperty("echo.warmup.threads", 0);
+
     /** A <code>ThreadLocal</code> reference to the <code>Connection</code> relevant to the current thread. */ 
     private static final ThreadLocal activeConnection = new ThreadLocal();
     
@@ -109,6 +230,12 @@ public abstract class WebContainerServlet extends HttpServlet {
     /** Request parameter identifying requested <code>UserInstance</code>. */
     public static final String USER_INSTANCE_ID_PARAMETER = "uiid";
     
+    /** Request parameter containing the content hash of a requested <code>ContentHashedService</code>. */
+    public static final String CONTENT_HASH_PARAMETER = "v";
+    
+    /** The time, in milliseconds, for which responses from <code>ContentHashedService</code>s may be cached (one year). */
+    private static final long CONTENT_HASHED_MAX_AGE = 31536000000L;
+    
     /**
      * <code>Service</code> identifier of the 'default' service. 
      * The 'default' service is rendered when a client makes a request
@@ -191,6 +318,16 @@ public abstract class WebContainerServlet extends HttpServlet {
     public static final Connection getActiveConnection() {
         return (Connection) activeConnection.get();
     }
+
+    /**
+     * Sets the <code>Connection</code> that is relevant to the current thread.
+     * Used by threads which perform work on behalf of the thread servicing the connection.
+     * 
+     * @param conn the relevant <code>Connection</code>, or null
+     */
+    static void setActiveConnection(Connection conn) {
+        activeConnection.set(conn);
+    }
     
     /**
      * Returns the multipart/form-data encoded HTTP request handler.
@@ -219,6 +356,16 @@ public abstract class WebContainerServlet extends HttpServlet {
     public static ServiceRegistry getServiceRegistry() {
         return services;
     }
+
+    /**
+     * Returns the time at which the servlet was loaded, which is used as the modification date
+     * of cacheable service output.
+     *
+     * @return the startup time, in milliseconds
+     */
+    public static long getStartupTime() {
+        return startupTime;
+    }
     
     /**
      * Sets the multipart/form-data encoded HTTP request handler.
@@ -264,6 +411,31 @@ public abstract class WebContainerServlet extends HttpServlet {
         services.add(AsyncMonitorService.INSTANCE);
     }
     
+    /**
+     * Warms up the application if enabled by <code>WARM_UP_THREADS</code>.
+     * 
+     * @see javax.servlet.GenericServlet#init()
+     */
+    public void init() 
+    throws ServletException {
+        super.init();
+        if (WARM_UP_THREADS > 0) {
+            WarmUp.warmUp(Thread.currentThread().getContextClassLoader(), WARM_UP_THREADS);
+        }
+    }
+    
+    /**
+     * Shuts down the threads used for concurrent rendering and image encoding.
+     * 
+     * @see javax.servlet.GenericServlet#destroy()
+     */
+    public void destroy() {
+        OutputProcessor.shutdownRenderPool();
+        ImageService.INSTANCE.shutdown();
+        PngEncoder.shutdown();
+        super.destroy();
+    }
+    
     /**
      * Adds a JavaScript service to be loaded at initialization.
      * 
@@ -386,6 +558,17 @@ public abstract class WebContainerServlet extends HttpServlet {
         return INSTANCE_MODE_SINGLE;
     }
     
+    /**
+     * Returns the minimum number of visible components a child hierarchy must contain for it to be rendered on a
+     * separate thread when the full component hierarchy is rendered.  A value of zero or less disables parallel
+     * rendering.  Returns <code>PARALLEL_RENDERING_THRESHOLD</code> by default.
+     * 
+     * @return the parallel rendering threshold
+     */
+    public int getParallelRenderingThreshold() {
+        return PARALLEL_RENDERING_THRESHOLD;
+    }
+    
     /**
      * Creates a new <code>ApplicationInstance</code> for visitor to an 
      * application.
@@ -414,7 +597,13 @@ public abstract class WebContainerServlet extends HttpServlet {
             int version = service.getVersion();
             
             // Set caching directives.
-            if ((!DISABLE_CACHING) && version != Service.DO_NOT_CACHE) {
+            if ((!DISABLE_CACHING) && service instanceof ContentHashedService) {
+                if (processContentHash(request, response, ((ContentHashedService) service).getContentHash())) {
+                    // Client copy is current.
+                    conn.finish();
+                    return;
+                }
+            } else if ((!DISABLE_CACHING) && version != Service.DO_NOT_CACHE) {
                 // Setting all of the following (possibly with the exception of "Expires")
                 // are *absolutely critical* in order to ensure proper caching of resources
                 // with Internet Explorer 6.  Without "Last-Modified", IE6 appears to not
@@ -430,38 +619,73 @@ public abstract class WebContainerServlet extends HttpServlet {
             }
             
             service.service(conn);
+            conn.finish();
             
         } catch (ServletException ex) {
-            if (conn != null) {
-                conn.disposeUserInstance();
-            }
-            processError(request, response, ex);
+            processError(conn, request, response, ex);
         } catch (IOException ex) {
-            if (conn != null) {
-                conn.disposeUserInstance();
-            }
-            processError(request, response, ex);
+            processError(conn, request, response, ex);
         } catch (RuntimeException ex) {
+            processError(conn, request, response, ex);
+        } finally {
             if (conn != null) {
-                conn.disposeUserInstance();
+                conn.release();
             }
-            processError(request, response, ex);
-        } finally {
             activeConnection.set(null);
         }
     }
     
+    /**
+     * Sets the caching directives of a response from a <code>ContentHashedService</code>.
+     * A response to a request which specifies the current content hash may be cached indefinitely,
+     * other responses must be revalidated by the client, using the content hash as entity tag.
+     * 
+     * @param request the HTTP request
+     * @param response the HTTP response
+     * @param contentHash the content hash of the service
+     * @return true if the client's copy of the content is current, in which case a "304 Not Modified" 
+     *         status has been set and the service should not be invoked
+     */
+    private boolean processContentHash(HttpServletRequest request, HttpServletResponse response, String contentHash) {
+        // Weak entity tag, as the content may be rendered with different content encodings.
+        String entityTag = "W/\"" + contentHash + "\"";
+        response.setHeader("ETag", entityTag);
+        if (contentHash.equals(request.getParameter(CONTENT_HASH_PARAMETER))) {
+            response.setHeader("Cache-Control", "public, max-age=" + (CONTENT_HASHED_MAX_AGE / 1000) + ", immutable");
+            response.setDateHeader("Expires", System.currentTimeMillis() + CONTENT_HASHED_MAX_AGE);
+        } else {
+            response.setHeader("Cache-Control", "no-cache");
+        }
+        
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null && (ifNoneMatch.indexOf("\"" + contentHash + "\"") != -1 || "*".equals(ifNoneMatch.trim()))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return true;
+        }
+        return false;
+    }
+    
     /**
      * Exception handler for process() method.
+     * Disposes of the user instance, discards any (possibly compressed) content which has been
+     * written to the response, if it has not been committed, and reports the error.
      * 
+     * @param conn the <code>Connection</code>, or null if it could not be created
      * @param request the HTTP request
      * @param response the HTTP response
      * @param ex the exception 
      * @throws ServletException
      * @throws IOException
      */
-    private void processError(HttpServletRequest request, HttpServletResponse response, Exception ex) 
+    private void processError(Connection conn, HttpServletRequest request, HttpServletResponse response, Exception ex) 
     throws ServletException, IOException {
+        if (conn != null) {
+            conn.release();
+            conn.disposeUserInstance();
+        }
+        if (!response.isCommitted()) {
+            response.reset();
+        }
         String exceptionId = Uid.generateUidString();
         Log.log("Server Exception. ID: " + exceptionId, ex);
         response.setContentType("text/plain");
@@ -27,6 +27,23 @@ Echo.RemoteClient = Core.extend(Echo.Client, {
          */
         libraryServerUrl: null,
         
+        /**
+         * Mapping from the service ids of libraries which were included in the boot script bundle to their
+         * content hashes.  Such libraries need not be retrieved from the server.
+         */
+        _bundledLibraries: {},
+        
+        /**
+         * Registers a library which was included in the boot script bundle, such that it will not be retrieved
+         * from the server.  Invoked by the bundle after the library content.
+         * 
+         * @param {String} serviceId the service id of the library
+         * @param {String} contentHash the content hash of the library
+         */
+        addBundledLibrary: function(serviceId, contentHash) {
+            Echo.RemoteClient._bundledLibraries[serviceId] = contentHash;
+        },
+        
         /**
          * Flag indicating whether global remote client initialization has been performed.
          * @type Boolean 
@@ -40,7 +57,9 @@ Echo.RemoteClient = Core.extend(Echo.Client, {
             "NetworkError.Message": "A network error has occurred, please try again.",
             "SessionExpiration.Message": "Your session has expired.",
             "Resync.Message": "This window was not synchronized with the server and has been reset.  " + 
-                    "Please try your last request again."
+                    "Please try your last request again.",
+            "Sync.BatchInterval": 0,
+            "Sync.BatchSize": 10
         },
         
         /**
@@ -77,6 +96,13 @@ Echo.RemoteClient = Core.extend(Echo.Client, {
      * @type Boolean
      */
     _syncRequested: false,
+    
+    /**
+     * The scheduled runnable which will initiate a client-server synchronization once the batch interval
+     * has elapsed, if events are being batched.
+     * @type Core.Web.Scheduler.Runnable
+     */
+    _syncRunnable: null,
 
     /**
      * Flag indicating whether a client-server transaction is currently in progress.
@@ -144,6 +170,18 @@ Echo.RemoteClient = Core.extend(Echo.Client, {
      */
     _serverFocusedComponent: null,
     
+    /**
+     * Mapping between referenced property ids and values.  Referenced properties are retained across server messages,
+     * until the server discards them or the component hierarchy is cleared.
+     */
+    _referencedPropertyMap: null,
+    
+    /**
+     * Mapping between referenced style ids and values.  Referenced styles are retained across server messages,
+     * until the server discards them or the component hierarchy is cleared.
+     */
+    _referencedStyleMap: null,
+    
     /**
      * Current client/server transaction id.
      * @type Number
@@ -173,6 +211,8 @@ Echo.RemoteClient = Core.extend(Echo.Client, {
         this._commandQueue = null;
         this._clientMessage = new Echo.RemoteClient.ClientMessage(this, initId);
         this._asyncManager = new Echo.RemoteClient.AsyncManager(this);
+        this._referencedPropertyMap = {};
+        this._referencedStyleMap = {};
     },
     
     /**
@@ -239,6 +279,27 @@ Echo.RemoteClient = Core.extend(Echo.Client, {
         return false;
     },
 
+    /**
+     * Determines whether a client message is sent only in response to async events, i.e., whether
+     * it contains at least one event, and all of its events are async events.
+     * 
+     * @param {Echo.RemoteClient.ClientMessage} clientMessage the client message
+     * @return true if the message is sent only in response to async events
+     * @type Boolean
+     */
+    _isAsyncMessage: function(clientMessage) {
+        var eventTypes = clientMessage.getEventTypes();
+        if (eventTypes.length === 0) {
+            return false;
+        }
+        for (var i = 0; i < eventTypes.length; ++i) {
+            if (!this._isAsyncEvent(eventTypes[i])) {
+                return false;
+            }
+        }
+        return true;
+    },
+
     /**
      * Enqueues a command to be processed after component synchronization has been completed.
      * 
@@ -266,16 +327,21 @@ Echo.RemoteClient = Core.extend(Echo.Client, {
     
     /**
      * Returns the URL of a library service based on the serviceId.
+     * If the content hash of the library is provided, the returned URL is independent of the user instance,
+     * such that a library cached by the browser may be used by any window or session.
      * 
      * @param {String} serviceId the serviceId
+     * @param {String} contentHash the content hash of the library (optional)
      * @return the full library URL
      * @type String
      */
-    _getLibraryServiceUrl: function(serviceId) {
+    _getLibraryServiceUrl: function(serviceId, contentHash) {
         if (!Echo.RemoteClient._libraryServerUrl) {
             Echo.RemoteClient._libraryServerUrl = this._serverUrl;
         }
-        if (this._uiid == null) {
+        if (contentHash) {
+            return Echo.RemoteClient._libraryServerUrl + "?sid=" + serviceId + "&v=" + contentHash;
+        } else if (this._uiid == null) {
             return Echo.RemoteClient._libraryServerUrl + "?sid=" + serviceId;
         } else {
             return Echo.RemoteClient._libraryServerUrl + "?sid=" + serviceId + "&uiid=" + this._uiid;
@@ -414,7 +480,27 @@ Echo.RemoteClient = Core.extend(Echo.Client, {
      * @param e the event to process
      */
     _processClientEvent: function(e) {
-        if (this._syncRequested || this._transactionInProgress) {
+        if (this._transactionInProgress) {
+            return;
+        }
+        
+        var batchInterval = this.configuration["Sync.BatchInterval"];
+        if (batchInterval > 0 && this._clientMessage._eventType == null) {
+            // Batch event with any others which occur before the batch interval has elapsed, or until the
+            // batch is full.  Input is not restricted until the synchronization is initiated.
+            var batchSize = this.configuration["Sync.BatchSize"];
+            if (this._clientMessage.getEventTypes().length >= batchSize) {
+                return;
+            }
+            if (this._clientMessage.addEvent(e.source.renderId, e.type, e.data) >= batchSize) {
+                this._scheduleSync(null);
+            } else if (!this._syncRequested) {
+                this._scheduleSync(batchInterval);
+            }
+            return;
+        }
+        
+        if (this._syncRequested) {
             return;
         }
         this._clientMessage.setEvent(e.source.renderId, e.type, e.data);
@@ -422,8 +508,7 @@ Echo.RemoteClient = Core.extend(Echo.Client, {
         if (!this._inputRestrictionId && !this._isAsyncEvent(e.type)) {
            this._inputRestrictionId = this.createInputRestriction();
         }
-        this._syncRequested = true;
-        Core.Web.Scheduler.run(Core.method(this, this.sync));
+        this._scheduleSync(null);
     },
     
     /**
@@ -536,6 +621,20 @@ Echo.RemoteClient = Core.extend(Echo.Client, {
         component.removeListener(eventType, this._processClientEventRef);
     },
     
+    /**
+     * Schedules a client-server synchronization, replacing any previously scheduled synchronization.
+     * 
+     * @param {Number} timeInterval the time interval, in milliseconds, after which the synchronization should be
+     *        initiated, or null to initiate it as soon as possible
+     */
+    _scheduleSync: function(timeInterval) {
+        if (this._syncRunnable) {
+            Core.Web.Scheduler.remove(this._syncRunnable);
+        }
+        this._syncRequested = true;
+        this._syncRunnable = Core.Web.Scheduler.run(Core.method(this, this.sync), timeInterval);
+    },
+    
     /**
      * Initiates a client-server synchronization.
      */
@@ -551,8 +650,12 @@ Echo.RemoteClient = Core.extend(Echo.Client, {
         
         this._transactionInProgress = true;
         this._syncRequested = false;
-        // added: && !this._isAsyncEvent(this._clientMessage._eventType) to handle async events
-        if (!this._inputRestrictionId && !this._isAsyncEvent(this._clientMessage._eventType)) {
+        if (this._syncRunnable) {
+            Core.Web.Scheduler.remove(this._syncRunnable);
+            this._syncRunnable = null;
+        }
+        // Input is not restricted if all events are async events.
+        if (!this._inputRestrictionId && !this._isAsyncMessage(this._clientMessage)) {
             this._inputRestrictionId = this.createInputRestriction();
         }
 
@@ -629,6 +732,14 @@ Echo.RemoteClient.AsyncManager = Core.extend({
      */
     _failedConnectAttempts: null,
     
+    /**
+     * Flag indicating whether a poll request is in progress.  As the server may hold poll requests
+     * open until a task is enqueued ("long polling"), a new poll is not started while one is in progress.
+     *
+     * @type Boolean
+     */
+    _pollInProgress: false,
+    
     /**
      * The repeating runnable used for server polling.
      *
@@ -651,6 +762,10 @@ Echo.RemoteClient.AsyncManager = Core.extend({
      * it has any updates that need to be pushed to the client.
      */
     _pollServerForUpdates: function() {
+        if (this._pollInProgress) {
+            return;
+        }
+        this._pollInProgress = true;
         var conn = new Core.Web.HttpConnection(this._client.getServiceUrl("Echo.AsyncMonitor"), "GET");
         conn.addResponseListener(Core.method(this, this._processPollResponse));
         conn.connect();
@@ -661,10 +776,12 @@ Echo.RemoteClient.AsyncManager = Core.extend({
      * In the event a server action is required, this method will submit the client message to the 
      * server immediately.  The server will push any updates into the reciprocated server message.
      * If no action is required, the next polling interval will be scheduled.
+     * The server may hold the request open until an action is required or a timeout expires.
      * 
      * @param e the poll response event 
      */
     _processPollResponse: function(e) {
+        this._pollInProgress = false;
         var responseDocument = e.source.getResponseXml();
         if (e.valid && responseDocument && responseDocument.documentElement) {
             this._failedConnectAttempts = 0;
@@ -803,6 +920,15 @@ Echo.RemoteClient.ClientMessage = Core.extend({
      */
     _eventData: null,
     
+    /**
+     * Batched synchronization steps, rendered in order as separate component synchronization directives.
+     * Each step is an object containing the component-id-to-property-value map of the updates which preceded
+     * an event (<code>propertyMap</code>), and that event (<code>componentId</code>, <code>eventType</code>, 
+     * <code>eventData</code>).  Null if no events have been batched.
+     * @type Array
+     */
+    _batch: null,
+    
     /**
      * The DOM object to which the client message will be rendered.
      * @type Document
@@ -852,25 +978,56 @@ Echo.RemoteClient.ClientMessage = Core.extend({
      * Renders component hierarchy state change information to the client message DOM.
      * This information is retrieved from instance variables of the client message object,
      * i.e., the component-id-to-property-value map and event properties.  
+     * Each batched event is rendered in a separate directive, in the order in which the events occurred.
      */
     _renderCSync: function() {
+        var render = true;
+        if (this._batch) {
+            for (var i = 0; i < this._batch.length; ++i) {
+                var step = this._batch[i];
+                this._renderCSyncStep(step.propertyMap, step.componentId, step.eventType, step.eventData);
+            }
+            
+            // Render a final step only if updates were stored after the last batched event.
+            render = this._eventType != null;
+            for (var componentId in this._componentIdToPropertyMap) {
+                render = true;
+                break;
+            }
+        }
+        
+        if (render) {
+            this._renderCSyncStep(this._componentIdToPropertyMap, this._eventComponentId, this._eventType, this._eventData);
+        }
+    },
+    
+    /**
+     * Renders a component synchronization directive describing a single event and the property updates which
+     * preceded it to the client message DOM.
+     * 
+     * @param componentIdToPropertyMap mapping between component ids and updated property values
+     * @param {String} eventComponentId the renderId of the event-firing component
+     * @param {String} eventType the type of the event, or null if the step does not contain an event
+     * @param eventData the event data object
+     */
+    _renderCSyncStep: function(componentIdToPropertyMap, eventComponentId, eventType, eventData) {
         var cSyncElement = this._document.createElement("dir");
         cSyncElement.setAttribute("proc", "CSync");
         
         // Render event information.
-        if (this._eventType) {
+        if (eventType) {
             var eElement = this._document.createElement("e");
-            eElement.setAttribute("t", this._eventType);
-            eElement.setAttribute("i", this._eventComponentId);
-            if (this._eventData != null) {
-                Echo.Serial.storeProperty(this._client, eElement, this._eventData);
+            eElement.setAttribute("t", eventType);
+            eElement.setAttribute("i", eventComponentId);
+            if (eventData != null) {
+                Echo.Serial.storeProperty(this._client, eElement, eventData);
             }
             cSyncElement.appendChild(eElement);
         }
         
         // Render property information.
-        for (var componentId in this._componentIdToPropertyMap) {
-            var propertyMap = this._componentIdToPropertyMap[componentId];
+        for (var componentId in componentIdToPropertyMap) {
+            var propertyMap = componentIdToPropertyMap[componentId];
             var component = this._client.application.getComponentByRenderId(componentId);
             for (var propertyName in propertyMap) {
                 var propertyValue = propertyMap[propertyName];
@@ -942,6 +1099,45 @@ Echo.RemoteClient.ClientMessage = Core.extend({
         return this._document;
     },
     
+    /**
+     * Adds an event to a batched client message.  The event is rendered in a separate component synchronization 
+     * directive along with the property updates which were stored since the previous event was added.
+     *
+     * @param {String} componentId the renderId of the event-firing component
+     * @param {String} eventType the type of the event
+     * @param the event data object
+     * @return the number of events in the batch
+     * @type Number
+     */
+    addEvent: function(componentId, eventType, eventData) {
+        if (!this._batch) {
+            this._batch = [];
+        }
+        this._batch.push({ propertyMap: this._componentIdToPropertyMap, componentId: componentId, eventType: eventType, 
+                eventData: eventData });
+        this._componentIdToPropertyMap = {};
+        return this._batch.length;
+    },
+    
+    /**
+     * Returns the types of all events contained in the message, in the order in which they occurred.
+     * 
+     * @return the event types
+     * @type Array
+     */
+    getEventTypes: function() {
+        var eventTypes = [];
+        if (this._batch) {
+            for (var i = 0; i < this._batch.length; ++i) {
+                eventTypes.push(this._batch[i].eventType);
+            }
+        }
+        if (this._eventType) {
+            eventTypes.push(this._eventType);
+        }
+        return eventTypes;
+    },
+    
     /**
      * Sets the event that will cause the client-server interaction.
      *
@@ -1090,8 +1286,11 @@ Echo.RemoteClient.ServerMessage = Core.extend({
             while (element) {
                 if (element.nodeType == 1) {
                     if (element.nodeName == "lib") {
-                        var url = this.client._getLibraryServiceUrl(element.firstChild.data);
-                        libraryGroup.add(url);
+                        var serviceId = element.firstChild.data;
+                        var contentHash = element.getAttribute("v");
+                        if (Echo.RemoteClient._bundledLibraries[serviceId] !== contentHash) {
+                            libraryGroup.add(this.client._getLibraryServiceUrl(serviceId, contentHash));
+                        }
                     }
                 }
                 element = element.nextSibling;
@@ -1289,6 +1488,8 @@ Echo.RemoteClient.ComponentSyncInitProcessor = Core.extend(Echo.RemoteClient.Dir
         while (element) {
             if (element.nodeType == 1 && element.nodeName == "cl") {
                 this.client.application.rootComponent.removeAll();
+                this.client._referencedPropertyMap = {};
+                this.client._referencedStyleMap = {};
             }
             element = element.nextSibling;
         }
@@ -1392,7 +1593,8 @@ Echo.RemoteClient.ComponentSyncRemoveProcessor = Core.extend(Echo.RemoteClient.D
  * 
  * Processes directives to update components (add children, update properties), 
  * clear entire component hierarchy (for full-rerender), set stylesheet,
- * and store referenced properties/styles.
+ * and store or discard referenced properties/styles.
+ * Referenced properties/styles are stored by the client, such that they may be referenced by later server messages.
  */
 Echo.RemoteClient.ComponentSyncUpdateProcessor = Core.extend(Echo.RemoteClient.DirectiveProcessor, {
     
@@ -1400,12 +1602,6 @@ Echo.RemoteClient.ComponentSyncUpdateProcessor = Core.extend(Echo.RemoteClient.D
         Echo.RemoteClient.ServerMessage.addProcessor("CSyncUp", this);
     },
     
-    /** Mapping between referenced property ids and values. */
-    _propertyMap : null,
-
-    /** Mapping between referenced style ids and values. */
-    _styleMap: null,
-    
     /** @see #Echo.RemoteClient.DirectiveProcessor#process */
     process: function(dirElement) {
         var element;
@@ -1418,6 +1614,7 @@ Echo.RemoteClient.ComponentSyncUpdateProcessor = Core.extend(Echo.RemoteClient.D
                 case "up": this._processUpdate(element); break;
                 case "rp": this._processReferencedProperties(element); break;
                 case "rs": this._processReferencedStyles(element); break;
+                case "rd": this._processReferenceDiscard(element); break;
                 }
             }
             element = element.nextSibling;
@@ -1425,7 +1622,29 @@ Echo.RemoteClient.ComponentSyncUpdateProcessor = Core.extend(Echo.RemoteClient.D
     },
     
     /** 
-     * Process an "rp" directive to store referenced properties during the synchronization. 
+     * Process an "rd" directive to discard referenced properties and styles which will no longer be referenced by
+     * the server.  Property ids are specified by the comma-delimited "p" attribute, style ids by the "s" attribute.
+     * 
+     * @param {Element} rdElement the directive element 
+     */
+    _processReferenceDiscard: function(rdElement) {
+        var i, ids;
+        if (rdElement.getAttribute("p")) {
+            ids = rdElement.getAttribute("p").split(",");
+            for (i = 0; i < ids.length; ++i) {
+                delete this.client._referencedPropertyMap[ids[i]];
+            }
+        }
+        if (rdElement.getAttribute("s")) {
+            ids = rdElement.getAttribute("s").split(",");
+            for (i = 0; i < ids.length; ++i) {
+                delete this.client._referencedStyleMap[ids[i]];
+            }
+        }
+    },
+    
+    /** 
+     * Process an "rp" directive to store referenced properties. 
      * 
      * @param {Element} rpElement the directive element 
      */
@@ -1439,18 +1658,14 @@ Echo.RemoteClient.ComponentSyncUpdateProcessor = Core.extend(Echo.RemoteClient.D
                 if (!translator) {
                     throw new Error("Translator not available for property type: " + propertyType);
                 }
-                var propertyValue = translator.toProperty(this.client, propertyElement);
-                if (!this._propertyMap) {
-                    this._propertyMap = {};
-                }
-                this._propertyMap[propertyId] = propertyValue;
+                this.client._referencedPropertyMap[propertyId] = translator.toProperty(this.client, propertyElement);
             }
             propertyElement = propertyElement.nextSibling;
         }
     },
     
     /** 
-     * Process an "rs" directive to store referenced styles during the synchronization. 
+     * Process an "rs" directive to store referenced styles. 
      * 
      * @param {Element} rsElement the directive element 
      */
@@ -1462,13 +1677,10 @@ Echo.RemoteClient.ComponentSyncUpdateProcessor = Core.extend(Echo.RemoteClient.D
                 var style = { };
                 var propertyElement = styleElement.firstChild;
                 while (propertyElement) {
-                    Echo.Serial.loadProperty(this.client, propertyElement, null, style, this._propertyMap);
+                    Echo.Serial.loadProperty(this.client, propertyElement, null, style, this.client._referencedPropertyMap);
                     propertyElement = propertyElement.nextSibling;
                 }
-                if (!this._styleMap) {
-                    this._styleMap = {};
-                }
-                this._styleMap[styleId] = style;
+                this.client._referencedStyleMap[styleId] = style;
             }
             styleElement = styleElement.nextSibling;
         }
@@ -1476,11 +1688,13 @@ Echo.RemoteClient.ComponentSyncUpdateProcessor = Core.extend(Echo.RemoteClient.D
     
     /** 
      * Process an "ss" directive to load and install a new stylesheet onto the application.
+     * If the directive is an update ("u" attribute), the styles it contains are applied to the existing stylesheet.
      * 
      * @param {Element} ssElement the directive element 
      */
     _processStyleSheet: function(ssElement) {
-        var styleSheet = Echo.Serial.loadStyleSheet(this.client, ssElement);
+        var styleSheet = ssElement.getAttribute("u") == "true" ? this.client.application.getStyleSheet() : null;
+        styleSheet = Echo.Serial.loadStyleSheet(this.client, ssElement, null, styleSheet);
         this.client.application.setStyleSheet(styleSheet);
     },
     
@@ -1507,7 +1721,8 @@ Echo.RemoteClient.ComponentSyncUpdateProcessor = Core.extend(Echo.RemoteClient.D
             if (element.nodeType == 1) {
                 switch (element.nodeName) {
                 case "c": // Added child
-                    var component = Echo.Serial.loadComponent(this.client, element, this._propertyMap, this._styleMap);
+                    var component = Echo.Serial.loadComponent(this.client, element, this.client._referencedPropertyMap, 
+                            this.client._referencedStyleMap);
                     var index = element.getAttribute("x");
                     if (index == null) {
                         // No index specified, add children at current insertion cursor position.
@@ -1521,14 +1736,14 @@ Echo.RemoteClient.ComponentSyncUpdateProcessor = Core.extend(Echo.RemoteClient.D
                     }
                     break;
                 case "p": // Property update
-                    Echo.Serial.loadProperty(this.client, element, parentComponent, null, this._propertyMap);
+                    Echo.Serial.loadProperty(this.client, element, parentComponent, null, this.client._referencedPropertyMap);
                     break;
                 case "s": // Style name update
                     parentComponent.setStyleName(element.firstChild ? element.firstChild.nodeValue : null);
                     break;
                 case "sr": // Style reference update
                     if (element.firstChild) {
-                        parentComponent.setStyle(this._styleMap ? this._styleMap[element.firstChild.nodeValue] : null);
+                        parentComponent.setStyle(this.client._referencedStyleMap[element.firstChild.nodeValue] || null);
                     } else {
                         parentComponent.setStyle(null);
                     }
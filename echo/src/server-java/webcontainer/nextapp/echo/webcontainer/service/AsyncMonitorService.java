@@ -31,10 +31,21 @@ package nextapp.echo.webcontainer.service;
 
 
 import java.io.IOException;
+import java.io.PrintWriter;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletRequest;
+
+import nextapp.echo.app.ApplicationInstance;
+import nextapp.echo.app.event.TaskQueueEvent;
+import nextapp.echo.app.event.TaskQueueListener;
+import nextapp.echo.app.util.Log;
 import nextapp.echo.webcontainer.Connection;
 import nextapp.echo.webcontainer.ContentType;
 import nextapp.echo.webcontainer.Service;
+import nextapp.echo.webcontainer.WebContainerServlet;
 
 /**
  * Abstract base service for handling server poll requests to determine if any
@@ -42,12 +53,128 @@ import nextapp.echo.webcontainer.Service;
  * performed since the last server interaction, such that the client might
  * resynchronize with the server.
  * <p>
+ * If the servlet container supports asynchronous requests (and 
+ * <code>WebContainerServlet.ASYNC_MONITOR_TIMEOUT</code> is positive), a request made
+ * while no tasks are queued is held open ("long polling") until a task is enqueued in the 
+ * <code>ApplicationInstance</code> or the timeout expires, rather than being answered immediately.
+ * Otherwise the client polls at the <code>UserInstance</code>'s callback interval.
+ * <p>
  * An instance of this service must be registered with the 
  * <code>ServiceRegistry</code> if asynchronous polling is required.
  */
 public class AsyncMonitorService 
 implements Service {
     
+    /**
+     * A held-open monitor request, which is completed when a task is enqueued or it times out.
+     */
+    private static class LongPoll
+    implements AsyncListener, TaskQueueListener {
+        
+        /** Serial Version UID. */
+        private static final long serialVersionUID = 20070101L;
+        
+        /** The monitored <code>ApplicationInstance</code>. */
+        private transient ApplicationInstance applicationInstance;
+        
+        /** The <code>AsyncContext</code> of the held request. */
+        private transient AsyncContext asyncContext;
+        
+        /** Flag indicating whether the request has been (or is being) completed. */
+        private boolean completed = false;
+        
+        /** Flag indicating whether completion has been dispatched to a container thread. */
+        private boolean dispatched = false;
+        
+        /**
+         * Creates a new <code>LongPoll</code>.
+         * 
+         * @param applicationInstance the monitored <code>ApplicationInstance</code>
+         * @param asyncContext the <code>AsyncContext</code> of the held request
+         */
+        LongPoll(ApplicationInstance applicationInstance, AsyncContext asyncContext) {
+            super();
+            this.applicationInstance = applicationInstance;
+            this.asyncContext = asyncContext;
+        }
+        
+        /**
+         * Completes the request, if it has not been completed.
+         * 
+         * @param syncRequired flag indicating whether the client should synchronize
+         */
+        void complete(boolean syncRequired) {
+            synchronized (this) {
+                if (completed) {
+                    return;
+                }
+                completed = true;
+            }
+            applicationInstance.removeTaskQueueListener(this);
+            try {
+                writeResponse(asyncContext.getResponse().getWriter(), syncRequired);
+            } catch (IOException ex) {
+                // Client has disconnected: nothing further to do.
+            } catch (IllegalStateException ex) {
+                // Request has already been completed or recycled by container.
+                return;
+            }
+            asyncContext.complete();
+        }
+        
+        /**
+         * @see javax.servlet.AsyncListener#onComplete(javax.servlet.AsyncEvent)
+         */
+        public void onComplete(AsyncEvent e) {
+            synchronized (this) {
+                completed = true;
+            }
+            applicationInstance.removeTaskQueueListener(this);
+        }
+
+        /**
+         * @see javax.servlet.AsyncListener#onError(javax.servlet.AsyncEvent)
+         */
+        public void onError(AsyncEvent e) {
+            onComplete(e);
+        }
+
+        /**
+         * @see javax.servlet.AsyncListener#onStartAsync(javax.servlet.AsyncEvent)
+         */
+        public void onStartAsync(AsyncEvent e) { }
+
+        /**
+         * @see javax.servlet.AsyncListener#onTimeout(javax.servlet.AsyncEvent)
+         */
+        public void onTimeout(AsyncEvent e) {
+            complete(false);
+        }
+
+        /**
+         * @see nextapp.echo.app.event.TaskQueueListener#taskEnqueued(nextapp.echo.app.event.TaskQueueEvent)
+         */
+        public void taskEnqueued(TaskQueueEvent e) {
+            synchronized (this) {
+                if (completed || dispatched) {
+                    return;
+                }
+                dispatched = true;
+            }
+            // Complete the request on a container thread, such that writing the response to a slow client
+            // never blocks the thread which enqueued the task.
+            try {
+                asyncContext.start(new Runnable() {
+                    public void run() {
+                        complete(true);
+                    }
+                });
+            } catch (IllegalStateException ex) {
+                // Request has already been completed or recycled by container.
+            }
+        }
+    }
+    
     /**
      * Singleton instance.
      */
@@ -58,6 +185,20 @@ implements Service {
      */
     public static final String SERVICE_ID = "Echo.AsyncMonitor";
     
+    /**
+     * Writes the monitor response.
+     * 
+     * @param w the <code>PrintWriter</code>
+     * @param syncRequired flag indicating whether the client should synchronize
+     */
+    private static void writeResponse(PrintWriter w, boolean syncRequired) {
+        if (syncRequired) {
+            w.write("<async-monitor request-sync=\"true\"/>");
+        } else {
+            w.write("<async-monitor request-sync=\"false\"/>");
+        }
+    }
+    
     /**
      * Private constructor: use singleton <code>INSTANCE</code>.
      */
@@ -82,10 +223,34 @@ implements Service {
      */
     public void service(Connection conn) throws IOException {
         conn.setContentType(ContentType.TEXT_XML);
-        if (conn.getUserInstance().getApplicationInstance().hasQueuedTasks()) {
-            conn.getWriter().write("<async-monitor request-sync=\"true\"/>");
+        ApplicationInstance applicationInstance = conn.getUserInstance().getApplicationInstance();
+        if (applicationInstance.hasQueuedTasks()) {
+            writeResponse(conn.getCompressedWriter(), true);
+            return;
+        }
+        
+        HttpServletRequest request = conn.getRequest();
+        if (WebContainerServlet.ASYNC_MONITOR_TIMEOUT > 0 && request.isAsyncSupported()) {
+            AsyncContext asyncContext;
+            try {
+                asyncContext = request.startAsync();
+            } catch (IllegalStateException ex) {
+                // Asynchronous processing not possible for this request (e.g., due to a filter).
+                Log.log("Unable to hold asynchronous monitor request.", ex);
+                writeResponse(conn.getCompressedWriter(), false);
+                return;
+            }
+            asyncContext.setTimeout(WebContainerServlet.ASYNC_MONITOR_TIMEOUT);
+            LongPoll longPoll = new LongPoll(applicationInstance, asyncContext);
+            asyncContext.addListener(longPoll);
+            applicationInstance.addTaskQueueListener(longPoll);
+            
+            // Re-check for tasks enqueued before the listener was registered.
+            if (applicationInstance.hasQueuedTasks()) {
+                longPoll.complete(true);
+            }
         } else {
-            conn.getWriter().write("<async-monitor request-sync=\"false\"/>");
+            writeResponse(conn.getCompressedWriter(), false);
         }
     }
 }
@@ -0,0 +1,228 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.webcontainer.service;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import nextapp.echo.webcontainer.Service;
+import nextapp.echo.webcontainer.WebContainerServlet;
+
+/**
+ * Provides, for each servlet, a single script containing the boot script, the servlet's initialization scripts,
+ * and the JavaScript libraries which are predicted to be required by the first screen of the application, 
+ * such that the client may be started with a single request.
+ * <p>
+ * Libraries are predicted by recording those added to the server message of the first full render performed by
+ * the servlet (see <code>recordLibraries()</code>).  The bundle is then rebuilt once to include them, and
+ * registers each of them with the client, which will not retrieve them again.
+ * <p>
+ * Each bundle is registered in the global <code>ServiceRegistry</code> under a unique identifier, and is
+ * identified to clients by the hash of its content.
+ */
+public class BundleService {
+    
+    /**
+     * A bundled script.
+     */
+    public static class Bundle {
+        
+        /** The service rendering the bundled script. */
+        private JavaScriptService service;
+        
+        /** The initialization script services included in the bundle. */
+        private Set initScripts;
+        
+        /** Flag indicating whether predicted libraries have been recorded. */
+        private boolean librariesRecorded;
+        
+        /**
+         * Creates a new <code>Bundle</code>.
+         * 
+         * @param service the service rendering the bundled script
+         * @param initScripts the initialization script services included in the bundle
+         * @param librariesRecorded flag indicating whether predicted libraries have been recorded
+         */
+        private Bundle(JavaScriptService service, Set initScripts, boolean librariesRecorded) {
+            super();
+            this.service = service;
+            this.initScripts = initScripts;
+            this.librariesRecorded = librariesRecorded;
+        }
+        
+        /**
+         * Returns the service rendering the bundled script.
+         * 
+         * @return the service
+         */
+        public Service getService() {
+            return service;
+        }
+        
+        /**
+         * Determines whether an initialization script is included in the bundle, i.e., whether it
+         * should not be separately included in the document.
+         * 
+         * @param initScript the initialization script service
+         * @return true if the script is included
+         */
+        public boolean contains(Service initScript) {
+            return initScripts.contains(initScript);
+        }
+    }
+    
+    /** Mapping from servlets to their current <code>Bundle</code>s. */
+    private static final Map servletToBundle = new WeakHashMap();
+    
+    /** Sequence used to assign unique service identifiers to bundles. */
+    private static int nextId = 0;
+    
+    /**
+     * Appends a value to a script as a JavaScript string literal.
+     * 
+     * @param out the script
+     * @param value the value
+     */
+    private static void appendString(StringBuilder out, String value) {
+        out.append('"');
+        int length = value.length();
+        for (int i = 0; i < length; ++i) {
+            char ch = value.charAt(i);
+            if (ch == '"' || ch == '\\') {
+                out.append('\\').append(ch);
+            } else if (ch < 0x20 || ch == '\u2028' || ch == '\u2029') {
+                // Escape control characters and JavaScript line terminators.
+                String hex = Integer.toHexString(ch);
+                out.append("\\u");
+                for (int j = hex.length(); j < 4; ++j) {
+                    out.append('0');
+                }
+                out.append(hex);
+            } else {
+                out.append(ch);
+            }
+        }
+        out.append('"');
+    }
+    
+    /**
+     * Creates and registers a bundle.
+     * 
+     * @param servlet the servlet
+     * @param libraryIds the ids of the library services to include, or null
+     * @return the created bundle
+     */
+    private static Bundle createBundle(WebContainerServlet servlet, String[] libraryIds) {
+        StringBuilder out = new StringBuilder(((JavaScriptService) BootService.SERVICE).getContent());
+        
+        // Include leading initialization scripts, stopping at the first which cannot be bundled such that the 
+        // order of evaluation is retained.
+        Set initScripts = new HashSet();
+        Iterator scriptIt = servlet.getInitScripts();
+        if (scriptIt != null) {
+            while (scriptIt.hasNext()) {
+                Service scriptService = (Service) scriptIt.next();
+                if (!(scriptService instanceof JavaScriptService)) {
+                    break;
+                }
+                out.append(";\n");
+                out.append(((JavaScriptService) scriptService).getContent());
+                initScripts.add(scriptService);
+            }
+        }
+        
+        // Include predicted libraries, likewise retaining their order.
+        if (libraryIds != null) {
+            for (int i = 0; i < libraryIds.length; ++i) {
+                Service libraryService = WebContainerServlet.getServiceRegistry().get(libraryIds[i]);
+                if (!(libraryService instanceof JavaScriptService)) {
+                    break;
+                }
+                JavaScriptService javaScriptService = (JavaScriptService) libraryService;
+                out.append(";\n");
+                out.append(javaScriptService.getContent());
+                out.append(";\nEcho.RemoteClient.addBundledLibrary(");
+                appendString(out, javaScriptService.getId());
+                out.append(",");
+                appendString(out, javaScriptService.getContentHash());
+                out.append(");");
+            }
+        }
+        
+        String id;
+        synchronized (servletToBundle) {
+            id = "Echo.Bundle." + nextId++;
+        }
+        JavaScriptService service = new JavaScriptService(id, out.toString());
+        WebContainerServlet.getServiceRegistry().add(service);
+        return new Bundle(service, initScripts, libraryIds != null);
+    }
+    
+    /**
+     * Returns the current bundle of a servlet, creating it if necessary.
+     * The returned bundle will be replaced once libraries have been recorded for the servlet.
+     * 
+     * @param servlet the servlet
+     * @return the bundle
+     */
+    public static Bundle getBundle(WebContainerServlet servlet) {
+        synchronized (servletToBundle) {
+            Bundle bundle = (Bundle) servletToBundle.get(servlet);
+            if (bundle == null) {
+                bundle = createBundle(servlet, null);
+                servletToBundle.put(servlet, bundle);
+            }
+            return bundle;
+        }
+    }
+    
+    /**
+     * Records the libraries required by the first screen of an application, rebuilding the servlet's bundle to 
+     * include them.  Invoked for every full render; only the first invocation for a servlet has any effect.
+     * 
+     * @param servlet the servlet
+     * @param libraryIds the ids of the library services added to the server message, in order
+     */
+    public static void recordLibraries(WebContainerServlet servlet, String[] libraryIds) {
+        synchronized (servletToBundle) {
+            Bundle bundle = (Bundle) servletToBundle.get(servlet);
+            if (bundle != null && bundle.librariesRecorded) {
+                return;
+            }
+            servletToBundle.put(servlet, createBundle(servlet, libraryIds));
+        }
+    }
+    
+    /** Non-instantiable class. */
+    private BundleService() { }
+}
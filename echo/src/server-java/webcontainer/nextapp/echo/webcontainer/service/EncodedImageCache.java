@@ -0,0 +1,312 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.webcontainer.service;
+
+import java.awt.Image;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import nextapp.echo.app.AwtImageReference;
+import nextapp.echo.webcontainer.util.ContentHash;
+import nextapp.echo.webcontainer.util.PngEncoder;
+
+/**
+ * A bounded, in-memory cache of PNG-encoded <code>AwtImageReference</code>s.
+ * Encoded images are identified by the render id of the image reference and the identity of its 
+ * <code>java.awt.Image</code>, such that a reference whose image is replaced is encoded again.
+ * When the total size of encoded images exceeds the maximum size, the least recently used images are discarded.
+ * <p>
+ * Images may optionally be encoded ahead of time by a pool of background threads, such that a 
+ * subsequent request for the image need only copy the encoded data.
+ */
+public class EncodedImageCache {
+    
+    /**
+     * An encoded image.
+     */
+    public static class Entry {
+        
+        /** The image reference render id. */
+        private String id;
+        
+        /** The encoded image, referenced weakly such that the cache does not retain discarded images. */
+        private WeakReference image;
+        
+        /** The PNG-encoded image data, or null if the image has not been encoded. */
+        private byte[] data;
+        
+        /** The (quoted) strong entity tag of the encoded image data. */
+        private String entityTag;
+        
+        /** Flag indicating whether the size of the entry has been added to the size of the cache. */
+        private boolean counted = false;
+        
+        /**
+         * Creates a new <code>Entry</code>.
+         * 
+         * @param id the image reference render id
+         * @param image the image
+         */
+        private Entry(String id, Image image) {
+            super();
+            this.id = id;
+            this.image = new WeakReference(image);
+        }
+        
+        /**
+         * Encodes the image, if it has not already been encoded.
+         * Invocations while the image is being encoded by another thread will block until encoding has completed.
+         * 
+         * @param image the image (which must be the image of the entry)
+         * @return true if the image was encoded by this invocation
+         * @throws IOException if the image cannot be encoded
+         */
+        private synchronized boolean encode(Image image) 
+        throws IOException {
+            if (data != null) {
+                return false;
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            PngEncoder encoder = new PngEncoder(image, true, null, 3);
+            encoder.setAdaptiveFiltering(true);
+            encoder.encode(out);
+            data = out.toByteArray();
+            entityTag = "\"" + ContentHash.hash(data) + "\"";
+            return true;
+        }
+        
+        /**
+         * Returns the PNG-encoded image data.
+         * 
+         * @return the data
+         */
+        public synchronized byte[] getData() {
+            return data;
+        }
+        
+        /**
+         * Returns the (quoted) strong entity tag of the encoded image data.
+         * 
+         * @return the entity tag
+         */
+        public synchronized String getEntityTag() {
+            return entityTag;
+        }
+    }
+
+    /**
+     * <code>ThreadFactory</code> creating daemon encoder threads.
+     */
+    private static class EncoderThreadFactory 
+    implements ThreadFactory {
+        
+        /**
+         * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+         */
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Echo Image Encoder");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    }
+    
+    /** The maximum total size, in bytes, of encoded images. */
+    private int maximumSize;
+    
+    /** The total size, in bytes, of encoded images. */
+    private int size = 0;
+    
+    /** Mapping from image reference render ids to <code>Entry</code>s, in access order. */
+    private Map entries = new LinkedHashMap(16, 0.75f, true);
+    
+    /** The number of background encoder threads. */
+    private int encoderThreads;
+    
+    /** Lazily created pool of background encoder threads. */
+    private ExecutorService encoderPool;
+    
+    /**
+     * Creates a new <code>EncodedImageCache</code>.
+     * 
+     * @param maximumSize the maximum total size, in bytes, of encoded images; 
+     *        if zero or less, images will not be retained
+     * @param encoderThreads the number of background threads used to encode images ahead of time 
+     *        (see <code>prepare()</code>); if zero or less, images are encoded only when retrieved
+     */
+    public EncodedImageCache(int maximumSize, int encoderThreads) {
+        super();
+        this.maximumSize = maximumSize;
+        this.encoderThreads = maximumSize > 0 ? encoderThreads : 0;
+    }
+    
+    /**
+     * Adds the size of an encoded entry to the size of the cache, discarding least recently used entries
+     * if the maximum size is exceeded.
+     * 
+     * @param entry the entry
+     */
+    private void count(Entry entry) {
+        synchronized (entries) {
+            if (entries.get(entry.id) != entry) {
+                // Entry was replaced or discarded while being encoded.
+                return;
+            }
+            entry.counted = true;
+            size += entry.data.length;
+            Iterator it = entries.values().iterator();
+            while (size > maximumSize && it.hasNext()) {
+                Entry eldest = (Entry) it.next();
+                if (eldest.counted) {
+                    size -= eldest.data.length;
+                }
+                it.remove();
+            }
+        }
+    }
+    
+    /**
+     * Retrieves the encoded form of an image, encoding it if it is not cached.
+     * 
+     * @param imageReference the image reference
+     * @return the encoded image
+     * @throws IOException if the image cannot be encoded
+     */
+    public Entry get(AwtImageReference imageReference) 
+    throws IOException {
+        Image image = imageReference.getImage();
+        Entry entry = getEntry(imageReference.getRenderId(), image);
+        if (entry.encode(image) && maximumSize > 0) {
+            count(entry);
+        }
+        return entry;
+    }
+    
+    /**
+     * Retrieves the cached entry for an image, creating (and storing) a new entry if no entry exists 
+     * or if the image has been replaced.
+     * 
+     * @param id the image reference render id
+     * @param image the image
+     * @return the entry
+     */
+    private Entry getEntry(String id, Image image) {
+        if (maximumSize <= 0) {
+            return new Entry(id, image);
+        }
+        synchronized (entries) {
+            Entry entry = (Entry) entries.get(id);
+            if (entry != null && entry.image.get() == image) {
+                return entry;
+            }
+            if (entry != null && entry.counted) {
+                size -= entry.data.length;
+            }
+            entry = new Entry(id, image);
+            entries.put(id, entry);
+            return entry;
+        }
+    }
+    
+    /**
+     * Returns the total size, in bytes, of encoded images.
+     * 
+     * @return the size
+     */
+    public int getSize() {
+        synchronized (entries) {
+            return size;
+        }
+    }
+    
+    /**
+     * Schedules an image to be encoded by a background thread, if encoding ahead of time is enabled 
+     * and the image is not already cached.
+     * 
+     * @param imageReference the image reference
+     */
+    public void prepare(final AwtImageReference imageReference) {
+        if (encoderThreads <= 0) {
+            return;
+        }
+        final Image image = imageReference.getImage();
+        if (image == null) {
+            return;
+        }
+        final Entry entry = getEntry(imageReference.getRenderId(), image);
+        if (entry.getData() != null) {
+            return;
+        }
+        getEncoderPool().execute(new Runnable() {
+            public void run() {
+                try {
+                    if (entry.encode(image)) {
+                        count(entry);
+                    }
+                } catch (IOException ex) {
+                    // Image will be encoded again (and the exception reported) when retrieved.
+                } catch (RuntimeException ex) {
+                    // Image will be encoded again (and the exception reported) when retrieved.
+                }
+            }
+        });
+    }
+    
+    /**
+     * Stops the background encoder threads, if started.  Images which have been scheduled but not yet 
+     * encoded will be encoded when retrieved.  The threads are started again if <code>prepare()</code>
+     * is subsequently invoked.
+     */
+    public synchronized void shutdown() {
+        if (encoderPool != null) {
+            encoderPool.shutdownNow();
+            encoderPool = null;
+        }
+    }
+    
+    /**
+     * Returns the pool of background encoder threads, creating it if necessary.
+     * 
+     * @return the pool
+     */
+    private synchronized ExecutorService getEncoderPool() {
+        if (encoderPool == null) {
+            encoderPool = Executors.newFixedThreadPool(encoderThreads, new EncoderThreadFactory());
+        }
+        return encoderPool;
+    }
+}
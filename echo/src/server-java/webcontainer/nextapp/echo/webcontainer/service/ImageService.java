@@ -29,23 +29,33 @@
 
 package nextapp.echo.webcontainer.service;
 
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import nextapp.echo.app.AwtImageReference;
 import nextapp.echo.app.ImageReference;
+import nextapp.echo.app.RandomAccessImageReference;
 import nextapp.echo.app.StreamImageReference;
 import nextapp.echo.webcontainer.Connection;
 import nextapp.echo.webcontainer.ContentType;
 import nextapp.echo.webcontainer.Service;
 import nextapp.echo.webcontainer.SynchronizationException;
 import nextapp.echo.webcontainer.UserInstance;
-import nextapp.echo.webcontainer.util.PngEncoder;
+import nextapp.echo.webcontainer.WebContainerServlet;
+import nextapp.echo.webcontainer.util.ByteRange;
 
 /**
  * A <code>Service</code> which renders stream image references (including <code>ResourceImageReference</code>s and
  * <code>AwtImageReference</code>s.
+ * Encoded <code>AwtImageReference</code>s are cached (see <code>EncodedImageCache</code>) and served with 
+ * strong entity tags, such that conditional requests may be answered with a "304 Not Modified" status.
+ * <code>StreamImageReference</code>s which implement <code>RandomAccessImageReference</code> are served with
+ * a content length and cache validators, and single byte ranges of them may be requested.
  */
 public class ImageService 
 implements Service {
@@ -62,6 +72,104 @@ implements Service {
     /** URL parameters (used for creating URIs). */
     private static final String[] URL_PARAMETERS = new String[]{PARAMETER_IMAGE_UID}; 
     
+    /** The size, in bytes, of the buffer used to copy images from files. */
+    private static final int FILE_BUFFER_SIZE = 8192;
+    
+    /**
+     * An <code>OutputStream</code> which forwards only a range of the bytes written to it.
+     */
+    private static class RangeOutputStream extends FilterOutputStream {
+        
+        /** The number of bytes to be discarded before the range. */
+        private long skip;
+        
+        /** The number of bytes remaining in the range. */
+        private long remaining;
+        
+        /**
+         * Creates a new <code>RangeOutputStream</code>.
+         * 
+         * @param out the stream to which the range should be forwarded
+         * @param offset the offset of the range
+         * @param length the length of the range
+         */
+        RangeOutputStream(OutputStream out, long offset, long length) {
+            super(out);
+            skip = offset;
+            remaining = length;
+        }
+        
+        /**
+         * @see java.io.FilterOutputStream#write(int)
+         */
+        public void write(int b) 
+        throws IOException {
+            if (skip > 0) {
+                --skip;
+            } else if (remaining > 0) {
+                --remaining;
+                out.write(b);
+            }
+        }
+        
+        /**
+         * @see java.io.FilterOutputStream#write(byte[], int, int)
+         */
+        public void write(byte[] b, int off, int len)
+        throws IOException {
+            if (skip > 0) {
+                int skipped = (int) Math.min(skip, len);
+                skip -= skipped;
+                off += skipped;
+                len -= skipped;
+            }
+            len = (int) Math.min(remaining, len);
+            if (len > 0) {
+                remaining -= len;
+                out.write(b, off, len);
+            }
+        }
+    }
+    
+    /**
+     * Determines whether a conditional request may be answered with a "304 Not Modified" status.
+     * 
+     * @param request the HTTP request
+     * @param entityTag the (quoted) entity tag of the image, or null
+     * @param lastModified the modification time of the image, or -1
+     * @return true if the client's copy of the image is current
+     */
+    private static boolean isNotModified(HttpServletRequest request, String entityTag, long lastModified) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            // If-Modified-Since must be ignored when If-None-Match is present.
+            return "*".equals(ifNoneMatch.trim()) || (entityTag != null && ifNoneMatch.indexOf(entityTag) != -1);
+        }
+        if (lastModified == -1) {
+            return false;
+        }
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = request.getDateHeader("If-Modified-Since");
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+        // HTTP dates have a resolution of one second.
+        return ifModifiedSince != -1 && ifModifiedSince >= lastModified / 1000 * 1000;
+    }
+    
+    /** Cache of encoded <code>AwtImageReference</code>s. */
+    private final EncodedImageCache awtImageCache = new EncodedImageCache(WebContainerServlet.AWT_IMAGE_CACHE_SIZE,
+            WebContainerServlet.AWT_IMAGE_ENCODER_THREADS);
+    
+    /**
+     * Stops the background threads encoding <code>AwtImageReference</code>s, if started.
+     * Invoked when the <code>WebContainerServlet</code> is destroyed.
+     */
+    public void shutdown() {
+        awtImageCache.shutdown();
+    }
+    
     /**
      * @see nextapp.echo.webcontainer.Service#getId()
      */
@@ -88,6 +196,18 @@ implements Service {
         return userInstance.getServiceUri(this, URL_PARAMETERS, new String[]{imageId});
     }
 
+    /**
+     * Notifies the service that an image will be requested by the client, such that it may be prepared 
+     * ahead of time, e.g., an <code>AwtImageReference</code> may be encoded by a background thread.
+     * 
+     * @param imageReference the image
+     */
+    public void prepareImage(ImageReference imageReference) {
+        if (imageReference instanceof AwtImageReference) {
+            awtImageCache.prepare((AwtImageReference) imageReference);
+        }
+    }
+
     /**
      * Renders the specified image to the given connection.
      * Implementations should set the response content type, and write image
@@ -118,9 +238,16 @@ implements Service {
     private void renderAwtImage(Connection conn, ImageReference imageReference) 
     throws IOException {
         try {
-            PngEncoder encoder = new PngEncoder(((AwtImageReference) imageReference).getImage(), true, null, 3);
+            EncodedImageCache.Entry entry = awtImageCache.get((AwtImageReference) imageReference);
+            HttpServletResponse response = conn.getResponse();
+            response.setHeader("ETag", entry.getEntityTag());
+            String ifNoneMatch = conn.getRequest().getHeader("If-None-Match");
+            if (ifNoneMatch != null && (ifNoneMatch.indexOf(entry.getEntityTag()) != -1 || "*".equals(ifNoneMatch.trim()))) {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
             conn.setContentType(ContentType.IMAGE_PNG);
-            encoder.encode(conn.getOutputStream());
+            conn.getOutputStream().write(entry.getData());
         } catch (IOException ex) {
             // Internet Explorer appears to enjoy making half-hearted requests for images, wherein it resets the connection
             // leaving us with an IOException.  This exception is silently eaten.
@@ -129,6 +256,83 @@ implements Service {
         }
     }
 
+    /**
+     * Renders a <code>StreamImageReference</code> which implements <code>RandomAccessImageReference</code>,
+     * responding to conditional and range requests.
+     * 
+     * @param conn the <code>Connection</code> to which the image should be rendered
+     * @param imageReference the image to render
+     * @throws IOException
+     */
+    private void renderRandomAccessImage(Connection conn, StreamImageReference imageReference)
+    throws IOException {
+        RandomAccessImageReference randomAccessImage = (RandomAccessImageReference) imageReference;
+        HttpServletRequest request = conn.getRequest();
+        HttpServletResponse response = conn.getResponse();
+        long contentLength = randomAccessImage.getContentLength();
+        long lastModified = randomAccessImage.getLastModified();
+        String contentTag = randomAccessImage.getContentTag();
+        String entityTag = contentTag == null ? null : "\"" + contentTag + "\"";
+        
+        if (entityTag != null) {
+            response.setHeader("ETag", entityTag);
+        }
+        if (lastModified != -1) {
+            response.setDateHeader("Last-Modified", lastModified);
+        }
+        if (isNotModified(request, entityTag, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        
+        long offset = 0;
+        long length = contentLength;
+        if (contentLength != -1) {
+            response.setHeader("Accept-Ranges", "bytes");
+            long[] range = ByteRange.parse(request, entityTag, lastModified, contentLength);
+            if (range != null && range.length == 0) {
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                response.setHeader("Content-Range", "bytes */" + contentLength);
+                return;
+            } else if (range != null) {
+                offset = range[0];
+                length = range[1];
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader("Content-Range", "bytes " + offset + "-" + (offset + length - 1) + "/" + contentLength);
+            }
+            response.setHeader("Content-Length", Long.toString(length));
+        }
+        
+        conn.setContentType(new ContentType(imageReference.getContentType(), true));
+        OutputStream out = conn.getOutputStream();
+        if (randomAccessImage.getFile() != null && contentLength != -1) {
+            // Copy the range directly from the file, without rendering preceding data.  (The response is 
+            // available only as a stream, thus the data is copied through a buffer.)
+            RandomAccessFile in = new RandomAccessFile(randomAccessImage.getFile(), "r");
+            try {
+                in.seek(offset);
+                byte[] buffer = new byte[(int) Math.min(length, FILE_BUFFER_SIZE)];
+                while (length > 0) {
+                    int count = in.read(buffer, 0, (int) Math.min(length, buffer.length));
+                    if (count == -1) {
+                        // File was truncated.
+                        break;
+                    }
+                    out.write(buffer, 0, count);
+                    length -= count;
+                }
+            } finally {
+                in.close();
+            }
+        } else if (contentLength != -1) {
+            RangeOutputStream rangeOut = new RangeOutputStream(out, offset, length);
+            imageReference.render(rangeOut);
+            rangeOut.flush();
+        } else {
+            imageReference.render(out);
+        }
+    }
+    
     /**
      * Renders a <code>StreamImageReference</code>.
      * 
@@ -140,6 +344,10 @@ implements Service {
     throws IOException {
         try {
             StreamImageReference streamImageReference = (StreamImageReference) imageReference;
+            if (streamImageReference instanceof RandomAccessImageReference) {
+                renderRandomAccessImage(conn, streamImageReference);
+                return;
+            }
             conn.setContentType(new ContentType(streamImageReference.getContentType(), true));
             streamImageReference.render(conn.getOutputStream());
         } catch (IOException ex) {
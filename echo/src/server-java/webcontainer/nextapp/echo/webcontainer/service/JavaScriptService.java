@@ -29,20 +29,33 @@
 
 package nextapp.echo.webcontainer.service;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.security.AccessControlException;
 
+import nextapp.echo.app.util.Log;
 import nextapp.echo.webcontainer.Connection;
+import nextapp.echo.webcontainer.ContentHashedService;
 import nextapp.echo.webcontainer.Service;
+import nextapp.echo.webcontainer.util.CompressingOutputStream;
+import nextapp.echo.webcontainer.util.ContentHash;
 import nextapp.echo.webcontainer.util.GZipCompressor;
 import nextapp.echo.webcontainer.util.JavaScriptCompressor;
 import nextapp.echo.webcontainer.util.Resource;
 
 /**
  * A service which renders <code>JavaScript</code> resource files.
+ * The service is identified by a hash of its (compressed) content, such that it may be cached
+ * indefinitely by clients.
  */
 public class JavaScriptService 
-implements Service {
+implements ContentHashedService {
 
     // Toggle to enable GZIP compression for MS IE Browser via system property 'echo.allowiecompression'
     private static final boolean ALLOW_IE_COMPRESSION;
@@ -67,6 +80,99 @@ implements Service {
         }
         JAVASCRIPT_COMPRESSION_ENABLED = value.booleanValue();
     }
+    // Toggle to enable shortening of local variable names via system property 'echo.javascript.shorten'
+    private static final boolean SHORTEN_IDENTIFIERS;
+    static {
+        boolean shorten = false;
+        try {
+            shorten = "true".equals(System.getProperty("echo.javascript.shorten"));
+        } catch (SecurityException ignored) { }
+        SHORTEN_IDENTIFIERS = shorten;
+    }
+    // Directory in which compressed JavaScript is cached, via system property 'echo.javascript.cachedir'
+    private static final File CACHE_DIRECTORY;
+    static {
+        File directory = null;
+        try {
+            String path = System.getProperty("echo.javascript.cachedir");
+            if (path != null) {
+                directory = new File(path);
+            }
+        } catch (SecurityException ignored) { }
+        CACHE_DIRECTORY = directory;
+    }
+    
+    /**
+     * Compresses JavaScript content, if compression is enabled.
+     * If a cache directory is configured, the compressed content is retrieved from a file named by the hash of 
+     * the original content, and written to that file if not present.
+     * 
+     * @param content the original content
+     * @return the compressed content
+     */
+    private static String compress(String content) {
+        if (!JAVASCRIPT_COMPRESSION_ENABLED) {
+            return content;
+        }
+        if (CACHE_DIRECTORY == null) {
+            return JavaScriptCompressor.compress(content, SHORTEN_IDENTIFIERS);
+        }
+        
+        File cacheFile = new File(CACHE_DIRECTORY, ContentHash.hash(content) + "-" + JavaScriptCompressor.VERSION 
+                + (SHORTEN_IDENTIFIERS ? "s" : "") + ".js");
+        try {
+            if (cacheFile.isFile()) {
+                return readFile(cacheFile);
+            }
+        } catch (IOException ex) {
+            Log.log("Cannot read cached JavaScript: " + cacheFile, ex);
+        }
+        
+        String compressed = JavaScriptCompressor.compress(content, SHORTEN_IDENTIFIERS);
+        try {
+            // Write to a temporary file first, such that concurrently starting applications never read a partially
+            // written file.
+            CACHE_DIRECTORY.mkdirs();
+            File tempFile = File.createTempFile("echo", ".tmp", CACHE_DIRECTORY);
+            Writer out = new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8");
+            try {
+                out.write(compressed);
+            } finally {
+                out.close();
+            }
+            if (!tempFile.renameTo(cacheFile)) {
+                tempFile.delete();
+            }
+        } catch (IOException ex) {
+            Log.log("Cannot write cached JavaScript: " + cacheFile, ex);
+        } catch (SecurityException ex) {
+            Log.log("Cannot write cached JavaScript: " + cacheFile, ex);
+        }
+        return compressed;
+    }
+    
+    /**
+     * Reads the content of a UTF-8 encoded file.
+     * 
+     * @param file the file
+     * @return the content
+     * @throws IOException if the file cannot be read
+     */
+    private static String readFile(File file) 
+    throws IOException {
+        Reader in = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        try {
+            StringBuilder out = new StringBuilder((int) file.length());
+            char[] buffer = new char[4096];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.append(buffer, 0, count);
+            }
+            return out.toString();
+        } finally {
+            in.close();
+        }
+    }
 
     /**
      * Creates a new <code>JavaScript</code> service from the specified
@@ -100,6 +206,9 @@ implements Service {
     /** The JavaScript content in GZip compressed form. */
     private byte[] gzipContent;
     
+    /** The hash of the JavaScript content. */
+    private String contentHash;
+    
     /**
      * Creates a new <code>JavaScriptService</code>.
      * 
@@ -109,7 +218,8 @@ implements Service {
     public JavaScriptService(String id, String content) {
         super();
         this.id = id;
-        this.content = JAVASCRIPT_COMPRESSION_ENABLED ? JavaScriptCompressor.compress(content) : content;
+        this.content = compress(content);
+        contentHash = ContentHash.hash(this.content);
         try {
             gzipContent = GZipCompressor.compress(this.content);
         } catch (IOException ex) {
@@ -118,6 +228,22 @@ implements Service {
         }
     }
     
+    /**
+     * Returns the JavaScript content, as it is served to clients (i.e., compressed, if compression is enabled).
+     * 
+     * @return the content
+     */
+    public String getContent() {
+        return content;
+    }
+    
+    /**
+     * @see nextapp.echo.webcontainer.ContentHashedService#getContentHash()
+     */
+    public String getContentHash() {
+        return contentHash;
+    }
+    
     /**
      * @see Service#getId()
      */
@@ -128,7 +254,8 @@ implements Service {
     /**
      * <code>DO_NOT_CACHE</code> is returned for <code>JavaScript</code>
      * to avoid possibility of ever running out-of-date JavaScript in the
-     * event an application is updated and redeployed. 
+     * event an application is updated and redeployed.  Caching is instead
+     * controlled by the content hash.
      * 
      * @see Service#getVersion()
      */
@@ -137,10 +264,14 @@ implements Service {
     }
     
     /**
-     * @see Service#service(nextapp.echo.webcontainer.Connection)
+     * Determines whether a precompressed resource may be sent to the client using GZip encoding, i.e., whether 
+     * the "Accept-Encoding" header of the request accepts GZip (with a non-zero quality value) and the client
+     * is not Internet Explorer (unless enabled by the "echo.allowiecompression" system property).
+     * 
+     * @param conn the <code>Connection</code>
+     * @return true if GZip encoding may be used
      */
-    public void service(Connection conn) 
-    throws IOException {
+    static boolean isGZipAccepted(Connection conn) {
         String userAgent = conn.getRequest().getHeader("user-agent");
         if (!ALLOW_IE_COMPRESSION && (userAgent == null || userAgent.indexOf("MSIE") != -1)) {
             // Due to behavior detailed Microsoft Knowledge Base Article Id 312496, 
@@ -148,14 +279,23 @@ implements Service {
             // Due to the fact that ClientProperties information is not necessarily 
             // available at this stage, browsers which provide deceitful user-agent 
             // headers will also be affected.
-            servicePlain(conn);
+            return false;
+        }
+        // GZip is preferred by selectEncoding(), thus is selected if accepted.
+        return CompressingOutputStream.ENCODING_GZIP.equals(
+                CompressingOutputStream.selectEncoding(conn.getRequest().getHeader("accept-encoding")));
+    }
+    
+    /**
+     * @see Service#service(nextapp.echo.webcontainer.Connection)
+     */
+    public void service(Connection conn) 
+    throws IOException {
+        conn.getResponse().setHeader("Vary", "Accept-Encoding");
+        if (isGZipAccepted(conn)) {
+            serviceGZipCompressed(conn);
         } else {
-            String acceptEncoding = conn.getRequest().getHeader("accept-encoding");
-            if (acceptEncoding != null && acceptEncoding.indexOf("gzip") != -1) {
-                serviceGZipCompressed(conn);
-            } else {
-                servicePlain(conn);
-            }
+            servicePlain(conn);
         }
     }
     
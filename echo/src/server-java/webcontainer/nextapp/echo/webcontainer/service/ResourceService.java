@@ -30,17 +30,23 @@
 package nextapp.echo.webcontainer.service;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import nextapp.echo.webcontainer.Connection;
 import nextapp.echo.webcontainer.ContentType;
 import nextapp.echo.webcontainer.ResourceRegistry;
 import nextapp.echo.webcontainer.Service;
 import nextapp.echo.webcontainer.WebContainerServlet;
+import nextapp.echo.webcontainer.util.Resource;
+import nextapp.echo.webcontainer.util.ResourceCache;
 
 /**
  * Serves a static resource that has been added to the <code>ResourceRegistry</code>.
+ * Resources are retained in memory (text resources additionally in GZip-compressed form), 
+ * and are served with strong entity tags such that conditional requests may be answered 
+ * with a "304 Not Modified" status.
  */
 public class ResourceService 
 implements Service {
@@ -54,6 +60,32 @@ implements Service {
     /** URL parameter used to specify resource name. */
     private static final String PARAMETER_RESOURCE = "res";
     
+    /** Cache of resource content. */
+    private static final ResourceCache cache = new ResourceCache(WebContainerServlet.RESOURCE_CACHE_SIZE);
+    
+    /**
+     * Determines whether a conditional request may be answered with a "304 Not Modified" status.
+     * 
+     * @param request the HTTP request
+     * @param entityTag the (quoted) entity tag of the representation which would be served
+     * @return true if the client's copy of the resource is current
+     */
+    private static boolean isNotModified(HttpServletRequest request, String entityTag) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            // If-Modified-Since must be ignored when If-None-Match is present.
+            return ifNoneMatch.indexOf(entityTag) != -1 || "*".equals(ifNoneMatch.trim());
+        }
+        long ifModifiedSince;
+        try {
+            ifModifiedSince = request.getDateHeader("If-Modified-Since");
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+        // HTTP dates have a resolution of one second.
+        return ifModifiedSince != -1 && ifModifiedSince >= WebContainerServlet.getStartupTime() / 1000 * 1000;
+    }
+    
     /** Default constructor. */
     private ResourceService() { }
     
@@ -76,43 +108,48 @@ implements Service {
      */
     public void service(Connection conn) throws IOException {
         ResourceRegistry registry = WebContainerServlet.getResourceRegistry();
-        String packageId = conn.getRequest().getParameter(PARAMETER_PACKAGE);
-        String resourceName = conn.getRequest().getParameter(PARAMETER_RESOURCE);
+        HttpServletRequest request = conn.getRequest();
+        HttpServletResponse response = conn.getResponse();
+        String packageId = request.getParameter(PARAMETER_PACKAGE);
+        String resourceName = request.getParameter(PARAMETER_RESOURCE);
         
         ContentType contentType = registry.getContentType(packageId, resourceName);
         if (contentType == null) {
             throw new IllegalArgumentException("Resource \"" + packageId + ":" + resourceName + "\" is not registered.");
         }
         
-        conn.setContentType(contentType);
-        
         String location = registry.getLocation(packageId, resourceName);
         
-        InputStream in = ResourceService.class.getClassLoader().getResourceAsStream(location);
-        if (in == null) {
-            throw new IllegalArgumentException("Resource does not exist: \"" + resourceName + "\".  " 
-                    + "Looking in: \"" + location + "\".");
-        }
-        OutputStream out = conn.getOutputStream();
-
-        byte[] buffer = new byte[4096];
-        int bytesRead = 0;
-        
+        ResourceCache.Entry entry;
         try {
-            do {
-                bytesRead = in.read(buffer);
-                if (bytesRead > 0) {
-                    out.write(buffer, 0, bytesRead);
-                }
-            } while (bytesRead > 0);
-        } catch (final IOException ex) {
-            throw new IllegalArgumentException("Cannot get resource: \"" + resourceName + "\".") {
+            entry = cache.get(location, !contentType.isBinary());
+        } catch (final Resource.ResourceException ex) {
+            throw new IllegalArgumentException("Cannot get resource: \"" + resourceName + "\".  " 
+                    + "Looking in: \"" + location + "\".") {
                 public Throwable getCause() {
                     return ex;
                 }
             };
-        } finally {
-            if (in != null) { try { in.close(); } catch (IOException ex) { } } 
+        }
+        
+        boolean gzip = false;
+        if (entry.getGZipContent() != null) {
+            response.setHeader("Vary", "Accept-Encoding");
+            gzip = JavaScriptService.isGZipAccepted(conn);
+        }
+        String entityTag = gzip ? entry.getGZipEntityTag() : entry.getEntityTag();
+        response.setHeader("ETag", entityTag);
+        if (isNotModified(request, entityTag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        
+        conn.setContentType(contentType);
+        if (gzip) {
+            response.setHeader("Content-Encoding", "gzip");
+            conn.getOutputStream().write(entry.getGZipContent());
+        } else {
+            conn.getOutputStream().write(entry.getContent());
         }
     }
 }
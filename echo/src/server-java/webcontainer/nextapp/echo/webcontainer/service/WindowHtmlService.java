@@ -31,7 +31,9 @@ package nextapp.echo.webcontainer.service;
 
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Properties;
+import java.util.WeakHashMap;
 import java.util.regex.Pattern;
 
 import javax.xml.transform.OutputKeys;
@@ -49,10 +51,20 @@ import nextapp.echo.webcontainer.Service;
 import nextapp.echo.webcontainer.UserInstanceContainer;
 import nextapp.echo.webcontainer.SynchronizationException;
 import nextapp.echo.webcontainer.WebContainerServlet;
+import nextapp.echo.webcontainer.util.DocumentTemplate;
 
 /**
  * Completely re-renders a browser window.
  * This is the default service invoked when the user visits an application.
+ * <p>
+ * The HTML document is created once per servlet (and browser variant) as a <code>DocumentTemplate</code>,
+ * into which the servlet URI, initialization request identifier, and debug flag are inserted for each request.
+ * Initialization scripts and style sheets are thus retrieved from the servlet only when the document is first
+ * rendered.
+ * <p>
+ * Unless disabled via <code>WebContainerServlet.BOOT_BUNDLE_ENABLED</code>, the boot script and initialization
+ * scripts are included via the servlet's <code>BundleService.Bundle</code>.  The templates are recreated when 
+ * the bundle is replaced.
  */
 public class WindowHtmlService 
 implements Service {
@@ -84,19 +96,65 @@ implements Service {
     private static final Pattern USER_AGENT_MSIE8 = Pattern.compile("MSIE 8\\.");
     private static final Pattern USER_AGENT_MSIE9 = Pattern.compile("MSIE 9\\.");
     
+    /** Template placeholder for the servlet URI. */
+    private static final String PLACEHOLDER_SERVLET_URI = "EchoTemplateServletUri";
+    
+    /** Template placeholder for the initialization request identifier. */
+    private static final String PLACEHOLDER_INIT_ID = "EchoTemplateInitId";
+    
+    /** Template placeholder for the debug flag. */
+    private static final String PLACEHOLDER_DEBUG = "EchoTemplateDebug";
+    
+    /** Template placeholders, in the order their values are provided. */
+    private static final String[] PLACEHOLDERS = new String[] { PLACEHOLDER_SERVLET_URI, PLACEHOLDER_INIT_ID, 
+            PLACEHOLDER_DEBUG };
+    
     /** Singleton instance. */
     public static final WindowHtmlService INSTANCE = new WindowHtmlService();
+    
+    /**
+     * The document templates of a servlet.
+     */
+    private static class Templates {
+        
+        /** The bundle included by the templates, or null if bundling is disabled. */
+        private BundleService.Bundle bundle;
+        
+        /** 
+         * The <code>DocumentTemplate</code>s, the standard template at index 0 and the template for 
+         * Internet Explorer 8 and 9 at index 1.
+         */
+        private DocumentTemplate[] documents = new DocumentTemplate[2];
+        
+        /**
+         * Creates a new <code>Templates</code> instance.
+         * 
+         * @param bundle the bundle included by the templates, or null if bundling is disabled
+         */
+        private Templates(BundleService.Bundle bundle) {
+            super();
+            this.bundle = bundle;
+        }
+    }
+    
+    /** Mapping from servlets to their <code>Templates</code>. */
+    private Map servletToTemplates = new WeakHashMap();
 
     /**
-     * Create a new root window HTML document.
+     * Create a new root window HTML document, containing placeholders for the servlet URI, 
+     * initialization request identifier, and debug flag.
      * 
-     * @param conn the <code>Connection</code>
-     * @param debug flag indicating whether debug capabilities should be enabled
+     * @param servlet the servlet
+     * @param userInstanceContainer the <code>UserInstanceContainer</code> of the request for which the document
+     *        is created
+     * @param ieCompatibility flag indicating whether Internet Explorer 8 and 9 should be forced into 
+     *        standards-compliant mode
+     * @param bundle the bundle to include in place of the boot script and bundled initialization scripts, 
+     *        or null
      * @return the created document
      */
-    private Document createHtmlDocument(Connection conn, boolean debug) {
-        UserInstanceContainer userInstanceContainer = conn.getUserInstanceContainer();
-        String userAgent = conn.getRequest().getHeader("User-Agent");
+    private Document createHtmlDocument(WebContainerServlet servlet, UserInstanceContainer userInstanceContainer, 
+            boolean ieCompatibility, BundleService.Bundle bundle) {
         Document document = DomUtil.createDocument("html", XHTML_1_0_TRANSITIONAL_PUBLIC_ID, 
                 XHTML_1_0_TRANSITIONAL_SYSTEM_ID, XHTML_1_0_NAMESPACE_URI);
         
@@ -111,8 +169,7 @@ implements Service {
         headElement.appendChild(metaGeneratorElement);
 
         // Force Internet Explorer 8 and 9 into standards-compliant mode.
-        if (userAgent != null && (USER_AGENT_MSIE8.matcher(userAgent).find() 
-            || USER_AGENT_MSIE9.matcher(userAgent).find())) {
+        if (ieCompatibility) {
             Element metaCompElement = document.createElement("meta");
             metaCompElement.setAttribute("http-equiv", "X-UA-Compatible");
             metaCompElement.setAttribute("content", "IE=8");
@@ -138,21 +195,24 @@ implements Service {
         Text textNode = document.createTextNode(" ");
         scriptElement.appendChild(textNode);
         scriptElement.setAttribute("type", "text/javascript");
-        scriptElement.setAttribute("src", userInstanceContainer.getServiceUri(BootService.SERVICE, null));
+        scriptElement.setAttribute("src", getServiceUri(userInstanceContainer, 
+                bundle == null ? BootService.SERVICE : bundle.getService()));
         headElement.appendChild(scriptElement);
         
-        WebContainerServlet servlet = conn.getServlet();
-        
+
         // Include application-provided initialization scripts.
         Iterator scriptIt = servlet.getInitScripts();
         if (scriptIt != null) {
             while (scriptIt.hasNext()) {
                 Service scriptService = (Service) scriptIt.next();
+                if (bundle != null && bundle.contains(scriptService)) {
+                    continue;
+                }
                 scriptElement = document.createElement("script");
                 textNode = document.createTextNode(" ");
                 scriptElement.appendChild(textNode);
                 scriptElement.setAttribute("type", "text/javascript");
-                scriptElement.setAttribute("src", userInstanceContainer.getServiceUri(scriptService, null));
+                scriptElement.setAttribute("src", getServiceUri(userInstanceContainer, scriptService));
                 headElement.appendChild(scriptElement);
             }
         }
@@ -165,15 +225,15 @@ implements Service {
                 Element linkElement = document.createElement("link");
                 linkElement.setAttribute("rel", "StyleSheet");
                 linkElement.setAttribute("type", "text/css");
-                linkElement.setAttribute("href", userInstanceContainer.getServiceUri(styleSheetService, null));
+                linkElement.setAttribute("href", getServiceUri(userInstanceContainer, styleSheetService));
                 headElement.appendChild(linkElement);
             }
         }
         
         Element bodyElement = document.createElement("body");
         bodyElement.setAttribute("id", "body");
-        bodyElement.setAttribute("onload", "Echo.Boot.boot('" + userInstanceContainer.getServletUri() + "', '" + 
-                userInstanceContainer.createInitId(conn) + "', " + debug + ");");
+        bodyElement.setAttribute("onload", "Echo.Boot.boot('" + PLACEHOLDER_SERVLET_URI + "', '" + 
+                PLACEHOLDER_INIT_ID + "', " + PLACEHOLDER_DEBUG + ");");
         bodyElement.setAttribute("style",
                 "height:100%;width:100%;margin:0px;padding:0px;" +
                 "font-family:verdana, arial, helvetica, sans-serif;font-size:10pt");
@@ -187,6 +247,48 @@ implements Service {
         return document;
     }
     
+    /**
+     * Returns the URI of a service, relative to the servlet URI placeholder.
+     * 
+     * @param userInstanceContainer the <code>UserInstanceContainer</code>
+     * @param service the service
+     * @return the URI, beginning with the servlet URI placeholder
+     */
+    private String getServiceUri(UserInstanceContainer userInstanceContainer, Service service) {
+        return PLACEHOLDER_SERVLET_URI + userInstanceContainer.getServiceUri(service, null).substring(
+                userInstanceContainer.getServletUri().length());
+    }
+    
+    /**
+     * Returns the document template for a request, creating it if necessary.
+     * 
+     * @param conn the <code>Connection</code>
+     * @return the template
+     * @throws SAXException if the template cannot be created
+     */
+    private DocumentTemplate getTemplate(Connection conn) 
+    throws SAXException {
+        String userAgent = conn.getRequest().getHeader("User-Agent");
+        boolean ieCompatibility = userAgent != null && (USER_AGENT_MSIE8.matcher(userAgent).find() 
+                || USER_AGENT_MSIE9.matcher(userAgent).find());
+        int index = ieCompatibility ? 1 : 0;
+        WebContainerServlet servlet = conn.getServlet();
+        BundleService.Bundle bundle = WebContainerServlet.BOOT_BUNDLE_ENABLED ? BundleService.getBundle(servlet) : null;
+        synchronized (servletToTemplates) {
+            Templates templates = (Templates) servletToTemplates.get(servlet);
+            if (templates == null || templates.bundle != bundle) {
+                templates = new Templates(bundle);
+                servletToTemplates.put(servlet, templates);
+            }
+            if (templates.documents[index] == null) {
+                Document document = createHtmlDocument(servlet, conn.getUserInstanceContainer(), ieCompatibility, 
+                        bundle);
+                templates.documents[index] = new DocumentTemplate(document, OUTPUT_PROPERTIES, PLACEHOLDERS);
+            }
+            return templates.documents[index];
+        }
+    }
+    
     /**
      * @see Service#getId()
      */
@@ -207,9 +309,11 @@ implements Service {
     public void service(Connection conn) throws IOException {
         try {
             boolean debug = !("false".equals(conn.getServlet().getInitParameter("echo.debug")));
-            Document document = createHtmlDocument(conn, debug);
+            DocumentTemplate template = getTemplate(conn);
+            UserInstanceContainer userInstanceContainer = conn.getUserInstanceContainer();
             conn.setContentType(ContentType.TEXT_HTML);
-            DomUtil.save(document, conn.getWriter(), OUTPUT_PROPERTIES);
+            template.write(conn.getOutputStream(), new String[] { userInstanceContainer.getServletUri(), 
+                    userInstanceContainer.createInitId(conn), debug ? "true" : "false" });
         } catch (SAXException ex) {
             throw new SynchronizationException("Failed to write HTML document.", ex);
         }
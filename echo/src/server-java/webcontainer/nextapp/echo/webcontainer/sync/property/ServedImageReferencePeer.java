@@ -60,6 +60,7 @@ public class ServedImageReferencePeer implements ImageReferencePeer {
     throws SerialException {
         UserInstance userInstance = (UserInstance) context.get(UserInstance.class);
         userInstance.getIdTable().register(imageReference);
+        ImageService.INSTANCE.prepareImage(imageReference);
         return "!I!" + imageReference.getRenderId();
     }
     
@@ -0,0 +1,114 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.webcontainer.util;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Parses the "Range" header of HTTP requests for partial content, supporting only requests for a single 
+ * byte range.  Requests for multiple ranges are answered with the full content, as permitted by HTTP.
+ */
+public class ByteRange {
+    
+    /**
+     * Parses the "Range" header of a request, honoring its "If-Range" header.
+     * 
+     * @param request the HTTP request
+     * @param entityTag the (quoted) strong entity tag of the content, or null
+     * @param lastModified the modification time of the content, or -1
+     * @param contentLength the length of the content
+     * @return the offset and length of the requested range, null if the full content should be served,
+     *         or an empty array if the range cannot be satisfied
+     */
+    public static long[] parse(HttpServletRequest request, String entityTag, long lastModified, long contentLength) {
+        String range = request.getHeader("Range");
+        if (range == null || !range.startsWith("bytes=") || range.indexOf(',') != -1) {
+            return null;
+        }
+        
+        // Serve full content if If-Range validator is not current.
+        String ifRange = request.getHeader("If-Range");
+        if (ifRange != null) {
+            ifRange = ifRange.trim();
+            if (ifRange.startsWith("\"")) {
+                if (!ifRange.equals(entityTag)) {
+                    return null;
+                }
+            } else {
+                long ifRangeDate;
+                try {
+                    ifRangeDate = request.getDateHeader("If-Range");
+                } catch (IllegalArgumentException ex) {
+                    return null;
+                }
+                if (lastModified == -1 || ifRangeDate != lastModified / 1000 * 1000) {
+                    return null;
+                }
+            }
+        }
+        
+        int dashIndex = range.indexOf('-');
+        if (dashIndex == -1) {
+            return null;
+        }
+        long first, last;
+        try {
+            String firstString = range.substring(6, dashIndex).trim();
+            String lastString = range.substring(dashIndex + 1).trim();
+            if (firstString.length() == 0) {
+                // Suffix range: final bytes.
+                long suffixLength = Long.parseLong(lastString);
+                if (suffixLength < 0) {
+                    return null;
+                } else if (suffixLength == 0) {
+                    return new long[0];
+                }
+                first = Math.max(0, contentLength - suffixLength);
+                last = contentLength - 1;
+            } else {
+                first = Long.parseLong(firstString);
+                last = lastString.length() == 0 ? contentLength - 1 : Math.min(Long.parseLong(lastString), 
+                        contentLength - 1);
+                if (last < first) {
+                    return first < contentLength ? null : new long[0];
+                }
+            }
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+        if (first >= contentLength || first < 0) {
+            return new long[0];
+        }
+        return new long[]{ first, last - first + 1 };
+    }
+    
+    /** Non-instantiable class. */
+    private ByteRange() { }
+}
@@ -0,0 +1,326 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+package nextapp.echo.webcontainer.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * An <code>OutputStream</code> which compresses a response using the GZip or deflate content encoding
+ * if its size exceeds a threshold.
+ * <p>
+ * Content is buffered until the threshold is exceeded, at which point the "Content-Encoding" header
+ * is set and compressed output is written to the response.  Responses which do not exceed the 
+ * threshold are written uncompressed when the stream is closed.  The response's <code>OutputStream</code>
+ * is not retrieved until output is written to it, such that the response may still be used for
+ * reporting an error if processing fails before the threshold is reached.  
+ * <p>
+ * <code>Deflater</code>s are obtained from a <code>DeflaterPool</code> and returned when the stream
+ * is closed, thus <code>close()</code> (or, if the content is to be discarded, <code>abort()</code>) 
+ * must be invoked.
+ */
+public class CompressingOutputStream extends OutputStream {
+
+    /** The GZip content encoding. */
+    public static final String ENCODING_GZIP = "gzip";
+    
+    /** The deflate (zlib) content encoding. */
+    public static final String ENCODING_DEFLATE = "deflate";
+    
+    /** GZip header: magic number, deflate compression method, no flags, no modification time, unknown OS. */
+    private static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+    
+    /** Size of the compressed output buffer. */
+    private static final int OUTPUT_BUFFER_SIZE = 4096;
+
+    /**
+     * Determines the preferred supported content encoding from the value of an "Accept-Encoding" header.
+     * GZip is preferred over deflate, as the deflate encoding is interpreted inconsistently by browsers.
+     * 
+     * @param acceptEncoding the "Accept-Encoding" header value (may be null)
+     * @return <code>ENCODING_GZIP</code>, <code>ENCODING_DEFLATE</code>, or null if neither is accepted
+     */
+    public static String selectEncoding(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        acceptEncoding = acceptEncoding.toLowerCase();
+        if (isAccepted(acceptEncoding, ENCODING_GZIP)) {
+            return ENCODING_GZIP;
+        } else if (isAccepted(acceptEncoding, ENCODING_DEFLATE)) {
+            return ENCODING_DEFLATE;
+        } else {
+            return null;
+        }
+    }
+    
+    /**
+     * Determines whether an "Accept-Encoding" header accepts a specific encoding, i.e., lists it without
+     * a quality value of zero.
+     * 
+     * @param acceptEncoding the lower-case "Accept-Encoding" header value
+     * @param encoding the encoding
+     * @return true if the encoding is accepted
+     */
+    private static boolean isAccepted(String acceptEncoding, String encoding) {
+        String[] codings = acceptEncoding.split(",");
+        for (int i = 0; i < codings.length; ++i) {
+            String coding = codings[i].trim();
+            int semicolonIndex = coding.indexOf(';');
+            String name = semicolonIndex == -1 ? coding : coding.substring(0, semicolonIndex).trim();
+            if (!name.equals(encoding)) {
+                continue;
+            }
+            if (semicolonIndex == -1) {
+                return true;
+            }
+            String parameter = coding.substring(semicolonIndex + 1).trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2)) > 0;
+                } catch (NumberFormatException ex) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+    
+    /** The response. */
+    private HttpServletResponse response;
+    
+    /** The content encoding, <code>ENCODING_GZIP</code> or <code>ENCODING_DEFLATE</code>. */
+    private String encoding;
+    
+    /** The pool from which the <code>Deflater</code> is obtained. */
+    private DeflaterPool deflaterPool;
+    
+    /** The size, in bytes, which content must exceed to be compressed. */
+    private int threshold;
+    
+    /** Buffer of content written before compression has started, null once it has started. */
+    private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    
+    /** The response <code>OutputStream</code>, once compression has started. */
+    private OutputStream out;
+    
+    /** The <code>Deflater</code>, while compression is in progress. */
+    private Deflater deflater;
+    
+    /** Checksum of uncompressed content (GZip only). */
+    private CRC32 crc;
+    
+    /** Compressed output buffer. */
+    private byte[] outputBuffer;
+    
+    /** Flag indicating whether the stream has been closed. */
+    private boolean closed = false;
+    
+    /**
+     * Creates a new <code>CompressingOutputStream</code>.
+     * 
+     * @param response the response to which content should be written
+     * @param encoding the content encoding, <code>ENCODING_GZIP</code> or <code>ENCODING_DEFLATE</code>
+     * @param deflaterPool the pool from which the <code>Deflater</code> should be obtained, which must
+     *        provide <code>Deflater</code>s omitting the zlib wrapper if (and only if) GZip encoding is used
+     * @param threshold the size, in bytes, which content must exceed to be compressed
+     */
+    public CompressingOutputStream(HttpServletResponse response, String encoding, DeflaterPool deflaterPool, 
+            int threshold) {
+        super();
+        if (!ENCODING_GZIP.equals(encoding) && !ENCODING_DEFLATE.equals(encoding)) {
+            throw new IllegalArgumentException("Unsupported encoding: " + encoding);
+        }
+        this.response = response;
+        this.encoding = encoding;
+        this.deflaterPool = deflaterPool;
+        this.threshold = threshold;
+    }
+    
+    /**
+     * Discards the content of the stream without writing it to the response, e.g., because processing
+     * has failed.  The <code>Deflater</code>, if compression has started, is ended rather than returned 
+     * to its pool, as its state is unknown.  Has no effect if the stream has been closed.
+     */
+    public void abort() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        buffer = null;
+        if (deflater != null) {
+            deflater.end();
+            deflater = null;
+        }
+    }
+    
+    /**
+     * Finishes compression (if started) or writes buffered content uncompressed, and returns the
+     * <code>Deflater</code> to its pool.  The response <code>OutputStream</code> is flushed, but not closed.
+     * 
+     * @see java.io.OutputStream#close()
+     */
+    public void close() 
+    throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (deflater == null) {
+            byte[] data = buffer.toByteArray();
+            buffer = null;
+            response.setContentLength(data.length);
+            OutputStream responseOut = response.getOutputStream();
+            responseOut.write(data);
+            responseOut.flush();
+            return;
+        }
+        
+        try {
+            deflater.finish();
+            while (!deflater.finished()) {
+                int length = deflater.deflate(outputBuffer, 0, outputBuffer.length);
+                out.write(outputBuffer, 0, length);
+            }
+            if (crc != null) {
+                writeIntLE((int) crc.getValue());
+                writeIntLE(deflater.getTotalIn());
+            }
+            out.flush();
+        } finally {
+            deflaterPool.release(deflater);
+            deflater = null;
+        }
+    }
+    
+    /**
+     * Compresses content to the response.
+     * 
+     * @param data the content
+     * @param offset the offset of the content in <code>data</code>
+     * @param length the length of the content
+     * @throws IOException
+     */
+    private void compress(byte[] data, int offset, int length) 
+    throws IOException {
+        if (crc != null) {
+            crc.update(data, offset, length);
+        }
+        deflater.setInput(data, offset, length);
+        while (!deflater.needsInput()) {
+            int deflatedLength = deflater.deflate(outputBuffer, 0, outputBuffer.length);
+            out.write(outputBuffer, 0, deflatedLength);
+        }
+    }
+    
+    /**
+     * Returns the content encoding, which is applied if the content exceeds the threshold.
+     * 
+     * @return the content encoding
+     */
+    public String getEncoding() {
+        return encoding;
+    }
+    
+    /**
+     * Determines whether compression has started, i.e., whether the content has exceeded the threshold.
+     * 
+     * @return true if compression has started
+     */
+    public boolean isCompressing() {
+        return out != null;
+    }
+    
+    /**
+     * Starts compression, setting response headers and compressing buffered content.
+     * 
+     * @throws IOException
+     */
+    private void startCompression() 
+    throws IOException {
+        response.setHeader("Content-Encoding", encoding);
+        response.addHeader("Vary", "Accept-Encoding");
+        out = response.getOutputStream();
+        deflater = deflaterPool.acquire();
+        outputBuffer = new byte[OUTPUT_BUFFER_SIZE];
+        if (ENCODING_GZIP.equals(encoding)) {
+            crc = new CRC32();
+            out.write(GZIP_HEADER);
+        }
+        byte[] data = buffer.toByteArray();
+        buffer = null;
+        compress(data, 0, data.length);
+    }
+    
+    /**
+     * @see java.io.OutputStream#write(int)
+     */
+    public void write(int b) 
+    throws IOException {
+        write(new byte[]{ (byte) b }, 0, 1);
+    }
+    
+    /**
+     * @see java.io.OutputStream#write(byte[], int, int)
+     */
+    public void write(byte[] data, int offset, int length) 
+    throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed.");
+        }
+        if (deflater != null) {
+            compress(data, offset, length);
+        } else {
+            buffer.write(data, offset, length);
+            if (buffer.size() > threshold) {
+                startCompression();
+            }
+        }
+    }
+    
+    /**
+     * Writes a 32 bit integer in little-endian byte order, as used by the GZip trailer.
+     * 
+     * @param value the value
+     * @throws IOException
+     */
+    private void writeIntLE(int value) 
+    throws IOException {
+        out.write(value & 0xff);
+        out.write((value >> 8) & 0xff);
+        out.write((value >> 16) & 0xff);
+        out.write((value >> 24) & 0xff);
+    }
+}
@@ -0,0 +1,81 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.webcontainer.util;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Utility class for computing hashes which identify content, e.g., for use as entity tags 
+ * or in versioned URIs.
+ */
+public class ContentHash {
+    
+    /**
+     * Computes the hash of an array of bytes.
+     * 
+     * @param data the data
+     * @return the hash, as a hexadecimal string
+     */
+    public static String hash(byte[] data) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1").digest(data);
+        } catch (NoSuchAlgorithmException ex) {
+            // Should never occur.
+            throw new RuntimeException("Internal error.", ex);
+        }
+        StringBuffer out = new StringBuffer();
+        for (int i = 0; i < digest.length; ++i) {
+            out.append(Character.forDigit((digest[i] >> 4) & 0xf, 16));
+            out.append(Character.forDigit(digest[i] & 0xf, 16));
+        }
+        return out.toString();
+    }
+    
+    /**
+     * Computes the hash of the UTF-8 encoding of a String.
+     * 
+     * @param s the String
+     * @return the hash, as a hexadecimal string
+     */
+    public static String hash(String s) {
+        try {
+            return hash(s.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException ex) {
+            // Should never occur.
+            throw new RuntimeException("Internal error.", ex);
+        }
+    }
+    
+    /** Non-instantiable class. */
+    private ContentHash() { }
+}
@@ -0,0 +1,114 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+package nextapp.echo.webcontainer.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * A pool of <code>Deflater</code>s with identical settings, such that the native zlib
+ * state of a <code>Deflater</code> may be reused across requests rather than allocated
+ * (and finalized) for each compressed response.
+ * <p>
+ * This class is thread-safe.
+ */
+public class DeflaterPool {
+
+    /** The compression level of pooled <code>Deflater</code>s. */
+    private int level;
+    
+    /** Flag indicating whether pooled <code>Deflater</code>s omit the zlib header and checksum (as in GZip). */
+    private boolean nowrap;
+    
+    /** The maximum number of idle <code>Deflater</code>s retained by the pool. */
+    private int maximumIdle;
+    
+    /** Idle <code>Deflater</code>s. */
+    private List idle = new ArrayList();
+    
+    /**
+     * Creates a new <code>DeflaterPool</code>.
+     * 
+     * @param level the compression level, 0-9 (or <code>Deflater.DEFAULT_COMPRESSION</code>)
+     * @param nowrap true if the zlib header and checksum should be omitted, as required for GZip
+     * @param maximumIdle the maximum number of idle <code>Deflater</code>s retained by the pool,
+     *        additional <code>Deflater</code>s being ended when released
+     */
+    public DeflaterPool(int level, boolean nowrap, int maximumIdle) {
+        super();
+        this.level = level;
+        this.nowrap = nowrap;
+        this.maximumIdle = maximumIdle;
+    }
+    
+    /**
+     * Obtains a <code>Deflater</code> from the pool, creating one if none are idle.
+     * The <code>Deflater</code> should be returned using <code>release()</code> when
+     * no longer required.
+     * 
+     * @return the <code>Deflater</code>
+     */
+    public Deflater acquire() {
+        synchronized (idle) {
+            if (idle.size() > 0) {
+                return (Deflater) idle.remove(idle.size() - 1);
+            }
+        }
+        return new Deflater(level, nowrap);
+    }
+    
+    /**
+     * Returns the number of idle <code>Deflater</code>s in the pool.
+     * 
+     * @return the number of idle <code>Deflater</code>s
+     */
+    public int getIdleCount() {
+        synchronized (idle) {
+            return idle.size();
+        }
+    }
+    
+    /**
+     * Returns a <code>Deflater</code> obtained from <code>acquire()</code> to the pool.
+     * The <code>Deflater</code> is reset, or ended if the pool is full.
+     * 
+     * @param deflater the <code>Deflater</code>
+     */
+    public void release(Deflater deflater) {
+        deflater.reset();
+        synchronized (idle) {
+            if (idle.size() < maximumIdle) {
+                idle.add(deflater);
+                return;
+            }
+        }
+        deflater.end();
+    }
+}
@@ -0,0 +1,178 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.webcontainer.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import nextapp.echo.app.util.DomUtil;
+
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+/**
+ * A serialized DOM document in which placeholder strings are replaced by values when the document is written.
+ * The document is serialized only once, into UTF-8 encoded segments between the placeholders, such that writing
+ * it requires only the (escaped) values to be encoded.
+ * <p>
+ * Placeholders may appear in attribute values and text.  They should consist of characters which are not
+ * escaped by serialization, e.g., letters and digits.
+ */
+public class DocumentTemplate {
+    
+    /**
+     * Escapes the XML special characters of a value.
+     * 
+     * @param value the value
+     * @return the escaped value
+     */
+    private static String escape(String value) {
+        StringBuffer out = null;
+        int length = value.length();
+        for (int i = 0; i < length; ++i) {
+            char ch = value.charAt(i);
+            String entity;
+            switch (ch) {
+            case '&': entity = "&amp;";  break;
+            case '<': entity = "&lt;";   break;
+            case '>': entity = "&gt;";   break;
+            case '"': entity = "&quot;"; break;
+            default:  entity = null;
+            }
+            if (entity != null && out == null) {
+                out = new StringBuffer(length + 16);
+                out.append(value, 0, i);
+            }
+            if (out != null) {
+                if (entity == null) {
+                    out.append(ch);
+                } else {
+                    out.append(entity);
+                }
+            }
+        }
+        return out == null ? value : out.toString();
+    }
+    
+    /**
+     * Returns the UTF-8 encoding of a string.
+     * 
+     * @param s the string
+     * @return the encoded bytes
+     */
+    private static byte[] toUtf8(String s) {
+        try {
+            return s.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            // Should never occur.
+            throw new RuntimeException("Internal error.", ex);
+        }
+    }
+    
+    /** The encoded document segments preceding, between, and following the placeholders. */
+    private byte[][] segments;
+    
+    /** The index of the placeholder following each segment (excluding the final segment). */
+    private int[] placeholderIndices;
+    
+    /**
+     * Creates a new <code>DocumentTemplate</code>.
+     * 
+     * @param document the document, containing placeholders
+     * @param outputProperties the serialization output properties
+     * @param placeholders the placeholder strings
+     * @throws SAXException if the document cannot be serialized
+     */
+    public DocumentTemplate(Document document, Properties outputProperties, String[] placeholders) 
+    throws SAXException {
+        super();
+        StringWriter sw = new StringWriter();
+        PrintWriter pw = new PrintWriter(sw);
+        DomUtil.save(document, pw, outputProperties);
+        pw.flush();
+        String text = sw.toString();
+        
+        List segmentList = new ArrayList();
+        int[] indices = new int[placeholders.length];
+        int placeholderCount = 0;
+        int position = 0;
+        while (true) {
+            // Find next placeholder.
+            int nextPosition = -1;
+            int nextIndex = -1;
+            for (int i = 0; i < placeholders.length; ++i) {
+                int placeholderPosition = text.indexOf(placeholders[i], position);
+                if (placeholderPosition != -1 && (nextPosition == -1 || placeholderPosition < nextPosition)) {
+                    nextPosition = placeholderPosition;
+                    nextIndex = i;
+                }
+            }
+            if (nextIndex == -1) {
+                segmentList.add(toUtf8(text.substring(position)));
+                break;
+            }
+            segmentList.add(toUtf8(text.substring(position, nextPosition)));
+            if (placeholderCount == indices.length) {
+                int[] newIndices = new int[indices.length * 2 + 1];
+                System.arraycopy(indices, 0, newIndices, 0, placeholderCount);
+                indices = newIndices;
+            }
+            indices[placeholderCount++] = nextIndex;
+            position = nextPosition + placeholders[nextIndex].length();
+        }
+        
+        segments = (byte[][]) segmentList.toArray(new byte[segmentList.size()][]);
+        placeholderIndices = new int[placeholderCount];
+        System.arraycopy(indices, 0, placeholderIndices, 0, placeholderCount);
+    }
+    
+    /**
+     * Writes the document, in UTF-8 encoding, replacing placeholders with values.
+     * 
+     * @param out the <code>OutputStream</code> to which the document should be written
+     * @param values the values of the placeholders (in the order the placeholders were specified), 
+     *        which will be escaped
+     * @throws IOException
+     */
+    public void write(OutputStream out, String[] values) 
+    throws IOException {
+        for (int i = 0; i < placeholderIndices.length; ++i) {
+            out.write(segments[i]);
+            out.write(toUtf8(escape(values[placeholderIndices[i]])));
+        }
+        out.write(segments[segments.length - 1]);
+    }
+}
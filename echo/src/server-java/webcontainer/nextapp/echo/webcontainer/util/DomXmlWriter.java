@@ -0,0 +1,108 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.webcontainer.util;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import nextapp.echo.app.util.XmlWriter;
+
+/**
+ * An <code>XmlWriter</code> which builds DOM content beneath an existing <code>Element</code>.
+ */
+public class DomXmlWriter
+implements XmlWriter {
+
+    /** The owner document. */
+    private Document document;
+
+    /** The element to which content is currently being added. */
+    private Element currentElement;
+
+    /** The element beneath which content is written. */
+    private Element rootElement;
+
+    /**
+     * Creates a new <code>DomXmlWriter</code>.
+     *
+     * @param rootElement the element beneath which content will be written; content written
+     *        before any <code>startElement()</code> invocation is added to this element
+     */
+    public DomXmlWriter(Element rootElement) {
+        super();
+        this.rootElement = rootElement;
+        currentElement = rootElement;
+        document = rootElement.getOwnerDocument();
+    }
+
+    /**
+     * @see nextapp.echo.app.util.XmlWriter#append(org.w3c.dom.Node)
+     */
+    public void append(Node node) {
+        if (node.getOwnerDocument() != document) {
+            node = document.importNode(node, true);
+        }
+        currentElement.appendChild(node);
+    }
+
+    /**
+     * @see nextapp.echo.app.util.XmlWriter#endElement()
+     */
+    public void endElement() {
+        if (currentElement == rootElement) {
+            throw new IllegalStateException("No open element.");
+        }
+        currentElement = (Element) currentElement.getParentNode();
+    }
+
+    /**
+     * @see nextapp.echo.app.util.XmlWriter#setAttribute(java.lang.String, java.lang.String)
+     */
+    public void setAttribute(String name, String value) {
+        currentElement.setAttribute(name, value);
+    }
+
+    /**
+     * @see nextapp.echo.app.util.XmlWriter#startElement(java.lang.String)
+     */
+    public void startElement(String name) {
+        Element element = document.createElement(name);
+        currentElement.appendChild(element);
+        currentElement = element;
+    }
+
+    /**
+     * @see nextapp.echo.app.util.XmlWriter#text(java.lang.String)
+     */
+    public void text(String text) {
+        currentElement.appendChild(document.createTextNode(text));
+    }
+}
@@ -46,10 +46,22 @@ public class GZipCompressor {
      * @throws IOException
      */
     public static byte[] compress(String s) 
+    throws IOException {
+        return compress(s.getBytes());
+    }
+    
+    /**
+     * Compresses an array of bytes.
+     * 
+     * @param data the data to compress
+     * @return an array of bytes containing GZip-compression output
+     * @throws IOException
+     */
+    public static byte[] compress(byte[] data) 
     throws IOException {
         ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
         GZIPOutputStream gZipOut = new GZIPOutputStream(byteOut);
-        gZipOut.write(s.getBytes());
+        gZipOut.write(data);
         gZipOut.finish();
         byteOut.close();
         return byteOut.toByteArray();
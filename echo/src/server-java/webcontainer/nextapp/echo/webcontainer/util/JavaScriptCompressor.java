@@ -29,14 +29,33 @@ package nextapp.echo.webcontainer.util;
 
 /**
  * Compresses a String containing JavaScript by removing comments and 
- * whitespace.
+ * whitespace, and optionally by shortening the names of local variables
+ * (see <code>JavaScriptIdentifierShortener</code>).
  */
 public class JavaScriptCompressor {
 
+    /**
+     * Version of the compression algorithm, to be incremented whenever its output changes, 
+     * e.g., such that persistently cached results may be invalidated.
+     */
+    public static final int VERSION = 2;
+    
     private static final char LINE_FEED = '\n';
     private static final char CARRIAGE_RETURN = '\r';
     private static final char SPACE = ' ';
     private static final char TAB = '\t';
+    
+    /** Lookup table of <code>Character.isJavaIdentifierStart()</code> for ASCII characters. */
+    private static final boolean[] ASCII_IDENTIFIER_START = new boolean[128];
+
+    /** Lookup table of <code>Character.isJavaIdentifierPart()</code> for ASCII characters. */
+    private static final boolean[] ASCII_IDENTIFIER_PART = new boolean[128];
+    static {
+        for (char ch = 0; ch < 128; ++ch) {
+            ASCII_IDENTIFIER_START[ch] = Character.isJavaIdentifierStart(ch);
+            ASCII_IDENTIFIER_PART[ch] = Character.isJavaIdentifierPart(ch);
+        }
+    }
 
     /**
      * Compresses a String containing JavaScript by removing comments and 
@@ -49,29 +68,60 @@ public class JavaScriptCompressor {
         JavaScriptCompressor jsc = new JavaScriptCompressor(script);
         return jsc.outputBuffer.toString();
     }
+    
+    /**
+     * Compresses a String containing JavaScript by removing comments and 
+     * whitespace, optionally shortening the names of local variables.
+     * 
+     * @param script the String to compress
+     * @param shortenIdentifiers flag indicating whether local variables
+     *        should be renamed
+     * @return a compressed version
+     */
+    public static String compress(String script, boolean shortenIdentifiers) {
+        String compressed = compress(script);
+        return shortenIdentifiers ? JavaScriptIdentifierShortener.shorten(compressed) : compressed;
+    }
+    
+    /**
+     * Determines whether a character may begin an identifier.
+     * 
+     * @param ch the character
+     * @return true if the character is an identifier start character
+     */
+    static boolean isIdentifierStart(char ch) {
+        return ch < 128 ? ASCII_IDENTIFIER_START[ch] : Character.isJavaIdentifierStart(ch);
+    }
+
+    /**
+     * Determines whether a character may be part of an identifier.
+     * 
+     * @param ch the character
+     * @return true if the character is an identifier part character
+     */
+    static boolean isIdentifierPart(char ch) {
+        return ch < 128 ? ASCII_IDENTIFIER_PART[ch] : Character.isJavaIdentifierPart(ch);
+    }
 
     /** Original JavaScript text. */
-    private String script;
+    private char[] script;
+    
+    /** Length of original JavaScript text. */
+    private int length;
     
     /** 
      * Compressed output buffer.
      * This buffer may only be modified by invoking the <code>append()</code>
-     * method.
+     * methods.
      */
-    private StringBuffer outputBuffer;
+    private StringBuilder outputBuffer;
     
     /** Current parser cursor position in original text. */
     private int pos;
     
-    /** Character at parser cursor position. */
-    private char ch;
-    
     /** Last character appended to buffer. */
     private char lastAppend;
 
-    /** Flag indicating if end-of-buffer has been reached. */
-    private boolean endReached;
-
     /** Flag indicating whether content has been appended after last identifier. */
     private boolean contentAppendedAfterLastIdentifier = true;
 
@@ -81,42 +131,43 @@ public class JavaScriptCompressor {
      * @param script
      */
     private JavaScriptCompressor(String script) {
-        this.script = script;
-        outputBuffer = new StringBuffer(script.length());
-        nextChar();
+        this.script = script.toCharArray();
+        length = this.script.length;
+        outputBuffer = new StringBuilder(length);
 
-        while (!endReached) {
-            if (Character.isJavaIdentifierStart(ch)) {
+        while (pos < length) {
+            char ch = this.script[pos];
+            if (isIdentifierStart(ch)) {
                 renderIdentifier();
-            } else if (ch == ' ') {
-                skipWhiteSpace();
-            } else if (isWhitespace()) {
+            } else if (ch == SPACE || ch == TAB || ch == LINE_FEED || ch == CARRIAGE_RETURN) {
                 // Compress whitespace
                 skipWhiteSpace();
             } else if (ch == '\\') {
                 // Skip backslash and subsequent character.
                 append(ch);
-                nextChar();
-                append(ch);
-                nextChar();
+                ++pos;
+                if (pos < length) {
+                    append(this.script[pos]);
+                    ++pos;
+                }
             } else if ((ch == '"') || (ch == '\'')) {
                 // Handle strings
                 renderString();
             } else if (ch == '/') {
                 // Handle comments
-                nextChar();
-                if (ch == '/') {
-                    nextChar();
+                ++pos;
+                if (pos < length && this.script[pos] == '/') {
+                    ++pos;
                     skipLineComment();
-                } else if (ch == '*') {
-                    nextChar();
+                } else if (pos < length && this.script[pos] == '*') {
+                    ++pos;
                     skipBlockComment();
                 } else {
                     append('/');
                 }
             } else {
                 append(ch);
-                nextChar();
+                ++pos;
             }
         }
     }
@@ -133,40 +184,31 @@ public class JavaScriptCompressor {
     }
     
     /**
-     * Determines if current character is whitespace.
+     * Append a range of the original text to output.
      * 
-     * @return true if the character is whitespace
-     */
-    private boolean isWhitespace() {
-        return ch == CARRIAGE_RETURN || ch == SPACE || ch == TAB || ch == LINE_FEED;        
-    }
-
-    /**
-     * Load next character.
+     * @param start the start index of the range
+     * @param end the end index of the range (exclusive)
      */
-    private void nextChar() {
-        if (!endReached) {
-            if (pos < script.length()) {
-                ch = script.charAt(pos++);
-            } else {
-                endReached = true;
-                ch = 0;
-            }
+    private void append(int start, int end) {
+        if (start < end) {
+            lastAppend = script[end - 1];
+            outputBuffer.append(script, start, end - start);
+            contentAppendedAfterLastIdentifier = true;
         }
     }
-
+    
     /**
      * Adds an identifier to output.
      */
     private void renderIdentifier() {
-        if (!contentAppendedAfterLastIdentifier)
+        if (!contentAppendedAfterLastIdentifier) {
             append(SPACE);
-        append(ch);
-        nextChar();
-        while (Character.isJavaIdentifierPart(ch)) {
-            append(ch);
-            nextChar();
         }
+        int start = pos++;
+        while (pos < length && isIdentifierPart(script[pos])) {
+            ++pos;
+        }
+        append(start, pos);
         contentAppendedAfterLastIdentifier = false;
     }
 
@@ -174,30 +216,32 @@ public class JavaScriptCompressor {
      * Adds quoted String starting at current character to output.
      */
     private void renderString() {
-        char startCh = ch; // Save quote char
-        append(ch);
-        nextChar();
+        char startCh = script[pos]; // Save quote char
+        int start = pos++;
         while (true) {
-            if ((ch == LINE_FEED) || (ch == CARRIAGE_RETURN) || (endReached)) {
+            if (pos >= length) {
+                // JavaScript error: string not terminated
+                append(start, pos);
+                return;
+            }
+            char ch = script[pos];
+            if (ch == LINE_FEED || ch == CARRIAGE_RETURN) {
                 // JavaScript error: string not terminated
+                append(start, pos);
                 return;
+            } else if (ch == '\\') {
+                ++pos;
+                if (pos >= length || script[pos] == LINE_FEED || script[pos] == CARRIAGE_RETURN) {
+                    // JavaScript error: string not terminated
+                    append(start, pos);
+                    return;
+                }
+                ++pos;
             } else {
-                if (ch == '\\') {
-                    append(ch);
-                    nextChar();
-                    if ((ch == LINE_FEED) || (ch == CARRIAGE_RETURN) || (endReached)) {
-                        // JavaScript error: string not terminated
-                        return;
-                    }
-                    append(ch);
-                    nextChar();
-                } else {
-                    append(ch);
-                    if (ch == startCh) {
-                        nextChar();
-                        return;
-                    }
-                    nextChar();
+                ++pos;
+                if (ch == startCh) {
+                    append(start, pos);
+                    return;
                 }
             }
         }
@@ -207,11 +251,8 @@ public class JavaScriptCompressor {
      * Moves cursor past a line comment.
      */
     private void skipLineComment() {
-        while ((ch != CARRIAGE_RETURN) && (ch != LINE_FEED)) {
-            if (endReached) {
-                return;
-            }
-            nextChar();
+        while (pos < length && script[pos] != CARRIAGE_RETURN && script[pos] != LINE_FEED) {
+            ++pos;
         }
     }
 
@@ -219,18 +260,11 @@ public class JavaScriptCompressor {
      * Moves cursor past a block comment.
      */
     private void skipBlockComment() {
-        while (true) {
-            if (endReached) {
+        while (pos < length) {
+            if (script[pos++] == '*' && pos < length && script[pos] == '/') {
+                ++pos;
                 return;
             }
-            if (ch == '*') {
-                nextChar();
-                if (ch == '/') {
-                    nextChar();
-                    return;
-                }
-            } else
-                nextChar();
         }
     }
     
@@ -239,8 +273,8 @@ public class JavaScriptCompressor {
      * is not a newline.
      */
     private void renderNewLine() {
-        if (lastAppend != '\n' && lastAppend != '\r') {
-            append('\n');
+        if (lastAppend != LINE_FEED && lastAppend != CARRIAGE_RETURN) {
+            append(LINE_FEED);
         }
     }
     
@@ -248,17 +282,21 @@ public class JavaScriptCompressor {
      * Moves cursor past white space (including newlines).
      */
     private void skipWhiteSpace() {
+        char ch = script[pos];
         if (ch == LINE_FEED || ch == CARRIAGE_RETURN) {
             renderNewLine();
         } else {
             append(ch);
         }
-        nextChar();
-        while (ch == LINE_FEED || ch == CARRIAGE_RETURN || ch == SPACE || ch == TAB) {
+        ++pos;
+        while (pos < length) {
+            ch = script[pos];
             if (ch == LINE_FEED || ch == CARRIAGE_RETURN) {
                 renderNewLine();
+            } else if (ch != SPACE && ch != TAB) {
+                return;
             }
-            nextChar();
+            ++pos;
         }
     }
 }
@@ -0,0 +1,865 @@
+/*
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ * 
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ * 
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.mozilla.org/MPL/
+ * 
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License for
+ * the specific language governing rights and limitations under the License.
+ * 
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or the
+ * GNU Lesser General Public License Version 2.1 or later (the "LGPL"), in which
+ * case the provisions of the GPL or the LGPL are applicable instead of those
+ * above. If you wish to allow use of your version of this file only under the
+ * terms of either the GPL or the LGPL, and not to allow others to use your
+ * version of this file under the terms of the MPL, indicate your decision by
+ * deleting the provisions above and replace them with the notice and other
+ * provisions required by the GPL or the LGPL. If you do not delete the
+ * provisions above, a recipient may use your version of this file under the
+ * terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.webcontainer.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Shortens the names of the parameters and local variables of functions in (compressed) JavaScript.
+ * <p>
+ * Only bindings which cannot be observed from outside of their function are renamed: function parameters, 
+ * <code>var</code> declarations and <code>catch</code> parameters.  Global variables, properties, and the names of
+ * functions are never changed.  Replacement names are chosen such that they do not occur anywhere in the original
+ * script, and such that a nested function never reuses a name assigned in an enclosing function, so that no reference
+ * can be captured by a different binding.  Functions which contain a call to <code>eval</code> (and functions
+ * enclosing them) retain their variable names.  Scripts which use <code>with</code>, or which cannot be analyzed,
+ * are returned unchanged.
+ */
+class JavaScriptIdentifierShortener {
+    
+    /** Token type: identifier or keyword. */
+    private static final int IDENTIFIER = 0;
+    
+    /** Token type: numeric literal. */
+    private static final int NUMBER = 1;
+    
+    /** Token type: string literal. */
+    private static final int STRING = 2;
+    
+    /** Token type: regular expression literal. */
+    private static final int REGEX = 3;
+    
+    /** Token type: punctuator. */
+    private static final int PUNCTUATOR = 4;
+    
+    /** Token type: line break. */
+    private static final int NEW_LINE = 5;
+    
+    /** Reserved words, which may neither be renamed nor used as replacement names. */
+    private static final Set RESERVED_WORDS = new HashSet(Arrays.asList(new String[] {
+            "abstract", "boolean", "break", "byte", "case", "catch", "char", "class", "const", "continue", "debugger", 
+            "default", "delete", "do", "double", "else", "enum", "export", "extends", "false", "final", "finally", 
+            "float", "for", "function", "goto", "if", "implements", "import", "in", "instanceof", "int", "interface", 
+            "let", "long", "native", "new", "null", "package", "private", "protected", "public", "return", "short", 
+            "static", "super", "switch", "synchronized", "this", "throw", "throws", "transient", "true", "try", 
+            "typeof", "var", "void", "volatile", "while", "with", "yield", "arguments", "eval", "undefined", "NaN", 
+            "Infinity" }));
+    
+    /** Keywords after which a '/' begins a regular expression literal rather than a division operator. */
+    private static final Set REGEX_PRECEDING_KEYWORDS = new HashSet(Arrays.asList(new String[] {
+            "return", "typeof", "instanceof", "in", "new", "delete", "void", "throw", "case", "do", "else" }));
+    
+    /** Characters from which replacement names are composed, in order of preference. */
+    private static final String NAME_CHARACTERS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ_$0123456789";
+
+    /** Number of <code>NAME_CHARACTERS</code> which may begin a name. */
+    private static final int NAME_START_CHARACTERS = 54;
+    
+    /**
+     * Thrown when a script cannot be analyzed.
+     */
+    private static class UnsupportedScriptException extends Exception {
+        
+        /**
+         * Creates a new <code>UnsupportedScriptException</code>.
+         * 
+         * @param message the reason
+         */
+        private UnsupportedScriptException(String message) {
+            super(message);
+        }
+    }
+    
+    /**
+     * The scope of a function.
+     */
+    private static class Scope {
+        
+        /** The enclosing scope, or null for the global scope. */
+        private Scope parent;
+        
+        /** Child scopes. */
+        private List children = new ArrayList();
+        
+        /** 
+         * Mapping from names bound in this scope to replacement names.  
+         * Names which are not to be renamed are mapped to themselves.
+         */
+        private Map bindings = new HashMap();
+        
+        /** Names bound in this scope which are to be renamed, in order of declaration. */
+        private List renamed = new ArrayList();
+        
+        /** Flag indicating whether names bound in this scope must be retained, e.g., due to use of eval. */
+        private boolean frozen;
+        
+        /** Index of the token which closes the function body. */
+        private int endToken = -1;
+        
+        /** Nesting depth at which the function body was opened. */
+        private int bodyDepth = -1;
+        
+        /**
+         * Creates a new <code>Scope</code>.
+         * 
+         * @param parent the enclosing scope, or null for the global scope
+         */
+        private Scope(Scope parent) {
+            super();
+            this.parent = parent;
+            if (parent != null) {
+                parent.children.add(this);
+            }
+        }
+        
+        /**
+         * Binds a name which is to be renamed, unless it is already bound.
+         * 
+         * @param name the name
+         */
+        private void bind(String name) {
+            if (parent != null && !bindings.containsKey(name)) {
+                bindings.put(name, null);
+                renamed.add(name);
+            }
+        }
+        
+        /**
+         * Binds a name which is not to be renamed.
+         * 
+         * @param name the name
+         */
+        private void bindUnchanged(String name) {
+            if (bindings.get(name) == null) {
+                renamed.remove(name);
+            }
+            bindings.put(name, name);
+        }
+        
+        /**
+         * Determines whether a name is bound by an enclosing function scope.
+         * 
+         * @param name the name
+         * @return true if the name is bound
+         */
+        private boolean isBoundByEnclosingFunction(String name) {
+            Scope scope = parent;
+            while (scope != null && scope.parent != null) {
+                if (scope.bindings.containsKey(name)) {
+                    return true;
+                }
+                scope = scope.parent;
+            }
+            return false;
+        }
+        
+        /**
+         * Returns the replacement for a name referenced in this scope.
+         * 
+         * @param name the referenced name
+         * @return the replacement name, or the name itself if it is not to be renamed
+         */
+        private String resolve(String name) {
+            Scope scope = this;
+            while (scope != null) {
+                String replacement = (String) scope.bindings.get(name);
+                if (replacement != null) {
+                    return replacement;
+                }
+                scope = scope.parent;
+            }
+            return name;
+        }
+    }
+    
+    /**
+     * Shortens the local variable names of a script.
+     * 
+     * @param script the script, which should not contain comments
+     * @return the script with shortened local variable names, or the original script if it cannot be
+     *         safely processed
+     */
+    static String shorten(String script) {
+        try {
+            return new JavaScriptIdentifierShortener(script).render();
+        } catch (UnsupportedScriptException ex) {
+            return script;
+        }
+    }
+    
+    /** The script. */
+    private String script;
+    
+    /** Token types. */
+    private int[] types;
+    
+    /** Token start indices. */
+    private int[] starts;
+    
+    /** Token end indices (exclusive). */
+    private int[] ends;
+    
+    /** Token text of identifiers, null for other tokens. */
+    private String[] identifiers;
+    
+    /** Number of tokens. */
+    private int tokenCount;
+    
+    /** Function scopes, indexed by the tokens which open their bodies (null for all other tokens). */
+    private Scope[] tokenScopes;
+    
+    /** Flags indicating identifier tokens which are not references and thus may not be renamed. */
+    private boolean[] declarationNames;
+    
+    /** The global scope. */
+    private Scope globalScope = new Scope(null);
+    
+    /** All identifiers occurring in the script. */
+    private Set usedNames = new HashSet();
+    
+    /**
+     * Creates a new <code>JavaScriptIdentifierShortener</code>.
+     * 
+     * @param script the script
+     * @throws UnsupportedScriptException if the script cannot be tokenized
+     */
+    private JavaScriptIdentifierShortener(String script) 
+    throws UnsupportedScriptException {
+        super();
+        this.script = script;
+        int capacity = script.length() / 3 + 16;
+        types = new int[capacity];
+        starts = new int[capacity];
+        ends = new int[capacity];
+        identifiers = new String[capacity];
+        tokenize();
+        declarationNames = new boolean[tokenCount];
+        tokenScopes = new Scope[tokenCount];
+    }
+    
+    /**
+     * Adds a token.
+     * 
+     * @param type the token type
+     * @param start the start index
+     * @param end the end index (exclusive)
+     */
+    private void addToken(int type, int start, int end) {
+        if (tokenCount == types.length) {
+            int capacity = tokenCount * 2;
+            int[] newTypes = new int[capacity];
+            int[] newStarts = new int[capacity];
+            int[] newEnds = new int[capacity];
+            String[] newIdentifiers = new String[capacity];
+            System.arraycopy(types, 0, newTypes, 0, tokenCount);
+            System.arraycopy(starts, 0, newStarts, 0, tokenCount);
+            System.arraycopy(ends, 0, newEnds, 0, tokenCount);
+            System.arraycopy(identifiers, 0, newIdentifiers, 0, tokenCount);
+            types = newTypes;
+            starts = newStarts;
+            ends = newEnds;
+            identifiers = newIdentifiers;
+        }
+        types[tokenCount] = type;
+        starts[tokenCount] = start;
+        ends[tokenCount] = end;
+        if (type == IDENTIFIER) {
+            String identifier = script.substring(start, end);
+            identifiers[tokenCount] = identifier;
+            usedNames.add(identifier);
+        }
+        ++tokenCount;
+    }
+    
+    /**
+     * Assigns replacement names to the bindings of a scope and (recursively) its children.
+     * 
+     * @param scope the scope
+     * @param nameIndex the index of the first replacement name available to the scope
+     */
+    private void assignNames(Scope scope, int nameIndex) {
+        Iterator it = scope.renamed.iterator();
+        while (it.hasNext()) {
+            String name = (String) it.next();
+            if (scope.frozen) {
+                scope.bindings.put(name, name);
+                continue;
+            }
+            String replacement;
+            do {
+                replacement = getName(nameIndex++);
+            } while (usedNames.contains(replacement) || RESERVED_WORDS.contains(replacement));
+            if (replacement.length() >= name.length()) {
+                // Retain names which would not be shortened.
+                replacement = name;
+            }
+            scope.bindings.put(name, replacement);
+        }
+        it = scope.children.iterator();
+        while (it.hasNext()) {
+            assignNames((Scope) it.next(), nameIndex);
+        }
+    }
+    
+    /**
+     * Builds the scope tree, recording the bindings of each function.
+     * 
+     * @throws UnsupportedScriptException if the script cannot be analyzed
+     */
+    private void analyze() 
+    throws UnsupportedScriptException {
+        Scope scope = globalScope;
+        int depth = 0;
+        
+        // Stack of nesting depths of active var statements, and flag indicating a declared name is expected.
+        int[] varDepths = new int[16];
+        int varCount = 0;
+        boolean expectVarName = false;
+        
+        for (int i = 0; i < tokenCount; ++i) {
+            int type = types[i];
+            String identifier = identifiers[i];
+            if (type == IDENTIFIER) {
+                if ("with".equals(identifier)) {
+                    throw new UnsupportedScriptException(identifier);
+                } else if ("eval".equals(identifier)) {
+                    // Evaluated code may reference the variables of any enclosing function.
+                    for (Scope frozenScope = scope; frozenScope != null; frozenScope = frozenScope.parent) {
+                        frozenScope.frozen = true;
+                    }
+                } else if (expectVarName) {
+                    expectVarName = false;
+                    scope.bind(identifier);
+                    declarationNames[i] = true;
+                } else if ("var".equals(identifier)) {
+                    if (varCount == varDepths.length) {
+                        int[] newVarDepths = new int[varCount * 2];
+                        System.arraycopy(varDepths, 0, newVarDepths, 0, varCount);
+                        varDepths = newVarDepths;
+                    }
+                    varDepths[varCount++] = depth;
+                    expectVarName = true;
+                } else if ("in".equals(identifier) && varCount > 0 && varDepths[varCount - 1] == depth) {
+                    --varCount;
+                } else if ("function".equals(identifier) && !isPropertyName(i)) {
+                    i = analyzeFunction(i, scope);
+                    scope = tokenScopes[i];
+                    ++depth;
+                } else if ("catch".equals(identifier) && !isPropertyName(i)) {
+                    if (i + 3 < tokenCount && isPunctuator(i + 1, '(') && types[i + 2] == IDENTIFIER 
+                            && isPunctuator(i + 3, ')')) {
+                        String name = identifiers[i + 2];
+                        if (scope.parent != null && !scope.bindings.containsKey(name) 
+                                && scope.isBoundByEnclosingFunction(name)) {
+                            // The catch parameter shadows a variable of an enclosing function, which may
+                            // also be referenced outside of the catch block.
+                            throw new UnsupportedScriptException("catch");
+                        }
+                        scope.bind(name);
+                    }
+                }
+            } else if (type == PUNCTUATOR) {
+                char ch = script.charAt(starts[i]);
+                if (ch == '(' || ch == '[' || ch == '{') {
+                    ++depth;
+                } else if (ch == ')' || ch == ']' || ch == '}') {
+                    --depth;
+                    if (depth < 0) {
+                        throw new UnsupportedScriptException("Unbalanced.");
+                    }
+                    while (varCount > 0 && varDepths[varCount - 1] > depth) {
+                        --varCount;
+                    }
+                    if (ch == '}' && isScopeEnd(scope, depth)) {
+                        scope.endToken = i;
+                        scope = scope.parent;
+                    }
+                } else if (ch == ',' && varCount > 0 && varDepths[varCount - 1] == depth) {
+                    expectVarName = true;
+                } else if (ch == ';' && varCount > 0 && varDepths[varCount - 1] == depth) {
+                    --varCount;
+                }
+            } else if (type == NEW_LINE) {
+                if (varCount > 0 && varDepths[varCount - 1] == depth && !expectVarName && i > 0 
+                        && !isContinuation(i - 1)) {
+                    // Automatic semicolon insertion.
+                    --varCount;
+                }
+            }
+        }
+        if (depth != 0 || scope != globalScope) {
+            throw new UnsupportedScriptException("Unbalanced.");
+        }
+    }
+    
+    /**
+     * Determines whether a closing brace at the specified depth ends a function scope.
+     * 
+     * @param scope the current scope
+     * @param depth the nesting depth after the brace
+     * @return true if the brace closes the body of the scope
+     */
+    private boolean isScopeEnd(Scope scope, int depth) {
+        return scope.bodyDepth == depth;
+    }
+    
+    /**
+     * Analyzes the header of a function, creating its scope and binding its name and parameters.
+     * 
+     * @param functionToken the index of the 'function' token
+     * @param scope the enclosing scope
+     * @return the index of the token which opens the function body
+     * @throws UnsupportedScriptException if the function header cannot be analyzed
+     */
+    private int analyzeFunction(int functionToken, Scope scope) 
+    throws UnsupportedScriptException {
+        int i = functionToken + 1;
+        String name = null;
+        if (i < tokenCount && types[i] == IDENTIFIER) {
+            name = identifiers[i];
+            declarationNames[i] = true;
+            ++i;
+        }
+        if (i >= tokenCount || !isPunctuator(i, '(')) {
+            throw new UnsupportedScriptException("function");
+        }
+        
+        Scope functionScope = new Scope(scope);
+        if (name != null) {
+            if (isDeclaration(functionToken)) {
+                scope.bindUnchanged(name);
+            } else {
+                functionScope.bindUnchanged(name);
+            }
+        }
+        
+        ++i;
+        while (i < tokenCount && !isPunctuator(i, ')')) {
+            if (types[i] == IDENTIFIER) {
+                functionScope.bind(identifiers[i]);
+                declarationNames[i] = true;
+            } else if (!isPunctuator(i, ',') && types[i] != NEW_LINE) {
+                throw new UnsupportedScriptException("function");
+            }
+            ++i;
+        }
+        ++i;
+        while (i < tokenCount && types[i] == NEW_LINE) {
+            ++i;
+        }
+        if (i >= tokenCount || !isPunctuator(i, '{')) {
+            throw new UnsupportedScriptException("function");
+        }
+        tokenScopes[i] = functionScope;
+        functionScope.bodyDepth = getDepth(i);
+        return i;
+    }
+    
+    /** Nesting depth at each token, computed lazily by <code>getDepth()</code>. */
+    private int[] depths;
+    
+    /**
+     * Returns the nesting depth before a token.
+     * 
+     * @param index the token index
+     * @return the depth
+     */
+    private int getDepth(int index) {
+        if (depths == null) {
+            depths = new int[tokenCount];
+            int depth = 0;
+            for (int i = 0; i < tokenCount; ++i) {
+                depths[i] = depth;
+                if (types[i] == PUNCTUATOR) {
+                    char ch = script.charAt(starts[i]);
+                    if (ch == '(' || ch == '[' || ch == '{') {
+                        ++depth;
+                    } else if (ch == ')' || ch == ']' || ch == '}') {
+                        --depth;
+                    }
+                }
+            }
+        }
+        return depths[index];
+    }
+    
+    /**
+     * Determines whether a token ends a line in such a way that the next line continues the statement.
+     * 
+     * @param index the token index
+     * @return true if the statement continues
+     */
+    private boolean isContinuation(int index) {
+        if (types[index] != PUNCTUATOR) {
+            return types[index] == IDENTIFIER && RESERVED_WORDS.contains(identifiers[index]) 
+                    && !"this".equals(identifiers[index]) && !"null".equals(identifiers[index]) 
+                    && !"true".equals(identifiers[index]) && !"false".equals(identifiers[index]);
+        }
+        char ch = script.charAt(starts[index]);
+        return ch != ')' && ch != ']' && ch != '}' && ch != ';' && ends[index] - starts[index] == 1;
+    }
+    
+    /**
+     * Determines whether the 'function' token at the specified index begins a function declaration 
+     * (rather than an expression).
+     * 
+     * @param index the token index
+     * @return true if the function is a declaration
+     */
+    private boolean isDeclaration(int index) {
+        int previous = previousToken(index);
+        if (previous == -1) {
+            return true;
+        }
+        if (types[previous] != PUNCTUATOR) {
+            return false;
+        }
+        char ch = script.charAt(starts[previous]);
+        return ch == ';' || ch == '{' || ch == '}';
+    }
+    
+    /**
+     * Determines whether the identifier at the specified index is a property name following a '.'.
+     * 
+     * @param index the token index
+     * @return true if the identifier is a property name
+     */
+    private boolean isPropertyName(int index) {
+        int previous = previousToken(index);
+        return previous != -1 && isPunctuator(previous, '.');
+    }
+    
+    /**
+     * Determines whether the identifier at the specified index names an object literal accessor property, 
+     * e.g., <code>{ get name() { ... } }</code>.
+     * 
+     * @param index the token index
+     * @param previous the index of the previous token, or -1
+     * @param next the index of the next token, or -1
+     * @return true if the identifier is an accessor property name
+     */
+    private boolean isAccessorName(int index, int previous, int next) {
+        if (previous == -1 || next == -1 || types[previous] != IDENTIFIER || !isPunctuator(next, '(')) {
+            return false;
+        }
+        if (!"get".equals(identifiers[previous]) && !"set".equals(identifiers[previous])) {
+            return false;
+        }
+        int beforeAccessor = previousToken(previous);
+        return beforeAccessor != -1 && (isPunctuator(beforeAccessor, '{') || isPunctuator(beforeAccessor, ','));
+    }
+    
+    /**
+     * Determines whether a token is the specified single-character punctuator.
+     * 
+     * @param index the token index
+     * @param ch the punctuator character
+     * @return true if the token is the punctuator
+     */
+    private boolean isPunctuator(int index, char ch) {
+        return types[index] == PUNCTUATOR && ends[index] - starts[index] == 1 && script.charAt(starts[index]) == ch;
+    }
+    
+    /**
+     * Determines whether the identifier at the specified index is a reference to a variable, i.e.,
+     * not a property name, object literal key, or label.
+     * 
+     * @param index the token index
+     * @return true if the identifier is a reference
+     */
+    private boolean isReference(int index) {
+        if (declarationNames[index] || RESERVED_WORDS.contains(identifiers[index])) {
+            return false;
+        }
+        int previous = previousToken(index);
+        if (previous != -1) {
+            if (isPunctuator(previous, '.')) {
+                return false;
+            }
+            if (types[previous] == IDENTIFIER 
+                    && ("break".equals(identifiers[previous]) || "continue".equals(identifiers[previous]))) {
+                return false;
+            }
+        }
+        int next = nextToken(index);
+        if (isAccessorName(index, previous, next)) {
+            return false;
+        }
+        if (next != -1 && isPunctuator(next, ':')) {
+            if (previous == -1 || isPunctuator(previous, '{') 
+                    || isPunctuator(previous, ',') || isPunctuator(previous, ';') || isPunctuator(previous, '}')) {
+                // Object literal key or label.
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Returns the index of the next token which is not a line break.
+     * 
+     * @param index the current token index
+     * @return the index of the next token, or -1
+     */
+    private int nextToken(int index) {
+        for (int i = index + 1; i < tokenCount; ++i) {
+            if (types[i] != NEW_LINE) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Returns the index of the previous token which is not a line break.
+     * 
+     * @param index the current token index
+     * @return the index of the previous token, or -1
+     */
+    private int previousToken(int index) {
+        for (int i = index - 1; i >= 0; --i) {
+            if (types[i] != NEW_LINE) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Returns the replacement name with the specified index.
+     * 
+     * @param index the index
+     * @return the name
+     */
+    private static String getName(int index) {
+        StringBuffer out = new StringBuffer();
+        out.append(NAME_CHARACTERS.charAt(index % NAME_START_CHARACTERS));
+        index /= NAME_START_CHARACTERS;
+        while (index > 0) {
+            --index;
+            out.append(NAME_CHARACTERS.charAt(index % NAME_CHARACTERS.length()));
+            index /= NAME_CHARACTERS.length();
+        }
+        return out.toString();
+    }
+    
+    /**
+     * Determines whether a '/' at the current position begins a regular expression literal, based on the 
+     * preceding token.
+     * 
+     * @return true if a regular expression literal begins
+     */
+    private boolean isRegexAllowed() {
+        int previous = previousToken(tokenCount);
+        if (previous == -1) {
+            return true;
+        }
+        switch (types[previous]) {
+        case IDENTIFIER:
+            return REGEX_PRECEDING_KEYWORDS.contains(identifiers[previous]);
+        case PUNCTUATOR:
+            if (ends[previous] - starts[previous] > 1) {
+                // "++" or "--"
+                return false;
+            }
+            char ch = script.charAt(starts[previous]);
+            return ch != ')' && ch != ']' && ch != '}';
+        default:
+            return false;
+        }
+    }
+    
+    /**
+     * Analyzes the script and renders it with shortened names.
+     * 
+     * @return the rendered script
+     * @throws UnsupportedScriptException if the script cannot be analyzed
+     */
+    private String render() 
+    throws UnsupportedScriptException {
+        analyze();
+        Iterator it = globalScope.children.iterator();
+        while (it.hasNext()) {
+            assignNames((Scope) it.next(), 0);
+        }
+        
+        StringBuilder out = new StringBuilder(script.length());
+        int position = 0;
+        Scope scope = globalScope;
+        for (int i = 0; i < tokenCount; ++i) {
+            Scope functionScope = tokenScopes[i];
+            if (functionScope != null) {
+                scope = functionScope;
+            } else if (scope.endToken == i) {
+                scope = scope.parent;
+            } else if (types[i] == IDENTIFIER) {
+                Scope resolveScope = scope;
+                if (declarationNames[i]) {
+                    // Parameters and var declarations are resolved in the scope to which they belong, 
+                    // parameters preceding the body of their function.
+                    resolveScope = getDeclarationScope(i, scope);
+                    String replacement = (String) resolveScope.bindings.get(identifiers[i]);
+                    if (replacement != null && !replacement.equals(identifiers[i])) {
+                        out.append(script, position, starts[i]);
+                        out.append(replacement);
+                        position = ends[i];
+                    }
+                } else if (isReference(i)) {
+                    String replacement = resolveScope.resolve(identifiers[i]);
+                    if (!replacement.equals(identifiers[i])) {
+                        out.append(script, position, starts[i]);
+                        out.append(replacement);
+                        position = ends[i];
+                    }
+                }
+            }
+        }
+        out.append(script, position, script.length());
+        return out.toString();
+    }
+    
+    /**
+     * Returns the scope to which a declared name belongs.
+     * 
+     * @param index the token index of the declared name
+     * @param scope the scope active at the token
+     * @return the scope
+     */
+    private Scope getDeclarationScope(int index, Scope scope) {
+        // Function names and parameters precede the '{' token of their function body: scan forward within the
+        // function header to find it.
+        for (int i = index + 1; i < tokenCount; ++i) {
+            if (types[i] == PUNCTUATOR) {
+                char ch = script.charAt(starts[i]);
+                if (ch == '{') {
+                    Scope functionScope = tokenScopes[i];
+                    return functionScope == null ? scope : functionScope;
+                } else if (ch != '(' && ch != ')' && ch != ',') {
+                    return scope;
+                }
+            } else if (types[i] != IDENTIFIER && types[i] != NEW_LINE) {
+                return scope;
+            }
+        }
+        return scope;
+    }
+    
+    /**
+     * Splits the script into tokens.
+     * 
+     * @throws UnsupportedScriptException if the script contains unterminated literals
+     */
+    private void tokenize() 
+    throws UnsupportedScriptException {
+        int length = script.length();
+        int pos = 0;
+        while (pos < length) {
+            char ch = script.charAt(pos);
+            int start = pos;
+            if (JavaScriptCompressor.isIdentifierStart(ch)) {
+                ++pos;
+                while (pos < length && JavaScriptCompressor.isIdentifierPart(script.charAt(pos))) {
+                    ++pos;
+                }
+                addToken(IDENTIFIER, start, pos);
+            } else if (ch >= '0' && ch <= '9') {
+                ++pos;
+                while (pos < length) {
+                    ch = script.charAt(pos);
+                    if (JavaScriptCompressor.isIdentifierPart(ch) || ch == '.') {
+                        ++pos;
+                    } else if ((ch == '+' || ch == '-') 
+                            && (script.charAt(pos - 1) == 'e' || script.charAt(pos - 1) == 'E')) {
+                        ++pos;
+                    } else {
+                        break;
+                    }
+                }
+                addToken(NUMBER, start, pos);
+            } else if (ch == '"' || ch == '\'') {
+                ++pos;
+                while (true) {
+                    if (pos >= length) {
+                        throw new UnsupportedScriptException("Unterminated string.");
+                    }
+                    char c = script.charAt(pos++);
+                    if (c == '\\') {
+                        ++pos;
+                    } else if (c == ch) {
+                        break;
+                    } else if (c == '\n' || c == '\r') {
+                        throw new UnsupportedScriptException("Unterminated string.");
+                    }
+                }
+                addToken(STRING, start, pos);
+            } else if (ch == '\n' || ch == '\r') {
+                ++pos;
+                addToken(NEW_LINE, start, pos);
+            } else if (ch == ' ' || ch == '\t') {
+                ++pos;
+            } else if (ch == '/' && isRegexAllowed()) {
+                ++pos;
+                boolean inClass = false;
+                while (true) {
+                    if (pos >= length) {
+                        throw new UnsupportedScriptException("Unterminated regular expression.");
+                    }
+                    char c = script.charAt(pos++);
+                    if (c == '\\') {
+                        ++pos;
+                    } else if (c == '[') {
+                        inClass = true;
+                    } else if (c == ']') {
+                        inClass = false;
+                    } else if (c == '/' && !inClass) {
+                        break;
+                    } else if (c == '\n' || c == '\r') {
+                        throw new UnsupportedScriptException("Unterminated regular expression.");
+                    }
+                }
+                while (pos < length && JavaScriptCompressor.isIdentifierPart(script.charAt(pos))) {
+                    ++pos;
+                }
+                addToken(REGEX, start, pos);
+            } else if ((ch == '+' || ch == '-') && pos + 1 < length && script.charAt(pos + 1) == ch) {
+                pos += 2;
+                addToken(PUNCTUATOR, start, pos);
+            } else {
+                ++pos;
+                addToken(PUNCTUATOR, start, pos);
+            }
+        }
+    }
+}
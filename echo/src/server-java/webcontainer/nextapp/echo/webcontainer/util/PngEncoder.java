@@ -40,6 +40,10 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.zip.Adler32;
 import java.util.zip.CheckedOutputStream;
 import java.util.zip.Checksum;
 import java.util.zip.CRC32;
@@ -50,6 +54,13 @@ import javax.swing.ImageIcon;
 
 /**
  * Encodes a java.awt.Image into PNG format.
+ * <p>
+ * The filter applied to each scanline may be fixed, or selected per scanline (see
+ * <code>setAdaptiveFiltering()</code>).
+ * Image data of large images is divided into strips which are compressed concurrently and joined into a 
+ * single zlib stream, each strip being primed with the preceding image data such that compression is 
+ * only marginally reduced.  <code>Deflater</code>s are pooled across invocations.  The threads on which
+ * strips are compressed may be stopped using <code>shutdown()</code>.
  * For more information on the PNG specification, see the W3C PNG page at 
  * <a href="http://www.w3.org/TR/REC-png.html">http://www.w3.org/TR/REC-png.html</a>.
  */
@@ -112,6 +123,9 @@ public class PngEncoder {
     /** <code>PaethFilter</code> singleton. */
     public static final Filter PAETH_FILTER = new PaethFilter();
     
+    /** The filters considered by adaptive filtering. */
+    private static final Filter[] ADAPTIVE_FILTERS = new Filter[]{ SUB_FILTER, UP_FILTER, AVERAGE_FILTER, PAETH_FILTER };
+    
     /** PNG signature bytes. */
     private static final byte[] SIGNATURE = { (byte)0x89, (byte)0x50, (byte)0x4e, (byte)0x47, 
                                               (byte)0x0d, (byte)0x0a, (byte)0x1a, (byte)0x0a };
@@ -155,6 +169,95 @@ public class PngEncoder {
     /** Integer-to-integer map used for RGBA/ARGB conversion. */
     private static final int[] INT_TRANSLATOR_CHANNEL_MAP = new int[]{2, 1, 0, 3};
     
+    /** The size of the deflate window, i.e., the maximum amount of preceding data which may be referenced. */
+    private static final int DICTIONARY_SIZE = 32768;
+    
+    /** The approximate amount of (filtered) image data, in bytes, of strips which are compressed concurrently. */
+    private static final int STRIP_SIZE = 131072;
+    
+    /** Modulus of the Adler-32 checksum. */
+    private static final int ADLER_BASE = 65521;
+    
+    /** Pools of raw (header-less) <code>Deflater</code>s, indexed by compression level, lazily created. */
+    private static final DeflaterPool[] deflaterPools = new DeflaterPool[10];
+    
+    /** The pool on which strips are compressed concurrently, lazily created. */
+    private static ForkJoinPool encoderPool;
+    
+    /**
+     * Computes the Adler-32 checksum of the concatenation of two sequences from their checksums.
+     * 
+     * @param adler1 the checksum of the first sequence
+     * @param adler2 the checksum of the second sequence
+     * @param length2 the length of the second sequence
+     * @return the checksum of the concatenated sequence
+     */
+    static long combineAdler32(long adler1, long adler2, long length2) {
+        long remainder = length2 % ADLER_BASE;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = (remainder * sum1) % ADLER_BASE;
+        sum1 += (adler2 & 0xffff) + ADLER_BASE - 1;
+        sum2 += ((adler1 >> 16) & 0xffff) + ((adler2 >> 16) & 0xffff) + ADLER_BASE - remainder;
+        sum1 %= ADLER_BASE;
+        sum2 %= ADLER_BASE;
+        return (sum2 << 16) | sum1;
+    }
+    
+    /**
+     * Returns the pool of raw <code>Deflater</code>s of a compression level, creating it if necessary.
+     * 
+     * @param compressionLevel the compression level, 0-9
+     * @return the pool
+     */
+    private static synchronized DeflaterPool getDeflaterPool(int compressionLevel) {
+        if (deflaterPools[compressionLevel] == null) {
+            deflaterPools[compressionLevel] = new DeflaterPool(compressionLevel, true, 
+                    Runtime.getRuntime().availableProcessors() * 2);
+        }
+        return deflaterPools[compressionLevel];
+    }
+    
+    /**
+     * Returns the pool on which strips are compressed concurrently, creating it if necessary.
+     * 
+     * @return the pool
+     */
+    private static synchronized ForkJoinPool getEncoderPool() {
+        if (encoderPool == null) {
+            encoderPool = new ForkJoinPool();
+        }
+        return encoderPool;
+    }
+    
+    /**
+     * Stops the threads on which strips are compressed concurrently, if started.
+     * The threads are started again if a subsequently encoded image is compressed concurrently.
+     * Invoked when the <code>WebContainerServlet</code> is destroyed.
+     */
+    public static synchronized void shutdown() {
+        if (encoderPool != null) {
+            encoderPool.shutdown();
+            encoderPool = null;
+        }
+    }
+    
+    /**
+     * Returns the sum of the absolute values of a sequence of bytes, taken as signed values, 
+     * counting no further than a specified limit.
+     * 
+     * @param data the bytes
+     * @param limit the limit
+     * @return the sum, or a value of at least <code>limit</code> if the sum is at least that large
+     */
+    private static int sumAbsolute(byte[] data, int limit) {
+        int sum = 0;
+        for (int i = 0; i < data.length && sum < limit; ++i) {
+            int value = data[i];
+            sum += value < 0 ? -value : value;
+        }
+        return sum;
+    }
+    
     /**
      * Writes an 32-bit integer value to the output stream.
      *
@@ -301,7 +404,7 @@ public class PngEncoder {
                 p = w + n - nw;
                 pw = Math.abs(p - w);
                 pn = Math.abs(p - n);
-                pnw = Math.abs(p - w);
+                pnw = Math.abs(p - nw);
                 if (pw <= pn && pw <= pnw) {
                     pv = (byte) w;
                 } else if (pn <= pnw) {
@@ -322,6 +425,93 @@ public class PngEncoder {
         }
     }
     
+    /**
+     * Scanline buffers, for a specific row width.
+     */
+    private static class RowBuffers {
+        
+        /** The unfiltered current and previous rows. */
+        byte[] currentRow, previousRow;
+        
+        /** The filtered row, and the best filtered row found during adaptive filtering. */
+        byte[] filterOutput, bestOutput;
+        
+        /**
+         * Creates a new <code>RowBuffers</code>.
+         * 
+         * @param rowWidth the row width, in bytes
+         */
+        RowBuffers(int rowWidth) {
+            super();
+            currentRow = new byte[rowWidth];
+            previousRow = new byte[rowWidth];
+            filterOutput = new byte[rowWidth];
+            bestOutput = new byte[rowWidth];
+        }
+        
+        /**
+         * Exchanges the current and previous rows.
+         */
+        void swapRows() {
+            byte[] temp = currentRow;
+            currentRow = previousRow;
+            previousRow = temp;
+        }
+    }
+    
+    /**
+     * A compressed strip of image data.
+     */
+    private static class Strip {
+        
+        /** The raw deflate data, ending on a byte boundary. */
+        byte[] data;
+        
+        /** The Adler-32 checksum of the uncompressed (filtered) data. */
+        long adler;
+        
+        /** The length of the uncompressed (filtered) data. */
+        long length;
+    }
+    
+    /**
+     * Task to compress a strip concurrently.
+     */
+    private class StripTask extends RecursiveTask {
+        
+        /** Serial Version UID. */
+        private static final long serialVersionUID = 20070101L;
+        
+        /** The first row of the strip. */
+        private int startRow;
+        
+        /** The row following the last row of the strip. */
+        private int endRow;
+        
+        /**
+         * Creates a new <code>StripTask</code>.
+         * 
+         * @param startRow the first row of the strip
+         * @param endRow the row following the last row of the strip
+         */
+        StripTask(int startRow, int endRow) {
+            super();
+            this.startRow = startRow;
+            this.endRow = endRow;
+        }
+        
+        /**
+         * @see java.util.concurrent.RecursiveTask#compute()
+         */
+        protected Object compute() {
+            try {
+                return encodeStrip(startRow, endRow);
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+    }
+    
     /**
      * An interface for translators, which translate pixel data from a 
      * writable raster into an R/G/B/A ordering required by the PNG
@@ -347,8 +537,7 @@ public class PngEncoder {
     private class ByteTranslator 
     implements Translator {
     
-        int rowWidth = width * outputBpp;                         // size of image data in a row in bytes.
-        byte[] inputPixelQueue = new byte[rowWidth + outputBpp];
+        byte[] inputPixelQueue = new byte[width * inputBpp];
         int column;
         int channel;
 
@@ -403,6 +592,9 @@ public class PngEncoder {
     /** The PNG encoding filter to be used. */
     private Filter filter;
     
+    /** Flag indicating whether the filter of each scanline is selected by the encoder. */
+    private boolean adaptiveFiltering = false;
+    
     /** The the deflater compression level. */
     private int compressionLevel;
     
@@ -424,8 +616,11 @@ public class PngEncoder {
     /** The encoded image bits-per-pixel. */
     private int outputBpp;
     
-    /** The <code>Translator</code> being used for encoding. */
-    private Translator translator;
+    /** Flag indicating whether pixel data is translated from integer-based (true) or byte-based rasters. */
+    private boolean intRaster;
+    
+    /** Flag indicating whether large images may be compressed concurrently. */
+    private boolean parallel = true;
     
     /**
      * Creates a PNG encoder for an image.
@@ -441,6 +636,7 @@ public class PngEncoder {
      *        <li>PAETH_FILTER</li>
      *        </ul>
      *        If a null value is specified, no filtering will be performed.
+     *        The filter is not used if adaptive filtering is enabled (see <code>setAdaptiveFiltering()</code>).
      * @param compressionLevel the deflater compression level that will be used
      *        for compressing the image data:  Valid values range from 0 to 9.
      *        Higher values result in smaller files and therefore decrease
@@ -449,10 +645,13 @@ public class PngEncoder {
      */
     public PngEncoder(Image image, boolean encodeAlpha, Filter filter, int compressionLevel) {
         super();
+        if ((compressionLevel < 0 || compressionLevel > 9) && compressionLevel != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level: " + compressionLevel);
+        }
         
         this.image = ImageToBufferedImage.toBufferedImage(image);
         this.filter = filter;
-        this.compressionLevel = compressionLevel;
+        this.compressionLevel = compressionLevel == Deflater.DEFAULT_COMPRESSION ? 6 : compressionLevel;
         
         width = this.image.getWidth(null);
         height = this.image.getHeight(null);
@@ -464,16 +663,14 @@ public class PngEncoder {
         if (transferType == DataBuffer.TYPE_BYTE && dataBytes == 4) {
             outputBpp = encodeAlpha ? 4 : 3;
             inputBpp = 4;
-            translator = new ByteTranslator();
         } else if (transferType == DataBuffer.TYPE_BYTE && dataBytes == 3) {
             outputBpp = 3;
             inputBpp = 3;
             encodeAlpha = false;
-            translator = new ByteTranslator();
         } else if (transferType == DataBuffer.TYPE_INT && dataBytes == 1) {
             outputBpp = encodeAlpha ? 4 : 3;
             inputBpp = 4;
-            translator = new IntTranslator();
+            intRaster = true;
         } else if (transferType == DataBuffer.TYPE_BYTE && dataBytes == 1) {
             throw new UnsupportedOperationException("Encoding indexed-color images not yet supported.");
         } else {
@@ -507,6 +704,131 @@ public class PngEncoder {
         writeIendChunk(out, csum);
     }
     
+    /**
+     * Compresses a strip of image data as a raw deflate sequence which does not end the stream (unless the
+     * strip ends the image).  The compressor is primed with the (filtered) data of up to 32KB of preceding rows,
+     * such that the sequence may follow the sequence of the preceding strip.
+     * 
+     * @param startRow the first row of the strip
+     * @param endRow the row following the last row of the strip
+     * @return the compressed strip
+     * @throws IOException
+     */
+    private Strip encodeStrip(int startRow, int endRow) 
+    throws IOException {
+        int rowWidth = width * outputBpp;                         // size of image data in a row in bytes.
+        RowBuffers buffers = new RowBuffers(rowWidth);
+        Translator translator = intRaster ? (Translator) new IntTranslator() : (Translator) new ByteTranslator();
+        
+        // Determine rows required to prime compressor.
+        int primeRow = Math.max(0, startRow - (DICTIONARY_SIZE + rowWidth) / (rowWidth + 1));
+        if (primeRow == 0) {
+            Arrays.fill(buffers.previousRow, (byte) 0);
+        } else {
+            translator.translate(buffers.previousRow, primeRow - 1);
+        }
+        
+        DeflaterPool deflaterPool = getDeflaterPool(compressionLevel);
+        Deflater deflater = deflaterPool.acquire();
+        try {
+            if (primeRow < startRow) {
+                byte[] dictionary = new byte[(startRow - primeRow) * (rowWidth + 1)];
+                for (int row = primeRow; row < startRow; ++row) {
+                    translator.translate(buffers.currentRow, row);
+                    int offset = (row - primeRow) * (rowWidth + 1);
+                    dictionary[offset] = (byte) filterRow(buffers);
+                    System.arraycopy(buffers.filterOutput, 0, dictionary, offset + 1, rowWidth);
+                    buffers.swapRows();
+                }
+                int dictionaryLength = Math.min(dictionary.length, DICTIONARY_SIZE);
+                deflater.setDictionary(dictionary, dictionary.length - dictionaryLength, dictionaryLength);
+            }
+            
+            ByteArrayOutputStream byteOut = new ByteArrayOutputStream((endRow - startRow) * (rowWidth + 1) / 4 + 64);
+            DeflaterOutputStream defOut = new DeflaterOutputStream(byteOut, deflater, 8192, true);
+            Adler32 adler = new Adler32();
+            OutputStream out = new CheckedOutputStream(defOut, adler);
+            for (int row = startRow; row < endRow; ++row) {
+                translator.translate(buffers.currentRow, row);
+                out.write(filterRow(buffers));
+                out.write(buffers.filterOutput, 0, rowWidth);
+                buffers.swapRows();
+            }
+            if (endRow == height) {
+                defOut.finish();
+            } else {
+                // Sync flush: end on a byte boundary without ending the stream.
+                defOut.flush();
+            }
+            
+            Strip strip = new Strip();
+            strip.data = byteOut.toByteArray();
+            strip.adler = adler.getValue();
+            strip.length = (long) (endRow - startRow) * (rowWidth + 1);
+            return strip;
+        } finally {
+            deflaterPool.release(deflater);
+        }
+    }
+    
+    /**
+     * Filters the current row of a set of scanline buffers into its <code>filterOutput</code> buffer.
+     * 
+     * @param buffers the buffers
+     * @return the type of the applied filter
+     */
+    private int filterRow(RowBuffers buffers) {
+        if (!adaptiveFiltering) {
+            if (filter == null) {
+                System.arraycopy(buffers.currentRow, 0, buffers.filterOutput, 0, buffers.currentRow.length);
+                return 0;
+            }
+            filter.filter(buffers.filterOutput, buffers.currentRow, buffers.previousRow, outputBpp);
+            return filter.getType();
+        }
+        
+        byte[] best = buffers.currentRow;
+        int bestType = 0;
+        int bestSum = sumAbsolute(buffers.currentRow, Integer.MAX_VALUE);
+        for (int i = 0; i < ADAPTIVE_FILTERS.length; ++i) {
+            ADAPTIVE_FILTERS[i].filter(buffers.filterOutput, buffers.currentRow, buffers.previousRow, outputBpp);
+            int sum = sumAbsolute(buffers.filterOutput, bestSum);
+            if (sum < bestSum) {
+                // Retain output as best output.
+                byte[] temp = buffers.bestOutput;
+                buffers.bestOutput = buffers.filterOutput;
+                buffers.filterOutput = temp;
+                best = buffers.bestOutput;
+                bestType = ADAPTIVE_FILTERS[i].getType();
+                bestSum = sum;
+            }
+        }
+        System.arraycopy(best, 0, buffers.filterOutput, 0, best.length);
+        return bestType;
+    }
+    
+    /**
+     * Sets whether the filter of each scanline should be selected by the encoder, in place of the filter
+     * specified in the constructor (disabled by default).  Of no filter and the Sub, Up, Average, and Paeth 
+     * filters, the filter minimizing the sum of the absolute values of the filtered bytes (taken as signed 
+     * values) is selected.
+     * 
+     * @param adaptiveFiltering true if the filter of each scanline should be selected by the encoder
+     */
+    public void setAdaptiveFiltering(boolean adaptiveFiltering) {
+        this.adaptiveFiltering = adaptiveFiltering;
+    }
+    
+    /**
+     * Sets whether the image data of large images may be compressed concurrently (enabled by default,
+     * effective only on multiprocessor systems).
+     * 
+     * @param parallel true if image data may be compressed concurrently
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+    
     /**
      * Writes the IDAT (Image data) chunks to the output stream.
      *
@@ -518,45 +840,62 @@ public class PngEncoder {
     private void writeIdatChunks(OutputStream out, Checksum csum)
     throws IOException {
         int rowWidth = width * outputBpp;                         // size of image data in a row in bytes.
-
-        int row = 0;
-                
-        Deflater deflater = new Deflater(compressionLevel);
-        ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
-        DeflaterOutputStream defOut = new DeflaterOutputStream(byteOut, deflater);
-
-        byte[] filteredPixelQueue = new byte[rowWidth];
-
-        // Output Pixel Queues
-        byte[][] outputPixelQueue = new byte[2][rowWidth];
-        Arrays.fill(outputPixelQueue[1], (byte) 0);
-        int outputPixelQueueRow = 0;
-        int outputPixelQueuePrevRow = 1;
-
-        while (row < height) {
-            if (filter == null) {
-                defOut.write(0);
-                translator.translate(outputPixelQueue[outputPixelQueueRow], row);
-                defOut.write(outputPixelQueue[outputPixelQueueRow], 0, rowWidth);
-            } else {
-                defOut.write(filter.getType());
-                translator.translate(outputPixelQueue[outputPixelQueueRow], row);
-                filter.filter(filteredPixelQueue, outputPixelQueue[outputPixelQueueRow], 
-                        outputPixelQueue[outputPixelQueuePrevRow], outputBpp);
-                defOut.write(filteredPixelQueue, 0, rowWidth);
+        int stripRows = parallel && Runtime.getRuntime().availableProcessors() > 1 
+                ? Math.max(1, STRIP_SIZE / (rowWidth + 1)) : height;
+        int stripCount = Math.max(1, (height + stripRows - 1) / stripRows);
+        
+        Strip[] strips = new Strip[stripCount];
+        if (stripCount == 1) {
+            strips[0] = encodeStrip(0, height);
+        } else {
+            StripTask[] tasks = new StripTask[stripCount];
+            boolean inPool = ForkJoinTask.inForkJoinPool();
+            for (int i = 1; i < stripCount; ++i) {
+                tasks[i] = new StripTask(i * stripRows, Math.min(height, (i + 1) * stripRows));
+                if (inPool) {
+                    tasks[i].fork();
+                } else {
+                    getEncoderPool().execute(tasks[i]);
+                }
+            }
+            strips[0] = encodeStrip(0, stripRows);
+            for (int i = 1; i < stripCount; ++i) {
+                try {
+                    strips[i] = (Strip) tasks[i].join();
+                } catch (RuntimeException ex) {
+                    // Rethrow the IOException which caused the task to fail, if any.
+                    Throwable cause = ex.getCause();
+                    while (cause != null) {
+                        if (cause instanceof IOException) {
+                            throw (IOException) cause;
+                        }
+                        cause = cause.getCause();
+                    }
+                    throw ex;
+                }
             }
-            
-            ++row;
-            outputPixelQueueRow = row & 1;
-            outputPixelQueuePrevRow = outputPixelQueueRow ^ 1;
         }
-        defOut.finish();
-        byteOut.close();
         
-        writeInt(out, byteOut.size());
+        // Join strips into a single zlib stream: header, deflate data, Adler-32 checksum of uncompressed data.
+        int dataLength = 6;
+        long adler = 1;
+        for (int i = 0; i < stripCount; ++i) {
+            dataLength += strips[i].data.length;
+            adler = combineAdler32(adler, strips[i].adler, strips[i].length);
+        }
+        int levelFlags = compressionLevel < 2 ? 0 : (compressionLevel < 6 ? 1 : (compressionLevel == 6 ? 2 : 3));
+        int header = (0x78 << 8) | (levelFlags << 6);
+        header += 31 - header % 31;
+        
+        writeInt(out, dataLength);
         csum.reset();
         out.write(IDAT);
-        byteOut.writeTo(out);
+        out.write(header >> 8);
+        out.write(header & 0xff);
+        for (int i = 0; i < stripCount; ++i) {
+            out.write(strips[i].data);
+        }
+        writeInt(out, (int) adler);
         writeInt(out, (int) csum.getValue());
     }
     
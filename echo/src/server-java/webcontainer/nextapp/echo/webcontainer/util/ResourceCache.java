@@ -0,0 +1,202 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.webcontainer.util;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, in-memory cache of <code>CLASSPATH</code> resources.
+ * Resources are loaded once and retained, together with an entity tag derived from their content and, 
+ * optionally, a GZip-compressed form, until the total size of cached content exceeds the maximum size, 
+ * in which case the least recently used resources are discarded.
+ */
+public class ResourceCache {
+    
+    /**
+     * A cached resource.
+     */
+    public static class Entry {
+        
+        /** The resource content. */
+        private byte[] content;
+        
+        /** The GZip-compressed resource content, or null if the resource is not compressed. */
+        private byte[] gzipContent;
+        
+        /** The strong entity tag of the uncompressed content. */
+        private String entityTag;
+        
+        /** The strong entity tag of the GZip-compressed content. */
+        private String gzipEntityTag;
+        
+        /**
+         * Creates a new <code>Entry</code>.
+         * 
+         * @param content the resource content
+         * @param compress flag indicating whether a GZip-compressed form should be retained, 
+         *        if it is smaller than the content
+         */
+        private Entry(byte[] content, boolean compress) {
+            super();
+            this.content = content;
+            String hash = ContentHash.hash(content);
+            entityTag = "\"" + hash + "\"";
+            if (compress) {
+                try {
+                    byte[] compressed = GZipCompressor.compress(content);
+                    if (compressed.length < content.length) {
+                        gzipContent = compressed;
+                        gzipEntityTag = "\"" + hash + "-gz\"";
+                    }
+                } catch (IOException ex) {
+                    // Should not occur: content is served uncompressed.
+                }
+            }
+        }
+        
+        /**
+         * Returns the resource content.
+         * 
+         * @return the content
+         */
+        public byte[] getContent() {
+            return content;
+        }
+        
+        /**
+         * Returns the (quoted) strong entity tag of the uncompressed content.
+         * 
+         * @return the entity tag
+         */
+        public String getEntityTag() {
+            return entityTag;
+        }
+        
+        /**
+         * Returns the GZip-compressed resource content.
+         * 
+         * @return the compressed content, or null if the resource is not available in compressed form
+         */
+        public byte[] getGZipContent() {
+            return gzipContent;
+        }
+        
+        /**
+         * Returns the (quoted) strong entity tag of the GZip-compressed content.
+         * 
+         * @return the entity tag, or null if the resource is not available in compressed form
+         */
+        public String getGZipEntityTag() {
+            return gzipEntityTag;
+        }
+        
+        /**
+         * Returns the number of bytes of content retained by the entry.
+         * 
+         * @return the size
+         */
+        private int getSize() {
+            return content.length + (gzipContent == null ? 0 : gzipContent.length);
+        }
+    }
+    
+    /** The maximum total size, in bytes, of cached content. */
+    private int maximumSize;
+    
+    /** The total size, in bytes, of cached content. */
+    private int size = 0;
+    
+    /** Mapping from resource names to <code>Entry</code>s, in access order. */
+    private Map entries = new LinkedHashMap(16, 0.75f, true);
+    
+    /**
+     * Creates a new <code>ResourceCache</code>.
+     * 
+     * @param maximumSize the maximum total size, in bytes, of cached content; 
+     *        if zero or less, resources will not be retained
+     */
+    public ResourceCache(int maximumSize) {
+        super();
+        this.maximumSize = maximumSize;
+    }
+    
+    /**
+     * Retrieves a resource, loading it if it is not cached.
+     * 
+     * @param resourceName the name of the <code>CLASSPATH</code> resource
+     * @param compress flag indicating whether a GZip-compressed form of the resource should be provided
+     *        (typically true for text resources)
+     * @return the <code>Entry</code>
+     * @throws Resource.ResourceException if the resource does not exist or cannot be read
+     */
+    public Entry get(String resourceName, boolean compress) {
+        synchronized (entries) {
+            Entry entry = (Entry) entries.get(resourceName);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        
+        // Load outside of lock, such that slow reads do not block requests for cached resources.
+        Entry entry = new Entry(Resource.getResourceAsByteArray(resourceName), compress);
+        int entrySize = entry.getSize();
+        if (entrySize > maximumSize) {
+            return entry;
+        }
+        
+        synchronized (entries) {
+            Entry oldEntry = (Entry) entries.put(resourceName, entry);
+            if (oldEntry != null) {
+                size -= oldEntry.getSize();
+            }
+            size += entrySize;
+            Iterator it = entries.values().iterator();
+            while (size > maximumSize) {
+                size -= ((Entry) it.next()).getSize();
+                it.remove();
+            }
+        }
+        return entry;
+    }
+    
+    /**
+     * Returns the total size, in bytes, of cached content.
+     * 
+     * @return the size
+     */
+    public int getSize() {
+        synchronized (entries) {
+            return size;
+        }
+    }
+}
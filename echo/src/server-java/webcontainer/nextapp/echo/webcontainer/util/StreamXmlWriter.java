@@ -0,0 +1,341 @@
+/* 
+ * This file is part of the Echo Web Application Framework (hereinafter "Echo").
+ * Copyright (C) 2002-2009 NextApp, Inc.
+ *
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ */
+
+package nextapp.echo.webcontainer.util;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import nextapp.echo.app.util.XmlWriter;
+
+/**
+ * An <code>XmlWriter</code> which renders escaped XML text into an in-memory character buffer.
+ * No DOM is created, with the exception of nodes passed to <code>append()</code>, which are
+ * serialized immediately.
+ */
+public class StreamXmlWriter
+implements XmlWriter {
+
+    /** Default initial buffer capacity. */
+    private static final int DEFAULT_CAPACITY = 256;
+
+    /** Size of the transfer buffer used by <code>writeTo()</code>. */
+    private static final int TRANSFER_BUFFER_SIZE = 4096;
+
+    /**
+     * Appends attribute-escaped text to a buffer.
+     *
+     * @param out the buffer
+     * @param value the text to escape
+     */
+    public static void escapeAttribute(StringBuilder out, String value) {
+        int length = value.length();
+        for (int i = 0; i < length; ++i) {
+            char ch = value.charAt(i);
+            switch (ch) {
+            case '&':  out.append("&amp;");  break;
+            case '<':  out.append("&lt;");   break;
+            case '>':  out.append("&gt;");   break;
+            case '"':  out.append("&quot;"); break;
+            case '\n': out.append("&#10;");  break;
+            case '\r': out.append("&#13;");  break;
+            case '\t': out.append("&#9;");   break;
+            default:   out.append(ch);
+            }
+        }
+    }
+
+    /**
+     * Appends text-escaped text to a buffer.
+     *
+     * @param out the buffer
+     * @param value the text to escape
+     */
+    public static void escapeText(StringBuilder out, String value) {
+        int length = value.length();
+        for (int i = 0; i < length; ++i) {
+            char ch = value.charAt(i);
+            switch (ch) {
+            case '&':  out.append("&amp;"); break;
+            case '<':  out.append("&lt;");  break;
+            case '>':  out.append("&gt;");  break;
+            case '\r': out.append("&#13;"); break;
+            default:   out.append(ch);
+            }
+        }
+    }
+
+    /** The output buffer. */
+    private StringBuilder out;
+
+    /** Stack of names of open elements. */
+    private String[] elementNames = new String[16];
+
+    /** Number of open elements. */
+    private int depth = 0;
+
+    /** Flag indicating whether the start tag of the current element has not yet been closed. */
+    private boolean startTagOpen = false;
+
+    /**
+     * Creates a new <code>StreamXmlWriter</code>.
+     */
+    public StreamXmlWriter() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new <code>StreamXmlWriter</code>.
+     *
+     * @param initialCapacity the initial capacity of the buffer, in characters
+     */
+    public StreamXmlWriter(int initialCapacity) {
+        super();
+        out = new StringBuilder(initialCapacity);
+    }
+
+    /**
+     * Appends the content of another writer as child content of the current element.
+     * The fragment writer is closed prior to its content being appended.
+     *
+     * @param fragment the fragment writer
+     */
+    public void appendFragment(StreamXmlWriter fragment) {
+        fragment.close();
+        if (fragment.out.length() == 0) {
+            return;
+        }
+        closeStartTag();
+        out.append(fragment.out);
+    }
+
+    /**
+     * @see nextapp.echo.app.util.XmlWriter#append(org.w3c.dom.Node)
+     */
+    public void append(Node node) {
+        closeStartTag();
+        appendNode(node);
+    }
+
+    /**
+     * Serializes a DOM node to the buffer.
+     *
+     * @param node the node
+     */
+    private void appendNode(Node node) {
+        switch (node.getNodeType()) {
+        case Node.ELEMENT_NODE:
+            String name = node.getNodeName();
+            out.append('<');
+            out.append(name);
+            NamedNodeMap attributes = node.getAttributes();
+            int attributeCount = attributes.getLength();
+            for (int i = 0; i < attributeCount; ++i) {
+                Attr attr = (Attr) attributes.item(i);
+                out.append(' ');
+                out.append(attr.getName());
+                out.append("=\"");
+                escapeAttribute(out, attr.getValue());
+                out.append('"');
+            }
+            Node child = node.getFirstChild();
+            if (child == null) {
+                out.append("/>");
+            } else {
+                out.append('>');
+                while (child != null) {
+                    appendNode(child);
+                    child = child.getNextSibling();
+                }
+                out.append("</");
+                out.append(name);
+                out.append('>');
+            }
+            break;
+        case Node.TEXT_NODE:
+            escapeText(out, node.getNodeValue());
+            break;
+        case Node.CDATA_SECTION_NODE:
+            // Split the section at any "]]>" sequence, which may not appear within it.
+            String data = node.getNodeValue();
+            int start = 0;
+            int end;
+            out.append("<![CDATA[");
+            while ((end = data.indexOf("]]>", start)) != -1) {
+                out.append(data, start, end + 2);
+                out.append("]]><![CDATA[");
+                start = end + 2;
+            }
+            out.append(data, start, data.length());
+            out.append("]]>");
+            break;
+        }
+    }
+
+    /**
+     * Closes all open elements.
+     */
+    public void close() {
+        while (depth > 0) {
+            endElement();
+        }
+    }
+
+    /**
+     * Terminates the start tag of the current element, if it is open.
+     */
+    private void closeStartTag() {
+        if (startTagOpen) {
+            out.append('>');
+            startTagOpen = false;
+        }
+    }
+
+    /**
+     * @see nextapp.echo.app.util.XmlWriter#endElement()
+     */
+    public void endElement() {
+        if (depth == 0) {
+            throw new IllegalStateException("No open element.");
+        }
+        --depth;
+        if (startTagOpen) {
+            out.append("/>");
+            startTagOpen = false;
+        } else {
+            out.append("</");
+            out.append(elementNames[depth]);
+            out.append('>');
+        }
+        elementNames[depth] = null;
+    }
+
+    /**
+     * Writes the content of another writer as a child of the current element.
+     * All content buffered by this writer is first written to <code>w</code> and cleared, followed by
+     * the (closed) content of <code>child</code>, such that the child buffer need not be copied.
+     * Content subsequently written to this writer follows the child.
+     *
+     * @param w the <code>Writer</code> to which content should be written
+     * @param child the child writer
+     * @throws IOException
+     */
+    public void flushChild(Writer w, StreamXmlWriter child)
+    throws IOException {
+        closeStartTag();
+        writeTo(w);
+        out.setLength(0);
+        child.close();
+        child.writeTo(w);
+    }
+
+    /**
+     * Returns the number of characters which are currently buffered.
+     *
+     * @return the length
+     */
+    public int length() {
+        return out.length();
+    }
+
+    /**
+     * Sets an attribute of the current element.  A null value is rendered as an empty attribute, as when 
+     * serializing a DOM element.
+     * 
+     * @see nextapp.echo.app.util.XmlWriter#setAttribute(java.lang.String, java.lang.String)
+     */
+    public void setAttribute(String name, String value) {
+        if (!startTagOpen) {
+            throw new IllegalStateException("Cannot set attribute \"" + name + "\": element content already written.");
+        }
+        out.append(' ');
+        out.append(name);
+        out.append("=\"");
+        if (value != null) {
+            escapeAttribute(out, value);
+        }
+        out.append('"');
+    }
+
+    /**
+     * @see nextapp.echo.app.util.XmlWriter#startElement(java.lang.String)
+     */
+    public void startElement(String name) {
+        closeStartTag();
+        if (depth == elementNames.length) {
+            String[] newElementNames = new String[depth * 2];
+            System.arraycopy(elementNames, 0, newElementNames, 0, depth);
+            elementNames = newElementNames;
+        }
+        elementNames[depth++] = name;
+        out.append('<');
+        out.append(name);
+        startTagOpen = true;
+    }
+
+    /**
+     * @see nextapp.echo.app.util.XmlWriter#text(java.lang.String)
+     */
+    public void text(String text) {
+        closeStartTag();
+        escapeText(out, text);
+    }
+
+    /**
+     * Returns the buffered content.  Open elements are not closed.
+     *
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        return out.toString();
+    }
+
+    /**
+     * Writes the buffered content to a <code>Writer</code>.  Open elements are not closed.
+     *
+     * @param w the <code>Writer</code>
+     * @throws IOException
+     */
+    public void writeTo(Writer w)
+    throws IOException {
+        int length = out.length();
+        char[] buffer = new char[Math.min(length, TRANSFER_BUFFER_SIZE)];
+        int position = 0;
+        while (position < length) {
+            int count = Math.min(buffer.length, length - position);
+            out.getChars(position, position + count, buffer, 0);
+            w.write(buffer, 0, count);
+            position += count;
+        }
+    }
+}
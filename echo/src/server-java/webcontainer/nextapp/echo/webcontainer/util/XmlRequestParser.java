@@ -35,8 +35,14 @@ import java.io.IOException;
 import java.io.InputStream;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 import org.xml.sax.SAXException;
 
 import nextapp.echo.app.util.DomUtil;
@@ -61,6 +67,15 @@ public class XmlRequestParser {
         }
     }
     
+    /** Factory used to create streaming readers, access must be synchronized. */
+    private static final XMLInputFactory inputFactory;
+    static {
+        inputFactory = XMLInputFactory.newInstance();
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    }
+    
     /**
      * Trims an XML <code>InputStream</code> to work around the issue 
      * of the XML parser crashing on trailing whitespace.   This issue is present 
@@ -97,6 +112,41 @@ public class XmlRequestParser {
         return new ByteArrayInputStream(data);
     }
     
+    /**
+     * Creates a streaming reader for the XML input POSTed to a servlet, such that the input may be 
+     * processed without building a DOM representation.
+     * The reader is positioned at the start of the document element when returned.
+     * 
+     * @param request the incoming <code>HttpServletRequest</code>
+     * @param characterEncoding the character encoding of the incoming request
+     *        (specifying this is necessary for certain misbehaving browsers)
+     * @return the reader
+     * @throws IOException if the input is invalid
+     */
+    public static XMLStreamReader createReader(HttpServletRequest request, String characterEncoding) 
+    throws IOException {
+        InputStream in;
+        String userAgent = request.getHeader("user-agent");
+        if (userAgent != null && userAgent.indexOf("onqueror") != -1) {
+            // Invoke XML 'cleaner', but only for  user agents that contain the string "onqueror",
+            // such as Konqueror, for example.
+            in = cleanXmlInputStream(request.getInputStream(), characterEncoding);
+        } else {
+            in = request.getInputStream();
+        }
+        
+        try {
+            XMLStreamReader reader;
+            synchronized (inputFactory) {
+                reader = inputFactory.createXMLStreamReader(in);
+            }
+            reader.nextTag();
+            return reader;
+        } catch (XMLStreamException ex) {
+            throw new InvalidXmlException("Provided InputStream cannot be parsed.", ex);
+        }
+    }
+    
     /**
      * Generates a DOM representation of the XML input POSTed to a servlet.
      * 
@@ -127,4 +177,86 @@ public class XmlRequestParser {
             if (in != null) { try { in.close(); } catch (IOException ex) { } }
         }
     }
+    
+    /**
+     * Builds a DOM representation of the element at the current position of a streaming reader.
+     * The reader must be positioned at the start of the element, and will be positioned at its end
+     * when this method returns.
+     * 
+     * @param reader the <code>XMLStreamReader</code>
+     * @param document the <code>Document</code> with which the created nodes should be associated
+     * @return the created element (not attached to the document)
+     * @throws IOException if the input is invalid
+     */
+    public static Element readElement(XMLStreamReader reader, Document document) 
+    throws IOException {
+        try {
+            Element element = createElement(reader, document);
+            Node parentNode = element;
+            while (parentNode != null) {
+                switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    Element childElement = createElement(reader, document);
+                    parentNode.appendChild(childElement);
+                    parentNode = childElement;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    parentNode = parentNode == element ? null : parentNode.getParentNode();
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    parentNode.appendChild(document.createTextNode(reader.getText()));
+                    break;
+                }
+            }
+            return element;
+        } catch (XMLStreamException ex) {
+            throw new InvalidXmlException("Provided InputStream cannot be parsed.", ex);
+        }
+    }
+    
+    /**
+     * Creates a DOM element (without content) representing the element at the current position 
+     * of a streaming reader, including its attributes.
+     * 
+     * @param reader the <code>XMLStreamReader</code>, positioned at the start of an element
+     * @param document the <code>Document</code>
+     * @return the created element
+     */
+    private static Element createElement(XMLStreamReader reader, Document document) {
+        Element element = document.createElement(reader.getLocalName());
+        int attributeCount = reader.getAttributeCount();
+        for (int i = 0; i < attributeCount; ++i) {
+            element.setAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+        }
+        return element;
+    }
+    
+    /**
+     * Advances a streaming reader past the element at its current position, ignoring its content.
+     * The reader must be positioned at the start of the element, and will be positioned at its end
+     * when this method returns.
+     * 
+     * @param reader the <code>XMLStreamReader</code>
+     * @throws IOException if the input is invalid
+     */
+    public static void skipElement(XMLStreamReader reader) 
+    throws IOException {
+        try {
+            int depth = 1;
+            while (depth > 0) {
+                switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    ++depth;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    --depth;
+                    break;
+                }
+            }
+        } catch (XMLStreamException ex) {
+            throw new InvalidXmlException("Provided InputStream cannot be parsed.", ex);
+        }
+    }
 }